@@ -9,11 +9,9 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @Component
 public class ParkingClient {
@@ -248,109 +246,4 @@ public class ParkingClient {
             throw new IllegalStateException("Failed to create parking in parking-service: " + e.getMessage(), e);
         }
     }
-
-    /**
-     * Get session IDs for a parking in date range
-     * Used by FinancialReportService to get payments for specific parking
-     */
-    public List<Long> getSessionIdsByParkingId(
-            Long parkingId,
-            LocalDateTime startDate,
-            LocalDateTime endDate) {
-        try {
-            String url = baseUrl + "/parking/sessions/ids-by-parking?" +
-                    "parkingId={parkingId}&startDate={startDate}&endDate={endDate}";
-
-            log.info("Getting session IDs for parking {}", parkingId);
-
-            ResponseEntity<List> response = restTemplate.getForEntity(
-                    url,
-                    List.class,
-                    Map.of(
-                            "parkingId", parkingId,
-                            "startDate", startDate.toString(),
-                            "endDate", endDate.toString()
-                    )
-            );
-
-            List<?> body = response.getBody();
-            if (body != null) {
-                List<Long> sessionIds = body.stream()
-                        .map(item -> ((Number) item).longValue())
-                        .collect(Collectors.toList());
-
-                log.info("Found {} sessions for parking {}", sessionIds.size(), parkingId);
-                return sessionIds;
-            }
-
-            return new ArrayList<>();
-
-        } catch (Exception e) {
-            log.error("Failed to get session IDs for parking " + parkingId, e);
-            return new ArrayList<>();
-        }
-    }
-
-    /**
-     * Get session IDs for all parkings in a company
-     * Used by FinancialReportService for company-wide reports
-     */
-    public List<Long> getSessionIdsByCompanyId(
-            Long companyId,
-            LocalDateTime startDate,
-            LocalDateTime endDate) {
-        try {
-            String url = baseUrl + "/parking/sessions/ids-by-company?" +
-                    "companyId={companyId}&startDate={startDate}&endDate={endDate}";
-
-            log.info("Getting session IDs for company {}", companyId);
-
-            ResponseEntity<List> response = restTemplate.getForEntity(
-                    url,
-                    List.class,
-                    Map.of(
-                            "companyId", companyId,
-                            "startDate", startDate.toString(),
-                            "endDate", endDate.toString()
-                    )
-            );
-
-            List<?> body = response.getBody();
-            if (body != null) {
-                List<Long> sessionIds = body.stream()
-                        .map(item -> ((Number) item).longValue())
-                        .collect(Collectors.toList());
-
-                log.info("Found {} sessions for company {}", sessionIds.size(), companyId);
-                return sessionIds;
-            }
-
-            return new ArrayList<>();
-
-        } catch (Exception e) {
-            log.error("Failed to get session IDs for company " + companyId, e);
-            return new ArrayList<>();
-        }
-    }
-
-    /**
-     * Get parking ID for a specific session
-     * Used to enrich transaction data with parking names
-     */
-    public Long getParkingIdBySessionId(Long sessionId) {
-        try {
-            String url = baseUrl + "/parking/sessions/{sessionId}/parking-id";
-
-            ResponseEntity<Long> response = restTemplate.getForEntity(
-                    url,
-                    Long.class,
-                    sessionId
-            );
-
-            return response.getBody();
-
-        } catch (Exception e) {
-            log.warn("Failed to get parking ID for session {}: {}", sessionId, e.getMessage());
-            return null;
-        }
-    }}
\ No newline at end of file
+}
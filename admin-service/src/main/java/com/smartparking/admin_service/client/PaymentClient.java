@@ -7,16 +7,18 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * PaymentClient - Communication with payment-service
  * Used by admin-service to fetch financial data for reports
  *
- * UPDATED VERSION - includes getPaymentsBySessionIds for separate databases
+ * Financial reports are aggregated by payment-service per parking (virtual_payment.ref_parking_id)
  */
 @Component
 public class PaymentClient {
@@ -33,121 +35,43 @@ public class PaymentClient {
     }
 
     /**
-     * ========================================
-     * CRITICAL METHOD FOR SEPARATE DATABASES
-     * ========================================
-     * Get payments by list of session IDs
-     * This is used by FinancialReportService to get payments for specific sessions
+     * Get financial summary for a list of parkings (one parking or all parkings of a company)
+     * Aggregated by payment-service in SQL - cost does not depend on the number of sessions
      *
-     * @param sessionIds - list of session IDs from parking-service
-     * @return List of payment data
+     * @param parkingIds - parking location IDs
+     * @return Map with financial metrics (amounts in PLN)
      */
-    public List<Map<String, Object>> getPaymentsBySessionIds(List<Long> sessionIds) {
+    public Map<String, Object> getFinancialSummary(List<Long> parkingIds, LocalDateTime startDate, LocalDateTime endDate) {
         try {
-            if (sessionIds == null || sessionIds.isEmpty()) {
-                log.warn("Empty session IDs list provided");
-                return new ArrayList<>();
-            }
-
-            String url = baseUrl + "/payment/by-sessions";
-
-            log.info("Requesting payments for {} sessions from payment-service", sessionIds.size());
-
-            ResponseEntity<List> response = restTemplate.postForEntity(
-                    url,
-                    sessionIds,  // POST body - list of session IDs
-                    List.class
-            );
-
-            List<?> body = response.getBody();
-            if (body != null) {
-                log.info("Received {} payments from payment-service", body.size());
-                return (List<Map<String, Object>>) body;
-            }
-
-            return new ArrayList<>();
-
-        } catch (Exception e) {
-            log.error("Failed to get payments by session IDs: " + e.getMessage(), e);
-            return new ArrayList<>();
-        }
-    }
-
-    /**
-     * Get financial summary for a specific parking
-     * Returns total revenue, transaction count, pending payments, etc.
-     *
-     * @param parkingId - parking location ID
-     * @param timePeriod - "today", "week", "month", "quarter", "year"
-     * @return Map with financial metrics
-     */
-    public Map<String, Object> getParkingFinancialSummary(Long parkingId, String timePeriod) {
-        try {
-            String url = baseUrl + "/payment/admin/reports/parking/{parkingId}/summary?period={period}";
+            String url = baseUrl + "/payment/reports/summary?parkingIds={parkingIds}&startDate={startDate}&endDate={endDate}";
 
             ResponseEntity<Map> response = restTemplate.getForEntity(
                     url,
                     Map.class,
-                    parkingId,
-                    timePeriod
+                    reportParams(parkingIds, startDate, endDate)
             );
 
-            return response.getBody() != null ? response.getBody() : new HashMap<>();
+            return response.getBody() != null ? response.getBody() : createEmptyFinancialSummary();
 
         } catch (Exception e) {
-            log.error("Failed to get parking financial summary for parking " + parkingId + ": " + e.getMessage());
-            return createEmptyFinancialSummary();
-        }
-    }
-
-    /**
-     * Get financial summary for ALL parkings in a company
-     *
-     * @param companyId - company ID
-     * @param timePeriod - "today", "week", "month", "quarter", "year"
-     * @return Map with aggregated financial metrics
-     */
-    public Map<String, Object> getCompanyFinancialSummary(Long companyId, String timePeriod) {
-        try {
-            String url = baseUrl + "/payment/admin/reports/company/{companyId}/summary?period={period}";
-
-            ResponseEntity<Map> response = restTemplate.getForEntity(
-                    url,
-                    Map.class,
-                    companyId,
-                    timePeriod
-            );
-
-            return response.getBody() != null ? response.getBody() : new HashMap<>();
-
-        } catch (Exception e) {
-            log.error("Failed to get company financial summary for company " + companyId + ": " + e.getMessage());
+            log.error("Failed to get financial summary for parkings " + parkingIds + ": " + e.getMessage());
             return createEmptyFinancialSummary();
         }
     }
 
     /**
      * Get revenue over time (for charts)
-     * Returns daily/weekly/monthly revenue data
      *
-     * @param parkingId - parking ID (null for all parkings in company)
-     * @param companyId - company ID
-     * @param timePeriod - "week", "month", "quarter", "year"
-     * @return List of revenue data points
+     * @param bucket - "day", "week", "month"
+     * @return List of {bucketStart, totalRevenue, parkingUsage, transactionCount}
      */
-    public List<Map<String, Object>> getRevenueOverTime(Long parkingId, Long companyId, String timePeriod) {
+    public List<Map<String, Object>> getRevenueOverTime(List<Long> parkingIds, LocalDateTime startDate,
+                                                        LocalDateTime endDate, String bucket) {
         try {
-            String url;
-            Map<String, Object> params = new HashMap<>();
-            params.put("period", timePeriod);
-
-            if (parkingId != null) {
-                url = baseUrl + "/payment/admin/reports/parking/{parkingId}/revenue-over-time?period={period}";
-                params.put("parkingId", parkingId);
-            } else {
-                url = baseUrl + "/payment/admin/reports/company/{companyId}/revenue-over-time?period={period}";
-                params.put("companyId", companyId);
-            }
+            String url = baseUrl + "/payment/reports/revenue-over-time" +
+                    "?parkingIds={parkingIds}&startDate={startDate}&endDate={endDate}&bucket={bucket}";
+            Map<String, Object> params = reportParams(parkingIds, startDate, endDate);
+            params.put("bucket", bucket);
 
             ResponseEntity<List> response = restTemplate.getForEntity(
                     url,
@@ -164,65 +88,49 @@ public class PaymentClient {
     }
 
     /**
-     * Get revenue distribution by parking (for pie chart)
-     * Only for admins viewing all parkings
+     * Get paid revenue per parking (for pie chart)
      *
-     * @param companyId - company ID
-     * @param timePeriod - "today", "week", "month", "quarter", "year"
-     * @return List of parking revenue breakdowns
+     * @return List of {parkingId, revenue, transactionCount}, sorted by revenue descending
      */
-    public List<Map<String, Object>> getRevenueDistribution(Long companyId, String timePeriod) {
+    public List<Map<String, Object>> getRevenueByParking(List<Long> parkingIds, LocalDateTime startDate, LocalDateTime endDate) {
         try {
-            String url = baseUrl + "/payment/admin/reports/company/{companyId}/revenue-distribution?period={period}";
+            String url = baseUrl + "/payment/reports/revenue-by-parking" +
+                    "?parkingIds={parkingIds}&startDate={startDate}&endDate={endDate}";
 
             ResponseEntity<List> response = restTemplate.getForEntity(
                     url,
                     List.class,
-                    companyId,
-                    timePeriod
+                    reportParams(parkingIds, startDate, endDate)
             );
 
             return response.getBody() != null ? response.getBody() : new ArrayList<>();
 
         } catch (Exception e) {
-            log.error("Failed to get revenue distribution for company " + companyId + ": " + e.getMessage());
+            log.error("Failed to get revenue by parking: " + e.getMessage());
             return new ArrayList<>();
         }
     }
 
     /**
-     * Get detailed transaction list
+     * Get most recent transactions for a list of parkings
      *
-     * @param parkingId - parking ID (null for all parkings)
-     * @param companyId - company ID
-     * @param timePeriod - "today", "week", "month", "quarter", "year"
-     * @param status - "all", "paid", "pending", "failed" (optional)
-     * @return List of transactions
+     * @param status - "all", "Paid", "Pending", "Failed" (optional)
+     * @param limit - max number of transactions
+     * @return List of transactions (each with parkingId)
      */
-    public List<Map<String, Object>> getTransactions(Long parkingId, Long companyId, String timePeriod, String status) {
+    public List<Map<String, Object>> getTransactions(List<Long> parkingIds, LocalDateTime startDate,
+                                                     LocalDateTime endDate, String status, int limit) {
         try {
-            String url;
-            Map<String, Object> params = new HashMap<>();
-            params.put("period", timePeriod);
+            String url = baseUrl + "/payment/reports/transactions" +
+                    "?parkingIds={parkingIds}&startDate={startDate}&endDate={endDate}&limit={limit}";
+            Map<String, Object> params = reportParams(parkingIds, startDate, endDate);
+            params.put("limit", limit);
 
             if (status != null && !status.equals("all")) {
+                url += "&status={status}";
                 params.put("status", status);
             }
 
-            if (parkingId != null) {
-                url = baseUrl + "/payment/admin/reports/parking/{parkingId}/transactions?period={period}";
-                if (status != null && !status.equals("all")) {
-                    url += "&status={status}";
-                }
-                params.put("parkingId", parkingId);
-            } else {
-                url = baseUrl + "/payment/admin/reports/company/{companyId}/transactions?period={period}";
-                if (status != null && !status.equals("all")) {
-                    url += "&status={status}";
-                }
-                params.put("companyId", companyId);
-            }
-
             ResponseEntity<List> response = restTemplate.getForEntity(
                     url,
                     List.class,
@@ -237,6 +145,14 @@ public class PaymentClient {
         }
     }
 
+    private Map<String, Object> reportParams(List<Long> parkingIds, LocalDateTime startDate, LocalDateTime endDate) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("parkingIds", parkingIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        params.put("startDate", startDate.toString());
+        params.put("endDate", endDate.toString());
+        return params;
+    }
+
     /**
      * Create empty financial summary (fallback when service is down)
      */
@@ -9,21 +9,21 @@ import org.springframework.stereotype.Service;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * FinancialReportService
  *
  * Orchestrates data from payment-service and parking-service
- * Aggregates financial metrics for financial reports
- *
- * This is necessary because Payment_DB and PARKING_DB are separate databases
+ * Parking IDs come from parking-service, metrics are aggregated by payment-service
+ * (virtual_payment.ref_parking_id) - Payment_DB and PARKING_DB are separate databases
  */
 @Service
 public class FinancialReportService {
 
     private static final Logger log = LoggerFactory.getLogger(FinancialReportService.class);
 
+    private static final int TRANSACTIONS_LIMIT = 100;
+
     private final PaymentClient paymentClient;
     private final ParkingClient parkingClient;
 
@@ -42,30 +42,7 @@ public class FinancialReportService {
 
         log.info("Getting financial summary for parking {}", parkingId);
 
-        try {
-            // 1. Get session IDs from parking-service
-            List<Long> sessionIds = parkingClient.getSessionIdsByParkingId(
-                    parkingId, startDate, endDate);
-
-            if (sessionIds.isEmpty()) {
-                log.warn("No sessions found for parking {} in period", parkingId);
-                return createEmptyFinancialSummary();
-            }
-
-            log.info("Found {} sessions for parking {}", sessionIds.size(), parkingId);
-
-            // 2. Get payments for these sessions from payment-service
-            List<Map<String, Object>> payments = paymentClient.getPaymentsBySessionIds(sessionIds);
-
-            log.info("Found {} payments for sessions", payments.size());
-
-            // 3. Calculate metrics
-            return calculateFinancialMetrics(payments, startDate, endDate);
-
-        } catch (Exception e) {
-            log.error("Error getting financial summary for parking " + parkingId, e);
-            return createEmptyFinancialSummary();
-        }
+        return paymentClient.getFinancialSummary(List.of(parkingId), startDate, endDate);
     }
 
     /**
@@ -78,27 +55,14 @@ public class FinancialReportService {
 
         log.info("Getting financial summary for company {}", companyId);
 
-        try {
-            List<Long> sessionIds = parkingClient.getSessionIdsByCompanyId(
-                    companyId, startDate, endDate);
-
-            if (sessionIds.isEmpty()) {
-                log.warn("No sessions found for company {} in period", companyId);
-                return createEmptyFinancialSummary();
-            }
-
-            log.info("Found {} sessions for company {}", sessionIds.size(), companyId);
-
-            List<Map<String, Object>> payments = paymentClient.getPaymentsBySessionIds(sessionIds);
-
-            log.info("Found {} payments for company sessions", payments.size());
-
-            return calculateFinancialMetrics(payments, startDate, endDate);
+        List<Long> parkingIds = parkingClient.getParkingIdsByCompany(companyId);
 
-        } catch (Exception e) {
-            log.error("Error getting financial summary for company " + companyId, e);
+        if (parkingIds.isEmpty()) {
+            log.warn("No parkings found for company {}", companyId);
             return createEmptyFinancialSummary();
         }
+
+        return paymentClient.getFinancialSummary(parkingIds, startDate, endDate);
     }
 
     /**
@@ -115,24 +79,19 @@ public class FinancialReportService {
                 parkingId, companyId, period);
 
         try {
-            // 1. Get session IDs
-            List<Long> sessionIds;
+            // 1. Resolve parkings
+            List<Long> parkingIds = resolveParkingIds(parkingId, companyId);
 
-            if (parkingId != null) {
-                sessionIds = parkingClient.getSessionIdsByParkingId(parkingId, startDate, endDate);
-            } else {
-                sessionIds = parkingClient.getSessionIdsByCompanyId(companyId, startDate, endDate);
-            }
-
-            if (sessionIds.isEmpty()) {
+            if (parkingIds.isEmpty()) {
                 return new ArrayList<>();
             }
 
-            // 2. Get payments
-            List<Map<String, Object>> payments = paymentClient.getPaymentsBySessionIds(sessionIds);
+            // 2. Get revenue buckets (aggregated by payment-service)
+            List<Map<String, Object>> buckets = paymentClient.getRevenueOverTime(
+                    parkingIds, startDate, endDate, getBucketForPeriod(period));
 
-            // 3. Group by period
-            return groupPaymentsByPeriod(payments, period, startDate, endDate);
+            // 3. Label buckets for the chart
+            return labelBuckets(buckets, period);
 
         } catch (Exception e) {
             log.error("Error getting revenue over time", e);
@@ -158,39 +117,23 @@ public class FinancialReportService {
                 return new ArrayList<>();
             }
 
+            // 2. Paid revenue per parking (already sorted by revenue descending)
             List<Map<String, Object>> distribution = new ArrayList<>();
 
-            // 2. For each parking, get revenue
-            for (Long parkingId : parkingIds) {
-                List<Long> sessionIds = parkingClient.getSessionIdsByParkingId(
-                        parkingId, startDate, endDate);
+            for (Map<String, Object> row : paymentClient.getRevenueByParking(parkingIds, startDate, endDate)) {
+                double revenue = getDoubleValue(row, "revenue");
+                Long id = getLongValue(row, "parkingId");
 
-                if (!sessionIds.isEmpty()) {
-                    List<Map<String, Object>> payments =
-                            paymentClient.getPaymentsBySessionIds(sessionIds);
+                if (revenue > 0 && id != null) {
+                    Map<String, Object> item = new HashMap<>();
+                    item.put("parkingId", id);
+                    item.put("parkingName", parkingClient.getParkingName(id));
+                    item.put("revenue", revenue);
 
-                    double revenue = payments.stream()
-                            .filter(p -> "Paid".equals(p.get("status")))
-                            .mapToDouble(p -> getDoubleValue(p, "amount") / 100.0)
-                            .sum();
-
-                    if (revenue > 0) {
-                        String parkingName = parkingClient.getParkingName(parkingId);
-
-                        Map<String, Object> item = new HashMap<>();
-                        item.put("parkingId", parkingId);
-                        item.put("parkingName", parkingName);
-                        item.put("revenue", revenue);
-
-                        distribution.add(item);
-                    }
+                    distribution.add(item);
                 }
             }
 
-            // Sort by revenue descending
-            distribution.sort((a, b) ->
-                    Double.compare((Double) b.get("revenue"), (Double) a.get("revenue")));
-
             return distribution;
 
         } catch (Exception e) {
@@ -213,54 +156,28 @@ public class FinancialReportService {
                 parkingId, companyId, status);
 
         try {
-            // 1. Get session IDs
-            List<Long> sessionIds;
-
-            if (parkingId != null) {
-                sessionIds = parkingClient.getSessionIdsByParkingId(parkingId, startDate, endDate);
-            } else {
-                sessionIds = parkingClient.getSessionIdsByCompanyId(companyId, startDate, endDate);
-            }
+            // 1. Resolve parkings
+            List<Long> parkingIds = resolveParkingIds(parkingId, companyId);
 
-            if (sessionIds.isEmpty()) {
+            if (parkingIds.isEmpty()) {
                 return new ArrayList<>();
             }
 
-            // 2. Get payments with details
-            List<Map<String, Object>> payments = paymentClient.getPaymentsBySessionIds(sessionIds);
+            // 2. Get 100 most recent payments (filtered by status in payment-service)
+            List<Map<String, Object>> payments = paymentClient.getTransactions(
+                    parkingIds, startDate, endDate, status, TRANSACTIONS_LIMIT);
 
-            // 3. Filter by status if needed
-            if (status != null && !"all".equalsIgnoreCase(status)) {
-                payments = payments.stream()
-                        .filter(p -> status.equals(p.get("status")))
-                        .collect(Collectors.toList());
-            }
-
-            // 4. Enrich with parking info (get parking names for session IDs)
+            // 3. Enrich with parking names (one lookup per parking, not per session)
             Map<Long, String> parkingNames = new HashMap<>();
             for (Map<String, Object> payment : payments) {
-                Long sessionId = getLongValue(payment, "sessionId");
-                if (sessionId != null && sessionId > 0 && !parkingNames.containsKey(sessionId)) {
-                    // Get parking info for this session
-                    Long parkId = parkingClient.getParkingIdBySessionId(sessionId);
-                    if (parkId != null) {
-                        String name = parkingClient.getParkingName(parkId);
-                        parkingNames.put(sessionId, name);
-                    }
-                }
-            }
-
-            // Add parking names to payments
-            for (Map<String, Object> payment : payments) {
-                Long sessionId = getLongValue(payment, "sessionId");
-                String parkingName = parkingNames.getOrDefault(sessionId, "N/A");
-                payment.put("parkingName", parkingName);
+                Long parkId = getLongValue(payment, "parkingId");
+                String parkingName = parkId != null
+                        ? parkingNames.computeIfAbsent(parkId, parkingClient::getParkingName)
+                        : null;
+                payment.put("parkingName", parkingName != null ? parkingName : "N/A");
             }
 
-            // Limit to 100 most recent
-            return payments.stream()
-                    .limit(100)
-                    .collect(Collectors.toList());
+            return payments;
 
         } catch (Exception e) {
             log.error("Error getting transactions", e);
@@ -273,90 +190,33 @@ public class FinancialReportService {
     // ========================================
 
     /**
-     * Calculate financial metrics from payment list
+     * Single parking or all parkings of the company
      */
-    private Map<String, Object> calculateFinancialMetrics(
-            List<Map<String, Object>> payments,
-            LocalDateTime startDate,
-            LocalDateTime endDate) {
-
-        Map<String, Object> metrics = new HashMap<>();
-
-        double totalRevenue = 0.0;
-        double parkingUsage = 0.0;
-        double pendingPayments = 0.0;
-        double reservationFees = 0.0;
-        int totalTransactions = payments.size();
-
-        for (Map<String, Object> payment : payments) {
-            double amount = getDoubleValue(payment, "amount");
-            String status = (String) payment.get("status");
-            String activity = (String) payment.get("activity");
-
-            totalRevenue += amount;
-
-            if ("Paid".equals(status) && "parking".equals(activity)) {
-                parkingUsage += amount;
-            }
-
-            if ("Pending".equals(status)) {
-                pendingPayments += amount;
-            }
-
-            if ("reservation".equals(activity) && "Paid".equals(status)) {
-                reservationFees += amount;
-            }
+    private List<Long> resolveParkingIds(Long parkingId, Long companyId) {
+        if (parkingId != null) {
+            return List.of(parkingId);
         }
-
-        double avgTransaction = totalTransactions > 0
-                ? totalRevenue / totalTransactions
-                : 0.0;
-
-        metrics.put("totalRevenue", totalRevenue);
-        metrics.put("parkingUsage", parkingUsage);
-        metrics.put("pendingPayments", pendingPayments);
-        metrics.put("reservationFees", reservationFees);
-        metrics.put("totalTransactions", totalTransactions);
-        metrics.put("avgTransactionValue", avgTransaction);
-
-        // Calculate growth
-        double growth = calculateGrowth(payments, startDate, endDate);
-        metrics.put("revenueGrowth", growth);
-
-        return metrics;
+        return parkingClient.getParkingIdsByCompany(companyId);
     }
 
     /**
-     * Group payments by time period for charts
+     * Merge revenue buckets into chart periods (labels as returned by getFormatterForPeriod)
      */
-    private List<Map<String, Object>> groupPaymentsByPeriod(
-            List<Map<String, Object>> payments,
-            String period,
-            LocalDateTime startDate,
-            LocalDateTime endDate) {
+    private List<Map<String, Object>> labelBuckets(List<Map<String, Object>> buckets, String period) {
 
         Map<String, PeriodData> grouped = new LinkedHashMap<>();
 
         DateTimeFormatter formatter = getFormatterForPeriod(period);
 
-        for (Map<String, Object> payment : payments) {
-            String dateStr = (String) payment.get("dateTransaction");
-            if (dateStr == null) continue;
+        for (Map<String, Object> bucket : buckets) {
+            String bucketStart = (String) bucket.get("bucketStart");
+            if (bucketStart == null) continue;
 
-            LocalDateTime date = LocalDateTime.parse(dateStr);
-            String periodKey = date.format(formatter);
+            String periodKey = LocalDateTime.parse(bucketStart).format(formatter);
 
             PeriodData data = grouped.computeIfAbsent(periodKey, k -> new PeriodData());
-
-            double amount = getDoubleValue(payment, "amount");
-            String status = (String) payment.get("status");
-            String activity = (String) payment.get("activity");
-
-            data.totalRevenue += amount;
-
-            if ("Paid".equals(status) && "parking".equals(activity)) {
-                data.parkingUsage += amount;
-            }
+            data.totalRevenue += getDoubleValue(bucket, "totalRevenue");
+            data.parkingUsage += getDoubleValue(bucket, "parkingUsage");
         }
 
         // Convert to list
@@ -373,46 +233,13 @@ public class FinancialReportService {
     }
 
     /**
-     * Calculate revenue growth %
+     * Get payment-service bucket size for period (finest granularity the chart labels need)
      */
-    private double calculateGrowth(
-            List<Map<String, Object>> payments,
-            LocalDateTime currentStart,
-            LocalDateTime currentEnd) {
-
-        try {
-            // Split payments into current and previous period
-            long periodDays = java.time.Duration.between(currentStart, currentEnd).toDays();
-            LocalDateTime previousEnd = currentStart.minusSeconds(1);
-            LocalDateTime previousStart = previousEnd.minusDays(periodDays);
-
-            double currentRevenue = 0.0;
-            double previousRevenue = 0.0;
-
-            for (Map<String, Object> payment : payments) {
-                String dateStr = (String) payment.get("dateTransaction");
-                if (dateStr == null) continue;
-
-                LocalDateTime date = LocalDateTime.parse(dateStr);
-                double amount = getDoubleValue(payment, "amount");
-
-                if (date.isAfter(currentStart) && date.isBefore(currentEnd)) {
-                    currentRevenue += amount;
-                } else if (date.isAfter(previousStart) && date.isBefore(previousEnd)) {
-                    previousRevenue += amount;
-                }
-            }
-
-            if (previousRevenue > 0) {
-                return ((currentRevenue - previousRevenue) / previousRevenue) * 100.0;
-            }
-
-            return 0.0;
-
-        } catch (Exception e) {
-            log.error("Error calculating growth", e);
-            return 0.0;
-        }
+    private String getBucketForPeriod(String period) {
+        return switch (period.toLowerCase()) {
+            case "month", "quarter", "year" -> "month";
+            default -> "day";
+        };
     }
 
     /**
@@ -26,6 +26,8 @@ public class SecurityConfig {
         configuration.setAllowedOriginPatterns(Arrays.asList("*")); // Pozwala na "*" z credentials
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "PATCH", "OPTIONS"));
         configuration.setAllowedHeaders(Arrays.asList("*"));
+        // Kursory stronicowania /customer/wallet/transactions i /customer/reservations (CustomerController)
+        configuration.setExposedHeaders(Arrays.asList("X-Next-After-Date", "X-Next-After-Id", "X-Next-After-Reservation-Id"));
         configuration.setAllowCredentials(true);
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", configuration);
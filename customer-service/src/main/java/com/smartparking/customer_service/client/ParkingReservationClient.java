@@ -8,7 +8,11 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.OutputStream;
+import java.net.URI;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
@@ -25,15 +29,22 @@ public class ParkingReservationClient {
         this.baseUrl = baseUrl;
     }
 
-    public List<Map<String, Object>> getReservationsByAccountId(Long accountId) {
+    /**
+     * Strona rezerwacji konta (od najnowszych); afterReservationId = null dla pierwszej strony
+     */
+    public List<Map<String, Object>> getReservationsByAccountId(Long accountId, Long afterReservationId, int limit) {
         try {
-            String url = baseUrl + "/parking/reservations?accountId={accountId}";
+            URI url = UriComponentsBuilder.fromUriString(baseUrl + "/parking/reservations")
+                    .queryParam("accountId", accountId)
+                    .queryParamIfPresent("afterReservationId", Optional.ofNullable(afterReservationId))
+                    .queryParam("limit", limit)
+                    .build()
+                    .toUri();
             ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(
                     url,
                     HttpMethod.GET,
                     null,
-                    new ParameterizedTypeReference<List<Map<String, Object>>>() {},
-                    Map.of("accountId", accountId)
+                    new ParameterizedTypeReference<List<Map<String, Object>>>() {}
             );
             return response.getBody() != null ? response.getBody() : List.of();
         } catch (Exception e) {
@@ -174,15 +185,26 @@ public class ParkingReservationClient {
         }
     }
 
-    public List<Map<String, Object>> getSessions(Long accountId, boolean unpaidOnly) {
+    /**
+     * Strona sesji konta (od najnowszych); afterEntryTime/afterSessionId = null dla pierwszej strony
+     */
+    public List<Map<String, Object>> getSessions(Long accountId, boolean unpaidOnly,
+                                                 String afterEntryTime, Long afterSessionId, int limit) {
         try {
-            String url = baseUrl + "/parking/sessions?accountId={accountId}&unpaidOnly={unpaidOnly}";
+            URI url = UriComponentsBuilder.fromUriString(baseUrl + "/parking/sessions")
+                    .queryParam("accountId", accountId)
+                    .queryParam("unpaidOnly", unpaidOnly)
+                    .queryParamIfPresent("afterEntryTime", Optional.ofNullable(afterEntryTime))
+                    .queryParamIfPresent("afterSessionId", Optional.ofNullable(afterSessionId))
+                    .queryParam("limit", limit)
+                    .encode()
+                    .build()
+                    .toUri();
             ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(
                     url,
                     HttpMethod.GET,
                     null,
-                    new ParameterizedTypeReference<List<Map<String, Object>>>() {},
-                    Map.of("accountId", accountId, "unpaidOnly", unpaidOnly)
+                    new ParameterizedTypeReference<List<Map<String, Object>>>() {}
             );
             return response.getBody() != null ? response.getBody() : List.of();
         } catch (Exception e) {
@@ -190,19 +212,35 @@ public class ParkingReservationClient {
         }
     }
 
-    public List<Map<String, Object>> getUnpaidSessions(Long accountId) {
-        return getSessions(accountId, true);
+    /**
+     * Przepisuje eksport NDJSON sesji konta z parking-service do podanego strumienia,
+     * bez buforowania całej odpowiedzi w pamięci.
+     */
+    public void exportSessions(Long accountId, OutputStream out) {
+        restTemplate.execute(
+                baseUrl + "/parking/sessions/export?accountId={accountId}",
+                HttpMethod.GET,
+                null,
+                response -> {
+                    StreamUtils.copy(response.getBody(), out);
+                    return null;
+                },
+                Map.of("accountId", accountId)
+        );
     }
 
-    public ResponseEntity<Map<String, Object>> payForSession(Long sessionId) {
+    /**
+     * Opłaca sesję; parking-service sprawdza, czy sesja należy do accountId (403 w przeciwnym razie)
+     */
+    public ResponseEntity<Map<String, Object>> payForSession(Long sessionId, Long accountId) {
         try {
-            String url = baseUrl + "/parking/sessions/{sessionId}/pay";
+            String url = baseUrl + "/parking/sessions/{sessionId}/pay?accountId={accountId}";
             ResponseEntity<Map<String, Object>> response = restTemplate.exchange(
                     url,
                     HttpMethod.POST,
                     null,
                     new ParameterizedTypeReference<Map<String, Object>>() {},
-                    Map.of("sessionId", sessionId)
+                    Map.of("sessionId", sessionId, "accountId", accountId)
             );
             return response;
         } catch (HttpClientErrorException e) {
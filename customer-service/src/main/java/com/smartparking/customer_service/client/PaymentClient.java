@@ -7,10 +7,15 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
+import java.io.OutputStream;
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @Component
 public class PaymentClient {
@@ -54,12 +59,14 @@ public class PaymentClient {
         }
     }
 
-    public PaymentResult chargeReservationFee(Long accountId, Long amountMinor) {
+    public PaymentResult chargeReservationFee(Long accountId, Long parkingId, Long amountMinor) {
         try {
             String url = baseUrl + "/payment/charge/reservation";
             java.math.BigDecimal amount = new java.math.BigDecimal(amountMinor).divide(new java.math.BigDecimal(100));
+            // parkingId - opłata trafia do raportu finansowego tego parkingu (ref_parking_id w payment-service)
             Map<String, Object> body = Map.of(
                 "accountId", accountId,
+                "parkingId", parkingId,
                 "amount", amount,
                 "currency", "PLN",
                 "sessionId", 0L
@@ -204,9 +211,16 @@ public class PaymentClient {
      * Pobiera historię transakcji dla danego konta użytkownika
      * Uwaga: endpoint w payment-service wymaga JWT token (nie internal token)
      */
-    public List<Map<String, Object>> getTransactions(Long accountId, String jwtToken) {
+    public List<Map<String, Object>> getTransactions(Long accountId, String jwtToken,
+                                                     String afterDate, Long afterId, int limit) {
         try {
-            String url = baseUrl + "/payment/transactions";
+            URI url = UriComponentsBuilder.fromUriString(baseUrl + "/payment/transactions")
+                .queryParamIfPresent("afterDate", Optional.ofNullable(afterDate))
+                .queryParamIfPresent("afterId", Optional.ofNullable(afterId))
+                .queryParam("limit", limit)
+                .encode()
+                .build()
+                .toUri();
             HttpHeaders headers = new HttpHeaders();
             headers.set("Authorization", "Bearer " + jwtToken);
             HttpEntity<Void> request = new HttpEntity<>(headers);
@@ -222,6 +236,23 @@ public class PaymentClient {
         }
     }
 
+    /**
+     * Przepisuje eksport NDJSON transakcji konta z payment-service do podanego strumienia,
+     * bez buforowania całej odpowiedzi w pamięci.
+     * Uwaga: endpoint w payment-service wymaga JWT token (nie internal token)
+     */
+    public void exportTransactions(String jwtToken, OutputStream out) {
+        restTemplate.execute(
+            baseUrl + "/payment/transactions/export",
+            HttpMethod.GET,
+            request -> request.getHeaders().set("Authorization", "Bearer " + jwtToken),
+            response -> {
+                StreamUtils.copy(response.getBody(), out);
+                return null;
+            }
+        );
+    }
+
     /**
      * Pobiera statystyki dla danego konta użytkownika
      * Uwaga: endpoint w payment-service wymaga JWT token (nie internal token)
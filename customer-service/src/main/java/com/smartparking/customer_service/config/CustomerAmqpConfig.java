@@ -0,0 +1,17 @@
+package com.smartparking.customer_service.config;
+
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CustomerAmqpConfig {
+    public static final String CUSTOMER_EXCHANGE = "customer.exchange";
+    // Rejestracja, zmiana tablicy lub usunięcie pojazdu - parking-service unieważnia cache tablica -> pojazd
+    public static final String CUSTOMER_VEHICLE_ROUTING = "customer.vehicle.changed";
+
+    @Bean
+    public TopicExchange customerExchange() {
+        return new TopicExchange(CUSTOMER_EXCHANGE);
+    }
+}
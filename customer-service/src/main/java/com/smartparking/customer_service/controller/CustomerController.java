@@ -14,10 +14,13 @@ import com.smartparking.customer_service.client.PaymentClient;
 import com.smartparking.customer_service.dto.ContactFormEvent;
 import com.smartparking.customer_service.messaging.ContactFormEventPublisher;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -25,6 +28,13 @@ import java.util.Optional;
 @RestController
 @RequestMapping("/customer")
 public class CustomerController {
+    private static final int MAX_PAGE_SIZE = 500;
+    // Kursor następnej strony w nagłówkach - ciało zostaje listą jak przed stronicowaniem.
+    // Nagłówek jest tylko przy pełnej stronie; brak nagłówka = ostatnia strona
+    static final String NEXT_AFTER_DATE_HEADER = "X-Next-After-Date";
+    static final String NEXT_AFTER_ID_HEADER = "X-Next-After-Id";
+    static final String NEXT_AFTER_RESERVATION_ID_HEADER = "X-Next-After-Reservation-Id";
+
     private final CustomerProfileService profiles;
     private final VehicleService vehicles;
     private final ReservationService reservations;
@@ -171,26 +181,88 @@ public class CustomerController {
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    /**
+     * Transakcje portfela od najnowszych. Bez parametrów stronicowania - cała historia (jak dotąd).
+     * Z limit (max 500) lub kursorem - jedna strona; przy pełnej stronie nagłówki X-Next-After-Date
+     * i X-Next-After-Id niosą afterDate i afterId następnej strony.
+     */
     @GetMapping("/wallet/transactions")
-    public ResponseEntity<?> getWalletTransactions(HttpServletRequest request) {
+    public ResponseEntity<?> getWalletTransactions(HttpServletRequest request,
+                                                   @RequestParam(required = false) String afterDate,
+                                                   @RequestParam(required = false) Long afterId,
+                                                   @RequestParam(required = false) Integer limit) {
         RequestContext ctx = (RequestContext) request.getAttribute("requestContext");
         if (ctx == null) return ResponseEntity.status(401).build();
         
         Long accountId = requireAccountId(ctx);
+        boolean paged = limit != null || afterDate != null || afterId != null;
+        if (limit == null) {
+            limit = MAX_PAGE_SIZE;
+        }
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be between 1 and " + MAX_PAGE_SIZE));
+        }
+        if ((afterDate == null) != (afterId == null)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "afterDate and afterId must be given together"));
+        }
         
         try {
             String jwtToken = extractJwtToken(request);
             if (jwtToken == null) {
                 return ResponseEntity.status(401).body(Map.of("error", "JWT token not found"));
             }
-            List<Map<String, Object>> transactions = paymentClient.getTransactions(accountId, jwtToken);
-            return ResponseEntity.ok(transactions);
+            if (!paged) {
+                return ResponseEntity.ok(allTransactions(accountId, jwtToken));
+            }
+            List<Map<String, Object>> transactions = paymentClient.getTransactions(accountId, jwtToken, afterDate, afterId, limit);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (transactions.size() == limit) {
+                Map<String, Object> last = transactions.get(transactions.size() - 1);
+                response.header(NEXT_AFTER_DATE_HEADER, String.valueOf(last.get("date")))
+                        .header(NEXT_AFTER_ID_HEADER, String.valueOf(last.get("id")));
+            }
+            return response.body(transactions);
         } catch (Exception e) {
             org.slf4j.LoggerFactory.getLogger(CustomerController.class).error("Failed to get transactions: {}", e.getMessage(), e);
             return ResponseEntity.status(500).body(Map.of("error", "Failed to get transactions: " + e.getMessage()));
         }
     }
 
+    private List<Map<String, Object>> allTransactions(Long accountId, String jwtToken) {
+        List<Map<String, Object>> all = new ArrayList<>();
+        String afterDate = null;
+        Long afterId = null;
+        while (true) {
+            List<Map<String, Object>> page = paymentClient.getTransactions(accountId, jwtToken, afterDate, afterId, MAX_PAGE_SIZE);
+            all.addAll(page);
+            if (page.size() < MAX_PAGE_SIZE) {
+                return all;
+            }
+            Map<String, Object> last = page.get(page.size() - 1);
+            afterDate = String.valueOf(last.get("date"));
+            afterId = Long.valueOf(String.valueOf(last.get("id")));
+        }
+    }
+
+    /**
+     * Eksport całej historii transakcji jako NDJSON - strumień z payment-service przepisywany bez buforowania
+     */
+    @GetMapping(value = "/wallet/transactions/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportWalletTransactions(HttpServletRequest request) {
+        RequestContext ctx = (RequestContext) request.getAttribute("requestContext");
+        if (ctx == null) return ResponseEntity.status(401).build();
+        requireAccountId(ctx);
+
+        String jwtToken = extractJwtToken(request);
+        if (jwtToken == null) {
+            return ResponseEntity.status(401).build();
+        }
+        StreamingResponseBody body = out -> paymentClient.exportTransactions(jwtToken, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
     @GetMapping("/wallet/statistics")
     public ResponseEntity<?> getWalletStatistics(HttpServletRequest request) {
         RequestContext ctx = (RequestContext) request.getAttribute("requestContext");
@@ -233,11 +305,44 @@ public class CustomerController {
         }
     }
 
+    /**
+     * Rezerwacje konta od najnowszych. Bez parametrów stronicowania - wszystkie (jak dotąd).
+     * Z limit (max 500) lub afterReservationId - jedna strona; przy pełnej stronie nagłówek
+     * X-Next-After-Reservation-Id niesie afterReservationId następnej strony.
+     */
     @GetMapping("/reservations")
-    public ResponseEntity<List<Map<String, Object>>> listReservations(HttpServletRequest request) {
+    public ResponseEntity<?> listReservations(HttpServletRequest request,
+                                              @RequestParam(required = false) Long afterReservationId,
+                                              @RequestParam(required = false) Integer limit) {
         RequestContext ctx = (RequestContext) request.getAttribute("requestContext");
         if (ctx == null) return ResponseEntity.status(401).build();
-        return ResponseEntity.ok(reservations.list(requireAccountId(ctx)));
+        if (limit != null && (limit <= 0 || limit > MAX_PAGE_SIZE)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be between 1 and " + MAX_PAGE_SIZE));
+        }
+        Long accountId = requireAccountId(ctx);
+        if (limit == null && afterReservationId == null) {
+            return ResponseEntity.ok(allReservations(accountId));
+        }
+        int pageSize = limit != null ? limit : MAX_PAGE_SIZE;
+        List<Map<String, Object>> page = reservations.list(accountId, afterReservationId, pageSize);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.size() == pageSize) {
+            response.header(NEXT_AFTER_RESERVATION_ID_HEADER, String.valueOf(page.get(page.size() - 1).get("id_reservation")));
+        }
+        return response.body(page);
+    }
+
+    private List<Map<String, Object>> allReservations(Long accountId) {
+        List<Map<String, Object>> all = new ArrayList<>();
+        Long afterReservationId = null;
+        while (true) {
+            List<Map<String, Object>> page = reservations.list(accountId, afterReservationId, MAX_PAGE_SIZE);
+            all.addAll(page);
+            if (page.size() < MAX_PAGE_SIZE) {
+                return all;
+            }
+            afterReservationId = Long.valueOf(String.valueOf(page.get(page.size() - 1).get("id_reservation")));
+        }
     }
 
     @DeleteMapping("/reservations/{reservationId}")
@@ -350,21 +455,54 @@ public class CustomerController {
         }
     }
 
+    /**
+     * Historia sesji (zakończone i niezakończone) od najnowszych, stronami po limit (max 500).
+     * Kolejna strona: afterEntryTime + afterSessionId = entry_time i session_id ostatniej sesji poprzedniej strony.
+     */
     @GetMapping("/history")
-    public ResponseEntity<?> getHistory(HttpServletRequest request) {
+    public ResponseEntity<?> getHistory(HttpServletRequest request,
+                                        @RequestParam(required = false) String afterEntryTime,
+                                        @RequestParam(required = false) Long afterSessionId,
+                                        @RequestParam(defaultValue = "100") int limit) {
         RequestContext ctx = (RequestContext) request.getAttribute("requestContext");
         if (ctx == null) return ResponseEntity.status(401).build();
         
         Long accountId = requireAccountId(ctx);
+        ResponseEntity<?> invalid = validateSessionPage(afterEntryTime, afterSessionId, limit);
+        if (invalid != null) return invalid;
         
         try {
-            // Zwróć wszystkie sesje (zakończone i niezakończone)
-            return ResponseEntity.ok(parkingSessionService.getSessions(accountId));
+            return ResponseEntity.ok(parkingSessionService.getSessions(accountId, afterEntryTime, afterSessionId, limit));
         } catch (Exception e) {
             return ResponseEntity.status(500).body(Map.of("error", "Failed to get history: " + e.getMessage()));
         }
     }
 
+    /**
+     * Eksport całej historii sesji jako NDJSON - strumień z parking-service przepisywany bez buforowania
+     */
+    @GetMapping(value = "/history/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportHistory(HttpServletRequest request) {
+        RequestContext ctx = (RequestContext) request.getAttribute("requestContext");
+        if (ctx == null) return ResponseEntity.status(401).build();
+        
+        Long accountId = requireAccountId(ctx);
+        StreamingResponseBody body = out -> parkingSessionService.exportSessions(accountId, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    private ResponseEntity<?> validateSessionPage(String afterEntryTime, Long afterSessionId, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be between 1 and " + MAX_PAGE_SIZE));
+        }
+        if ((afterEntryTime == null) != (afterSessionId == null)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "afterEntryTime and afterSessionId must be given together"));
+        }
+        return null;
+    }
+
     @GetMapping("/history/statistics")
     public ResponseEntity<?> getHistoryStatistics(HttpServletRequest request) {
         RequestContext ctx = (RequestContext) request.getAttribute("requestContext");
@@ -426,21 +564,26 @@ public class CustomerController {
     }
 
     /**
-     * Pobiera wszystkie sesje parkingowe dla danego konta użytkownika
+     * Pobiera stronę sesji parkingowych dla danego konta użytkownika (stronicowanie jak w /history)
      */
     @GetMapping("/sessions")
     public ResponseEntity<?> getSessions(HttpServletRequest request,
-                                         @RequestParam(required = false, defaultValue = "false") boolean unpaidOnly) {
+                                         @RequestParam(required = false, defaultValue = "false") boolean unpaidOnly,
+                                         @RequestParam(required = false) String afterEntryTime,
+                                         @RequestParam(required = false) Long afterSessionId,
+                                         @RequestParam(defaultValue = "100") int limit) {
         RequestContext ctx = (RequestContext) request.getAttribute("requestContext");
         if (ctx == null) return ResponseEntity.status(401).build();
         
         Long accountId = requireAccountId(ctx);
+        ResponseEntity<?> invalid = validateSessionPage(afterEntryTime, afterSessionId, limit);
+        if (invalid != null) return invalid;
         
         try {
             if (unpaidOnly) {
-                return ResponseEntity.ok(parkingSessionService.getUnpaidSessions(accountId));
+                return ResponseEntity.ok(parkingSessionService.getUnpaidSessions(accountId, afterEntryTime, afterSessionId, limit));
             }
-            return ResponseEntity.ok(parkingSessionService.getSessions(accountId));
+            return ResponseEntity.ok(parkingSessionService.getSessions(accountId, afterEntryTime, afterSessionId, limit));
         } catch (Exception e) {
             return ResponseEntity.status(500).body(Map.of("error", "Failed to get sessions: " + e.getMessage()));
         }
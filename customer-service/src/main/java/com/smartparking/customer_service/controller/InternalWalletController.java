@@ -1,11 +1,13 @@
 package com.smartparking.customer_service.controller;
 
+import com.smartparking.customer_service.dto.WalletOperationResult;
 import com.smartparking.customer_service.service.WalletService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 
@@ -52,6 +54,11 @@ public class InternalWalletController {
         return w.<ResponseEntity<?>>map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    /**
+     * Ustawia saldo bezwzględnie (odczyt-obliczenie-zapis po stronie wywołującego gubi równoległe zmiany).
+     * Obciążenia i zwroty idą przez /charge i /credit.
+     */
+    @Deprecated
     @PostMapping("/{accountId}/debit")
     public ResponseEntity<?> debitWallet(@PathVariable Long accountId, @RequestBody Map<String, Object> body, HttpServletRequest request) {
         if (!checkToken(request)) return ResponseEntity.status(403).build();
@@ -67,4 +74,48 @@ public class InternalWalletController {
         boolean ok = walletService.setBalance(accountId, newBalance);
         return ok ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
     }
+
+    /**
+     * Atomowe obciążenie portfela o kwotę: { "amount_minor": 500, "idempotency_key": "..." }.
+     * 200 - obciążono (albo powtórzenie tego samego klucza), 409 - brak środków lub klucz użyty z inną kwotą, 404 - brak portfela.
+     */
+    @PostMapping("/{accountId}/charge")
+    public ResponseEntity<?> chargeWallet(@PathVariable Long accountId, @RequestBody Map<String, Object> body, HttpServletRequest request) {
+        if (!checkToken(request)) return ResponseEntity.status(403).build();
+        return applyOperation(accountId, body, true);
+    }
+
+    /**
+     * Atomowe uznanie portfela o kwotę (zwroty): { "amount_minor": 500, "idempotency_key": "..." }.
+     */
+    @PostMapping("/{accountId}/credit")
+    public ResponseEntity<?> creditWallet(@PathVariable Long accountId, @RequestBody Map<String, Object> body, HttpServletRequest request) {
+        if (!checkToken(request)) return ResponseEntity.status(403).build();
+        return applyOperation(accountId, body, false);
+    }
+
+    private ResponseEntity<?> applyOperation(Long accountId, Map<String, Object> body, boolean debit) {
+        Object amountVal = body.get("amount_minor");
+        Object keyVal = body.get("idempotency_key");
+        if (amountVal == null || keyVal == null) return ResponseEntity.badRequest().build();
+        WalletOperationResult result;
+        try {
+            BigDecimal amountMinor = new BigDecimal(amountVal.toString());
+            result = debit
+                    ? walletService.debit(accountId, amountMinor, keyVal.toString())
+                    : walletService.credit(accountId, amountMinor, keyVal.toString());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage() != null ? e.getMessage() : "Invalid amount"));
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", result.getStatus().name());
+        response.put("wallet_id", result.getWalletId());
+        response.put("balance_minor", result.getBalanceMinor());
+        return switch (result.getStatus()) {
+            case APPLIED, REPLAYED -> ResponseEntity.ok(response);
+            case INSUFFICIENT_FUNDS, KEY_CONFLICT -> ResponseEntity.status(409).body(response);
+            case NOT_FOUND -> ResponseEntity.status(404).body(response);
+        };
+    }
 }
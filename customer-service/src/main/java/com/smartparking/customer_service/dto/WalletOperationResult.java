@@ -0,0 +1,65 @@
+package com.smartparking.customer_service.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Wynik atomowego obciążenia/uznania portfela (JdbcWalletRepository.debit / credit).
+ */
+public class WalletOperationResult {
+    public enum Status {
+        APPLIED,            // saldo zmienione w tym wywołaniu
+        REPLAYED,           // klucz idempotencji już użyty z tą samą kwotą - zwracany jest zapisany wynik
+        INSUFFICIENT_FUNDS, // saldo mniejsze niż kwota obciążenia, nic nie zmieniono
+        NOT_FOUND,          // konto nie ma portfela
+        KEY_CONFLICT        // klucz idempotencji już użyty z inną kwotą
+    }
+
+    private final Status status;
+    private final Long walletId;
+    private final BigDecimal balanceMinor;
+
+    private WalletOperationResult(Status status, Long walletId, BigDecimal balanceMinor) {
+        this.status = status;
+        this.walletId = walletId;
+        this.balanceMinor = balanceMinor;
+    }
+
+    public static WalletOperationResult applied(Long walletId, BigDecimal balanceAfter) {
+        return new WalletOperationResult(Status.APPLIED, walletId, balanceAfter);
+    }
+
+    public static WalletOperationResult replayed(Long walletId, BigDecimal balanceAfter) {
+        return new WalletOperationResult(Status.REPLAYED, walletId, balanceAfter);
+    }
+
+    public static WalletOperationResult insufficientFunds(Long walletId, BigDecimal balance) {
+        return new WalletOperationResult(Status.INSUFFICIENT_FUNDS, walletId, balance);
+    }
+
+    public static WalletOperationResult notFound() {
+        return new WalletOperationResult(Status.NOT_FOUND, null, null);
+    }
+
+    public static WalletOperationResult keyConflict(Long walletId) {
+        return new WalletOperationResult(Status.KEY_CONFLICT, walletId, null);
+    }
+
+    public boolean isSuccess() {
+        return status == Status.APPLIED || status == Status.REPLAYED;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Long getWalletId() {
+        return walletId;
+    }
+
+    /**
+     * Saldo po operacji (APPLIED/REPLAYED) albo bieżące saldo (INSUFFICIENT_FUNDS)
+     */
+    public BigDecimal getBalanceMinor() {
+        return balanceMinor;
+    }
+}
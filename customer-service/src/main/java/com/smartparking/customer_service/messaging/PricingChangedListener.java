@@ -0,0 +1,45 @@
+package com.smartparking.customer_service.messaging;
+
+import com.smartparking.customer_service.dto.PricingChangedEvent;
+import com.smartparking.customer_service.service.PricingNearCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Odbiera zmiany cenników z parking-service i aktualizuje PricingNearCache.
+ * Kolejka jest anonimowa (exclusive, auto-delete), więc zdarzenie trafia do każdej instancji customer-service.
+ */
+@Component
+public class PricingChangedListener {
+    private static final Logger log = LoggerFactory.getLogger(PricingChangedListener.class);
+    // Exchange i routing key zdefiniowane w parking-service (ParkingAmqpConfig)
+    private static final String PARKING_EXCHANGE = "parking.exchange";
+    private static final String PARKING_PRICING_ROUTING = "parking.pricing.changed";
+
+    private final PricingNearCache pricingCache;
+
+    public PricingChangedListener(PricingNearCache pricingCache) {
+        this.pricingCache = pricingCache;
+    }
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(exclusive = "true", autoDelete = "true"),
+            exchange = @Exchange(value = PARKING_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = PARKING_PRICING_ROUTING))
+    public void handlePricingChanged(PricingChangedEvent event) {
+        try {
+            log.info("Received pricing changed event: parkingId={}, pricingId={}",
+                event.getParkingId(), event.getPricingId());
+            pricingCache.apply(event);
+        } catch (Exception e) {
+            log.error("Failed to apply pricing changed event: parkingId={}", event.getParkingId(), e);
+            pricingCache.invalidate(event.getParkingId());
+        }
+    }
+}
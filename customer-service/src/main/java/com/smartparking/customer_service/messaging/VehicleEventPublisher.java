@@ -0,0 +1,42 @@
+package com.smartparking.customer_service.messaging;
+
+import com.smartparking.customer_service.config.CustomerAmqpConfig;
+import com.smartparking.customer_service.dto.VehicleChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+@Component
+public class VehicleEventPublisher {
+    public static final String REGISTERED = "REGISTERED";
+    public static final String UPDATED = "UPDATED";
+    public static final String DELETED = "DELETED";
+
+    private static final Logger log = LoggerFactory.getLogger(VehicleEventPublisher.class);
+    private final RabbitTemplate rabbitTemplate;
+
+    public VehicleEventPublisher(RabbitTemplate rabbitTemplate) {
+        this.rabbitTemplate = rabbitTemplate;
+    }
+
+    public void publishVehicleChanged(Long vehicleId, String licencePlate, String previousLicencePlate, String changeType) {
+        try {
+            VehicleChangedEvent event = new VehicleChangedEvent(
+                vehicleId, licencePlate, previousLicencePlate, changeType, Instant.now()
+            );
+            rabbitTemplate.convertAndSend(
+                CustomerAmqpConfig.CUSTOMER_EXCHANGE,
+                CustomerAmqpConfig.CUSTOMER_VEHICLE_ROUTING,
+                event
+            );
+            log.info("Vehicle changed event published: vehicleId={}, plate={}, type={}",
+                vehicleId, licencePlate, changeType);
+        } catch (Exception e) {
+            log.error("Failed to publish vehicle changed event: vehicleId={}, plate={}", vehicleId, licencePlate, e);
+            // Don't throw - parking-service cache falls back to its TTL
+        }
+    }
+}
@@ -1,7 +1,11 @@
 package com.smartparking.customer_service.repository;
 
+import com.smartparking.customer_service.dto.WalletOperationResult;
 import com.smartparking.customer_service.model.Customer;
 import com.smartparking.customer_service.model.Wallet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
@@ -16,6 +20,7 @@ import java.util.Optional;
 
 @Repository
 public class JdbcWalletRepository implements WalletRepository{
+    private static final Logger log = LoggerFactory.getLogger(JdbcWalletRepository.class);
     private final JdbcTemplate jdbc;
     private final CustomerRepository customerRepository;
 
@@ -115,6 +120,85 @@ public class JdbcWalletRepository implements WalletRepository{
         return Optional.of(map);
     }
 
+    // Zmiana salda i wpis operacji w jednym zapytaniu: bez wpisu (np. powtórzony klucz) saldo też się nie zmienia.
+    // Dwa równoległe wywołania z tym samym kluczem mogą oba przejść NOT EXISTS - drugie kończy się wtedy
+    // naruszeniem wallet_operation_idempotency_key_key i wycofaniem całego zapytania.
+    private static final String OPERATION_SQL_TEMPLATE =
+            "WITH changed AS (" +
+            "  UPDATE wallet SET balance_minor = balance_minor %s ? " +
+            "  WHERE customer_id = (SELECT customer_id FROM customer WHERE ref_account_id = ? LIMIT 1)" +
+            "    %s" +
+            "    AND NOT EXISTS (SELECT 1 FROM wallet_operation WHERE idempotency_key = ?)" +
+            "  RETURNING wallet_id, balance_minor" +
+            "), operation AS (" +
+            "  INSERT INTO wallet_operation(idempotency_key, wallet_id, delta_minor, balance_after)" +
+            "  SELECT ?, wallet_id, ?, balance_minor FROM changed" +
+            "  RETURNING wallet_id, balance_after" +
+            ") SELECT wallet_id, balance_after FROM operation";
+    private static final String DEBIT_SQL = String.format(OPERATION_SQL_TEMPLATE, "-", "AND balance_minor >= ?");
+    private static final String CREDIT_SQL = String.format(OPERATION_SQL_TEMPLATE, "+", "");
+
+    @Override
+    public WalletOperationResult debit(Long accountId, BigDecimal amountMinor, String idempotencyKey) {
+        return applyOperation(DEBIT_SQL, new Object[]{amountMinor, accountId, amountMinor, idempotencyKey,
+                idempotencyKey, amountMinor.negate()}, accountId, amountMinor.negate(), idempotencyKey);
+    }
+
+    @Override
+    public WalletOperationResult credit(Long accountId, BigDecimal amountMinor, String idempotencyKey) {
+        return applyOperation(CREDIT_SQL, new Object[]{amountMinor, accountId, idempotencyKey,
+                idempotencyKey, amountMinor}, accountId, amountMinor, idempotencyKey);
+    }
+
+    private WalletOperationResult applyOperation(String sql, Object[] params, Long accountId,
+                                                 BigDecimal delta, String idempotencyKey) {
+        try {
+            List<WalletOperationResult> applied = jdbc.query(sql,
+                    (rs, rowNum) -> WalletOperationResult.applied(rs.getLong("wallet_id"), rs.getBigDecimal("balance_after")),
+                    params);
+            if (!applied.isEmpty()) {
+                return applied.get(0);
+            }
+        } catch (DuplicateKeyException e) {
+            // Równoległe wywołanie z tym samym kluczem zapisało operację pierwsze
+            log.info("Concurrent wallet operation with the same idempotency key: key={}", idempotencyKey);
+        }
+        return explainNotApplied(accountId, delta, idempotencyKey);
+    }
+
+    /**
+     * Ścieżka bez zmiany salda: powtórzony klucz, brak środków albo brak portfela.
+     * Powtórzenie to ten sam klucz na tym samym portfelu i z tą samą kwotą - klucz użyty już na portfelu innego konta
+     * jest konfliktem (bez salda i portfela tamtego konta w odpowiedzi).
+     */
+    private WalletOperationResult explainNotApplied(Long accountId, BigDecimal delta, String idempotencyKey) {
+        List<WalletOperationResult> previous = jdbc.query(
+                "SELECT o.wallet_id, o.delta_minor, o.balance_after, w.wallet_id AS account_wallet_id " +
+                        "FROM wallet_operation o " +
+                        "LEFT JOIN (SELECT w.wallet_id FROM wallet w JOIN customer c ON c.customer_id = w.customer_id " +
+                        "           WHERE c.ref_account_id = ? LIMIT 1) w ON true " +
+                        "WHERE o.idempotency_key = ?",
+                (rs, rowNum) -> {
+                    Long accountWalletId = rs.getObject("account_wallet_id", Long.class);
+                    if (accountWalletId == null || accountWalletId != rs.getLong("wallet_id")) {
+                        return WalletOperationResult.keyConflict(accountWalletId);
+                    }
+                    return rs.getBigDecimal("delta_minor").compareTo(delta) == 0
+                            ? WalletOperationResult.replayed(accountWalletId, rs.getBigDecimal("balance_after"))
+                            : WalletOperationResult.keyConflict(accountWalletId);
+                },
+                accountId, idempotencyKey);
+        if (!previous.isEmpty()) {
+            return previous.get(0);
+        }
+        List<WalletOperationResult> wallet = jdbc.query(
+                "SELECT w.wallet_id, w.balance_minor FROM wallet w " +
+                        "JOIN customer c ON c.customer_id = w.customer_id WHERE c.ref_account_id = ? LIMIT 1",
+                (rs, rowNum) -> WalletOperationResult.insufficientFunds(rs.getLong("wallet_id"), rs.getBigDecimal("balance_minor")),
+                accountId);
+        return wallet.isEmpty() ? WalletOperationResult.notFound() : wallet.get(0);
+    }
+
     @Override
     public int updateBalanceByAccountId(Long accountId, BigDecimal newBalance) {
         // accountId refers to ref_account_id in customer table
@@ -1,5 +1,6 @@
 package com.smartparking.customer_service.repository;
 
+import com.smartparking.customer_service.dto.WalletOperationResult;
 import com.smartparking.customer_service.model.Wallet;
 
 import java.math.BigDecimal;
@@ -17,4 +18,8 @@ public interface WalletRepository {
     // Note: accountId refers to ref_account_id in customer table, not customer_id
     Optional<Map<String, Object>> findByAccountId(Long accountId);
     int updateBalanceByAccountId(Long accountId, BigDecimal newBalance);
+
+    // Atomowa zmiana salda o kwotę (jedno zapytanie); powtórzony idempotencyKey nie zmienia salda drugi raz
+    WalletOperationResult debit(Long accountId, BigDecimal amountMinor, String idempotencyKey);
+    WalletOperationResult credit(Long accountId, BigDecimal amountMinor, String idempotencyKey);
 }
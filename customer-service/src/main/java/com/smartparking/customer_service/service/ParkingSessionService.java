@@ -95,17 +95,26 @@ public class ParkingSessionService {
     }
     
     /**
-     * Pobiera wszystkie sesje parkingowe dla danego konta użytkownika
+     * Pobiera stronę sesji parkingowych dla danego konta użytkownika (od najnowszych)
      */
-    public java.util.List<Map<String, Object>> getSessions(Long accountId) {
-        return parkingClient.getSessions(accountId, false); // Wszystkie sesje
+    public java.util.List<Map<String, Object>> getSessions(Long accountId, String afterEntryTime,
+                                                          Long afterSessionId, int limit) {
+        return parkingClient.getSessions(accountId, false, afterEntryTime, afterSessionId, limit); // Wszystkie sesje
     }
 
     /**
-     * Pobiera tylko niezapłacone sesje parkingowe dla danego konta użytkownika
+     * Pobiera stronę niezapłaconych sesji parkingowych dla danego konta użytkownika
      */
-    public java.util.List<Map<String, Object>> getUnpaidSessions(Long accountId) {
-        return parkingClient.getUnpaidSessions(accountId);
+    public java.util.List<Map<String, Object>> getUnpaidSessions(Long accountId, String afterEntryTime,
+                                                                Long afterSessionId, int limit) {
+        return parkingClient.getSessions(accountId, true, afterEntryTime, afterSessionId, limit); // Tylko niezapłacone
+    }
+
+    /**
+     * Eksport wszystkich sesji konta (NDJSON) prosto do strumienia odpowiedzi
+     */
+    public void exportSessions(Long accountId, java.io.OutputStream out) {
+        parkingClient.exportSessions(accountId, out);
     }
 
     /**
@@ -117,20 +126,12 @@ public class ParkingSessionService {
      * @return ResponseEntity z informacją o płatności
      */
     public org.springframework.http.ResponseEntity<Map<String, Object>> payForSession(Long accountId, Long sessionId) {
-        // Sprawdź czy sesja należy do użytkownika (poprzez listę sesji)
-        java.util.List<Map<String, Object>> sessions = getSessions(accountId);
-        boolean belongsToUser = sessions.stream()
-            .anyMatch(s -> {
-                Object idObj = s.get("session_id");
-                return idObj != null && idObj.toString().equals(sessionId.toString());
-            });
-        
-        if (!belongsToUser) {
+        // Własność sesji sprawdza parking-service (accountId w żądaniu) - bez pobierania całej historii sesji
+        try {
+            return parkingClient.payForSession(sessionId, accountId);
+        } catch (org.springframework.web.client.HttpClientErrorException.Forbidden e) {
             throw new IllegalArgumentException("Session not found or does not belong to the account.");
         }
-        
-        // Wywołaj płatność przez parking-service
-        return parkingClient.payForSession(sessionId);
     }
 
     /**
@@ -0,0 +1,116 @@
+package com.smartparking.customer_service.service;
+
+import com.smartparking.customer_service.client.ParkingReservationClient;
+import com.smartparking.customer_service.dto.PricingChangedEvent;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Lokalna kopia cenników parkingów (GET /parking/pricing/{parkingId}) w customer-service.
+ *
+ * Tworzenie i anulowanie rezerwacji potrzebuje cennika przy każdym wywołaniu, a cennik zmienia się rzadko -
+ * zamiast synchronicznego zapytania do parking-service czytamy go z pamięci. parking-service rozgłasza zmiany
+ * zdarzeniem parking.pricing.changed (PricingChangedListener), które od razu podmienia wpis.
+ * TTL jest tylko siatką bezpieczeństwa na wypadek zgubionego zdarzenia.
+ *
+ * apply() i invalidate() podbijają generację parkingu; odpowiedź parking-service zapisujemy tylko przy niezmienionej
+ * generacji, więc zapytanie wysłane przed zdarzeniem nie nadpisze nowego cennika starym.
+ */
+@Component
+public class PricingNearCache {
+    private static final int MAX_ENTRIES = 1024;
+    private static final long TTL_MILLIS = 10 * 60 * 1000L; // 10 minut
+
+    private final ParkingReservationClient parkingClient;
+    private final Map<Long, Entry> byParking = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    // Generacja per parking_id (chroniona tym samym monitorem co byParking); rośnie tylko z liczbą parkingów
+    private final Map<Long, Long> generations = new HashMap<>();
+
+    public PricingNearCache(ParkingReservationClient parkingClient) {
+        this.parkingClient = parkingClient;
+    }
+
+    /**
+     * Cennik parkingu w tym samym kształcie co odpowiedź GET /parking/pricing/{parkingId}.
+     * Brak cennika (lub błąd parking-service) nie jest cache'owany.
+     */
+    public Optional<Map<String, Object>> getPricing(Long parkingId) {
+        if (parkingId == null) {
+            return Optional.empty();
+        }
+        long now = System.currentTimeMillis();
+        long generation;
+        synchronized (byParking) {
+            Entry entry = byParking.get(parkingId);
+            if (entry != null && now - entry.loadedAt < TTL_MILLIS) {
+                return Optional.of(entry.pricing);
+            }
+            generation = generations.getOrDefault(parkingId, 0L);
+        }
+
+        Optional<Map<String, Object>> loaded = parkingClient.getPricing(parkingId)
+                .map(Collections::unmodifiableMap);
+        loaded.ifPresent(pricing -> {
+            synchronized (byParking) {
+                // Zdarzenie zmiany w trakcie zapytania - odpowiedź może być sprzed zmiany, zwracamy ją bez zapisu
+                if (generations.getOrDefault(parkingId, 0L) == generation) {
+                    byParking.put(parkingId, new Entry(pricing, now));
+                }
+            }
+        });
+        return loaded;
+    }
+
+    public Optional<Integer> getReservationFee(Long parkingId) {
+        return getPricing(parkingId)
+                .map(pricing -> pricing.get("reservationFeeMinor"))
+                .filter(Number.class::isInstance)
+                .map(fee -> ((Number) fee).intValue());
+    }
+
+    /**
+     * Podmienia wpis na cennik ze zdarzenia parking.pricing.changed.
+     */
+    public void apply(PricingChangedEvent event) {
+        if (event.getParkingId() == null || event.getRatePerMin() == null || event.getReservationFeeMinor() == null) {
+            invalidate(event.getParkingId());
+            return;
+        }
+        Map<String, Object> pricing = new LinkedHashMap<>();
+        pricing.put("ratePerMin", event.getRatePerMin());
+        pricing.put("ratePerMinDecimal", new BigDecimal(event.getRatePerMin()).divide(new BigDecimal(100)));
+        pricing.put("freeMinutes", event.getFreeMinutes());
+        pricing.put("roundingStepMin", event.getRoundingStepMin());
+        pricing.put("reservationFeeMinor", event.getReservationFeeMinor());
+        pricing.put("reservationFee", new BigDecimal(event.getReservationFeeMinor()).divide(new BigDecimal(100)));
+        pricing.put("currencyCode", event.getCurrencyCode() != null ? event.getCurrencyCode() : "PLN");
+        synchronized (byParking) {
+            byParking.put(event.getParkingId(), new Entry(Collections.unmodifiableMap(pricing), System.currentTimeMillis()));
+            generations.merge(event.getParkingId(), 1L, Long::sum);
+        }
+    }
+
+    public void invalidate(Long parkingId) {
+        if (parkingId == null) {
+            return;
+        }
+        synchronized (byParking) {
+            byParking.remove(parkingId);
+            generations.merge(parkingId, 1L, Long::sum);
+        }
+    }
+
+    private record Entry(Map<String, Object> pricing, long loadedAt) {
+    }
+}
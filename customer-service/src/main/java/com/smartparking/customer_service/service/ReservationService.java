@@ -24,24 +24,31 @@ public class ReservationService {
     private final PaymentClient paymentClient;
     private final WalletService walletService;
     private final VehicleService vehicleService;
+    private final PricingNearCache pricingCache;
     
     public ReservationService(ParkingReservationClient parkingClient, 
                               AccountClient accountClient,
                               ReservationEventPublisher eventPublisher,
                               PaymentClient paymentClient,
                               WalletService walletService,
-                              VehicleService vehicleService) {
+                              VehicleService vehicleService,
+                              PricingNearCache pricingCache) {
         this.parkingClient = parkingClient;
         this.accountClient = accountClient;
         this.eventPublisher = eventPublisher;
         this.paymentClient = paymentClient;
         this.walletService = walletService;
         this.vehicleService = vehicleService;
+        this.pricingCache = pricingCache;
     }
     
-    public List<Map<String, Object>> list(Long accountId) {
+    /**
+     * Strona rezerwacji konta (od najnowszych); afterReservationId = id_reservation ostatniej
+     * rezerwacji poprzedniej strony lub null dla pierwszej strony
+     */
+    public List<Map<String, Object>> list(Long accountId, Long afterReservationId, int limit) {
         // Pobierz rezerwacje z parking-service
-        List<Map<String, Object>> reservations = parkingClient.getReservationsByAccountId(accountId);
+        List<Map<String, Object>> reservations = parkingClient.getReservationsByAccountId(accountId, afterReservationId, limit);
         log.info("Retrieved {} reservations from parking-service for accountId={}", reservations.size(), accountId);
 
         // Pobierz pojazdy użytkownika i zbuduj mapę vehicleId -> licence_plate
@@ -97,8 +104,8 @@ public class ReservationService {
     }
     
     public ReservationResult create(Long accountId, Long parkingId, Long spotId, Long vehicleId, Instant start, Instant end) {
-        // 1. Pobierz cennik z parking-service (potrzebujemy rate_per_min do obliczenia ceny)
-        Optional<Map<String, Object>> pricingOpt = parkingClient.getPricing(parkingId);
+        // 1. Pobierz cennik (lokalna kopia z parking-service; potrzebujemy rate_per_min do obliczenia ceny)
+        Optional<Map<String, Object>> pricingOpt = pricingCache.getPricing(parkingId);
         if (pricingOpt.isEmpty()) {
             return ReservationResult.failed("Parking pricing not found");
         }
@@ -172,7 +179,7 @@ public class ReservationService {
         // 6. Pobierz opłatę z portfela przez payment-service (po utworzeniu rezerwacji)
         PaymentClient.PaymentResult paymentResult;
         try {
-            paymentResult = paymentClient.chargeReservationFee(accountId, (long) reservationFeeMinor);
+            paymentResult = paymentClient.chargeReservationFee(accountId, parkingId, (long) reservationFeeMinor);
         } catch (Exception e) {
             // Płatność się nie powiodła - anuluj rezerwację (używamy accountId dla bezpieczeństwa)
             try {
@@ -303,7 +310,7 @@ public class ReservationService {
             return ReservationResult.failed("Invalid reservation data");
         }
         
-        Optional<Integer> feeOpt = parkingClient.getReservationFee(parkingId);
+        Optional<Integer> feeOpt = pricingCache.getReservationFee(parkingId);
         if (feeOpt.isEmpty()) {
             log.warn("Reservation fee not found for parking {}", parkingId);
             return ReservationResult.failed("Reservation fee not found");
@@ -3,15 +3,20 @@ package com.smartparking.customer_service.service;
 import com.smartparking.customer_service.client.AccountClient;
 import com.smartparking.customer_service.client.PaymentClient;
 import com.smartparking.customer_service.dto.TopUpResult;
+import com.smartparking.customer_service.dto.WalletOperationResult;
 import com.smartparking.customer_service.messaging.TopUpEventPublisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 
 @Service
 public class TopUpService {
+    private static final Logger log = LoggerFactory.getLogger(TopUpService.class);
     private final WalletService walletService;
     private final PaymentClient paymentClient;
     private final AccountClient accountClient;
@@ -26,29 +31,37 @@ public class TopUpService {
     }
 
     public TopUpResult processTopUp(Long accountId, Long amountMinor, String paymentMethod) {
-        // 1. Pobierz aktualne saldo
+        // 1. Upewnij się, że portfel istnieje
         Optional<Map<String, Object>> walletOpt = walletService.getByAccountId(accountId);
         if (walletOpt.isEmpty()) {
             walletService.createForAccountId(accountId);
-            walletOpt = walletService.getByAccountId(accountId);
         }
 
-        BigDecimal currentBalance = new BigDecimal(walletOpt.get().get("balance_minor").toString());
-        BigDecimal newBalance = currentBalance.add(new BigDecimal(amountMinor));
-
-        // 2. Zaktualizuj saldo
-        boolean updated = walletService.setBalance(accountId, newBalance);
-        if (!updated) {
+        // 2. Uznaj portfel o kwotę (atomowo - równoległe obciążenia nie nadpiszą doładowania)
+        String operationKey = "topup-" + UUID.randomUUID();
+        BigDecimal amount = new BigDecimal(amountMinor);
+        WalletOperationResult credited;
+        try {
+            credited = walletService.credit(accountId, amount, operationKey);
+        } catch (IllegalArgumentException e) {
+            return TopUpResult.failed(e.getMessage());
+        }
+        if (!credited.isSuccess()) {
             return TopUpResult.failed("Failed to update wallet balance");
         }
+        BigDecimal newBalance = credited.getBalanceMinor();
 
         // 3. Utwórz rekord płatności w payment-service (activity='deposit')
         Long paymentId;
         try {
             paymentId = paymentClient.createDepositPayment(accountId, amountMinor, paymentMethod);
         } catch (Exception e) {
-            // Rollback balance update if payment record creation fails
-            walletService.setBalance(accountId, currentBalance);
+            // Cofnij doładowanie, jeśli nie udało się zapisać płatności
+            WalletOperationResult reverted = walletService.debit(accountId, amount, operationKey + "-revert");
+            if (!reverted.isSuccess()) {
+                log.error("Failed to revert top-up after payment record failure: accountId={}, amountMinor={}, status={}",
+                        accountId, amountMinor, reverted.getStatus());
+            }
             return TopUpResult.failed("Failed to create payment record: " + e.getMessage());
         }
 
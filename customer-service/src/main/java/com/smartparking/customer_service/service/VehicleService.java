@@ -1,5 +1,6 @@
 package com.smartparking.customer_service.service;
 
+import com.smartparking.customer_service.messaging.VehicleEventPublisher;
 import com.smartparking.customer_service.model.Customer;
 import com.smartparking.customer_service.model.Vehicle;
 import com.smartparking.customer_service.repository.CustomerRepository;
@@ -16,10 +17,13 @@ import java.util.stream.Collectors;
 public class VehicleService {
     private final JdbcVehicleRepository vehicles;
     private final CustomerRepository customerRepository;
+    private final VehicleEventPublisher vehicleEventPublisher;
     
-    public VehicleService(JdbcVehicleRepository vehicles, CustomerRepository customerRepository) {
+    public VehicleService(JdbcVehicleRepository vehicles, CustomerRepository customerRepository,
+                          VehicleEventPublisher vehicleEventPublisher) {
         this.vehicles = vehicles;
         this.customerRepository = customerRepository;
+        this.vehicleEventPublisher = vehicleEventPublisher;
     }
     
     public List<Map<String, Object>> list(Long accountId) {
@@ -52,7 +56,10 @@ public class VehicleService {
         Vehicle v = new Vehicle();
         v.setLicencePlate(licencePlate);
         v.setCustomerId(customer.getId());
-        return vehicles.save(v).getId();
+        long vehicleId = vehicles.save(v).getId();
+        // parking-service mógł zapamiętać tę tablicę jako pojazd bez właściciela
+        vehicleEventPublisher.publishVehicleChanged(vehicleId, licencePlate, null, VehicleEventPublisher.REGISTERED);
+        return vehicleId;
     }
     
     public boolean update(Long vehicleId, Long accountId, String licencePlate) {
@@ -68,8 +75,10 @@ public class VehicleService {
             return false;
         }
         Vehicle vehicle = vehicleOpt.get();
+        String previousPlate = vehicle.getLicencePlate();
         vehicle.setLicencePlate(licencePlate);
         vehicles.save(vehicle);
+        vehicleEventPublisher.publishVehicleChanged(vehicleId, licencePlate, previousPlate, VehicleEventPublisher.UPDATED);
         return true;
     }
     
@@ -85,7 +94,11 @@ public class VehicleService {
         if (vehicle.isEmpty() || !vehicle.get().getCustomerId().equals(customer.getId())) {
             return false;
         }
-        return vehicles.deleteById(vehicleId);
+        boolean deleted = vehicles.deleteById(vehicleId);
+        if (deleted) {
+            vehicleEventPublisher.publishVehicleChanged(vehicleId, vehicle.get().getLicencePlate(), null, VehicleEventPublisher.DELETED);
+        }
+        return deleted;
     }
     
     /**
@@ -1,5 +1,6 @@
 package com.smartparking.customer_service.service;
 
+import com.smartparking.customer_service.dto.WalletOperationResult;
 import com.smartparking.customer_service.model.Customer;
 import com.smartparking.customer_service.model.Wallet;
 import com.smartparking.customer_service.repository.CustomerRepository;
@@ -12,6 +13,8 @@ import java.util.Optional;
 
 @Service
 public class WalletService {
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 100;
+
     private final JdbcWalletRepository repo;
     private final CustomerRepository customerRepository;
     private final CustomerProfileService customerProfileService;
@@ -30,6 +33,35 @@ public class WalletService {
         int updated = repo.updateBalanceByAccountId(accountId, newBalance);
         return updated > 0;
     }
+
+    /**
+     * Obciąża portfel o kwotę, jeśli saldo na to pozwala - jedno warunkowe UPDATE, bez odczytu salda wcześniej.
+     * @param amountMinor kwota w groszach (dodatnia)
+     * @param idempotencyKey klucz operacji - ponowienie z tym samym kluczem nie obciąża drugi raz
+     */
+    public WalletOperationResult debit(Long accountId, BigDecimal amountMinor, String idempotencyKey) {
+        validateOperation(amountMinor, idempotencyKey);
+        return repo.debit(accountId, amountMinor, idempotencyKey);
+    }
+
+    /**
+     * Uznaje portfel o kwotę (doładowanie, zwrot) - jedno UPDATE, bez odczytu salda wcześniej.
+     * @param amountMinor kwota w groszach (dodatnia)
+     * @param idempotencyKey klucz operacji - ponowienie z tym samym kluczem nie uznaje drugi raz
+     */
+    public WalletOperationResult credit(Long accountId, BigDecimal amountMinor, String idempotencyKey) {
+        validateOperation(amountMinor, idempotencyKey);
+        return repo.credit(accountId, amountMinor, idempotencyKey);
+    }
+
+    private void validateOperation(BigDecimal amountMinor, String idempotencyKey) {
+        if (amountMinor == null || amountMinor.signum() <= 0) {
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+        if (idempotencyKey == null || idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency key is required (max " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters)");
+        }
+    }
     
     public void createForAccountId(Long accountId) {
         // Sprawdź czy customer istnieje, jeśli nie - utwórz go
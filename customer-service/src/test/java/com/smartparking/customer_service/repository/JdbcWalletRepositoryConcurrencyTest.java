@@ -0,0 +1,240 @@
+package com.smartparking.customer_service.repository;
+
+import com.smartparking.customer_service.dto.WalletOperationResult;
+import com.smartparking.customer_service.dto.WalletOperationResult.Status;
+import com.smartparking.customer_service.support.CustomerDb;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Wiele wątków (jak równoległe wyjazdy, doładowania i ponowienia płatności) na jednym portfelu:
+ * zapytanie z OPERATION_SQL_TEMPLATE ma nie zgubić ani nie zdublować żadnej zmiany salda,
+ * a równoległe wywołania z tym samym kluczem idempotencji (ścieżka DuplicateKeyException) mają zmienić saldo raz.
+ *
+ * Po każdym teście saldo portfela = saldo początkowe + suma delta_minor z wallet_operation.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class JdbcWalletRepositoryConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final AtomicLong ACCOUNT_IDS = new AtomicLong(900_000);
+
+    private static HikariDataSource dataSource;
+    private static JdbcTemplate jdbc;
+    private static JdbcWalletRepository repository;
+    private static ExecutorService pool;
+
+    @BeforeAll
+    static void setUp() {
+        dataSource = CustomerDb.dataSource(THREADS);
+        jdbc = new JdbcTemplate(dataSource);
+        repository = new JdbcWalletRepository(jdbc, new JdbcCustomerRepository(jdbc));
+        pool = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        pool.shutdownNow();
+        dataSource.close();
+    }
+
+    @Test
+    void concurrentDebitsNeverOverdrawTheWallet() throws Exception {
+        long accountId = newWallet("100.00");
+        int debits = THREADS * 25; // 400 obciążeń po 1.00 na portfel ze 100.00
+
+        List<Callable<WalletOperationResult>> calls = new ArrayList<>();
+        for (int i = 0; i < debits; i++) {
+            String key = "debit-" + accountId + "-" + i;
+            calls.add(() -> repository.debit(accountId, new BigDecimal("1.00"), key));
+        }
+        Map<Status, Integer> statuses = runConcurrently(calls);
+
+        assertEquals(100, statuses.get(Status.APPLIED));
+        assertEquals(debits - 100, statuses.get(Status.INSUFFICIENT_FUNDS));
+        assertEquals(0, new BigDecimal("0.00").compareTo(balance(accountId)));
+        assertEquals(100, operationCount(accountId));
+        assertLedgerMatchesBalance(accountId, "100.00");
+    }
+
+    @Test
+    void concurrentDebitsAndCreditsKeepEveryChange() throws Exception {
+        long accountId = newWallet("50.00");
+        int perKind = THREADS * 20;
+
+        List<Callable<WalletOperationResult>> calls = new ArrayList<>();
+        for (int i = 0; i < perKind; i++) {
+            String debitKey = "mixed-debit-" + accountId + "-" + i;
+            String creditKey = "mixed-credit-" + accountId + "-" + i;
+            calls.add(() -> repository.debit(accountId, new BigDecimal("0.50"), debitKey));
+            calls.add(() -> repository.credit(accountId, new BigDecimal("0.25"), creditKey));
+        }
+        Map<Status, Integer> statuses = runConcurrently(calls);
+
+        // Uznania przechodzą zawsze; obciążeń może być mniej, jeśli saldo chwilowo spadło poniżej 0.50
+        int applied = statuses.get(Status.APPLIED);
+        int appliedDebits = applied - perKind;
+        assertEquals(perKind * 2, applied + statuses.getOrDefault(Status.INSUFFICIENT_FUNDS, 0));
+        BigDecimal expected = new BigDecimal("50.00")
+                .add(new BigDecimal("0.25").multiply(BigDecimal.valueOf(perKind)))
+                .subtract(new BigDecimal("0.50").multiply(BigDecimal.valueOf(appliedDebits)));
+        assertEquals(0, expected.compareTo(balance(accountId)));
+        assertTrue(balance(accountId).signum() >= 0);
+        assertLedgerMatchesBalance(accountId, "50.00");
+    }
+
+    @Test
+    void sameKeyFromManyThreadsChangesBalanceOnce() throws Exception {
+        long accountId = newWallet("1000.00");
+        int rounds = 50;
+
+        for (int round = 0; round < rounds; round++) {
+            // Ten sam wyjazd rozliczany naraz przez kilka ponowień - wszystkie startują razem,
+            // więc część przechodzi NOT EXISTS i kończy się naruszeniem wallet_operation_idempotency_key_key
+            String key = "exit-" + accountId + "-" + round;
+            List<Callable<WalletOperationResult>> calls = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                calls.add(() -> repository.debit(accountId, new BigDecimal("2.00"), key));
+            }
+            List<WalletOperationResult> results = runTogether(calls);
+
+            long appliedCount = results.stream().filter(r -> r.getStatus() == Status.APPLIED).count();
+            assertEquals(1, appliedCount, "Round " + round + ": debit applied more than once");
+            BigDecimal balanceAfter = results.stream()
+                    .filter(r -> r.getStatus() == Status.APPLIED)
+                    .findFirst().orElseThrow().getBalanceMinor();
+            for (WalletOperationResult result : results) {
+                assertTrue(result.isSuccess(), "Round " + round + ": unexpected status " + result.getStatus());
+                // Powtórzenie zwraca zapisany wynik pierwszego obciążenia, a nie bieżące saldo
+                assertEquals(0, balanceAfter.compareTo(result.getBalanceMinor()));
+            }
+        }
+
+        assertEquals(0, new BigDecimal("900.00").compareTo(balance(accountId)));
+        assertEquals(rounds, operationCount(accountId));
+        assertLedgerMatchesBalance(accountId, "1000.00");
+    }
+
+    @Test
+    void sameKeyWithDifferentAmountIsConflictEvenUnderRace() throws Exception {
+        long accountId = newWallet("100.00");
+        String key = "conflict-" + accountId;
+
+        List<Callable<WalletOperationResult>> calls = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            String amount = t % 2 == 0 ? "3.00" : "4.00";
+            calls.add(() -> repository.debit(accountId, new BigDecimal(amount), key));
+        }
+        List<WalletOperationResult> results = runTogether(calls);
+
+        assertEquals(1, results.stream().filter(r -> r.getStatus() == Status.APPLIED).count());
+        BigDecimal after = balance(accountId);
+        assertTrue(after.compareTo(new BigDecimal("97.00")) == 0 || after.compareTo(new BigDecimal("96.00")) == 0);
+        for (WalletOperationResult result : results) {
+            assertTrue(result.getStatus() == Status.APPLIED || result.getStatus() == Status.REPLAYED
+                    || result.getStatus() == Status.KEY_CONFLICT, "Unexpected status " + result.getStatus());
+        }
+        assertLedgerMatchesBalance(accountId, "100.00");
+    }
+
+    @Test
+    void sameKeyOnAnotherAccountsWalletIsConflict() {
+        long owner = newWallet("50.00");
+        long other = newWallet("50.00");
+        String key = "session-" + owner + "-parking";
+        assertEquals(Status.APPLIED, repository.debit(owner, new BigDecimal("5.00"), key).getStatus());
+
+        // Ten sam klucz i kwota, ale portfel innego konta - nie może wyglądać na powtórzenie cudzego obciążenia
+        WalletOperationResult result = repository.debit(other, new BigDecimal("5.00"), key);
+        assertEquals(Status.KEY_CONFLICT, result.getStatus());
+        assertNull(result.getBalanceMinor());
+        assertEquals(0, new BigDecimal("50.00").compareTo(balance(other)));
+        assertEquals(0, operationCount(other));
+        assertEquals(Status.REPLAYED, repository.debit(owner, new BigDecimal("5.00"), key).getStatus());
+    }
+
+    @Test
+    void missingWalletIsNotFound() {
+        long accountId = ACCOUNT_IDS.incrementAndGet();
+        WalletOperationResult result = repository.debit(accountId, new BigDecimal("1.00"), "missing-" + accountId);
+        assertEquals(Status.NOT_FOUND, result.getStatus());
+    }
+
+    private static long newWallet(String balance) {
+        long accountId = ACCOUNT_IDS.incrementAndGet();
+        Long customerId = jdbc.queryForObject(
+                "INSERT INTO customer(first_name, last_name, ref_account_id) VALUES ('Test', 'Wallet', ?) RETURNING customer_id",
+                Long.class, accountId);
+        jdbc.update("INSERT INTO wallet(balance_minor, currency_code, customer_id) VALUES (?, 'PLN', ?)",
+                new BigDecimal(balance), customerId);
+        return accountId;
+    }
+
+    private static BigDecimal balance(long accountId) {
+        return jdbc.queryForObject(
+                "SELECT w.balance_minor FROM wallet w JOIN customer c ON c.customer_id = w.customer_id WHERE c.ref_account_id = ?",
+                BigDecimal.class, accountId);
+    }
+
+    private static int operationCount(long accountId) {
+        return jdbc.queryForObject(
+                "SELECT count(*) FROM wallet_operation o JOIN wallet w ON w.wallet_id = o.wallet_id " +
+                        "JOIN customer c ON c.customer_id = w.customer_id WHERE c.ref_account_id = ?",
+                Integer.class, accountId);
+    }
+
+    private static void assertLedgerMatchesBalance(long accountId, String initialBalance) {
+        BigDecimal deltas = jdbc.queryForObject(
+                "SELECT COALESCE(SUM(o.delta_minor), 0) FROM wallet_operation o JOIN wallet w ON w.wallet_id = o.wallet_id " +
+                        "JOIN customer c ON c.customer_id = w.customer_id WHERE c.ref_account_id = ?",
+                BigDecimal.class, accountId);
+        assertEquals(0, new BigDecimal(initialBalance).add(deltas).compareTo(balance(accountId)),
+                "Wallet balance differs from initial balance + wallet_operation deltas");
+    }
+
+    private static Map<Status, Integer> runConcurrently(List<Callable<WalletOperationResult>> calls) throws Exception {
+        Map<Status, Integer> statuses = new EnumMap<>(Status.class);
+        for (WalletOperationResult result : runTogether(calls)) {
+            statuses.merge(result.getStatus(), 1, Integer::sum);
+        }
+        return statuses;
+    }
+
+    private static List<WalletOperationResult> runTogether(List<Callable<WalletOperationResult>> calls) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<WalletOperationResult>> futures = new ArrayList<>();
+        for (Callable<WalletOperationResult> call : calls) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return call.call();
+            }));
+        }
+        start.countDown();
+        List<WalletOperationResult> results = new ArrayList<>();
+        for (Future<WalletOperationResult> future : futures) {
+            results.add(future.get(60, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,72 @@
+package com.smartparking.customer_service.support;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.testcontainers.containers.Container;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.MountableFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Postgres dla testów customer-service, zainicjalizowany tak samo jak w docker-compose
+ * (psql -f database-test/customer_db.sql - razem z migracjami dopisanymi na końcu pliku).
+ *
+ * Kontener jest współdzielony przez wszystkie testy w JVM; testy korzystające z niego
+ * oznaczamy @Testcontainers(disabledWithoutDocker = true), żeby build bez Dockera ich nie wywracał.
+ */
+public final class CustomerDb {
+
+    private static final Path SCHEMA = Path.of("..", "database-test", "customer_db.sql");
+
+    private static PostgreSQLContainer<?> container;
+
+    private CustomerDb() {
+    }
+
+    public static synchronized PostgreSQLContainer<?> container() {
+        if (container == null) {
+            PostgreSQLContainer<?> pg = new PostgreSQLContainer<>("postgres:16")
+                    .withDatabaseName("customer_db")
+                    .withUsername("postgres")
+                    .withPassword("postgres")
+                    .withCommand("postgres", "-c", "max_connections=200")
+                    .withCopyFileToContainer(MountableFile.forHostPath(SCHEMA), "/sql/customer_db.sql");
+            pg.start();
+            importSchema(pg);
+            container = pg;
+        }
+        return container;
+    }
+
+    /**
+     * Pula połączeń na kontenerze - osobna dla każdego testu, żeby rozmiar puli odpowiadał liczbie wątków.
+     */
+    public static HikariDataSource dataSource(int poolSize) {
+        PostgreSQLContainer<?> pg = container();
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(pg.getJdbcUrl());
+        config.setUsername(pg.getUsername());
+        config.setPassword(pg.getPassword());
+        config.setMaximumPoolSize(poolSize);
+        config.setConnectionInitSql("SET timezone = 'UTC'");
+        return new HikariDataSource(config);
+    }
+
+    private static void importSchema(PostgreSQLContainer<?> pg) {
+        try {
+            // Jak w customer-db-init: psql bez ON_ERROR_STOP, bo dump zawiera \restrict z psql 18
+            Container.ExecResult result = pg.execInContainer(
+                    "psql", "-U", "postgres", "-d", "customer_db", "-q", "-f", "/sql/customer_db.sql");
+            if (result.getExitCode() != 0) {
+                throw new IllegalStateException("Failed to import customer_db.sql: " + result.getStderr());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while importing customer_db.sql", e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to import customer_db.sql", e);
+        }
+    }
+}
@@ -405,6 +405,25 @@ ALTER TABLE ONLY public.wallet
     ADD CONSTRAINT fk_wallet_customer FOREIGN KEY (customer_id) REFERENCES public.customer(customer_id);
 
 
+-- Migracja: atomowe obciążenia i uznania portfela z kluczem idempotencji (/internal/wallet/{accountId}/charge, /credit)
+-- Każda operacja zapisuje się w tym samym zapytaniu co zmiana salda; powtórzony klucz zwraca zapisany wynik
+CREATE TABLE IF NOT EXISTS public.wallet_operation (
+    operation_id bigserial PRIMARY KEY,
+    idempotency_key character varying(100) NOT NULL,
+    wallet_id integer NOT NULL REFERENCES public.wallet(wallet_id),
+    delta_minor numeric(10,2) NOT NULL,
+    balance_after numeric(10,2) NOT NULL,
+    created_at timestamp with time zone DEFAULT now() NOT NULL,
+    CONSTRAINT wallet_operation_idempotency_key_key UNIQUE (idempotency_key)
+);
+
+ALTER TABLE public.wallet_operation OWNER TO postgres;
+
+-- Portfel szukany po koncie (customer.ref_account_id -> wallet.customer_id) przy każdym obciążeniu
+CREATE INDEX IF NOT EXISTS idx_customer_ref_account_id ON public.customer (ref_account_id);
+CREATE INDEX IF NOT EXISTS idx_wallet_customer_id ON public.wallet (customer_id);
+
+
 -- Completed on 2025-12-25 18:01:21
 
 --
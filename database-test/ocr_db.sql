@@ -230,6 +230,47 @@ ALTER TABLE ONLY public.plate_read
     ADD CONSTRAINT plate_read_camera_id_fkey FOREIGN KEY (camera_id) REFERENCES public.camera(camera_id);
 
 
+-- Migracja: okno deduplikacji eventów OCR współdzielone przez repliki ocr-service (ocr.dedup.store=postgres)
+-- UNLOGGED - bez WAL; po awarii bazy tabela jest pusta, co oznacza tylko chwilowo puste okno deduplikacji
+CREATE UNLOGGED TABLE IF NOT EXISTS public.ocr_event_dedup (
+    plate character varying(32) NOT NULL,
+    parking_id bigint NOT NULL,
+    direction character varying(16) NOT NULL,
+    last_event_time timestamp with time zone NOT NULL,
+    CONSTRAINT ocr_event_dedup_pkey PRIMARY KEY (plate, parking_id, direction)
+);
+
+ALTER TABLE public.ocr_event_dedup OWNER TO postgres;
+
+-- Sprzątanie wpisów spoza okna (DELETE ... WHERE last_event_time < ...)
+CREATE INDEX IF NOT EXISTS idx_ocr_event_dedup_last_event_time
+    ON public.ocr_event_dedup (last_event_time);
+
+
+-- Migracja: outbox eventów wjazdu/wyjazdu (ocr-service -> parking-service)
+-- Wiersze powstają w tym samym zapytaniu co plate_read, OutboxRelay publikuje je z potwierdzeniami brokera
+-- i usuwa po potwierdzeniu. event_id to klucz idempotencji sprawdzany przez parking-service.
+CREATE TABLE IF NOT EXISTS public.ocr_outbox (
+    outbox_id bigserial PRIMARY KEY,
+    event_id uuid NOT NULL,
+    exchange character varying(100) NOT NULL,
+    routing_key character varying(100) NOT NULL,
+    type_id character varying(50) NOT NULL,
+    payload text NOT NULL,
+    created_at timestamp with time zone DEFAULT now() NOT NULL,
+    CONSTRAINT ocr_outbox_event_id_key UNIQUE (event_id)
+);
+
+ALTER TABLE public.ocr_outbox OWNER TO postgres;
+
+
+-- Migracja: binarny format eventów wjazdu/wyjazdu (ocr.amqp.binary-exchanges)
+-- JSON zostaje w payload (text), ciało w formacie binarnym trafia do body; content_type idzie do nagłówka wiadomości
+ALTER TABLE public.ocr_outbox ADD COLUMN IF NOT EXISTS content_type character varying(100) DEFAULT 'application/json' NOT NULL;
+ALTER TABLE public.ocr_outbox ADD COLUMN IF NOT EXISTS body bytea;
+ALTER TABLE public.ocr_outbox ALTER COLUMN payload DROP NOT NULL;
+
+
 -- Completed on 2025-12-25 18:01:58
 
 --
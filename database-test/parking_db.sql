@@ -696,6 +696,154 @@ ALTER TABLE ONLY public.reservation_spot
     ADD CONSTRAINT reservation_spot_spot_id_fkey FOREIGN KEY (spot_id) REFERENCES public.parking_spot(spot_id);
 
 
+-- Migracja: co najwyżej jedna aktywna sesja (exit_time IS NULL) na miejsce parkingowe
+-- Zabezpiecza atomowe zajmowanie miejsca przy wjeździe (FOR UPDATE SKIP LOCKED) przed podwójnym przydziałem.
+-- Istniejące duplikaty (skutek wyścigu sprzed migracji) są naprawiane: na każdym miejscu zostaje aktywna
+-- tylko najnowsza sesja, starsze są zamykane z exit_time = wjazd najnowszej i statusem Unpaid
+-- (price_total_minor pozostaje NULL do ręcznej weryfikacji). Bez indeksu claimFreeSpot nie jest poprawne.
+DO $$
+DECLARE
+    closed_count integer;
+BEGIN
+    IF NOT EXISTS (
+        SELECT 1 FROM pg_indexes
+        WHERE schemaname = 'public'
+        AND indexname = 'uq_parking_session_active_spot'
+    ) THEN
+        LOCK TABLE public.parking_session IN SHARE ROW EXCLUSIVE MODE;
+
+        WITH ranked AS (
+            SELECT session_id,
+                   FIRST_VALUE(entry_time) OVER w AS newest_entry_time,
+                   ROW_NUMBER() OVER w AS rn
+            FROM public.parking_session
+            WHERE exit_time IS NULL
+            WINDOW w AS (PARTITION BY spot_id ORDER BY entry_time DESC, session_id DESC)
+        )
+        UPDATE public.parking_session ps
+        SET exit_time = ranked.newest_entry_time,
+            payment_status = 'Unpaid'
+        FROM ranked
+        WHERE ps.session_id = ranked.session_id
+        AND ranked.rn > 1;
+
+        GET DIAGNOSTICS closed_count = ROW_COUNT;
+        IF closed_count > 0 THEN
+            RAISE WARNING 'uq_parking_session_active_spot: zamknięto % zdublowanych aktywnych sesji (status Unpaid, cena do weryfikacji)',
+                closed_count;
+        END IF;
+
+        CREATE UNIQUE INDEX uq_parking_session_active_spot
+        ON public.parking_session(spot_id)
+        WHERE exit_time IS NULL;
+    END IF;
+END $$;
+
+
+-- Migracja: rollup obłożenia - liczba sesji per (parking, dzień, godzina wjazdu w Europe/Warsaw)
+-- Utrzymywany przez OccupancyRollupScheduler (parking-service), czytany przez /parking/locations/{id}/occupancy
+CREATE TABLE IF NOT EXISTS public.parking_occupancy_hourly (
+    parking_id integer NOT NULL,
+    bucket_date date NOT NULL,
+    day_of_week smallint NOT NULL,
+    hour_of_day smallint NOT NULL,
+    session_count integer NOT NULL DEFAULT 0,
+    CONSTRAINT parking_occupancy_hourly_pkey PRIMARY KEY (parking_id, bucket_date, hour_of_day)
+);
+
+CREATE INDEX IF NOT EXISTS idx_parking_occupancy_hourly_dow
+ON public.parking_occupancy_hourly(parking_id, day_of_week, bucket_date);
+
+-- Ostatni session_id doliczony do rollupu (jeden wiersz, id = 1); 0 = pierwsze odświeżenie liczy całą historię
+CREATE TABLE IF NOT EXISTS public.parking_occupancy_rollup_state (
+    id integer PRIMARY KEY,
+    last_session_id bigint NOT NULL DEFAULT 0,
+    updated_at timestamp without time zone NOT NULL DEFAULT now()
+);
+
+INSERT INTO public.parking_occupancy_rollup_state (id, last_session_id)
+VALUES (1, 0)
+ON CONFLICT (id) DO NOTHING;
+
+
+-- Migracja: indeksy pod zapytania sesji po parkingu
+-- Zakres dat wjazdu ze stronicowaniem kluczem (entry_time, session_id) - /parking/locations/{id}/sessions
+CREATE INDEX IF NOT EXISTS idx_parking_session_parking_entry
+ON public.parking_session(parking_id, entry_time, session_id);
+
+-- Otwarte sesje (exit_time IS NULL) per parking - statystyki zajętości, indeks obejmuje tylko trwające sesje
+CREATE INDEX IF NOT EXISTS idx_parking_session_open
+ON public.parking_session(parking_id)
+WHERE exit_time IS NULL;
+
+
+-- Migracja: indeksy pod historię konta (customer-service /history, /sessions, /reservations)
+-- Stronicowanie kluczem (entry_time, session_id) i eksport NDJSON sesji konta od najnowszych
+CREATE INDEX IF NOT EXISTS idx_parking_session_account_entry
+ON public.parking_session(ref_account_id, entry_time, session_id);
+
+-- Rezerwacje konta stronicowane kluczem reservation_id
+CREATE INDEX IF NOT EXISTS idx_reservation_spot_account
+ON public.reservation_spot(ref_account_id, reservation_id);
+
+
+-- Migracja: tablica odczytana przez OCR przy wjeździe - zasila indeks tablic aktywnych sesji
+-- (dopasowanie przybliżone przy wyjeździe, gdy OCR pomyli znak). Starsze sesje mają NULL.
+ALTER TABLE public.parking_session
+ADD COLUMN IF NOT EXISTS entry_plate character varying(15);
+
+
+-- Migracja: klucze idempotencji eventów wjazdu/wyjazdu z ocr-service (event_id z outboxa)
+-- Unikalne indeksy gwarantują, że ten sam event nie założy ani nie zamknie sesji dwa razy (NULL dla starszych sesji)
+ALTER TABLE public.parking_session
+ADD COLUMN IF NOT EXISTS entry_event_id uuid;
+
+ALTER TABLE public.parking_session
+ADD COLUMN IF NOT EXISTS exit_event_id uuid;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_parking_session_entry_event
+ON public.parking_session(entry_event_id);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_parking_session_exit_event
+ON public.parking_session(exit_event_id);
+
+
+-- Migracja: kara za przekroczenie rezerwacji pobierana w tle (PenaltyReconciliationScheduler), nie przy wyjeździe.
+-- penalty_minor = naliczona kara (NULL = brak), penalty_charged_at = moment pobrania (NULL = do pobrania),
+-- penalty_attempted_at = ostatnia nieudana próba (np. brak środków) - kolejna dopiero po odstępie.
+ALTER TABLE public.parking_session
+ADD COLUMN IF NOT EXISTS penalty_minor integer;
+
+ALTER TABLE public.parking_session
+ADD COLUMN IF NOT EXISTS penalty_charged_at timestamp without time zone;
+
+ALTER TABLE public.parking_session
+ADD COLUMN IF NOT EXISTS penalty_attempted_at timestamp without time zone;
+
+CREATE INDEX IF NOT EXISTS idx_parking_session_penalty_due
+ON public.parking_session(session_id)
+WHERE penalty_minor > 0 AND penalty_charged_at IS NULL;
+
+
+-- Migracja: asynchroniczne rozliczenie sesji. Wyjazd zamyka sesję ze statusem Settling i wysyła polecenie
+-- do payment-service (RabbitMQ); odpowiedź zmienia status na Paid albo Unpaid (SessionSettlementService).
+-- settlement_requested_at = moment zamknięcia sesji - od niego liczone jest opóźnienie rozliczenia i resync.
+ALTER TYPE public.payment_status ADD VALUE IF NOT EXISTS 'Settling';
+
+ALTER TABLE public.parking_session
+ADD COLUMN IF NOT EXISTS settlement_requested_at timestamp without time zone;
+
+CREATE INDEX IF NOT EXISTS idx_parking_session_settling
+ON public.parking_session(settlement_requested_at)
+WHERE payment_status = 'Settling';
+
+
+-- Migracja: limit ponowień rozliczenia. Każde ponowne wysłanie polecenia przesuwa settlement_requested_at
+-- i zwiększa settlement_attempts; po wyczerpaniu prób sesja przechodzi z Settling do Unpaid (opłata w aplikacji).
+ALTER TABLE public.parking_session
+ADD COLUMN IF NOT EXISTS settlement_attempts integer DEFAULT 0 NOT NULL;
+
+
 -- Completed on 2025-12-25 18:02:33
 
 --
@@ -144,6 +144,117 @@ ALTER TABLE ONLY public.virtual_payment
     ADD CONSTRAINT virtual_payment_pkey PRIMARY KEY (payment_id);
 
 
+-- Migracja: parking, do którego należy płatność (denormalizacja z parking_db.parking_session)
+-- Pozwala liczyć raporty finansowe per parking / firma bez przekazywania list session_id.
+-- Nowe płatności dostają ref_parking_id przy obciążeniu; starsze uzupełnia ParkingRefBackfillScheduler.
+-- ref_parking_id = 0: sesja nieznana parking-service (backfill jej nie ponawia).
+ALTER TABLE public.virtual_payment ADD COLUMN IF NOT EXISTS ref_parking_id integer;
+
+CREATE INDEX IF NOT EXISTS idx_virtual_payment_parking_date
+ON public.virtual_payment(ref_parking_id, date_transaction);
+
+
+-- Migracja: historia transakcji konta stronicowana kluczem (date_transaction, payment_id) - /payment/transactions
+CREATE INDEX IF NOT EXISTS idx_virtual_payment_account_date
+ON public.virtual_payment(ref_account_id, date_transaction, payment_id);
+
+
+-- Migracja: księga wpłat i obciążeń kont (payment_ledger) + migawki sum (payment_ledger_snapshot)
+-- virtual_payment jest zmienna (status Pending -> Paid -> Cancelled), więc nie da się jej "dopisywać" do sum.
+-- Trigger na virtual_payment dopisuje do księgi wpis +kwota gdy płatność staje się Paid
+-- i wpis odwracający (-kwota) gdy opłacona płatność zmienia status lub kwotę. Wpisów się nie zmienia ani nie usuwa.
+-- LedgerSnapshotScheduler okresowo dolicza nowe wpisy do migawek per konto;
+-- statystyki konta = migawka + wpisy po last_entry_id (krótki ogon), niezależnie od długości historii.
+CREATE TABLE IF NOT EXISTS public.payment_ledger (
+    entry_id bigserial PRIMARY KEY,
+    account_id integer NOT NULL,
+    payment_id integer NOT NULL,
+    activity public.activity_type,
+    amount_minor integer NOT NULL,
+    paid_count_delta smallint NOT NULL,
+    -- czas dopisania wpisu (nie początku transakcji) - LedgerSnapshotScheduler składa tylko wpisy starsze niż minuta
+    created_at timestamp with time zone DEFAULT clock_timestamp() NOT NULL
+);
+
+ALTER TABLE public.payment_ledger OWNER TO postgres;
+
+CREATE INDEX IF NOT EXISTS idx_payment_ledger_account_entry
+ON public.payment_ledger(account_id, entry_id);
+
+CREATE TABLE IF NOT EXISTS public.payment_ledger_snapshot (
+    account_id integer PRIMARY KEY,
+    last_entry_id bigint NOT NULL,
+    spent_minor bigint DEFAULT 0 NOT NULL,
+    topups_minor bigint DEFAULT 0 NOT NULL,
+    paid_count bigint DEFAULT 0 NOT NULL,
+    updated_at timestamp with time zone DEFAULT now() NOT NULL
+);
+
+ALTER TABLE public.payment_ledger_snapshot OWNER TO postgres;
+
+CREATE OR REPLACE FUNCTION public.payment_ledger_append() RETURNS trigger
+    LANGUAGE plpgsql
+    AS $$
+BEGIN
+    IF TG_OP = 'UPDATE' AND OLD.status_paid = 'Paid' AND OLD.ref_account_id IS NOT NULL THEN
+        INSERT INTO public.payment_ledger(account_id, payment_id, activity, amount_minor, paid_count_delta)
+        VALUES (OLD.ref_account_id, OLD.payment_id, OLD.activity, -OLD.amount_minor, -1);
+    END IF;
+    IF NEW.status_paid = 'Paid' AND NEW.ref_account_id IS NOT NULL THEN
+        INSERT INTO public.payment_ledger(account_id, payment_id, activity, amount_minor, paid_count_delta)
+        VALUES (NEW.ref_account_id, NEW.payment_id, NEW.activity, NEW.amount_minor, 1);
+    END IF;
+    RETURN NULL;
+END;
+$$;
+
+ALTER FUNCTION public.payment_ledger_append() OWNER TO postgres;
+
+-- Trigger i zasilenie księgi istniejącymi opłaconymi płatnościami w jednej transakcji,
+-- żeby żadna płatność opłacona w międzyczasie nie trafiła do księgi dwa razy ani wcale.
+BEGIN;
+
+DROP TRIGGER IF EXISTS trg_virtual_payment_ledger_insert ON public.virtual_payment;
+CREATE TRIGGER trg_virtual_payment_ledger_insert
+    AFTER INSERT ON public.virtual_payment
+    FOR EACH ROW EXECUTE FUNCTION public.payment_ledger_append();
+
+-- Zapis płatności aktualizuje wszystkie kolumny - wpis tylko gdy zmieniło się coś, co wpływa na sumy
+DROP TRIGGER IF EXISTS trg_virtual_payment_ledger_update ON public.virtual_payment;
+CREATE TRIGGER trg_virtual_payment_ledger_update
+    AFTER UPDATE ON public.virtual_payment
+    FOR EACH ROW
+    WHEN (OLD.status_paid IS DISTINCT FROM NEW.status_paid
+       OR OLD.amount_minor IS DISTINCT FROM NEW.amount_minor
+       OR OLD.activity IS DISTINCT FROM NEW.activity
+       OR OLD.ref_account_id IS DISTINCT FROM NEW.ref_account_id)
+    EXECUTE FUNCTION public.payment_ledger_append();
+
+INSERT INTO public.payment_ledger(account_id, payment_id, activity, amount_minor, paid_count_delta)
+SELECT ref_account_id, payment_id, activity, amount_minor, 1
+FROM public.virtual_payment
+WHERE status_paid = 'Paid'
+  AND ref_account_id IS NOT NULL
+  AND NOT EXISTS (SELECT 1 FROM public.payment_ledger)
+ORDER BY payment_id;
+
+COMMIT;
+
+
+-- Migracja: sumy opłaconych płatności konta jednym zapytaniem z FILTER (zapasowa ścieżka /payment/statistics,
+-- gdy księga jest niedostępna) - index-only scan po (konto, typ, status) bez czytania wierszy tabeli
+CREATE INDEX IF NOT EXISTS idx_virtual_payment_account_activity_status
+ON public.virtual_payment(ref_account_id, activity, status_paid) INCLUDE (amount_minor);
+
+
+-- Migracja: klucz idempotencji obciążenia (np. "session-12-penalty") - ponowione żądanie /payment/charge
+-- zwraca istniejącą płatność zamiast obciążać portfel drugi raz. Starsze płatności nie mają klucza.
+ALTER TABLE public.virtual_payment ADD COLUMN IF NOT EXISTS idempotency_key character varying(100);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_virtual_payment_idempotency_key
+ON public.virtual_payment(idempotency_key) WHERE idempotency_key IS NOT NULL;
+
+
 -- Completed on 2025-12-25 18:03:09
 
 --
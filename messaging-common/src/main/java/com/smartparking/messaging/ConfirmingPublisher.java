@@ -0,0 +1,242 @@
+package com.smartparking.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpMessageReturnedException;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publikacja z potwierdzeniami brokera bez czekania w wątku wywołującego.
+ *
+ * send() odkłada wiadomość do kolejki w pamięci i od razu zwraca CompletableFuture. Wątek w tle zbiera
+ * wiadomości przez LINGER_MS (najwyżej MAX_BATCH_SIZE), wysyła je na jednym kanale i czeka raz na potwierdzenia
+ * (publisher-confirm-type: simple) - jedna podróż do brokera na paczkę zamiast jednej na wiadomość.
+ * Future kończy się po potwierdzeniu; nack lub brak potwierdzenia kończy wyjątkiem futures całej paczki
+ * (potwierdzenia są per paczka, wywołujący decyduje o ponowieniu).
+ *
+ * Publisher ma własny RabbitTemplate z mandatory=true i callbackiem zwrotów (spring.rabbitmq.publisher-returns),
+ * więc wspólny szablon serwisu zostaje bez zmian. Wiadomość, której żadna kolejka nie przyjęła, broker potwierdza,
+ * ale jej future kończy się AmqpMessageReturnedException i liczy w "returned" - zwrot przychodzi na kanale
+ * przed potwierdzeniem, więc jest znany, zanim waitForConfirmsOrDie wróci.
+ * Przy pełnej kolejce send() czeka do OFFER_TIMEOUT_MS, a potem publikuje synchronicznie w wątku wywołującym.
+ *
+ * Nie jest komponentem - serwis tworzy go jako @Bean; shutdown() Spring wywołuje przy zamykaniu kontekstu
+ * (wywnioskowana metoda niszcząca).
+ */
+public class ConfirmingPublisher {
+    private static final Logger log = LoggerFactory.getLogger(ConfirmingPublisher.class);
+
+    // Numer publikacji w paczce - po nim zwrot z brokera jest przypisywany do future
+    static final String PUBLISH_ID_HEADER = "x-publish-id";
+    private static final int CAPACITY = 10_000;
+    private static final int MAX_BATCH_SIZE = 200;
+    private static final long LINGER_MS = 5;
+    private static final long CONFIRM_TIMEOUT_MS = 5000;
+    private static final long OFFER_TIMEOUT_MS = 500;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final BlockingQueue<PendingPublish> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final Map<Long, ReturnedMessage> returnedById = new ConcurrentHashMap<>();
+    private final AtomicLong publishIds = new AtomicLong();
+    private final Thread sender;
+    private volatile boolean running = true;
+
+    // Metryki (GET .../stats/publisher w serwisie)
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong confirmed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong returned = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong synchronousFallbacks = new AtomicLong();
+    private volatile int lastBatchSize;
+    private volatile long lastConfirmMillis;
+    private volatile long maxConfirmMillis;
+
+    /**
+     * @param connectionFactory fabryka połączeń serwisu (z publisher-confirm-type: simple i publisher-returns: true)
+     * @param messageConverter konwerter ciał - ten sam co we wspólnym RabbitTemplate serwisu
+     * @param name prefiks nazwy wątku wysyłającego (np. "ocr")
+     */
+    public ConfirmingPublisher(ConnectionFactory connectionFactory, MessageConverter messageConverter, String name) {
+        this.rabbitTemplate = new RabbitTemplate(connectionFactory);
+        this.rabbitTemplate.setMessageConverter(messageConverter);
+        this.rabbitTemplate.setMandatory(true);
+        this.rabbitTemplate.setReturnsCallback(this::onReturned);
+        this.sender = new Thread(this::runSender, name + "-confirming-publisher");
+        this.sender.setDaemon(true);
+        this.sender.start();
+        log.info("ConfirmingPublisher started: capacity={}, maxBatchSize={}, lingerMs={}",
+                CAPACITY, MAX_BATCH_SIZE, LINGER_MS);
+    }
+
+    /**
+     * Odkłada wiadomość do publikacji (konwersja konwerterem przekazanym w konstruktorze).
+     * @return future zakończony po potwierdzeniu brokera albo wyjątkiem przy nack/timeout
+     *         i AmqpMessageReturnedException, gdy żadna kolejka nie przyjęła wiadomości
+     */
+    public CompletableFuture<Void> send(String exchange, String routingKey, Object payload) {
+        PendingPublish pending = new PendingPublish(publishIds.incrementAndGet(), exchange, routingKey, payload,
+                new CompletableFuture<>());
+        submitted.incrementAndGet();
+        boolean queued = false;
+        if (running) {
+            try {
+                queued = queue.offer(pending, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (!queued) {
+            synchronousFallbacks.incrementAndGet();
+            publish(List.of(pending));
+        }
+        return pending.confirmed();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queueDepth", queue.size());
+        stats.put("queueCapacity", CAPACITY);
+        stats.put("inFlight", inFlight.get());
+        // Przyjęte przez send(), ale jeszcze niepotwierdzone przez brokera
+        stats.put("unconfirmed", submitted.get() - confirmed.get() - failed.get() - returned.get());
+        stats.put("submitted", submitted.get());
+        stats.put("confirmed", confirmed.get());
+        stats.put("failed", failed.get());
+        stats.put("returned", returned.get());
+        stats.put("batches", batches.get());
+        stats.put("synchronousFallbacks", synchronousFallbacks.get());
+        stats.put("lastBatchSize", lastBatchSize);
+        stats.put("lastConfirmMillis", lastConfirmMillis);
+        stats.put("maxConfirmMillis", maxConfirmMillis);
+        return stats;
+    }
+
+    public void shutdown() {
+        // Bez interrupt() - sender mógłby zostać przerwany w trakcie czekania na potwierdzenia
+        running = false;
+        try {
+            sender.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (sender.isAlive()) {
+            log.warn("Confirming publisher did not stop in {} ms, {} messages left unsent", SHUTDOWN_TIMEOUT_MS, queue.size());
+        }
+    }
+
+    private void runSender() {
+        List<PendingPublish> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running) {
+            try {
+                PendingPublish first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LINGER_MS);
+                while (batch.size() < MAX_BATCH_SIZE) {
+                    queue.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= MAX_BATCH_SIZE || remaining <= 0) {
+                        break;
+                    }
+                    PendingPublish next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            publish(batch);
+            batch.clear();
+        }
+
+        // Wyślij to, co zostało w kolejce przy zamykaniu
+        while (queue.drainTo(batch, MAX_BATCH_SIZE) > 0) {
+            publish(batch);
+            batch.clear();
+        }
+        log.info("Confirming publisher stopped: confirmed={}, failed={}, returned={}",
+                confirmed.get(), failed.get(), returned.get());
+    }
+
+    private void publish(List<PendingPublish> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int size = batch.size();
+        inFlight.addAndGet(size);
+        long start = System.nanoTime();
+        try {
+            rabbitTemplate.invoke(ops -> {
+                for (PendingPublish p : batch) {
+                    ops.convertAndSend(p.exchange(), p.routingKey(), p.payload(), message -> {
+                        message.getMessageProperties().setHeader(PUBLISH_ID_HEADER, p.id());
+                        return message;
+                    });
+                }
+                ops.waitForConfirmsOrDie(CONFIRM_TIMEOUT_MS);
+                return null;
+            });
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            lastConfirmMillis = millis;
+            if (millis > maxConfirmMillis) {
+                maxConfirmMillis = millis;
+            }
+            lastBatchSize = size;
+            batches.incrementAndGet();
+            for (PendingPublish p : batch) {
+                ReturnedMessage unroutable = returnedById.remove(p.id());
+                if (unroutable != null) {
+                    returned.incrementAndGet();
+                    p.confirmed().completeExceptionally(new AmqpMessageReturnedException(
+                            "Message returned as unroutable: " + unroutable.getReplyText(), unroutable));
+                } else {
+                    confirmed.incrementAndGet();
+                    p.confirmed().complete(null);
+                }
+            }
+        } catch (Exception e) {
+            failed.addAndGet(size);
+            log.error("Failed to publish batch with confirms: messages={}, error={}", size, e.getMessage());
+            for (PendingPublish p : batch) {
+                returnedById.remove(p.id());
+                p.confirmed().completeExceptionally(e);
+            }
+        } finally {
+            inFlight.addAndGet(-size);
+        }
+    }
+
+    private void onReturned(ReturnedMessage message) {
+        log.warn("Message returned as unroutable: exchange={}, routingKey={}, replyCode={}, replyText={}",
+                message.getExchange(), message.getRoutingKey(), message.getReplyCode(), message.getReplyText());
+        Object id = message.getMessage().getMessageProperties().getHeaders().get(PUBLISH_ID_HEADER);
+        if (id instanceof Number number) {
+            returnedById.put(number.longValue(), message);
+        }
+    }
+
+    private record PendingPublish(long id, String exchange, String routingKey, Object payload,
+                                  CompletableFuture<Void> confirmed) {
+    }
+}
@@ -0,0 +1,16 @@
+package com.smartparking.messaging;
+
+import java.time.Instant;
+
+/**
+ * Pola eventu wjazdu/wyjazdu w formacie GateEventCodec. Serwisy mapują go na własne DTO
+ * (ocr-service: ParkingEntryEvent/ParkingExitEvent, parking-service: OcrEntryEvent/OcrExitEvent).
+ * Każde pole poza typem może być null.
+ */
+public record GateEvent(Type type, String licencePlate, Long parkingId, Integer cameraId,
+                        Instant timestamp, String eventId) {
+
+    public enum Type {
+        ENTRY, EXIT
+    }
+}
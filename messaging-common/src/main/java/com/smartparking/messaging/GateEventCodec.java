@@ -0,0 +1,126 @@
+package com.smartparking.messaging;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Zwarty binarny format eventów wjazdu/wyjazdu (parking.exchange) - alternatywa dla JSON z Jackson2JsonMessageConverter.
+ * ocr-service koduje (dla exchange'y z ocr.amqp.binary-exchanges), parking-service dekoduje - obie strony
+ * używają tej jednej klasy, więc układ nie może się między nimi rozjechać.
+ *
+ * Układ wersji 1 (big-endian) ma stałą szerokość: 44 bajty (FIXED_SIZE) + długość tablicy. Każde pole zajmuje
+ * swoje miejsce także wtedy, gdy jest null - zapisywane są wtedy zera, a o obecności pola decyduje bit w masce:
+ * <pre>
+ *   byte     wersja schematu (SCHEMA_VERSION)
+ *   byte     typ eventu: 1 = wjazd, 2 = wyjazd
+ *   byte     maska pól obecnych (HAS_*)
+ *   long     parkingId
+ *   int      cameraId
+ *   long+int timestamp (sekundy epoki + nanosekundy)
+ *   2x long  eventId (UUID)
+ *   byte+n   długość i tablica w UTF-8 (najwyżej 255 bajtów; bez tablicy tylko bajt długości 0)
+ * </pre>
+ * Zmiana układu to nowa wersja schematu, którą konsument musi znać, zanim zacznie jej używać producent
+ * (wdrożenie parking-service przed ocr-service). Zapisane wiadomości wersji 1 utrwala GateEventCodecTest.
+ */
+public final class GateEventCodec {
+    public static final String CONTENT_TYPE = "application/x-parking-gate-event";
+    public static final byte SCHEMA_VERSION = 1;
+
+    static final byte TYPE_ENTRY = 1;
+    static final byte TYPE_EXIT = 2;
+
+    static final int HAS_PARKING_ID = 1;
+    static final int HAS_CAMERA_ID = 1 << 1;
+    static final int HAS_TIMESTAMP = 1 << 2;
+    static final int HAS_EVENT_ID = 1 << 3;
+    static final int HAS_PLATE = 1 << 4;
+
+    private static final int MAX_PLATE_BYTES = 255;
+    // wersja + typ + maska + parkingId + cameraId + timestamp + eventId + długość tablicy
+    private static final int FIXED_SIZE = 3 + 8 + 4 + 12 + 16 + 1;
+
+    private GateEventCodec() {
+    }
+
+    /**
+     * @throws IllegalArgumentException gdy eventu nie da się zapisać w tym formacie (eventId nie jest UUID,
+     *                                  tablica dłuższa niż 255 bajtów) - wywołujący wysyła wtedy JSON
+     */
+    public static byte[] encode(GateEvent event) {
+        byte[] plateBytes = event.licencePlate() != null ? event.licencePlate().getBytes(StandardCharsets.UTF_8) : null;
+        if (plateBytes != null && plateBytes.length > MAX_PLATE_BYTES) {
+            throw new IllegalArgumentException("Plate longer than " + MAX_PLATE_BYTES + " bytes");
+        }
+        UUID uuid = event.eventId() != null ? UUID.fromString(event.eventId()) : null;
+        Long parkingId = event.parkingId();
+        Integer cameraId = event.cameraId();
+        Instant timestamp = event.timestamp();
+
+        int mask = (parkingId != null ? HAS_PARKING_ID : 0)
+                | (cameraId != null ? HAS_CAMERA_ID : 0)
+                | (timestamp != null ? HAS_TIMESTAMP : 0)
+                | (uuid != null ? HAS_EVENT_ID : 0)
+                | (plateBytes != null ? HAS_PLATE : 0);
+        ByteBuffer buf = ByteBuffer.allocate(FIXED_SIZE + (plateBytes != null ? plateBytes.length : 0));
+        buf.put(SCHEMA_VERSION).put(event.type() == GateEvent.Type.ENTRY ? TYPE_ENTRY : TYPE_EXIT).put((byte) mask);
+        buf.putLong(parkingId != null ? parkingId : 0L);
+        buf.putInt(cameraId != null ? cameraId : 0);
+        buf.putLong(timestamp != null ? timestamp.getEpochSecond() : 0L);
+        buf.putInt(timestamp != null ? timestamp.getNano() : 0);
+        buf.putLong(uuid != null ? uuid.getMostSignificantBits() : 0L);
+        buf.putLong(uuid != null ? uuid.getLeastSignificantBits() : 0L);
+        if (plateBytes != null) {
+            buf.put((byte) plateBytes.length).put(plateBytes);
+        } else {
+            buf.put((byte) 0);
+        }
+        return buf.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException dla nieznanej wersji schematu, nieznanego typu lub uciętego ciała
+     */
+    public static GateEvent decode(byte[] body) {
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(body);
+            byte version = buf.get();
+            if (version != SCHEMA_VERSION) {
+                throw new IllegalArgumentException("Unsupported gate event schema version: " + version);
+            }
+            byte type = buf.get();
+            int mask = buf.get();
+            long parkingId = buf.getLong();
+            int cameraId = buf.getInt();
+            long epochSecond = buf.getLong();
+            int nanos = buf.getInt();
+            long uuidHigh = buf.getLong();
+            long uuidLow = buf.getLong();
+            int plateLength = buf.get() & 0xFF;
+            String plate = null;
+            if ((mask & HAS_PLATE) != 0) {
+                if (plateLength > buf.remaining()) {
+                    throw new IllegalArgumentException("Plate length " + plateLength + " exceeds body");
+                }
+                plate = new String(body, buf.position(), plateLength, StandardCharsets.UTF_8);
+            }
+
+            GateEvent.Type eventType = switch (type) {
+                case TYPE_ENTRY -> GateEvent.Type.ENTRY;
+                case TYPE_EXIT -> GateEvent.Type.EXIT;
+                default -> throw new IllegalArgumentException("Unknown gate event type: " + type);
+            };
+            return new GateEvent(eventType, plate,
+                    (mask & HAS_PARKING_ID) != 0 ? parkingId : null,
+                    (mask & HAS_CAMERA_ID) != 0 ? cameraId : null,
+                    (mask & HAS_TIMESTAMP) != 0 ? Instant.ofEpochSecond(epochSecond, nanos) : null,
+                    (mask & HAS_EVENT_ID) != 0 ? new UUID(uuidHigh, uuidLow).toString() : null);
+        } catch (BufferUnderflowException | DateTimeException e) {
+            throw new IllegalArgumentException("Malformed gate event body (" + body.length + " bytes)", e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.smartparking.messaging;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpMessageReturnedException;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.SimpleMessageConverter;
+import org.testcontainers.containers.RabbitMQContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * ConfirmingPublisher na prawdziwym brokerze: potwierdzone wiadomości kończą future normalnie,
+ * a wiadomości bez kolejki docelowej (zwrócone przy mandatory=true) - wyjątkiem, także w środku paczki.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class ConfirmingPublisherTest {
+
+    private static final String EXCHANGE = "confirming.test.exchange";
+    private static final String BOUND_KEY = "bound";
+    private static final String QUEUE = "confirming.test.queue";
+
+    @Container
+    static final RabbitMQContainer rabbit = new RabbitMQContainer("rabbitmq:3-management");
+
+    private static CachingConnectionFactory connectionFactory;
+    private static ConfirmingPublisher publisher;
+
+    @BeforeAll
+    static void setUp() {
+        connectionFactory = new CachingConnectionFactory(rabbit.getHost(), rabbit.getAmqpPort());
+        connectionFactory.setUsername(rabbit.getAdminUsername());
+        connectionFactory.setPassword(rabbit.getAdminPassword());
+        // Jak spring.rabbitmq.publisher-confirm-type: simple i publisher-returns: true w serwisach
+        connectionFactory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.SIMPLE);
+        connectionFactory.setPublisherReturns(true);
+
+        RabbitAdmin admin = new RabbitAdmin(connectionFactory);
+        DirectExchange exchange = new DirectExchange(EXCHANGE);
+        Queue queue = new Queue(QUEUE);
+        admin.declareExchange(exchange);
+        admin.declareQueue(queue);
+        admin.declareBinding(BindingBuilder.bind(queue).to(exchange).with(BOUND_KEY));
+
+        publisher = new ConfirmingPublisher(connectionFactory, new SimpleMessageConverter(), "test");
+    }
+
+    @AfterAll
+    static void tearDown() {
+        publisher.shutdown();
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void routableMessageIsConfirmedAndDelivered() throws Exception {
+        publisher.send(EXCHANGE, BOUND_KEY, "hello").get(10, TimeUnit.SECONDS);
+
+        RabbitTemplate reader = new RabbitTemplate(connectionFactory);
+        Object received = reader.receiveAndConvert(QUEUE, 5000);
+        assertEquals("hello", received);
+    }
+
+    @Test
+    void unroutableMessageFailsOnlyItsOwnFuture() throws Exception {
+        // Paczka z wiadomościami na przemian z kolejką i bez - broker potwierdza wszystkie,
+        // ale zwrócone muszą skończyć się wyjątkiem, a pozostałe normalnie
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(publisher.send(EXCHANGE, i % 2 == 0 ? BOUND_KEY : "nobody-listens", "message-" + i));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            CompletableFuture<Void> future = futures.get(i);
+            if (i % 2 == 0) {
+                assertNull(future.get(10, TimeUnit.SECONDS));
+            } else {
+                ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+                AmqpMessageReturnedException returned = assertInstanceOf(AmqpMessageReturnedException.class, error.getCause());
+                assertEquals("nobody-listens", returned.getRoutingKey());
+            }
+        }
+
+        Map<String, Object> stats = publisher.stats();
+        assertEquals(10L, stats.get("returned"));
+        new RabbitAdmin(connectionFactory).purgeQueue(QUEUE);
+    }
+}
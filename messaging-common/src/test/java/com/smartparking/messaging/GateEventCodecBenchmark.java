@@ -0,0 +1,130 @@
+package com.smartparking.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GateEventCodec kontra JSON z Jacksona (tak jak Jackson2JsonMessageConverter w ocr-service i parking-service)
+ * dla tego samego eventu wjazdu: kodowanie (ocr-service, OutboxRelay) i dekodowanie (parking-service, konsument shardu).
+ * Rozmiar ciała w bajtach to bodyBytes / bodies z liczników BodySize przy metodach encode*.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GateEventCodecBenchmark {
+
+    private GateEvent event;
+    private JsonEntryEvent jsonEvent;
+    private ObjectMapper objectMapper;
+    private byte[] binaryBody;
+    private byte[] jsonBody;
+
+    @Setup
+    public void setUp() throws IOException {
+        Instant timestamp = Instant.parse("2026-10-18T08:15:30.123456789Z");
+        String eventId = "3f2504e0-4f89-11d3-9a0c-0305e82c3301";
+        event = new GateEvent(GateEvent.Type.ENTRY, "WA12345", 42L, 3, timestamp, eventId);
+        jsonEvent = new JsonEntryEvent("WA12345", 42L, 3, timestamp, eventId);
+        // Jak ObjectMapper Spring Boota w serwisach (spring.jackson.serialization.write-dates-as-timestamps: false)
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        binaryBody = GateEventCodec.encode(event);
+        jsonBody = objectMapper.writeValueAsBytes(jsonEvent);
+    }
+
+    @Benchmark
+    public byte[] encodeBinary(BodySize size) {
+        return size.record(GateEventCodec.encode(event));
+    }
+
+    @Benchmark
+    public byte[] encodeJson(BodySize size) throws IOException {
+        return size.record(objectMapper.writeValueAsBytes(jsonEvent));
+    }
+
+    @Benchmark
+    public GateEvent decodeBinary() {
+        return GateEventCodec.decode(binaryBody);
+    }
+
+    @Benchmark
+    public JsonEntryEvent decodeJson() throws IOException {
+        return objectMapper.readValue(jsonBody, JsonEntryEvent.class);
+    }
+
+    /**
+     * Liczniki JMH raportowane obok wyniku (zdarzenia, bez normalizacji czasem) - oba sumowane tak samo,
+     * więc ich iloraz to rozmiar jednego ciała niezależnie od liczby wątków i iteracji.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class BodySize {
+        public long bodyBytes;
+        public long bodies;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bodyBytes = 0;
+            bodies = 0;
+        }
+
+        byte[] record(byte[] body) {
+            bodyBytes += body.length;
+            bodies++;
+            return body;
+        }
+    }
+
+    /**
+     * Te same pola co ParkingEntryEvent (ocr-service) i OcrEntryEvent (parking-service) - ten sam JSON na kolejce.
+     */
+    public static class JsonEntryEvent {
+        public String licencePlate;
+        public Long parkingId;
+        public Integer cameraId;
+        public Instant timestamp;
+        public String eventId;
+
+        public JsonEntryEvent() {
+        }
+
+        JsonEntryEvent(String licencePlate, Long parkingId, Integer cameraId, Instant timestamp, String eventId) {
+            this.licencePlate = licencePlate;
+            this.parkingId = parkingId;
+            this.cameraId = cameraId;
+            this.timestamp = timestamp;
+            this.eventId = eventId;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GateEventCodecBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,86 @@
+package com.smartparking.messaging;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GateEventCodecTest {
+
+    private static final GateEvent ENTRY = new GateEvent(GateEvent.Type.ENTRY, "WA12345", 42L, 3,
+            Instant.parse("2026-10-18T08:15:30.123456789Z"), "3f2504e0-4f89-11d3-9a0c-0305e82c3301");
+
+    // Wiadomości wersji 1 w tej postaci mogą czekać w kolejkach shardów i w parking.gate.dlq -
+    // każda przyszła wersja kodeka musi je nadal czytać, a dla tych samych pól kodować identycznie
+    private static final String ENTRY_V1 =
+            "01011f000000000000002a00000003000000006ad48022075bcd15"
+            + "3f2504e04f8911d39a0c0305e82c3301" + "0757413132333435";
+    private static final String EXIT_WITHOUT_OPTIONAL_FIELDS_V1 =
+            "0102010000000000000007000000000000000000000000000000000000000000000000000000000000000000";
+
+    @Test
+    void encodesVersionOneLayout() {
+        assertEquals(ENTRY_V1, HexFormat.of().formatHex(GateEventCodec.encode(ENTRY)));
+        assertEquals(EXIT_WITHOUT_OPTIONAL_FIELDS_V1, HexFormat.of().formatHex(GateEventCodec.encode(
+                new GateEvent(GateEvent.Type.EXIT, null, 7L, null, null, null))));
+    }
+
+    @Test
+    void decodesStoredVersionOneMessages() {
+        assertEquals(ENTRY, GateEventCodec.decode(HexFormat.of().parseHex(ENTRY_V1)));
+        assertEquals(new GateEvent(GateEvent.Type.EXIT, null, 7L, null, null, null),
+                GateEventCodec.decode(HexFormat.of().parseHex(EXIT_WITHOUT_OPTIONAL_FIELDS_V1)));
+    }
+
+    @Test
+    void roundTripKeepsEveryFieldAndNulls() {
+        GateEvent[] events = {
+                ENTRY,
+                new GateEvent(GateEvent.Type.EXIT, "ŁDZ 4ĘŚ", Long.MAX_VALUE, Integer.MIN_VALUE,
+                        Instant.ofEpochSecond(0), "00000000-0000-0000-0000-000000000000"),
+                new GateEvent(GateEvent.Type.ENTRY, "", 0L, 0, Instant.parse("1999-12-31T23:59:59Z"), null),
+                new GateEvent(GateEvent.Type.EXIT, null, null, null, null, null),
+        };
+        for (GateEvent event : events) {
+            assertEquals(event, GateEventCodec.decode(GateEventCodec.encode(event)));
+        }
+    }
+
+    @Test
+    void rejectsEventsThatDoNotFitTheFormat() {
+        String longPlate = "X".repeat(256);
+        assertThrows(IllegalArgumentException.class, () -> GateEventCodec.encode(
+                new GateEvent(GateEvent.Type.ENTRY, longPlate, 1L, 1, null, null)));
+        assertThrows(IllegalArgumentException.class, () -> GateEventCodec.encode(
+                new GateEvent(GateEvent.Type.ENTRY, "WA1", 1L, 1, null, "not-a-uuid")));
+    }
+
+    @Test
+    void rejectsMalformedBodies() {
+        byte[] valid = HexFormat.of().parseHex(ENTRY_V1);
+
+        byte[] otherVersion = valid.clone();
+        otherVersion[0] = 2;
+        assertThrows(IllegalArgumentException.class, () -> GateEventCodec.decode(otherVersion));
+
+        byte[] unknownType = valid.clone();
+        unknownType[1] = 9;
+        assertThrows(IllegalArgumentException.class, () -> GateEventCodec.decode(unknownType));
+
+        assertThrows(IllegalArgumentException.class, () -> GateEventCodec.decode(Arrays.copyOf(valid, 20)));
+        assertThrows(IllegalArgumentException.class, () -> GateEventCodec.decode(Arrays.copyOf(valid, valid.length - 1)));
+        assertThrows(IllegalArgumentException.class, () -> GateEventCodec.decode(new byte[0]));
+    }
+
+    @Test
+    void encodedBodyIsExactlyFixedPartPlusPlate() {
+        byte[] body = GateEventCodec.encode(ENTRY);
+        assertEquals(44 + "WA12345".length(), body.length);
+        assertArrayEquals(body, GateEventCodec.encode(GateEventCodec.decode(body)));
+    }
+}
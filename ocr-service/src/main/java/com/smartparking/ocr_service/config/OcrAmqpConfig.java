@@ -2,12 +2,19 @@ package com.smartparking.ocr_service.config;
 
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
 import org.springframework.amqp.core.TopicExchange;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 public class OcrAmqpConfig {
     public static final String OCR_EXCHANGE = "ocr.exchange";
@@ -18,6 +25,14 @@ public class OcrAmqpConfig {
     public static final String PARKING_EXCHANGE = "parking.exchange";
     public static final String PARKING_ENTRY_ROUTING = "parking.entry.detected";
     public static final String PARKING_EXIT_ROUTING = "parking.exit.detected";
+    // Wjazdy i wyjazdy shardowane po parking_id (routing key parking.gate.<shard>) - ten sam układ w parking-service
+    public static final String PARKING_GATE_PREFIX = "parking.gate.";
+    public static final String PARKING_ENTRY_TYPE_ID = "parkingEntry";
+    public static final String PARKING_EXIT_TYPE_ID = "parkingExit";
+    public static final String PARKING_GATE_DLX = "parking.gate.dlx";
+
+    @Value("${parking.ocr.shards:8}")
+    private int gateShards;
 
     @Bean
     public TopicExchange exchange() { return new TopicExchange(OCR_EXCHANGE); }
@@ -32,4 +47,22 @@ public class OcrAmqpConfig {
     public Binding binding(Queue q, @Qualifier("exchange") TopicExchange e) {
         return BindingBuilder.bind(q).to(e).with(OCR_ROUTING);
     }
+
+    /**
+     * Kolejki shardów deklarowane też tutaj, żeby zdarzenia nie przepadły, gdy ocr-service wystartuje
+     * przed parking-service. Argumenty muszą być identyczne jak w ParkingAmqpConfig.
+     */
+    @Bean
+    public Declarables parkingGateShards(@Qualifier("parkingExchange") TopicExchange parkingExchange) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (int shard = 0; shard < gateShards; shard++) {
+            Queue queue = QueueBuilder.durable(PARKING_GATE_PREFIX + shard + ".queue")
+                    .singleActiveConsumer()
+                    .deadLetterExchange(PARKING_GATE_DLX)
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(parkingExchange).with(PARKING_GATE_PREFIX + shard));
+        }
+        return new Declarables(declarables);
+    }
 }
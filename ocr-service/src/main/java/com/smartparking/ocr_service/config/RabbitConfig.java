@@ -1,17 +1,33 @@
 package com.smartparking.ocr_service.config;
 
+import com.smartparking.messaging.ConfirmingPublisher;
+import com.smartparking.ocr_service.dto.ParkingEntryEvent;
+import com.smartparking.ocr_service.dto.ParkingExitEvent;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.DefaultJackson2JavaTypeMapper;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Map;
+
 @Configuration
 public class RabbitConfig {
 
     @Bean
     public Jackson2JsonMessageConverter jackson2JsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+        // Wjazd i wyjazd trafiają do tej samej kolejki shardu - parking-service rozpoznaje je po __TypeId__
+        // Nieznany __TypeId__ spoza pakietu DTO jest odrzucany zamiast deserializowany do dowolnej klasy
+        DefaultJackson2JavaTypeMapper typeMapper = new DefaultJackson2JavaTypeMapper();
+        typeMapper.setTrustedPackages("com.smartparking.ocr_service.dto");
+        typeMapper.setIdClassMapping(Map.of(
+                OcrAmqpConfig.PARKING_ENTRY_TYPE_ID, ParkingEntryEvent.class,
+                OcrAmqpConfig.PARKING_EXIT_TYPE_ID, ParkingExitEvent.class
+        ));
+        Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter();
+        converter.setJavaTypeMapper(typeMapper);
+        return converter;
     }
 
     @Bean
@@ -20,5 +36,14 @@ public class RabbitConfig {
         rt.setMessageConverter(converter);
         return rt;
     }
-}
 
+    /**
+     * Publikacja z potwierdzeniami (GET /ocr/stats/publisher) - na własnym RabbitTemplate z mandatory=true,
+     * więc wspólny szablon powyżej nie dostaje callbacku zwrotów.
+     */
+    @Bean
+    public ConfirmingPublisher confirmingPublisher(ConnectionFactory connectionFactory,
+                                                   Jackson2JsonMessageConverter converter) {
+        return new ConfirmingPublisher(connectionFactory, converter, "ocr");
+    }
+}
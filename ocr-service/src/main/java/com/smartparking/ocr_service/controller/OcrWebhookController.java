@@ -1,15 +1,21 @@
 package com.smartparking.ocr_service.controller;
 
+import com.smartparking.messaging.ConfirmingPublisher;
 import com.smartparking.ocr_service.dto.OcrEventDto;
 import com.smartparking.ocr_service.messaging.OcrPublisher;
-import com.smartparking.ocr_service.repo.PlateReadRepository;
+import com.smartparking.ocr_service.messaging.OutboxRelay;
+import com.smartparking.ocr_service.model.OutboxMessage;
 import com.smartparking.ocr_service.model.PlateRead;
+import com.smartparking.ocr_service.model.PlateReadEntry;
 import com.smartparking.ocr_service.service.EventDeduplicationService;
+import com.smartparking.ocr_service.service.PlateReadWriteBuffer;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,16 +30,22 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/ocr")
 public class OcrWebhookController {
     private static final Logger log = LoggerFactory.getLogger(OcrWebhookController.class);
+    private static final int MAX_BATCH_SIZE = 1000;
     
     private final OcrPublisher publisher;
-    private final PlateReadRepository repo;
+    private final PlateReadWriteBuffer plateReadBuffer;
     private final EventDeduplicationService deduplicationService;
+    private final OutboxRelay outboxRelay;
+    private final ConfirmingPublisher confirmingPublisher;
 
-    public OcrWebhookController(OcrPublisher publisher, PlateReadRepository repo, 
-                                EventDeduplicationService deduplicationService) {
+    public OcrWebhookController(OcrPublisher publisher, PlateReadWriteBuffer plateReadBuffer,
+                                EventDeduplicationService deduplicationService, OutboxRelay outboxRelay,
+                                ConfirmingPublisher confirmingPublisher) {
         this.publisher = publisher;
-        this.repo = repo;
+        this.plateReadBuffer = plateReadBuffer;
         this.deduplicationService = deduplicationService;
+        this.outboxRelay = outboxRelay;
+        this.confirmingPublisher = confirmingPublisher;
     }
 
     @GetMapping("/health")
@@ -43,13 +55,26 @@ public class OcrWebhookController {
     
     @GetMapping("/stats/dedup")
     public ResponseEntity<Map<String, Object>> getDedupStats() {
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("recentEventsCount", deduplicationService.getRecentEventsCount());
-        stats.put("deduplicationWindowSeconds", 60);
+        Map<String, Object> stats = deduplicationService.getStats();
         stats.put("status", "active");
         return ResponseEntity.ok(stats);
     }
 
+    @GetMapping("/stats/plate-reads")
+    public ResponseEntity<Map<String, Object>> getPlateReadBufferStats() {
+        return ResponseEntity.ok(plateReadBuffer.stats());
+    }
+
+    @GetMapping("/stats/outbox")
+    public ResponseEntity<Map<String, Object>> getOutboxStats() {
+        return ResponseEntity.ok(outboxRelay.stats());
+    }
+
+    @GetMapping("/stats/publisher")
+    public ResponseEntity<Map<String, Object>> getPublisherStats() {
+        return ResponseEntity.ok(confirmingPublisher.stats());
+    }
+
     // Endpoint który przyjmie POST od zewnętrznego skryptu z danymi (plate, timestamp, imageUrl)
     @PostMapping("/webhook")
     public ResponseEntity<String> webhook(@RequestBody OcrEventDto event) {
@@ -64,36 +89,52 @@ public class OcrWebhookController {
             return ResponseEntity.badRequest().body("Plate is required");
         }
         
-        // Parsowanie timestamp (ISO-8601 z 'Z', bez 'Z', lub epoch seconds)
-        LocalDateTime ts = parseTimestamp(event.getTimestamp());
-        
-        // Użyj cameraId z eventu, jeśli dostępne, w przeciwnym razie domyślne 1
-        Integer cameraId = event.getCameraId() != null ? event.getCameraId() : 1;
-
-        // Zapisz do bazy danych
-        PlateRead p = new PlateRead();
-        p.setCameraId(cameraId);
-        p.setRawPlate(event.getPlate().trim().toUpperCase());
-        p.setEventTime(ts);
-        
+        PlateRead p = toPlateRead(event);
+        Instant eventTime = p.getEventTime().toInstant(ZoneOffset.UTC);
+        OutboxMessage gateEvent;
         try {
-            repo.save(p);
-            log.info("Saved plate read to database: plate={}, cameraId={}, timestamp={}", 
-                    p.getRawPlate(), cameraId, ts);
+            gateEvent = publisher.toGateEvent(event, eventTime).orElse(null);
         } catch (Exception e) {
-            if (e instanceof org.springframework.dao.DuplicateKeyException) {
-                log.warn("Duplicate key detected for plate={}, should have been handled by repository", 
-                    event.getPlate());
-            } else {
-                log.error("Failed to save plate read to database: plate={}", event.getPlate(), e);
+            log.error("Failed to build gate event: plate={}", event.getPlate(), e);
+            return ResponseEntity.status(500).body("Failed to process event: " + e.getMessage());
+        }
+
+        if (gateEvent != null) {
+            // Odczyt z eventem wjazdu/wyjazdu zapisujemy (plate_read + ocr_outbox) przed odpowiedzią -
+            // 200 oznacza, że event jest w outboxie i dotrze do parking-service
+            if (plateReadBuffer.storeWithGateEvents(List.of(new PlateReadEntry(p, gateEvent))) == 0) {
+                // Kamera ponowi odczyt - nie może zostać odrzucony jako duplikat niezapisanego eventu
+                publisher.releaseGateEvent(event, eventTime);
+                return ResponseEntity.status(500).body("Failed to store event");
+            }
+            log.info("Stored plate read with gate event: plate={}, cameraId={}, timestamp={}, gateEventId={}",
+                    p.getRawPlate(), p.getCameraId(), p.getEventTime(), gateEvent.getEventId());
+        } else {
+            // Odczyt bez eventu - zapis do bazy asynchronicznie (bufor write-behind)
+            try {
+                plateReadBuffer.submit(p);
+                log.info("Queued plate read for database: plate={}, cameraId={}, timestamp={}",
+                        p.getRawPlate(), p.getCameraId(), p.getEventTime());
+            } catch (Exception e) {
+                if (e instanceof org.springframework.dao.DuplicateKeyException) {
+                    log.warn("Duplicate key detected for plate={}, should have been handled by repository",
+                        event.getPlate());
+                } else {
+                    log.error("Failed to save plate read to database: plate={}", event.getPlate(), e);
+                }
             }
         }
         
-        // Publikuj event do RabbitMQ
+        // Publikuj surowy odczyt do RabbitMQ (potwierdzenie brokera przychodzi asynchronicznie)
         try {
-            publisher.publishDetected(event);
-            log.debug("Published OCR event: plate={}, direction={}, parkingId={}", 
-                    event.getPlate(), event.getDirection(), event.getParkingId());
+            publisher.publishDetected(event).whenComplete((ok, error) -> {
+                if (error != null) {
+                    log.error("Broker did not confirm OCR event: plate={}, error={}", event.getPlate(), error.getMessage());
+                } else {
+                    log.debug("Published OCR event: plate={}, direction={}, parkingId={}",
+                            event.getPlate(), event.getDirection(), event.getParkingId());
+                }
+            });
         } catch (Exception e) {
             log.error("Failed to publish event to RabbitMQ: plate={}", event.getPlate(), e);
             // Jeśli RabbitMQ nie jest dostępne, zwróć błąd 500
@@ -102,6 +143,101 @@ public class OcrWebhookController {
         
         return ResponseEntity.ok("accepted");
     }
+
+    /**
+     * Paczka odczytów (np. seria klatek z kilku kamer jednego pasa). Odczyty z eventem wjazdu/wyjazdu są zapisywane
+     * (plate_read + ocr_outbox) przed odpowiedzią, pozostałe idą do bufora zapisu, a surowe odczyty są publikowane
+     * na jednym kanale z jednym oczekiwaniem na potwierdzenia brokera. Odczyty bez tablicy są pomijane i liczone
+     * w "rejected". Jeśli któregoś eventu nie udało się zapisać, odpowiedź to 500 z liczbą "failed" - takie odczyty
+     * nie są publikowane ani liczone w "accepted", a ich rejestracja w oknie deduplikacji jest cofana,
+     * więc kamera może ponowić całą paczkę (zapisane eventy zostaną odrzucone jako duplikaty).
+     */
+    @PostMapping("/webhook/batch")
+    public ResponseEntity<?> webhookBatch(@RequestBody List<OcrEventDto> events) {
+        if (events == null || events.isEmpty()) {
+            return ResponseEntity.badRequest().body("At least one event is required");
+        }
+        if (events.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().body("Batch too large (max " + MAX_BATCH_SIZE + " events)");
+        }
+
+        List<OcrEventDto> valid = new ArrayList<>(events.size());
+        for (OcrEventDto event : events) {
+            if (event == null || event.getPlate() == null || event.getPlate().trim().isEmpty()) {
+                continue;
+            }
+            valid.add(event);
+        }
+        int rejected = events.size() - valid.size();
+        if (rejected > 0) {
+            log.warn("Skipped {} batch events without plate", rejected);
+        }
+
+        List<OcrEventDto> accepted = new ArrayList<>(valid.size());
+        List<OcrEventDto> gateSources = new ArrayList<>();
+        List<Instant> gateEventTimes = new ArrayList<>();
+        List<PlateReadEntry> gateEntries = new ArrayList<>();
+        int failed = 0;
+        for (OcrEventDto event : valid) {
+            PlateRead p = toPlateRead(event);
+            Instant eventTime = p.getEventTime().toInstant(ZoneOffset.UTC);
+            OutboxMessage gateEvent;
+            try {
+                gateEvent = publisher.toGateEvent(event, eventTime).orElse(null);
+            } catch (Exception e) {
+                log.error("Failed to build gate event in batch: plate={}", event.getPlate(), e);
+                failed++;
+                continue;
+            }
+            if (gateEvent != null) {
+                gateSources.add(event);
+                gateEventTimes.add(eventTime);
+                gateEntries.add(new PlateReadEntry(p, gateEvent));
+                continue;
+            }
+            try {
+                plateReadBuffer.submit(p);
+            } catch (Exception e) {
+                log.error("Failed to save plate read to database: plate={}", event.getPlate(), e);
+            }
+            accepted.add(event);
+        }
+
+        int stored = plateReadBuffer.storeWithGateEvents(gateEntries);
+        for (int i = 0; i < gateSources.size(); i++) {
+            if (i < stored) {
+                accepted.add(gateSources.get(i));
+            } else {
+                publisher.releaseGateEvent(gateSources.get(i), gateEventTimes.get(i));
+                failed++;
+            }
+        }
+        log.info("Plate read batch: accepted={}, gateEventsStored={}, failed={}", accepted.size(), stored, failed);
+
+        try {
+            publisher.publishDetectedBatch(accepted);
+        } catch (Exception e) {
+            log.error("Failed to publish OCR batch to RabbitMQ: events={}", accepted.size(), e);
+            return ResponseEntity.status(500).body("Failed to process batch: " + e.getMessage());
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("accepted", accepted.size());
+        result.put("gateEventsStored", stored);
+        result.put("failed", failed);
+        result.put("rejected", rejected);
+        return failed > 0 ? ResponseEntity.status(500).body(result) : ResponseEntity.ok(result);
+    }
+
+    private PlateRead toPlateRead(OcrEventDto event) {
+        PlateRead p = new PlateRead();
+        // Użyj cameraId z eventu, jeśli dostępne, w przeciwnym razie domyślne 1
+        p.setCameraId(event.getCameraId() != null ? event.getCameraId() : 1);
+        p.setRawPlate(event.getPlate().trim().toUpperCase());
+        // Parsowanie timestamp (ISO-8601 z 'Z', bez 'Z', lub epoch seconds)
+        p.setEventTime(parseTimestamp(event.getTimestamp()));
+        return p;
+    }
     
     private LocalDateTime parseTimestamp(String timestampStr) {
         if (timestampStr == null || timestampStr.trim().isEmpty()) {
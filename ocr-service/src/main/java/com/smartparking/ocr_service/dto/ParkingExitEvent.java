@@ -7,6 +7,7 @@ public class ParkingExitEvent {
     private Long parkingId;
     private Integer cameraId;
     private Instant timestamp;
+    private String eventId; // klucz idempotencji (UUID z outboxa ocr-service)
 
     public ParkingExitEvent() {
     }
@@ -49,11 +50,12 @@ public class ParkingExitEvent {
     public void setTimestamp(Instant timestamp) {
         this.timestamp = timestamp;
     }
-}
-
-
-
-
-
 
+    public String getEventId() {
+        return eventId;
+    }
 
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+}
@@ -1,157 +1,225 @@
 package com.smartparking.ocr_service.messaging;
 
+import com.smartparking.messaging.ConfirmingPublisher;
+import com.smartparking.messaging.GateEvent;
+import com.smartparking.messaging.GateEventCodec;
 import com.smartparking.ocr_service.config.OcrAmqpConfig;
 import com.smartparking.ocr_service.dto.OcrEventDto;
 import com.smartparking.ocr_service.dto.ParkingEntryEvent;
 import com.smartparking.ocr_service.dto.ParkingExitEvent;
+import com.smartparking.ocr_service.model.OutboxMessage;
 import com.smartparking.ocr_service.service.EventDeduplicationService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
-import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Component
 public class OcrPublisher {
     private static final Logger log = LoggerFactory.getLogger(OcrPublisher.class);
+    private static final long BATCH_CONFIRM_TIMEOUT_MS = 5000;
+    // Nagłówek typu Jackson2JsonMessageConverter - mapowany na klasę eventu przez idClassMapping w parking-service
+    private static final String TYPE_ID_HEADER = "__TypeId__";
     private final RabbitTemplate rabbitTemplate;
+    private final ConfirmingPublisher confirmingPublisher;
     private final EventDeduplicationService deduplicationService;
+    private final int gateShards;
+    // Exchange'e, na które eventy wjazdu/wyjazdu idą w formacie GateEventCodec zamiast JSON (ocr.amqp.binary-exchanges)
+    private final Set<String> binaryExchanges;
 
-    public OcrPublisher(RabbitTemplate rabbitTemplate, EventDeduplicationService deduplicationService) {
+    public OcrPublisher(RabbitTemplate rabbitTemplate, ConfirmingPublisher confirmingPublisher,
+                        EventDeduplicationService deduplicationService,
+                        @Value("${parking.ocr.shards:8}") int gateShards,
+                        @Value("${ocr.amqp.binary-exchanges:}") String[] binaryExchanges) {
         this.rabbitTemplate = rabbitTemplate;
+        this.confirmingPublisher = confirmingPublisher;
         this.deduplicationService = deduplicationService;
+        this.gateShards = gateShards;
+        this.binaryExchanges = Arrays.stream(binaryExchanges)
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        if (!this.binaryExchanges.isEmpty()) {
+            log.info("Binary gate event codec enabled: exchanges={}, schemaVersion={}",
+                this.binaryExchanges, GateEventCodec.SCHEMA_VERSION);
+        }
     }
 
-    public void publishDetected(OcrEventDto event) {
-        rabbitTemplate.convertAndSend(OcrAmqpConfig.OCR_EXCHANGE, OcrAmqpConfig.OCR_ROUTING, event);
-        
-        // Jeśli event ma direction i parkingId, publikuj również event parkingowy
-        if (event.getDirection() != null && event.getParkingId() != null) {
-            try {
-                Instant timestamp = parseTimestamp(event.getTimestamp());
-                Integer cameraId = event.getCameraId() != null ? event.getCameraId() : 1; // Default camera
-                
-                // Sprawdź duplikaty przed publikacją
-                boolean isDuplicate = deduplicationService.isDuplicate(
-                    event.getPlate(), 
-                    event.getParkingId(), 
-                    event.getDirection(), 
-                    timestamp
-                );
-                
-                if (isDuplicate) {
-                    log.warn("Duplicate event filtered out - not publishing: plate={}, parkingId={}, direction={}",
-                        event.getPlate(), event.getParkingId(), event.getDirection());
-                    return; // Nie publikuj duplikatu
-                }
-                
-                // Event jest unikalny - zarejestruj go i publikuj
-                deduplicationService.registerEvent(event.getPlate(), event.getParkingId(), event.getDirection(), timestamp);
-                
-                if ("entry".equalsIgnoreCase(event.getDirection())) {
-                    publishEntryInternal(event.getPlate(), event.getParkingId(), cameraId, timestamp, false);
-                } else if ("exit".equalsIgnoreCase(event.getDirection())) {
-                    publishExitInternal(event.getPlate(), event.getParkingId(), cameraId, timestamp, false);
-                }
-            } catch (Exception e) {
-                log.warn("Failed to publish parking entry/exit event: {}", e.getMessage());
-            }
-        }
+    /**
+     * Publikuje surowy odczyt OCR (ocr.exchange) przez ConfirmingPublisher - bez czekania na brokera w wątku webhooka.
+     * Eventy wjazdu/wyjazdu nie są tu wysyłane - idą przez outbox (toGateEvent + OutboxRelay).
+     * @return future zakończony po potwierdzeniu brokera
+     */
+    public CompletableFuture<Void> publishDetected(OcrEventDto event) {
+        return confirmingPublisher.send(OcrAmqpConfig.OCR_EXCHANGE, OcrAmqpConfig.OCR_ROUTING, event);
     }
 
-    public void publishEntry(String licencePlate, Long parkingId, Integer cameraId, Instant timestamp) {
-        publishEntryInternal(licencePlate, parkingId, cameraId, timestamp, true);
+    /**
+     * Publikuje paczkę surowych odczytów na jednym kanale i czeka raz na potwierdzenia brokera (publisher confirms)
+     * zamiast osobnego convertAndSend per odczyt.
+     * @throws org.springframework.amqp.AmqpException jeśli broker nie potwierdzi wszystkich wiadomości w czasie
+     */
+    public void publishDetectedBatch(List<OcrEventDto> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        rabbitTemplate.invoke(ops -> {
+            for (OcrEventDto event : events) {
+                ops.convertAndSend(OcrAmqpConfig.OCR_EXCHANGE, OcrAmqpConfig.OCR_ROUTING, event);
+            }
+            ops.waitForConfirmsOrDie(BATCH_CONFIRM_TIMEOUT_MS);
+            return null;
+        });
+        log.info("Published OCR batch: events={}", events.size());
     }
-    
-    private void publishEntryInternal(String licencePlate, Long parkingId, Integer cameraId, Instant timestamp, boolean checkDup) {
+
+    /**
+     * Buduje wiadomość outboxa z eventem wjazdu/wyjazdu dla odczytu z kierunkiem i parkingiem.
+     * Sprawdza okno deduplikacji - duplikat (lub odczyt bez kierunku/parkingu) daje Optional.empty().
+     * Unikalny event jest od razu rejestrowany w oknie; jeśli wiadomości nie uda się potem zapisać,
+     * wywołujący cofa rejestrację przez releaseGateEvent z tym samym timestampem.
+     * Każdy event dostaje nowy eventId (UUID), który parking-service traktuje jako klucz idempotencji.
+     * @param timestamp czas odczytu (ten sam, który trafia do plate_read)
+     */
+    public Optional<OutboxMessage> toGateEvent(OcrEventDto event, Instant timestamp) {
+        String direction = gateDirection(event);
+        if (direction == null) {
+            return Optional.empty();
+        }
+        Integer cameraId = event.getCameraId() != null ? event.getCameraId() : 1; // Default camera
+        String plate = event.getPlate();
+        Long parkingId = event.getParkingId();
+
+        // isDuplicate() od razu rejestruje unikalny event w oknie
+        if (deduplicationService.isDuplicate(plate, parkingId, direction, timestamp)) {
+            log.warn("Duplicate event filtered out - not publishing: plate={}, parkingId={}, direction={}",
+                plate, parkingId, direction);
+            return Optional.empty();
+        }
+
         try {
-            Instant eventTime = timestamp != null ? timestamp : Instant.now();
-            
-            // Sprawdzenie duplikatów tylko jeśli wymagane (dla bezpośrednich wywołań)
-            if (checkDup && deduplicationService.isDuplicate(licencePlate, parkingId, "entry", eventTime)) {
-                log.warn("Duplicate entry event detected in publishEntry() - skipping: plate={}, parkingId={}",
-                    licencePlate, parkingId);
-                return;
-            }
-            
-            // Rejestruj event tylko jeśli nie był wcześniej zarejestrowany
-            if (checkDup) {
-                deduplicationService.registerEvent(licencePlate, parkingId, "entry", eventTime);
+            String eventId = UUID.randomUUID().toString();
+            OutboxMessage message = new OutboxMessage();
+            message.setEventId(eventId);
+            message.setExchange(OcrAmqpConfig.PARKING_EXCHANGE);
+            message.setRoutingKey(gateRoutingKey(parkingId));
+            boolean binary = binaryExchanges.contains(message.getExchange());
+            if ("entry".equals(direction)) {
+                ParkingEntryEvent entry = new ParkingEntryEvent(plate, parkingId, cameraId, timestamp);
+                entry.setEventId(eventId);
+                message.setTypeId(OcrAmqpConfig.PARKING_ENTRY_TYPE_ID);
+                setBody(message, entry, binary ? () -> GateEventCodec.encode(new GateEvent(GateEvent.Type.ENTRY,
+                        plate, parkingId, cameraId, timestamp, eventId)) : null);
+            } else {
+                ParkingExitEvent exit = new ParkingExitEvent(plate, parkingId, cameraId, timestamp);
+                exit.setEventId(eventId);
+                message.setTypeId(OcrAmqpConfig.PARKING_EXIT_TYPE_ID);
+                setBody(message, exit, binary ? () -> GateEventCodec.encode(new GateEvent(GateEvent.Type.EXIT,
+                        plate, parkingId, cameraId, timestamp, eventId)) : null);
             }
-            
-            ParkingEntryEvent event = new ParkingEntryEvent();
-            event.setLicencePlate(licencePlate);
-            event.setParkingId(parkingId);
-            event.setCameraId(cameraId != null ? cameraId : 1); // Default camera ID
-            event.setTimestamp(eventTime);
-            
-            rabbitTemplate.convertAndSend(OcrAmqpConfig.PARKING_EXCHANGE, OcrAmqpConfig.PARKING_ENTRY_ROUTING, event);
-            log.info("Published parking entry event: plate={}, parking={}, camera={}, timestamp={}", 
-                    licencePlate, parkingId, event.getCameraId(), event.getTimestamp());
+            log.debug("Parking {} event built for outbox: plate={}, parking={}, camera={}, eventId={}",
+                direction, plate, parkingId, cameraId, eventId);
+            return Optional.of(message);
         } catch (Exception e) {
-            log.error("Failed to publish parking entry event: plate={}, parking={}", licencePlate, parkingId, e);
+            log.error("Failed to build parking {} event: plate={}, parking={}",
+                direction, plate, parkingId, e);
+            deduplicationService.release(plate, parkingId, direction, timestamp);
+            return Optional.empty();
         }
     }
 
-    public void publishExit(String licencePlate, Long parkingId, Integer cameraId, Instant timestamp) {
-        publishExitInternal(licencePlate, parkingId, cameraId, timestamp, true);
+    /**
+     * Cofa rejestrację eventu z toGateEvent w oknie deduplikacji - wołane, gdy odczytu z eventem
+     * nie udało się zapisać w plate_read/ocr_outbox, żeby ponowienie kamery nie zostało odrzucone jako duplikat.
+     */
+    public void releaseGateEvent(OcrEventDto event, Instant timestamp) {
+        String direction = gateDirection(event);
+        if (direction != null) {
+            deduplicationService.release(event.getPlate(), event.getParkingId(), direction, timestamp);
+        }
     }
-    
-    private void publishExitInternal(String licencePlate, Long parkingId, Integer cameraId, Instant timestamp, boolean checkDup) {
-        try {
-            Instant eventTime = timestamp != null ? timestamp : Instant.now();
-            
-            // Sprawdzenie duplikatów tylko jeśli wymagane (dla bezpośrednich wywołań)
-            if (checkDup && deduplicationService.isDuplicate(licencePlate, parkingId, "exit", eventTime)) {
-                log.warn("Duplicate exit event detected in publishExit() - skipping: plate={}, parkingId={}",
-                    licencePlate, parkingId);
+
+    // Znormalizowany kierunek ("entry"/"exit") albo null, gdy odczyt nie daje eventu wjazdu/wyjazdu
+    private String gateDirection(OcrEventDto event) {
+        if (event.getDirection() == null || event.getParkingId() == null) {
+            return null;
+        }
+        String direction = event.getDirection().trim().toLowerCase();
+        if (!"entry".equals(direction) && !"exit".equals(direction)) {
+            log.warn("Unknown OCR direction '{}' - no parking event: plate={}", event.getDirection(), event.getPlate());
+            return null;
+        }
+        return direction;
+    }
+
+    /**
+     * Ustawia ciało wiadomości outboxa: format binarny, jeśli jest włączony dla exchange'a i event się w nim mieści,
+     * w przeciwnym razie JSON z tego samego konwertera co convertAndSend (parking-service czyta oba).
+     */
+    private void setBody(OutboxMessage message, Object event, Supplier<byte[]> binaryEncoder) {
+        if (binaryEncoder != null) {
+            try {
+                message.setBody(binaryEncoder.get());
+                message.setContentType(GateEventCodec.CONTENT_TYPE);
                 return;
+            } catch (IllegalArgumentException e) {
+                log.warn("Gate event does not fit binary codec, sending JSON: eventId={}, reason={}",
+                    message.getEventId(), e.getMessage());
             }
-            
-            // Rejestruj event tylko jeśli nie był wcześniej zarejestrowany
-            if (checkDup) {
-                deduplicationService.registerEvent(licencePlate, parkingId, "exit", eventTime);
-            }
-            
-            ParkingExitEvent event = new ParkingExitEvent();
-            event.setLicencePlate(licencePlate);
-            event.setParkingId(parkingId);
-            event.setCameraId(cameraId != null ? cameraId : 1); // Default camera ID
-            event.setTimestamp(eventTime);
-            
-            rabbitTemplate.convertAndSend(OcrAmqpConfig.PARKING_EXCHANGE, OcrAmqpConfig.PARKING_EXIT_ROUTING, event);
-            log.info("Published parking exit event: plate={}, parking={}, camera={}, timestamp={}", 
-                    licencePlate, parkingId, event.getCameraId(), event.getTimestamp());
-        } catch (Exception e) {
-            log.error("Failed to publish parking exit event: plate={}, parking={}", licencePlate, parkingId, e);
         }
+        Message json = rabbitTemplate.getMessageConverter().toMessage(event, new MessageProperties());
+        message.setBody(json.getBody());
+        message.setContentType(MessageProperties.CONTENT_TYPE_JSON);
     }
 
-    private Instant parseTimestamp(String timestampStr) {
-        if (timestampStr == null || timestampStr.trim().isEmpty()) {
-            return Instant.now();
+    /**
+     * Publikuje wiadomości z outboxa na jednym kanale i czeka na potwierdzenia brokera.
+     * messageId = eventId, więc powtórzona publikacja (np. po braku potwierdzenia) jest rozpoznawalna po stronie konsumenta.
+     * @throws org.springframework.amqp.AmqpException jeśli broker nie potwierdzi wszystkich wiadomości w czasie
+     */
+    public void publishOutbox(List<OutboxMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
         }
-        try {
-            // Try parsing as ISO-8601 with 'Z' suffix (e.g., "2026-01-07T14:00:00Z")
-            if (timestampStr.endsWith("Z")) {
-                return Instant.parse(timestampStr);
-            }
-            // Try parsing as ISO-8601 without timezone (assume UTC)
-            if (timestampStr.contains("T")) {
-                LocalDateTime ldt = LocalDateTime.parse(timestampStr, DateTimeFormatter.ISO_DATE_TIME);
-                return ldt.atZone(ZoneOffset.UTC).toInstant();
+        rabbitTemplate.invoke(ops -> {
+            for (OutboxMessage m : messages) {
+                MessageProperties props = new MessageProperties();
+                props.setContentType(m.getContentType());
+                if (MessageProperties.CONTENT_TYPE_JSON.equals(m.getContentType())) {
+                    props.setContentEncoding(StandardCharsets.UTF_8.name());
+                }
+                props.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+                props.setMessageId(m.getEventId());
+                props.setHeader(TYPE_ID_HEADER, m.getTypeId());
+                ops.send(m.getExchange(), m.getRoutingKey(),
+                    new Message(m.getBody(), props));
             }
-            // Try parsing as epoch seconds
-            long epoch = Long.parseLong(timestampStr);
-            return Instant.ofEpochSecond(epoch);
-        } catch (Exception e) {
-            log.warn("Failed to parse timestamp '{}', using current time: {}", timestampStr, e.getMessage());
-            return Instant.now();
-        }
+            ops.waitForConfirmsOrDie(BATCH_CONFIRM_TIMEOUT_MS);
+            return null;
+        });
     }
-}
 
+    /**
+     * Routing key shardu dla parkingu - wjazdy i wyjazdy jednego parkingu idą do tej samej kolejki,
+     * więc parking-service przetwarza je w kolejności publikacji.
+     */
+    private String gateRoutingKey(Long parkingId) {
+        int shard = parkingId != null ? (int) Math.floorMod(parkingId, (long) gateShards) : 0;
+        return OcrAmqpConfig.PARKING_GATE_PREFIX + shard;
+    }
+}
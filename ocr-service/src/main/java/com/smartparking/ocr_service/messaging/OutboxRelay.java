@@ -0,0 +1,161 @@
+package com.smartparking.ocr_service.messaging;
+
+import com.smartparking.ocr_service.model.OutboxMessage;
+import com.smartparking.ocr_service.repo.OutboxRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Przekazuje eventy wjazdu/wyjazdu z ocr_outbox do RabbitMQ.
+ *
+ * Wątek w tle w jednej transakcji bierze blokadę doradczą relaya (OutboxRepository.tryLockRelay), blokuje paczkę
+ * najstarszych wierszy, publikuje je z potwierdzeniami brokera i usuwa dopiero po potwierdzeniu. Przy kilku replikach
+ * paczki idą więc po kolei, a eventy jednego parkingu trafiają do kolejki shardu w kolejności outbox_id. Brak potwierdzenia
+ * wycofuje transakcję - paczka zostanie wysłana ponownie, a parking-service odrzuci powtórki po eventId.
+ *
+ * PlateReadWriteBuffer budzi relay po każdym zapisie z eventami, więc opóźnienie to zwykle jeden flush;
+ * POLL_INTERVAL_MS jest siatką bezpieczeństwa (np. wiersze zostawione przez inną replikę albo blokada zajęta przez nią).
+ */
+@Component
+public class OutboxRelay {
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private static final int BATCH_SIZE = 500;
+    private static final long POLL_INTERVAL_MS = 1000;
+    private static final long ERROR_BACKOFF_MS = 2000;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+
+    private final OutboxRepository outboxRepo;
+    private final OcrPublisher publisher;
+    private final TransactionTemplate transactionTemplate;
+    private final Thread relay;
+    private final Object signal = new Object();
+    private boolean signalled;
+    private volatile boolean running = true;
+
+    // Metryki (GET /ocr/stats/outbox)
+    private final AtomicLong publishedMessages = new AtomicLong();
+    private final AtomicLong publishedBatches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong lockBusy = new AtomicLong();
+    private volatile long lastBatchMillis;
+
+    public OutboxRelay(OutboxRepository outboxRepo, OcrPublisher publisher, TransactionTemplate transactionTemplate) {
+        this.outboxRepo = outboxRepo;
+        this.publisher = publisher;
+        this.transactionTemplate = transactionTemplate;
+        this.relay = new Thread(this::runRelay, "ocr-outbox-relay");
+        this.relay.setDaemon(true);
+        this.relay.start();
+        log.info("OutboxRelay started: batchSize={}, pollIntervalMs={}", BATCH_SIZE, POLL_INTERVAL_MS);
+    }
+
+    /**
+     * Sygnał, że w outboxie są nowe wiersze - relay nie czeka do końca POLL_INTERVAL_MS.
+     */
+    public void wakeUp() {
+        synchronized (signal) {
+            signalled = true;
+            signal.notifyAll();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("publishedMessages", publishedMessages.get());
+        stats.put("publishedBatches", publishedBatches.get());
+        stats.put("failedBatches", failedBatches.get());
+        stats.put("lockBusy", lockBusy.get());
+        stats.put("lastBatchMillis", lastBatchMillis);
+        try {
+            stats.put("pending", outboxRepo.countPending());
+        } catch (Exception e) {
+            stats.put("pending", "unavailable");
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Bez interrupt() - relay mógłby zostać przerwany w trakcie czekania na potwierdzenia
+        running = false;
+        wakeUp();
+        try {
+            relay.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runRelay() {
+        while (running) {
+            int relayed;
+            try {
+                relayed = relayBatch();
+            } catch (Exception e) {
+                failedBatches.incrementAndGet();
+                log.error("Failed to relay outbox batch - will retry: {}", e.getMessage(), e);
+                await(ERROR_BACKOFF_MS);
+                continue;
+            }
+            // Pełna paczka - w outboxie może być więcej, nie czekaj
+            if (relayed < BATCH_SIZE) {
+                await(POLL_INTERVAL_MS);
+            }
+        }
+        log.info("Outbox relay stopped: publishedMessages={}", publishedMessages.get());
+    }
+
+    private int relayBatch() {
+        Integer relayed = transactionTemplate.execute(status -> {
+            if (!outboxRepo.tryLockRelay()) {
+                lockBusy.incrementAndGet();
+                return 0;
+            }
+            List<OutboxMessage> batch = outboxRepo.lockPending(BATCH_SIZE);
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            long start = System.nanoTime();
+            publisher.publishOutbox(batch);
+            List<Long> ids = new ArrayList<>(batch.size());
+            for (OutboxMessage m : batch) {
+                ids.add(m.getOutboxId());
+            }
+            outboxRepo.deleteAll(ids);
+            lastBatchMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            return batch.size();
+        });
+        int count = relayed != null ? relayed : 0;
+        if (count > 0) {
+            publishedMessages.addAndGet(count);
+            publishedBatches.incrementAndGet();
+            log.debug("Relayed outbox batch: messages={}, millis={}", count, lastBatchMillis);
+        }
+        return count;
+    }
+
+    private void await(long millis) {
+        synchronized (signal) {
+            if (!signalled && running) {
+                try {
+                    signal.wait(millis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    running = false;
+                }
+            }
+            signalled = false;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.smartparking.ocr_service.model;
+
+/**
+ * Wiadomość czekająca w ocr_outbox na publikację (OutboxRelay).
+ * body to gotowe ciało wiadomości w formacie contentType (JSON albo GateEventCodec), typeId trafia do nagłówka __TypeId__.
+ */
+public class OutboxMessage {
+    private Long outboxId;
+    private String eventId;
+    private String exchange;
+    private String routingKey;
+    private String typeId;
+    private String contentType;
+    private byte[] body;
+
+    public Long getOutboxId() { return outboxId; }
+    public void setOutboxId(Long outboxId) { this.outboxId = outboxId; }
+    public String getEventId() { return eventId; }
+    public void setEventId(String eventId) { this.eventId = eventId; }
+    public String getExchange() { return exchange; }
+    public void setExchange(String exchange) { this.exchange = exchange; }
+    public String getRoutingKey() { return routingKey; }
+    public void setRoutingKey(String routingKey) { this.routingKey = routingKey; }
+    public String getTypeId() { return typeId; }
+    public void setTypeId(String typeId) { this.typeId = typeId; }
+    public String getContentType() { return contentType; }
+    public void setContentType(String contentType) { this.contentType = contentType; }
+    public byte[] getBody() { return body; }
+    public void setBody(byte[] body) { this.body = body; }
+}
@@ -0,0 +1,8 @@
+package com.smartparking.ocr_service.model;
+
+/**
+ * Odczyt tablicy razem z eventem wjazdu/wyjazdu zbudowanym z tego odczytu (null, gdy odczyt nie daje eventu).
+ * PlateReadRepository.saveWithGateEvents zapisuje oba w jednym zapytaniu, więc para nie może się rozjechać.
+ */
+public record PlateReadEntry(PlateRead read, OutboxMessage gateEvent) {
+}
@@ -0,0 +1,80 @@
+package com.smartparking.ocr_service.repo;
+
+import com.smartparking.ocr_service.model.OutboxMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Odczyt i sprzątanie ocr_outbox. Wiersze wstawia PlateReadRepository.saveWithGateEvents razem z odczytami plate_read.
+ */
+@Repository
+public class OutboxRepository {
+    // Klucz blokady doradczej relaya (wspólny dla wszystkich replik ocr-service)
+    private static final long RELAY_LOCK_KEY = 0x4F43524F55544258L;
+
+    private final JdbcTemplate jdbc;
+
+    public OutboxRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    private static final RowMapper<OutboxMessage> MAPPER = (rs, rowNum) -> {
+        OutboxMessage m = new OutboxMessage();
+        m.setOutboxId(rs.getLong("outbox_id"));
+        m.setEventId(rs.getString("event_id"));
+        m.setExchange(rs.getString("exchange"));
+        m.setRoutingKey(rs.getString("routing_key"));
+        m.setTypeId(rs.getString("type_id"));
+        m.setContentType(rs.getString("content_type"));
+        // JSON trzymany jako tekst (czytelny w psql), format binarny w body
+        byte[] body = rs.getBytes("body");
+        m.setBody(body != null ? body : rs.getString("payload").getBytes(StandardCharsets.UTF_8));
+        return m;
+    };
+
+    /**
+     * Blokada relaya do końca bieżącej transakcji. Paczki kilku replik publikowane równolegle mogłyby wyprzedzać się
+     * w kolejce shardu (np. wyjazd przed wjazdem tego samego parkingu), więc outbox opróżnia naraz tylko jedna replika.
+     * @return false, gdy paczkę przekazuje właśnie inna replika
+     */
+    public boolean tryLockRelay() {
+        Boolean locked = jdbc.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, RELAY_LOCK_KEY);
+        return Boolean.TRUE.equals(locked);
+    }
+
+    /**
+     * Najstarsze nieopublikowane wiadomości, zablokowane do końca bieżącej transakcji.
+     * Wywoływane pod tryLockRelay - kolejność outbox_id jest kolejnością publikacji.
+     */
+    public List<OutboxMessage> lockPending(int limit) {
+        return jdbc.query(
+                "SELECT outbox_id, event_id::text AS event_id, exchange, routing_key, type_id, content_type, payload, body " +
+                        "FROM ocr_outbox ORDER BY outbox_id LIMIT ? FOR UPDATE",
+                MAPPER,
+                limit
+        );
+    }
+
+    /**
+     * Usuwa wiadomości potwierdzone przez brokera.
+     */
+    public void deleteAll(List<Long> outboxIds) {
+        if (outboxIds.isEmpty()) {
+            return;
+        }
+        String ids = outboxIds.stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining(",", "{", "}"));
+        jdbc.update("DELETE FROM ocr_outbox WHERE outbox_id = ANY(CAST(? AS bigint[]))", ids);
+    }
+
+    public long countPending() {
+        Long count = jdbc.queryForObject("SELECT COUNT(*) FROM ocr_outbox", Long.class);
+        return count != null ? count : 0L;
+    }
+}
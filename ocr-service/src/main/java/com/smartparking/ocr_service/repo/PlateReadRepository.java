@@ -1,21 +1,28 @@
 package com.smartparking.ocr_service.repo;
 
+import com.smartparking.ocr_service.model.OutboxMessage;
 import com.smartparking.ocr_service.model.PlateRead;
+import com.smartparking.ocr_service.model.PlateReadEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
 import java.sql.ResultSet;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @Repository
 public class PlateReadRepository {
     private static final Logger log = LoggerFactory.getLogger(PlateReadRepository.class);
+    // 3 parametry na odczyt i 7 na wiadomość outboxa - daleko poniżej limitu 32767 parametrów PostgreSQL na zapytanie
+    private static final int INSERT_CHUNK_SIZE = 500;
     private final JdbcTemplate jdbc;
 
     public PlateReadRepository(JdbcTemplate jdbc) {
@@ -77,6 +84,90 @@ public class PlateReadRepository {
         }
     }
 
+    /**
+     * Zapisuje paczkę odczytów wielowierszowym INSERT (jedno zapytanie na 500 wierszy).
+     * Każde zapytanie jest atomowe, więc po DuplicateKeyException (rozjechana sekwencja) można je bezpiecznie
+     * powtórzyć po synchronizacji sekwencji - tak jak w save().
+     */
+    public void saveAll(List<PlateRead> reads) {
+        List<PlateReadEntry> entries = new ArrayList<>(reads.size());
+        for (PlateRead read : reads) {
+            entries.add(new PlateReadEntry(read, null));
+        }
+        saveWithGateEvents(entries);
+    }
+
+    /**
+     * Zapisuje odczyty razem z ich eventami wjazdu/wyjazdu (wiadomości outboxa).
+     * Oba INSERT-y idą w jednym zapytaniu (data-modifying CTE), więc odczyt i jego event zapisują się
+     * albo razem, albo wcale - bez jawnej transakcji, przez co ponowienie po synchronizacji sekwencji
+     * działa jak dotychczas. Paczki są dzielone po 500 odczytów, a każdy odczyt niesie w paczce swój event.
+     */
+    public void saveWithGateEvents(List<PlateReadEntry> entries) {
+        for (int from = 0; from < entries.size(); from += INSERT_CHUNK_SIZE) {
+            List<PlateReadEntry> chunk = entries.subList(from, Math.min(from + INSERT_CHUNK_SIZE, entries.size()));
+            List<PlateRead> reads = new ArrayList<>(chunk.size());
+            List<OutboxMessage> messages = new ArrayList<>();
+            for (PlateReadEntry entry : chunk) {
+                reads.add(entry.read());
+                if (entry.gateEvent() != null) {
+                    messages.add(entry.gateEvent());
+                }
+            }
+            insertChunk(reads, messages, 0);
+        }
+    }
+
+    private void insertChunk(List<PlateRead> reads, List<OutboxMessage> messages, int retryCount) {
+        if (retryCount > 2) {
+            log.error("Maximum retry count exceeded for plate_read batch save, throwing exception");
+            throw new IllegalStateException("Failed to save plate_read batch after multiple retry attempts - sequence synchronization may have failed");
+        }
+
+        StringBuilder sql = new StringBuilder();
+        List<Object> params = new ArrayList<>(reads.size() * 3 + messages.size() * 7);
+        if (!reads.isEmpty()) {
+            sql.append(messages.isEmpty() ? "" : "WITH plate_reads AS (");
+            sql.append("INSERT INTO plate_read(camera_id, raw_plate, event_time) VALUES ");
+            for (int i = 0; i < reads.size(); i++) {
+                PlateRead p = reads.get(i);
+                sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+                params.add(p.getCameraId());
+                params.add(p.getRawPlate());
+                params.add(java.sql.Timestamp.valueOf(p.getEventTime()));
+            }
+            sql.append(messages.isEmpty() ? "" : " RETURNING read_id) ");
+        }
+        if (!messages.isEmpty()) {
+            sql.append("INSERT INTO ocr_outbox(event_id, exchange, routing_key, type_id, content_type, payload, body) VALUES ");
+            for (int i = 0; i < messages.size(); i++) {
+                OutboxMessage m = messages.get(i);
+                boolean json = MessageProperties.CONTENT_TYPE_JSON.equals(m.getContentType());
+                sql.append(i == 0 ? "(CAST(? AS uuid), ?, ?, ?, ?, ?, CAST(? AS bytea))"
+                        : ", (CAST(? AS uuid), ?, ?, ?, ?, ?, CAST(? AS bytea))");
+                params.add(m.getEventId());
+                params.add(m.getExchange());
+                params.add(m.getRoutingKey());
+                params.add(m.getTypeId());
+                params.add(m.getContentType());
+                params.add(json ? new String(m.getBody(), StandardCharsets.UTF_8) : null);
+                params.add(json ? null : m.getBody());
+            }
+        }
+        if (params.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbc.update(sql.toString(), params.toArray());
+            log.debug("Saved plate_read batch: rows={}, outboxMessages={}", reads.size(), messages.size());
+        } catch (DuplicateKeyException e) {
+            log.warn("Duplicate key error in plate_read batch, synchronizing sequence and retrying (attempt {})", retryCount + 1);
+            synchronizeSequence();
+            insertChunk(reads, messages, retryCount + 1);
+        }
+    }
+
     private void synchronizeSequence() {
         try {
             Long maxId = jdbc.queryForObject(
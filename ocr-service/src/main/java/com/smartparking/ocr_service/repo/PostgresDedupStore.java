@@ -0,0 +1,107 @@
+package com.smartparking.ocr_service.repo;
+
+import com.smartparking.ocr_service.service.DedupStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Magazyn deduplikacji we wspólnej bazie - okno jest jedno dla wszystkich replik ocr-service
+ * (ocr.dedup.store=postgres).
+ *
+ * Tabela ocr_event_dedup jest UNLOGGED (bez WAL - utrata zawartości po awarii bazy oznacza tylko
+ * chwilowo puste okno). Sprawdzenie i rejestracja to jedno INSERT ... ON CONFLICT DO UPDATE ... WHERE:
+ * wiersz jest wstawiany lub odświeżany tylko gdy poprzedni event jest poza oknem, więc 0 zmienionych wierszy
+ * oznacza duplikat - również gdy dwie repliki dostaną ten sam odczyt w tej samej chwili.
+ */
+@Repository
+@ConditionalOnProperty(name = "ocr.dedup.store", havingValue = "postgres")
+public class PostgresDedupStore implements DedupStore {
+    private static final Logger log = LoggerFactory.getLogger(PostgresDedupStore.class);
+
+    private static final long CLEANUP_MARGIN_SECONDS = 60;
+
+    private static final String CHECK_AND_REGISTER_SQL =
+            "INSERT INTO ocr_event_dedup(plate, parking_id, direction, last_event_time) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (plate, parking_id, direction) DO UPDATE SET last_event_time = EXCLUDED.last_event_time " +
+            "WHERE ocr_event_dedup.last_event_time <= EXCLUDED.last_event_time - make_interval(secs => ?)";
+
+    private static final String REGISTER_SQL =
+            "INSERT INTO ocr_event_dedup(plate, parking_id, direction, last_event_time) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (plate, parking_id, direction) DO UPDATE SET last_event_time = EXCLUDED.last_event_time";
+
+    private static final String RELEASE_SQL =
+            "DELETE FROM ocr_event_dedup WHERE plate = ? AND parking_id = ? AND direction = ? AND last_event_time = ?";
+
+    private final JdbcTemplate jdbc;
+    private final int windowSeconds;
+
+    // Executor do czyszczenia starych wpisów
+    private final ScheduledExecutorService cleanupExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "event-dedup-cleanup");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public PostgresDedupStore(JdbcTemplate jdbc, @Value("${ocr.dedup.window-seconds:60}") int windowSeconds) {
+        this.jdbc = jdbc;
+        this.windowSeconds = windowSeconds;
+        cleanupExecutor.scheduleAtFixedRate(this::cleanupOldEntries, 1, 1, TimeUnit.MINUTES);
+        log.info("Postgres dedup store initialized with window={} seconds", windowSeconds);
+    }
+
+    @Override
+    public boolean checkAndRegister(String plate, long parkingId, String direction, Instant eventTime) {
+        int changed = jdbc.update(CHECK_AND_REGISTER_SQL,
+                plate.toUpperCase().trim(), parkingId, direction.toLowerCase().trim(),
+                Timestamp.from(eventTime), windowSeconds);
+        return changed == 0;
+    }
+
+    @Override
+    public void register(String plate, long parkingId, String direction, Instant eventTime) {
+        jdbc.update(REGISTER_SQL,
+                plate.toUpperCase().trim(), parkingId, direction.toLowerCase().trim(), Timestamp.from(eventTime));
+    }
+
+    @Override
+    public void release(String plate, long parkingId, String direction, Instant eventTime) {
+        jdbc.update(RELEASE_SQL,
+                plate.toUpperCase().trim(), parkingId, direction.toLowerCase().trim(), Timestamp.from(eventTime));
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("store", "postgres");
+        stats.put("recentEventsCount", jdbc.queryForObject("SELECT COUNT(*) FROM ocr_event_dedup", Long.class));
+        return stats;
+    }
+
+    /**
+     * Usuwa wpisy starsze niż okno + margines. Każda replika robi to samo - DELETE jest idempotentny.
+     */
+    private void cleanupOldEntries() {
+        try {
+            int deleted = jdbc.update(
+                    "DELETE FROM ocr_event_dedup WHERE last_event_time < now() - make_interval(secs => ?)",
+                    windowSeconds + CLEANUP_MARGIN_SECONDS);
+            if (deleted > 0) {
+                log.debug("Cleaned up {} old dedup entries", deleted);
+            }
+        } catch (Exception e) {
+            log.error("Failed to clean up ocr_event_dedup: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.smartparking.ocr_service.service;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Magazyn okna deduplikacji eventów OCR używany przez EventDeduplicationService.
+ * Implementację wybiera ocr.dedup.store: memory (InMemoryDedupStore, jedna instancja)
+ * lub postgres (PostgresDedupStore, wspólne okno dla wielu replik ocr-service).
+ */
+public interface DedupStore {
+
+    /**
+     * Atomowo sprawdza i rejestruje event: jeśli ten sam klucz (tablica, parking, kierunek) był widziany
+     * mniej niż okno deduplikacji wcześniej, zwraca true i niczego nie zmienia; w przeciwnym razie zapisuje
+     * czas eventu i zwraca false.
+     */
+    boolean checkAndRegister(String plate, long parkingId, String direction, Instant eventTime);
+
+    /**
+     * Zapisuje czas eventu bez sprawdzania okna.
+     */
+    void register(String plate, long parkingId, String direction, Instant eventTime);
+
+    /**
+     * Cofa rejestrację eventu (np. gdy jego zapis w bazie się nie udał i kamera ponowi odczyt).
+     * Usuwa wpis tylko jeśli nadal trzyma czas tego eventu - nowszej rejestracji tego samego klucza nie rusza.
+     */
+    void release(String plate, long parkingId, String direction, Instant eventTime);
+
+    /**
+     * Statystyki dla monitoringu (GET /ocr/stats/dedup).
+     */
+    Map<String, Object> stats();
+}
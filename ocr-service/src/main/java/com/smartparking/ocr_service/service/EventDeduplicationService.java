@@ -2,46 +2,42 @@ package com.smartparking.ocr_service.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Serwis deduplikacji eventów OCR w oknie czasowym.
  * Zapobiega przetwarzaniu tego samego eventu wjazdu/wyjazdu wielokrotnie
- * w krótkim przedziale czasu (np. 60 sekund).
+ * w krótkim przedziale czasu (domyślnie 60 sekund, ocr.dedup.window-seconds).
+ *
+ * Okno trzyma DedupStore: w pamięci dla jednej instancji albo w Postgresie,
+ * gdy kilka replik ocr-service stoi za load balancerem (ocr.dedup.store).
  */
 @Service
 public class EventDeduplicationService {
     private static final Logger log = LoggerFactory.getLogger(EventDeduplicationService.class);
-    
-    // Okno czasowe deduplikacji w sekundach (60 sekund)
-    private static final int DEDUPLICATION_WINDOW_SECONDS = 60;
-    
-    // Mapa przechowująca klucze ostatnich eventów: "plate|parkingId|direction" -> timestamp
-    private final ConcurrentHashMap<String, Instant> recentEvents = new ConcurrentHashMap<>();
-    
-    // Executor do czyszczenia starych wpisów
-    private final ScheduledExecutorService cleanupExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
-        Thread t = new Thread(r, "event-dedup-cleanup");
-        t.setDaemon(true);
-        return t;
-    });
-    
-    public EventDeduplicationService() {
-        // Co 2 minuty czyść stare wpisy (starsze niż okno deduplikacji)
-        cleanupExecutor.scheduleAtFixedRate(this::cleanupOldEntries, 2, 2, TimeUnit.MINUTES);
-        log.info("EventDeduplicationService initialized with window={} seconds", DEDUPLICATION_WINDOW_SECONDS);
+
+    private final DedupStore store;
+    private final int windowSeconds;
+
+    public EventDeduplicationService(DedupStore store,
+                                     @Value("${ocr.dedup.window-seconds:60}") int windowSeconds) {
+        if (windowSeconds <= 0) {
+            throw new IllegalArgumentException("ocr.dedup.window-seconds must be positive");
+        }
+        this.store = store;
+        this.windowSeconds = windowSeconds;
+        log.info("EventDeduplicationService initialized with window={} seconds, store={}",
+            windowSeconds, store.getClass().getSimpleName());
     }
-    
+
     /**
-     * Sprawdza czy event jest duplikatem.
-     * 
+     * Sprawdza czy event jest duplikatem i - jeśli nie jest - od razu go rejestruje (jedna atomowa operacja).
+     *
      * @param plate Tablica rejestracyjna
      * @param parkingId ID parkingu
      * @param direction Kierunek ("entry" lub "exit")
@@ -52,78 +48,46 @@ public class EventDeduplicationService {
         if (plate == null || parkingId == null || direction == null) {
             return false; // Nieprawidłowe dane - przepuść event
         }
-        
-        String normalizedPlate = plate.toUpperCase().trim();
-        String normalizedDirection = direction.toLowerCase().trim();
-        
-        // Klucz: plate|parkingId|direction
-        String eventKey = String.format("%s|%d|%s", normalizedPlate, parkingId, normalizedDirection);
-        
-        Instant now = timestamp != null ? timestamp : Instant.now();
-        Instant lastEventTime = recentEvents.get(eventKey);
-        
-        if (lastEventTime != null) {
-            long secondsBetween = ChronoUnit.SECONDS.between(lastEventTime, now);
-            
-            if (secondsBetween < DEDUPLICATION_WINDOW_SECONDS) {
-                log.warn("DUPLICATE EVENT DETECTED: plate={}, parkingId={}, direction={}, " +
-                        "secondsSinceLastEvent={}, window={}s - EVENT REJECTED",
-                    normalizedPlate, parkingId, normalizedDirection, secondsBetween, DEDUPLICATION_WINDOW_SECONDS);
-                return true; // To jest duplikat
-            } else {
-                // Stary wpis, ale w oknie czasowym - aktualizuj czas
-                recentEvents.put(eventKey, now);
-                log.debug("Event re-registered: plate={}, parkingId={}, direction={}, secondsSinceLastEvent={}",
-                    normalizedPlate, parkingId, normalizedDirection, secondsBetween);
-                return false;
-            }
-        } else {
-            // Pierwszy event z tym kluczem - zapisz i przepuść
-            recentEvents.put(eventKey, now);
-            log.debug("New event registered: plate={}, parkingId={}, direction={}",
-                normalizedPlate, parkingId, normalizedDirection);
-            return false; // To nie jest duplikat
+
+        Instant eventTime = timestamp != null ? timestamp : Instant.now();
+        boolean duplicate = store.checkAndRegister(plate, parkingId, direction, eventTime);
+        if (duplicate) {
+            log.warn("DUPLICATE EVENT DETECTED: plate={}, parkingId={}, direction={}, window={}s - EVENT REJECTED",
+                plate, parkingId, direction, windowSeconds);
         }
+        return duplicate;
     }
-    
+
     /**
      * Rejestruje event (używane gdy event został przetworzony).
-     * To jest pomocnicza metoda - główna logika jest w isDuplicate().
+     * To jest pomocnicza metoda - isDuplicate() rejestruje event sam.
      */
     public void registerEvent(String plate, Long parkingId, String direction, Instant timestamp) {
         if (plate == null || parkingId == null || direction == null) {
             return;
         }
-        
-        String normalizedPlate = plate.toUpperCase().trim();
-        String normalizedDirection = direction.toLowerCase().trim();
-        String eventKey = String.format("%s|%d|%s", normalizedPlate, parkingId, normalizedDirection);
-        
-        Instant now = timestamp != null ? timestamp : Instant.now();
-        recentEvents.put(eventKey, now);
+        store.register(plate, parkingId, direction, timestamp != null ? timestamp : Instant.now());
     }
-    
+
     /**
-     * Czyści stare wpisy z mapy (starsze niż okno deduplikacji + margines).
+     * Cofa rejestrację z isDuplicate(), gdy event nie został zapisany - ponowiony przez kamerę odczyt
+     * nie może wtedy zostać odrzucony jako duplikat. Timestamp musi być ten sam co przy isDuplicate().
      */
-    private void cleanupOldEntries() {
-        Instant cutoffTime = Instant.now().minus(DEDUPLICATION_WINDOW_SECONDS + 60, ChronoUnit.SECONDS);
-        int beforeSize = recentEvents.size();
-        
-        recentEvents.entrySet().removeIf(entry -> entry.getValue().isBefore(cutoffTime));
-        
-        int afterSize = recentEvents.size();
-        if (beforeSize > afterSize) {
-            log.debug("Cleaned up {} old event entries (before: {}, after: {})",
-                beforeSize - afterSize, beforeSize, afterSize);
+    public void release(String plate, Long parkingId, String direction, Instant timestamp) {
+        if (plate == null || parkingId == null || direction == null || timestamp == null) {
+            return;
         }
+        store.release(plate, parkingId, direction, timestamp);
+        log.info("Dedup registration released after failed store: plate={}, parkingId={}, direction={}",
+            plate, parkingId, direction);
     }
-    
+
     /**
      * Zwraca statystyki dla monitoringu.
      */
-    public int getRecentEventsCount() {
-        return recentEvents.size();
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>(store.stats());
+        stats.put("deduplicationWindowSeconds", windowSeconds);
+        return stats;
     }
 }
-
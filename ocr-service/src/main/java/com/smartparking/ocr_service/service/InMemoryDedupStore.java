@@ -0,0 +1,298 @@
+package com.smartparking.ocr_service.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Magazyn deduplikacji w pamięci JVM - dla wdrożeń z jedną instancją ocr-service (ocr.dedup.store=memory, domyślnie).
+ *
+ * Klucz (tablica, parking, kierunek) jest haszowany do 64 bitów bez budowania Stringa. Dolne bity wybierają
+ * slot w tablicy AtomicLongArray, górne 32 bity to odcisk klucza zapisany w slocie razem z czasem eventu
+ * (sekundy epoki) - sprawdzenie i rejestracja to jeden compareAndSet na slocie, więc dwa równoległe
+ * duplikaty nie mogą oba przejść.
+ *
+ * Każdy klucz ma dokładnie jeden slot. Kolizja z innym żywym kluczem nadpisuje starszy wpis (licznik evictions) -
+ * przy rozmiarze tablicy dużo większym niż liczba eventów w oknie zdarza się rzadko, a skutkiem jest najwyżej
+ * przepuszczony duplikat, który parking-service i tak odrzuca przy tworzeniu sesji.
+ *
+ * Wygasanie obsługuje haszowane koło czasowe (tick = 1 s): przy rejestracji slot trafia do kubełka
+ * tick + okno + margines, a wątek sprzątający co sekundę czyści tylko sloty z bieżącego kubełka,
+ * zamiast skanować całą mapę. Termin liczy się od zegara ściennego w chwili rejestracji, nie od czasu eventu -
+ * event z kamery z zegarem w przyszłości też zostanie wyczyszczony, zamiast zostać w tablicy na zawsze.
+ */
+@Component
+@ConditionalOnProperty(name = "ocr.dedup.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryDedupStore implements DedupStore {
+    private static final Logger log = LoggerFactory.getLogger(InMemoryDedupStore.class);
+
+    private static final int TABLE_SIZE = 1 << 16;          // 65536 slotów = 512 KB, indeks mieści się w 16 bitach wpisu koła
+    private static final int BUCKET_CAPACITY = 4096;         // rejestracji na sekundę w jednym kubełku koła
+    private static final long CLEANUP_MARGIN_SECONDS = 60;   // jak wcześniej: czyść wpisy starsze niż okno + 60 s
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int windowSeconds;
+
+    // Slot: [32 bity odcisku klucza | 32 bity czasu eventu w sekundach epoki], 0 = pusty
+    private final AtomicLongArray slots = new AtomicLongArray(TABLE_SIZE);
+    private final AtomicInteger liveEntries = new AtomicInteger();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong wheelOverflows = new AtomicLong();
+
+    // Koło czasowe: kubełek = wpisy [16 bitów indeksu slotu | 16 dolnych bitów czasu eventu] do sprawdzenia w danej sekundzie
+    private final int wheelMask;
+    private final AtomicIntegerArray[] wheelSlots;
+    private final AtomicInteger[] wheelCounts;
+    private final long expiryDelaySeconds;
+    private final LongSupplier clockMillis;
+    private long lastProcessedTick;
+
+    // Executor do czyszczenia starych wpisów
+    private final ScheduledExecutorService cleanupExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "event-dedup-cleanup");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @Autowired
+    public InMemoryDedupStore(@Value("${ocr.dedup.window-seconds:60}") int windowSeconds) {
+        this(windowSeconds, System::currentTimeMillis, true);
+    }
+
+    /**
+     * Zegar i harmonogram sprzątania do podmiany w testach (InMemoryDedupStoreTest przesuwa czas ręcznie
+     * i sam wywołuje cleanupOldEntries).
+     */
+    InMemoryDedupStore(int windowSeconds, LongSupplier clockMillis, boolean scheduleCleanup) {
+        if (windowSeconds <= 0) {
+            throw new IllegalArgumentException("ocr.dedup.window-seconds must be positive");
+        }
+        this.windowSeconds = windowSeconds;
+        this.clockMillis = clockMillis;
+        this.expiryDelaySeconds = windowSeconds + CLEANUP_MARGIN_SECONDS;
+
+        // Koło musi być dłuższe niż opóźnienie wygaśnięcia, żeby nowe wpisy nie trafiały do czyszczonego kubełka
+        int wheelSize = Integer.highestOneBit((int) expiryDelaySeconds + 2) << 1;
+        this.wheelMask = wheelSize - 1;
+        this.wheelSlots = new AtomicIntegerArray[wheelSize];
+        this.wheelCounts = new AtomicInteger[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheelSlots[i] = new AtomicIntegerArray(BUCKET_CAPACITY);
+            wheelCounts[i] = new AtomicInteger();
+        }
+        this.lastProcessedTick = currentTick();
+
+        // Co sekundę przesuń koło i wyczyść wygasłe sloty
+        if (scheduleCleanup) {
+            cleanupExecutor.scheduleAtFixedRate(this::cleanupOldEntries, 1, 1, TimeUnit.SECONDS);
+        }
+        log.info("In-memory dedup store initialized with window={} seconds, slots={}, wheelSize={}",
+            windowSeconds, TABLE_SIZE, wheelSize);
+    }
+
+    @Override
+    public boolean checkAndRegister(String plate, long parkingId, String direction, Instant eventTime) {
+        long hash = keyHash(plate, parkingId, direction);
+        int index = slotIndex(hash);
+        long fingerprint = fingerprint(hash);
+        long eventSecond = eventTime.getEpochSecond();
+        long updated = pack(fingerprint, eventSecond);
+
+        while (true) {
+            long current = slots.get(index);
+            if (current != 0 && fingerprintOf(current) == fingerprint) {
+                long secondsBetween = eventSecond - secondOf(current);
+                if (secondsBetween < windowSeconds) {
+                    return true; // To jest duplikat
+                }
+                // Poprzedni event spoza okna - odśwież czas
+                if (slots.compareAndSet(index, current, updated)) {
+                    scheduleExpiry(index, eventSecond);
+                    return false;
+                }
+            } else if (slots.compareAndSet(index, current, updated)) {
+                // Pierwszy event z tym kluczem (lub nadpisanie kolidującego klucza)
+                onSlotClaimed(current);
+                scheduleExpiry(index, eventSecond);
+                return false; // To nie jest duplikat
+            }
+            // Przegrany compareAndSet - ktoś zmienił slot, sprawdź ponownie
+        }
+    }
+
+    @Override
+    public void register(String plate, long parkingId, String direction, Instant eventTime) {
+        long hash = keyHash(plate, parkingId, direction);
+        int index = slotIndex(hash);
+        long fingerprint = fingerprint(hash);
+        long eventSecond = eventTime.getEpochSecond();
+        long updated = pack(fingerprint, eventSecond);
+
+        while (true) {
+            long current = slots.get(index);
+            if (current == updated) {
+                return;
+            }
+            if (slots.compareAndSet(index, current, updated)) {
+                if (current == 0 || fingerprintOf(current) != fingerprint) {
+                    onSlotClaimed(current);
+                }
+                scheduleExpiry(index, eventSecond);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void release(String plate, long parkingId, String direction, Instant eventTime) {
+        long hash = keyHash(plate, parkingId, direction);
+        int index = slotIndex(hash);
+        // Wpis w kole czasowym zostaje - przy czyszczeniu pusty slot jest pomijany
+        if (slots.compareAndSet(index, pack(fingerprint(hash), eventTime.getEpochSecond()), 0L)) {
+            liveEntries.decrementAndGet();
+        }
+    }
+
+    /**
+     * Przesuwa koło czasowe do bieżącej sekundy i czyści sloty zarejestrowane okno + margines sekund temu.
+     * Sloty odświeżone po zaplanowaniu są pomijane (mają inny czas eventu) - wygaśnie je ich własny wpis w kole.
+     */
+    void cleanupOldEntries() {
+        try {
+            long now = currentTick();
+            int cleaned = 0;
+            while (lastProcessedTick < now) {
+                lastProcessedTick++;
+                cleaned += expireBucket((int) (lastProcessedTick & wheelMask));
+            }
+            if (cleaned > 0) {
+                log.debug("Cleaned up {} old event entries (live: {})", cleaned, liveEntries.get());
+            }
+        } catch (Exception e) {
+            log.error("Event deduplication cleanup failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private int expireBucket(int bucket) {
+        AtomicInteger count = wheelCounts[bucket];
+        AtomicIntegerArray indices = wheelSlots[bucket];
+        int size = Math.min(count.get(), BUCKET_CAPACITY);
+        int cleaned = 0;
+        for (int i = 0; i < size; i++) {
+            int entry = indices.get(i);
+            int index = entry >>> 16;
+            long current = slots.get(index);
+            if (current != 0 && (secondOf(current) & 0xFFFF) == (entry & 0xFFFF)
+                    && slots.compareAndSet(index, current, 0L)) {
+                liveEntries.decrementAndGet();
+                cleaned++;
+            }
+        }
+        count.set(0);
+        return cleaned;
+    }
+
+    private void scheduleExpiry(int index, long eventSecond) {
+        int bucket = (int) ((currentTick() + expiryDelaySeconds) & wheelMask);
+        int position = wheelCounts[bucket].getAndIncrement();
+        if (position < BUCKET_CAPACITY) {
+            // Dolne bity czasu eventu odróżniają tę rejestrację od późniejszego odświeżenia tego samego slotu
+            wheelSlots[bucket].set(position, (index << 16) | (int) (eventSecond & 0xFFFF));
+        } else {
+            // Kubełek pełny - slot zostanie nadpisany przy kolejnym evencie z tym samym indeksem
+            wheelOverflows.incrementAndGet();
+        }
+    }
+
+    private void onSlotClaimed(long previous) {
+        if (previous == 0) {
+            liveEntries.incrementAndGet();
+        } else {
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * FNV-1a po znormalizowanej tablicy (trim + uppercase) i kierunku (lowercase), wymieszany z parkingId.
+     * Normalizacja znak po znaku - bez tworzenia nowych Stringów.
+     */
+    static long keyHash(String plate, long parkingId, String direction) {
+        long h = FNV_OFFSET;
+        int start = 0;
+        int end = plate.length();
+        while (start < end && Character.isWhitespace(plate.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(plate.charAt(end - 1))) end--;
+        for (int i = start; i < end; i++) {
+            h = (h ^ Character.toUpperCase(plate.charAt(i))) * FNV_PRIME;
+        }
+        h = (h ^ '|') * FNV_PRIME;
+        start = 0;
+        end = direction.length();
+        while (start < end && Character.isWhitespace(direction.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(direction.charAt(end - 1))) end--;
+        for (int i = start; i < end; i++) {
+            h = (h ^ Character.toLowerCase(direction.charAt(i))) * FNV_PRIME;
+        }
+        return mix(h ^ mix(parkingId));
+    }
+
+    // Finalizer SplitMix64 - rozprasza bity, żeby dolne (indeks slotu) i górne (odcisk) były niezależne
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // Indeks slotu i odcisk klucza - widoczność pakietowa na potrzeby testów kolizji
+    static int slotIndex(long hash) {
+        return (int) hash & (TABLE_SIZE - 1);
+    }
+
+    static long fingerprint(long hash) {
+        long fp = hash >>> 32;
+        return fp != 0 ? fp : 1; // 0 zarezerwowane dla pustego slotu
+    }
+
+    private static long pack(long fingerprint, long epochSecond) {
+        return (fingerprint << 32) | (epochSecond & 0xFFFFFFFFL);
+    }
+
+    private static long fingerprintOf(long slot) {
+        return slot >>> 32;
+    }
+
+    private static long secondOf(long slot) {
+        return slot & 0xFFFFFFFFL;
+    }
+
+    private long currentTick() {
+        return clockMillis.getAsLong() / 1000;
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("store", "memory");
+        stats.put("recentEventsCount", liveEntries.get());
+        stats.put("evictions", evictions.get());
+        stats.put("wheelOverflows", wheelOverflows.get());
+        return stats;
+    }
+}
@@ -0,0 +1,230 @@
+package com.smartparking.ocr_service.service;
+
+import com.smartparking.ocr_service.messaging.OutboxRelay;
+import com.smartparking.ocr_service.model.PlateRead;
+import com.smartparking.ocr_service.model.PlateReadEntry;
+import com.smartparking.ocr_service.repo.PlateReadRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Zapis odczytów do plate_read i ocr_outbox.
+ *
+ * Odczyty bez eventu wjazdu/wyjazdu idą przez bufor write-behind: webhook kamery wrzuca odczyt do ograniczonej
+ * kolejki w pamięci, zamiast czekać na INSERT, a wątek w tle zapisuje paczki (PlateReadRepository.saveAll),
+ * gdy uzbiera się FLUSH_BATCH_SIZE odczytów albo minie FLUSH_INTERVAL_MS od pierwszego odczytu w paczce.
+ * Przy pełnej kolejce webhook czeka do OFFER_TIMEOUT_MS (backpressure), a potem zapisuje odczyt synchronicznie.
+ * Nieudany zapis paczki jest ponawiany FLUSH_ATTEMPTS razy; przy zamykaniu aplikacji kolejka jest opróżniana do bazy.
+ *
+ * Odczyty z eventem wjazdu/wyjazdu nigdy nie trafiają do kolejki - storeWithGateEvents zapisuje je (plate_read
+ * + ocr_outbox w jednym zapytaniu) w wątku webhooka, zanim kamera dostanie odpowiedź, i budzi OutboxRelay.
+ * Awaria procesu lub bazy nie może więc zgubić eventu, który kamera uważa za przyjęty.
+ */
+@Service
+public class PlateReadWriteBuffer {
+    private static final Logger log = LoggerFactory.getLogger(PlateReadWriteBuffer.class);
+
+    private static final int CAPACITY = 10_000;
+    private static final int FLUSH_BATCH_SIZE = 500;
+    private static final long FLUSH_INTERVAL_MS = 100;
+    private static final long OFFER_TIMEOUT_MS = 500;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+    private static final int FLUSH_ATTEMPTS = 3;
+    private static final long FLUSH_RETRY_BACKOFF_MS = 200;
+
+    private final PlateReadRepository repo;
+    private final OutboxRelay outboxRelay;
+    private final BlockingQueue<PlateRead> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    // Metryki (GET /ocr/stats/plate-reads)
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+    private final AtomicLong synchronousFallbacks = new AtomicLong();
+    private final AtomicLong gateEventsStored = new AtomicLong();
+    private final AtomicLong gateEventStoreFailures = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushNanosTotal = new AtomicLong();
+    private volatile long lastFlushMillis;
+    private volatile long maxFlushMillis;
+
+    public PlateReadWriteBuffer(PlateReadRepository repo, OutboxRelay outboxRelay) {
+        this.repo = repo;
+        this.outboxRelay = outboxRelay;
+        this.flusher = new Thread(this::runFlusher, "plate-read-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+        log.info("PlateReadWriteBuffer started: capacity={}, batchSize={}, intervalMs={}",
+                CAPACITY, FLUSH_BATCH_SIZE, FLUSH_INTERVAL_MS);
+    }
+
+    /**
+     * Dodaje odczyt bez eventu wjazdu/wyjazdu do kolejki zapisu. Blokuje najwyżej OFFER_TIMEOUT_MS gdy kolejka
+     * jest pełna, potem zapisuje odczyt bezpośrednio (wyjątek z bazy leci wtedy do wywołującego).
+     */
+    public void submit(PlateRead read) {
+        if (!running) {
+            repo.saveAll(List.of(read));
+            return;
+        }
+        boolean queued;
+        try {
+            queued = queue.offer(read, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            synchronousFallbacks.incrementAndGet();
+            log.warn("Plate read buffer full (depth={}), saving synchronously: plate={}", queue.size(), read.getRawPlate());
+            repo.saveAll(List.of(read));
+        }
+    }
+
+    /**
+     * Zapisuje synchronicznie odczyty razem z ich eventami wjazdu/wyjazdu, w paczkach po FLUSH_BATCH_SIZE
+     * (każda paczka to jedno atomowe zapytanie). Zatrzymuje się na pierwszej nieudanej paczce.
+     * @return liczba zapisanych wpisów - zawsze początek listy; wpisy od tego indeksu nie zostały zapisane
+     */
+    public int storeWithGateEvents(List<PlateReadEntry> entries) {
+        int stored = 0;
+        try {
+            while (stored < entries.size()) {
+                int end = Math.min(stored + FLUSH_BATCH_SIZE, entries.size());
+                repo.saveWithGateEvents(entries.subList(stored, end));
+                stored = end;
+            }
+        } catch (Exception e) {
+            gateEventStoreFailures.addAndGet(entries.size() - stored);
+            log.error("Failed to store plate reads with gate events: stored={}, failed={}",
+                    stored, entries.size() - stored, e);
+        }
+        if (stored > 0) {
+            gateEventsStored.addAndGet(stored);
+            outboxRelay.wakeUp();
+        }
+        return stored;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        long flushes = flushCount.get();
+        stats.put("queueDepth", queue.size());
+        stats.put("queueCapacity", CAPACITY);
+        stats.put("flushedRows", flushedRows.get());
+        stats.put("failedRows", failedRows.get());
+        stats.put("synchronousFallbacks", synchronousFallbacks.get());
+        stats.put("gateEventsStored", gateEventsStored.get());
+        stats.put("gateEventStoreFailures", gateEventStoreFailures.get());
+        stats.put("flushCount", flushes);
+        stats.put("lastFlushMillis", lastFlushMillis);
+        stats.put("maxFlushMillis", maxFlushMillis);
+        stats.put("avgFlushMillis", flushes > 0 ? flushNanosTotal.get() / flushes / 1_000_000.0 : 0.0);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Bez interrupt() - flusher mógłby zostać przerwany w trakcie zapisu JDBC; zauważy flagę najpóźniej po 1 s
+        running = false;
+        try {
+            flusher.join(SHUTDOWN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            log.warn("Plate read flusher did not stop in {} ms, {} reads left in buffer", SHUTDOWN_TIMEOUT_MS, queue.size());
+        }
+    }
+
+    private void runFlusher() {
+        List<PlateRead> batch = new ArrayList<>(FLUSH_BATCH_SIZE);
+        while (running) {
+            try {
+                PlateRead first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS);
+                while (batch.size() < FLUSH_BATCH_SIZE) {
+                    queue.drainTo(batch, FLUSH_BATCH_SIZE - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= FLUSH_BATCH_SIZE || remaining <= 0) {
+                        break;
+                    }
+                    PlateRead next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            flush(batch);
+        }
+
+        // Opróżnij kolejkę przy zamykaniu
+        while (queue.drainTo(batch, FLUSH_BATCH_SIZE) > 0) {
+            flush(batch);
+        }
+        log.info("Plate read flusher stopped: flushedRows={}, failedRows={}", flushedRows.get(), failedRows.get());
+    }
+
+    private void flush(List<PlateRead> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    repo.saveAll(batch);
+                    break;
+                } catch (Exception e) {
+                    if (attempt >= FLUSH_ATTEMPTS) {
+                        throw e;
+                    }
+                    log.warn("Failed to flush plate_read batch (attempt {}), retrying: {}", attempt, e.getMessage());
+                    sleepQuietly(FLUSH_RETRY_BACKOFF_MS * attempt);
+                }
+            }
+            flushedRows.addAndGet(batch.size());
+        } catch (Exception e) {
+            // Paczka trzyma tylko odczyty bez eventów - eventy wjazdu/wyjazdu są już w ocr_outbox
+            failedRows.addAndGet(batch.size());
+            log.error("Failed to flush plate_read batch: rows={}", batch.size(), e);
+        } finally {
+            long elapsedNanos = System.nanoTime() - start;
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+            flushCount.incrementAndGet();
+            flushNanosTotal.addAndGet(elapsedNanos);
+            lastFlushMillis = elapsedMillis;
+            if (elapsedMillis > maxFlushMillis) {
+                maxFlushMillis = elapsedMillis;
+            }
+            batch.clear();
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.smartparking.ocr_service.repo;
+
+import com.smartparking.ocr_service.service.EventDeduplicationService;
+import com.smartparking.ocr_service.support.OcrDb;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Dwie "repliki" ocr-service (osobne pule połączeń, PostgresDedupStore i EventDeduplicationService)
+ * na jednej bazie ocr_db - ten sam odczyt przez load balancer może trafić do dowolnej z nich
+ * i ma przejść dokładnie raz.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class PostgresDedupStoreTwoInstanceTest {
+
+    private static final int WINDOW_SECONDS = 60;
+    private static final int THREADS_PER_INSTANCE = 8;
+
+    private static HikariDataSource dataSourceA;
+    private static HikariDataSource dataSourceB;
+    private static EventDeduplicationService instanceA;
+    private static EventDeduplicationService instanceB;
+
+    @BeforeAll
+    static void setUp() {
+        dataSourceA = OcrDb.dataSource(THREADS_PER_INSTANCE);
+        dataSourceB = OcrDb.dataSource(THREADS_PER_INSTANCE);
+        instanceA = new EventDeduplicationService(
+                new PostgresDedupStore(new JdbcTemplate(dataSourceA), WINDOW_SECONDS), WINDOW_SECONDS);
+        instanceB = new EventDeduplicationService(
+                new PostgresDedupStore(new JdbcTemplate(dataSourceB), WINDOW_SECONDS), WINDOW_SECONDS);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        dataSourceA.close();
+        dataSourceB.close();
+    }
+
+    @BeforeEach
+    void clearWindow() {
+        new JdbcTemplate(dataSourceA).update("DELETE FROM ocr_event_dedup");
+    }
+
+    @Test
+    void retryOnOtherInstanceIsDuplicateUntilWindowPasses() {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+
+        assertFalse(instanceA.isDuplicate("WA12345", 1L, "entry", now));
+        assertTrue(instanceB.isDuplicate("wa12345 ", 1L, "ENTRY", now.plusSeconds(5)));
+        assertFalse(instanceB.isDuplicate("WA12345", 1L, "exit", now.plusSeconds(5)));
+        assertFalse(instanceB.isDuplicate("WA12345", 1L, "entry", now.plusSeconds(WINDOW_SECONDS)));
+        assertTrue(instanceA.isDuplicate("WA12345", 1L, "entry", now.plusSeconds(WINDOW_SECONDS + 1)));
+    }
+
+    @Test
+    void releasedEventCanBeRetriedOnOtherInstance() {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+
+        assertFalse(instanceA.isDuplicate("GD4242", 1L, "exit", now));
+        // Zapis odczytu na replice A się nie udał - kamera ponawia przez replikę B
+        instanceA.release("GD4242", 1L, "exit", now);
+        assertFalse(instanceB.isDuplicate("GD4242", 1L, "exit", now));
+        // Zwolnienie ze starym czasem nie usuwa nowszej rejestracji
+        instanceA.release("GD4242", 1L, "exit", now.minusSeconds(1));
+        assertTrue(instanceA.isDuplicate("GD4242", 1L, "exit", now.plusSeconds(1)));
+    }
+
+    @Test
+    void sameReadOnBothInstancesAtOncePassesExactlyOnce() throws Exception {
+        Instant now = Instant.now();
+        ExecutorService pool = Executors.newFixedThreadPool(2 * THREADS_PER_INSTANCE);
+        try {
+            for (int round = 0; round < 100; round++) {
+                String plate = "RACE" + round;
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int t = 0; t < 2 * THREADS_PER_INSTANCE; t++) {
+                    EventDeduplicationService instance = t % 2 == 0 ? instanceA : instanceB;
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        return instance.isDuplicate(plate, 2L, "entry", now);
+                    }));
+                }
+                start.countDown();
+                assertEquals(1, countAccepted(results), "Round " + round + ": read accepted more than once");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void mixedTrafficAcrossInstancesAcceptsEachReadOnce() throws Exception {
+        int plates = 500;
+        int copiesPerRead = 3; // kamera ponawia, druga kamera widzi ten sam pojazd
+        Instant now = Instant.now();
+
+        List<String> reads = new ArrayList<>();
+        for (int i = 0; i < plates; i++) {
+            for (int c = 0; c < copiesPerRead; c++) {
+                reads.add("MIX" + i);
+            }
+        }
+        Collections.shuffle(reads);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2 * THREADS_PER_INSTANCE);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (String plate : reads) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    // Load balancer - losowa replika
+                    EventDeduplicationService instance = ThreadLocalRandom.current().nextBoolean() ? instanceA : instanceB;
+                    return instance.isDuplicate(plate, 3L, "entry", now);
+                }));
+            }
+            start.countDown();
+            assertEquals(plates, countAccepted(results));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static int countAccepted(List<Future<Boolean>> results) throws Exception {
+        int accepted = 0;
+        for (Future<Boolean> result : results) {
+            if (!result.get(30, TimeUnit.SECONDS)) {
+                accepted++;
+            }
+        }
+        return accepted;
+    }
+}
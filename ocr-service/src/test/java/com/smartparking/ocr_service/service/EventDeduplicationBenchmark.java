@@ -0,0 +1,126 @@
+package com.smartparking.ocr_service.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * InMemoryDedupStore (sloty CAS + koło czasowe) kontra dawny EventDeduplicationService
+ * (ConcurrentHashMap z kluczem String.format i get-then-put), przy 4 wątkach naraz.
+ *
+ * freshEvents - każdy event ma nowy klucz (typowy ruch przy bramkach), duplicates - ten sam event
+ * powtarzany przez kamerę w oknie.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class EventDeduplicationBenchmark {
+
+    private static final int PLATES = 8192;
+    private static final Instant T0 = Instant.parse("2026-10-18T08:00:00Z");
+
+    @State(Scope.Benchmark)
+    public static class Stores {
+        @Param({"memory", "legacy"})
+        public String implementation;
+
+        String[] plates;
+        InMemoryDedupStore store;
+        LegacyDeduplication legacy;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            plates = new String[PLATES];
+            for (int i = 0; i < PLATES; i++) {
+                plates[i] = String.format("WA%05d", i);
+            }
+            store = new InMemoryDedupStore(60, System::currentTimeMillis, false);
+            legacy = new LegacyDeduplication();
+        }
+
+        boolean isDuplicate(String plate, long parkingId, Instant eventTime) {
+            return "memory".equals(implementation)
+                    ? store.checkAndRegister(plate, parkingId, "entry", eventTime)
+                    : legacy.isDuplicate(plate, parkingId, "entry", eventTime);
+        }
+    }
+
+    // Każdy wątek ma własny parking, więc klucze wątków się nie pokrywają
+    @State(Scope.Thread)
+    public static class Cursor {
+        private static final AtomicInteger PARKINGS = new AtomicInteger();
+        final long parkingId = PARKINGS.incrementAndGet();
+        int next;
+        long second;
+    }
+
+    @Benchmark
+    public boolean freshEvents(Stores stores, Cursor cursor) {
+        // Kolejne przejścia po tablicach są o 2 minuty później - zawsze poza oknem, czyli nowy event
+        int i = cursor.next++ & (PLATES - 1);
+        if (i == PLATES - 1) {
+            cursor.second += 120;
+        }
+        return stores.isDuplicate(stores.plates[i], cursor.parkingId, T0.plusSeconds(cursor.second));
+    }
+
+    @Benchmark
+    public boolean duplicates(Stores stores, Cursor cursor) {
+        int i = cursor.next++ & 63;
+        return stores.isDuplicate(stores.plates[i], cursor.parkingId, T0);
+    }
+
+    /**
+     * Dawna implementacja EventDeduplicationService (przed slotami CAS), bez logowania.
+     */
+    static final class LegacyDeduplication {
+        private static final int DEDUPLICATION_WINDOW_SECONDS = 60;
+        private final ConcurrentHashMap<String, Instant> recentEvents = new ConcurrentHashMap<>();
+
+        boolean isDuplicate(String plate, Long parkingId, String direction, Instant timestamp) {
+            String normalizedPlate = plate.toUpperCase().trim();
+            String normalizedDirection = direction.toLowerCase().trim();
+            String eventKey = String.format("%s|%d|%s", normalizedPlate, parkingId, normalizedDirection);
+
+            Instant now = timestamp != null ? timestamp : Instant.now();
+            Instant lastEventTime = recentEvents.get(eventKey);
+            if (lastEventTime != null) {
+                long secondsBetween = ChronoUnit.SECONDS.between(lastEventTime, now);
+                if (secondsBetween < DEDUPLICATION_WINDOW_SECONDS) {
+                    return true;
+                }
+            }
+            recentEvents.put(eventKey, now);
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EventDeduplicationBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,231 @@
+package com.smartparking.ocr_service.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class InMemoryDedupStoreTest {
+
+    private static final Instant T0 = Instant.parse("2026-10-18T08:00:00Z");
+
+    private final AtomicLong clockMillis = new AtomicLong(T0.toEpochMilli());
+
+    private InMemoryDedupStore store(int windowSeconds) {
+        return new InMemoryDedupStore(windowSeconds, clockMillis::get, false);
+    }
+
+    @Test
+    void rejectsEventsInsideWindowAndAcceptsAfterIt() {
+        InMemoryDedupStore store = store(60);
+
+        assertFalse(store.checkAndRegister("WA12345", 1, "entry", T0));
+        assertTrue(store.checkAndRegister("WA12345", 1, "entry", T0.plusSeconds(59)));
+        assertFalse(store.checkAndRegister("WA12345", 1, "entry", T0.plusSeconds(60)));
+        // Nowy event odświeżył okno
+        assertTrue(store.checkAndRegister("WA12345", 1, "entry", T0.plusSeconds(100)));
+    }
+
+    @Test
+    void windowIsConfigurable() {
+        InMemoryDedupStore store = store(5);
+
+        assertFalse(store.checkAndRegister("KR777", 2, "exit", T0));
+        assertTrue(store.checkAndRegister("KR777", 2, "exit", T0.plusSeconds(4)));
+        assertFalse(store.checkAndRegister("KR777", 2, "exit", T0.plusSeconds(5)));
+
+        assertThrows(IllegalArgumentException.class, () -> store(0));
+    }
+
+    @Test
+    void keyIsNormalizedAndScopedByParkingAndDirection() {
+        InMemoryDedupStore store = store(60);
+
+        assertFalse(store.checkAndRegister("wa12345", 1, "entry", T0));
+        assertTrue(store.checkAndRegister("  WA12345 ", 1, " ENTRY ", T0.plusSeconds(1)));
+        assertFalse(store.checkAndRegister("WA12345", 2, "entry", T0.plusSeconds(1)));
+        assertFalse(store.checkAndRegister("WA12345", 1, "exit", T0.plusSeconds(1)));
+    }
+
+    @Test
+    void registerMarksEventWithoutCheckingWindow() {
+        InMemoryDedupStore store = store(60);
+
+        store.register("GD1", 3, "entry", T0);
+        assertTrue(store.checkAndRegister("GD1", 3, "entry", T0.plusSeconds(10)));
+    }
+
+    @Test
+    void releaseUndoesOnlyTheSameRegistration() {
+        InMemoryDedupStore store = store(60);
+
+        assertFalse(store.checkAndRegister("WR1", 4, "exit", T0));
+        // Zapis eventu się nie udał - ponowienie kamery musi przejść
+        store.release("WR1", 4, "exit", T0);
+        assertEquals(0, store.stats().get("recentEventsCount"));
+        assertFalse(store.checkAndRegister("WR1", 4, "exit", T0.plusSeconds(2)));
+
+        // Zwolnienie z innym czasem nie rusza nowszej rejestracji
+        store.release("WR1", 4, "exit", T0);
+        assertTrue(store.checkAndRegister("WR1", 4, "exit", T0.plusSeconds(3)));
+    }
+
+    @Test
+    void timingWheelExpiresEntriesAfterWindowAndMargin() {
+        InMemoryDedupStore store = store(10);
+        store.checkAndRegister("PO111", 1, "entry", T0);
+        store.checkAndRegister("PO222", 1, "entry", T0);
+        assertEquals(2, store.stats().get("recentEventsCount"));
+
+        // Okno 10 s + margines 60 s - jeszcze przed wygaśnięciem
+        clockMillis.addAndGet(TimeUnit.SECONDS.toMillis(69));
+        store.cleanupOldEntries();
+        assertEquals(2, store.stats().get("recentEventsCount"));
+
+        clockMillis.addAndGet(TimeUnit.SECONDS.toMillis(2));
+        store.cleanupOldEntries();
+        assertEquals(0, store.stats().get("recentEventsCount"));
+    }
+
+    @Test
+    void refreshedSlotSurvivesItsOldWheelBucket() {
+        InMemoryDedupStore store = store(10);
+        store.checkAndRegister("LU1", 1, "entry", T0);
+
+        // Po 50 s ten sam klucz wraca spoza okna - slot dostaje nowy czas i nowy kubełek
+        clockMillis.addAndGet(TimeUnit.SECONDS.toMillis(50));
+        assertFalse(store.checkAndRegister("LU1", 1, "entry", T0.plusSeconds(50)));
+
+        clockMillis.addAndGet(TimeUnit.SECONDS.toMillis(25));
+        store.cleanupOldEntries();
+        assertEquals(1, store.stats().get("recentEventsCount"));
+        assertTrue(store.checkAndRegister("LU1", 1, "entry", T0.plusSeconds(55)));
+    }
+
+    @Test
+    void futureDatedEventExpiresByWallClock() {
+        InMemoryDedupStore store = store(10);
+        // Kamera z zegarem przesuniętym o 10 minut do przodu
+        assertFalse(store.checkAndRegister("SZ1", 1, "entry", T0.plusSeconds(600)));
+        store.register("SZ2", 1, "exit", T0.plusSeconds(3600));
+        assertEquals(2, store.stats().get("recentEventsCount"));
+
+        clockMillis.addAndGet(TimeUnit.SECONDS.toMillis(71));
+        store.cleanupOldEntries();
+        assertEquals(0, store.stats().get("recentEventsCount"));
+        assertFalse(store.checkAndRegister("SZ1", 1, "entry", T0.plusSeconds(601)));
+    }
+
+    @Test
+    void slotCollisionEvictsOlderKeyWithoutFalseDuplicate() {
+        String[] colliding = findSlotCollision();
+        long first = InMemoryDedupStore.keyHash(colliding[0], 1, "entry");
+        long second = InMemoryDedupStore.keyHash(colliding[1], 1, "entry");
+        assertEquals(InMemoryDedupStore.slotIndex(first), InMemoryDedupStore.slotIndex(second));
+        assertNotEquals(InMemoryDedupStore.fingerprint(first), InMemoryDedupStore.fingerprint(second));
+
+        InMemoryDedupStore store = store(60);
+        assertFalse(store.checkAndRegister(colliding[0], 1, "entry", T0));
+        // Inny klucz w tym samym slocie nie może zostać uznany za duplikat - nadpisuje starszy wpis
+        assertFalse(store.checkAndRegister(colliding[1], 1, "entry", T0.plusSeconds(1)));
+        assertTrue(store.checkAndRegister(colliding[1], 1, "entry", T0.plusSeconds(2)));
+        assertEquals(1L, store.stats().get("evictions"));
+        assertEquals(1, store.stats().get("recentEventsCount"));
+    }
+
+    @Test
+    void concurrentDuplicatesLetExactlyOneEventThrough() throws Exception {
+        EventDeduplicationService service = new EventDeduplicationService(store(60), 60);
+        int threads = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < 200; round++) {
+                String plate = "RACE" + round;
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    results.add(pool.submit(() -> {
+                        start.await();
+                        return service.isDuplicate(plate, 7L, "entry", T0);
+                    }));
+                }
+                start.countDown();
+
+                int accepted = 0;
+                for (Future<Boolean> result : results) {
+                    if (!result.get(10, TimeUnit.SECONDS)) {
+                        accepted++;
+                    }
+                }
+                assertEquals(1, accepted, "Round " + round + ": duplicates passed concurrently");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentDistinctEventsAreAllAccepted() throws Exception {
+        InMemoryDedupStore store = store(60);
+        int threads = 8;
+        int perThread = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                results.add(pool.submit(() -> {
+                    start.await();
+                    int rejected = 0;
+                    for (int i = 0; i < perThread; i++) {
+                        if (store.checkAndRegister("T" + thread + "-" + i, 1, "entry", T0)) {
+                            rejected++;
+                        }
+                    }
+                    return rejected;
+                }));
+            }
+            start.countDown();
+
+            for (Future<Integer> result : results) {
+                assertEquals(0, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Dwie tablice o tym samym indeksie slotu i różnych odciskach (paradoks urodzin - kilkaset prób)
+    private static String[] findSlotCollision() {
+        Map<Integer, String> seen = new HashMap<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            String plate = "C" + i;
+            long hash = InMemoryDedupStore.keyHash(plate, 1, "entry");
+            String previous = seen.putIfAbsent(InMemoryDedupStore.slotIndex(hash), plate);
+            if (previous != null) {
+                long previousHash = InMemoryDedupStore.keyHash(previous, 1, "entry");
+                if (InMemoryDedupStore.fingerprint(previousHash) != InMemoryDedupStore.fingerprint(hash)) {
+                    return new String[]{previous, plate};
+                }
+            }
+        }
+        return fail("No slot collision found");
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
+import java.util.HashMap;
 import java.util.Map;
 
 @Component
@@ -20,16 +21,34 @@ public class PaymentClient {
         this.baseUrl = baseUrl;
     }
 
+    // Rodzaje obciążeń sesji - razem z session_id tworzą klucz idempotencji obciążenia w payment-service
+    public static final String CHARGE_PARKING = "parking";
+    public static final String CHARGE_PENALTY = "penalty";
+
+    /**
+     * Klucz idempotencji obciążenia sesji w payment-service (też w poleceniach rozliczenia przez RabbitMQ)
+     */
+    public static String chargeKey(Long sessionId, String chargeType) {
+        return "session-" + sessionId + "-" + chargeType;
+    }
+
+    /**
+     * Obciąża portfel za sesję. Ponowienie tego samego obciążenia (ta sama sesja i rodzaj) nie pobiera opłaty
+     * drugi raz - payment-service zwraca istniejącą płatność po kluczu "session-{id}-{chargeType}".
+     * @param chargeType CHARGE_PARKING albo CHARGE_PENALTY
+     */
     public com.smartparking.parking_service.service.ParkingSessionService.PaymentResult chargeForParkingSession(
-            Long accountId, Long sessionId, Long amountMinor) {
+            Long accountId, Long sessionId, Long parkingId, Long amountMinor, String chargeType) {
         try {
             String url = baseUrl + "/payment/charge";
-            Map<String, Object> body = Map.of(
-                "accountId", accountId,
-                "sessionId", sessionId,
-                "amount", new java.math.BigDecimal(amountMinor).divide(new java.math.BigDecimal(100)),
-                "currency", "PLN"
-            );
+            Map<String, Object> body = new HashMap<>();
+            body.put("accountId", accountId);
+            body.put("sessionId", sessionId);
+            body.put("idempotencyKey", chargeKey(sessionId, chargeType));
+            // parkingId trafia do virtual_payment.ref_parking_id - raporty finansowe agregują po nim
+            body.put("parkingId", parkingId);
+            body.put("amount", new java.math.BigDecimal(amountMinor).divide(new java.math.BigDecimal(100)));
+            body.put("currency", "PLN");
             
             org.springframework.http.HttpHeaders headers = new org.springframework.http.HttpHeaders();
             headers.set("Content-Type", "application/json");
@@ -1,20 +1,62 @@
 package com.smartparking.parking_service.config;
 
+import com.smartparking.parking_service.messaging.GateEventMessageConverter;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.FanoutExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.DirectRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 public class ParkingAmqpConfig {
     public static final String PARKING_EXCHANGE = "parking.exchange";
+    // Stare kolejki (osobno wjazdy i wyjazdy) - zostają do opróżnienia wiadomości sprzed przejścia na shardy
     public static final String PARKING_ENTRY_QUEUE = "parking.entry.queue";
     public static final String PARKING_ENTRY_ROUTING = "parking.entry.detected";
     public static final String PARKING_EXIT_QUEUE = "parking.exit.queue";
     public static final String PARKING_EXIT_ROUTING = "parking.exit.detected";
+    // Broadcast zmian cennika - każda replika (parking-service, customer-service) słucha na własnej kolejce tymczasowej
+    public static final String PARKING_PRICING_ROUTING = "parking.pricing.changed";
+    // Zmiany pojazdów publikowane przez customer-service (CustomerAmqpConfig)
+    public static final String CUSTOMER_EXCHANGE = "customer.exchange";
+    public static final String CUSTOMER_VEHICLE_ROUTING = "customer.vehicle.changed";
+
+    // Wjazdy i wyjazdy z OCR shardowane po parking_id: shard = parking_id mod liczba shardów.
+    // Routing key i kolejka shardu: parking.gate.<shard> / parking.gate.<shard>.queue (ten sam układ w ocr-service)
+    public static final String PARKING_GATE_PREFIX = "parking.gate.";
+    public static final String PARKING_GATE_CONTAINER_FACTORY = "parkingGateContainerFactory";
+    // __TypeId__ zdarzeń w kolejkach shardów - jedna kolejka niesie oba typy
+    public static final String PARKING_ENTRY_TYPE_ID = "parkingEntry";
+    public static final String PARKING_EXIT_TYPE_ID = "parkingExit";
+
+    // Ponawianie nieudanych wjazdów/wyjazdów w miejscu: konsument shardu czeka GATE_RETRY_DELAYS_MS[n-1] przed próbą n+1,
+    // więc kolejne eventy tego parkingu nie wyprzedzą ponawianego. Po wyczerpaniu prób event trafia do parking.gate.dlq
+    // (GateEventRetryPublisher, GateEventDeadLetterService); kolejki shardów mają parking.gate.dlx jako DLX.
+    public static final long[] GATE_RETRY_DELAYS_MS = {1_000, 5_000, 15_000};
+    public static final String PARKING_GATE_DLX = "parking.gate.dlx";
+    public static final String PARKING_GATE_DLQ = "parking.gate.dlq";
+
+    // Rozliczenie zakończonych sesji (ten sam układ w payment-service, PaymentAmqpConfig): polecenie na
+    // payment.settlement.requested, wynik wraca na payment.settlement.completed do kolejki parking-service
+    public static final String PAYMENT_EXCHANGE = "payment.exchange";
+    public static final String SETTLEMENT_REQUESTED_ROUTING = "payment.settlement.requested";
+    public static final String SETTLEMENT_COMPLETED_ROUTING = "payment.settlement.completed";
+    public static final String SETTLEMENT_RESULT_QUEUE = "parking.settlement.result.queue";
+
+    @Value("${parking.ocr.shards:8}")
+    private int gateShards;
 
     @Bean
     public TopicExchange parkingExchange() {
@@ -44,5 +86,82 @@ public class ParkingAmqpConfig {
                 .to(parkingExchange)
                 .with(PARKING_EXIT_ROUTING);
     }
-}
 
+    /**
+     * Kolejki shardów wjazdów/wyjazdów. Wjazd i wyjazd z tego samego parkingu trafiają do jednej kolejki,
+     * więc są przetwarzane w kolejności publikacji. single-active-consumer pilnuje, żeby przy kilku replikach
+     * parking-service każdy shard miał naraz tylko jednego konsumenta. Wiadomość odrzucona bez requeue
+     * (np. nieczytelna dla konwertera) trafia przez DLX do parking.gate.dlq, zamiast zniknąć.
+     */
+    @Bean
+    public Declarables parkingGateShards(TopicExchange parkingExchange) {
+        List<Declarable> declarables = new ArrayList<>();
+        for (int shard = 0; shard < gateShards; shard++) {
+            Queue queue = QueueBuilder.durable(PARKING_GATE_PREFIX + shard + ".queue")
+                    .singleActiveConsumer()
+                    .deadLetterExchange(PARKING_GATE_DLX)
+                    .build();
+            declarables.add(queue);
+            declarables.add(BindingBuilder.bind(queue).to(parkingExchange).with(PARKING_GATE_PREFIX + shard));
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * Kolejka martwych wiadomości wjazdów/wyjazdów. Wymiana jest typu fanout, więc wiadomość zachowuje
+     * routing key swojego shardu - replay (GateEventDeadLetterService) odsyła ją dokładnie tam, skąd przyszła.
+     */
+    @Bean
+    public Declarables parkingGateDeadLetterTopology() {
+        List<Declarable> declarables = new ArrayList<>();
+        FanoutExchange dlx = new FanoutExchange(PARKING_GATE_DLX);
+        Queue dlq = QueueBuilder.durable(PARKING_GATE_DLQ).build();
+        declarables.add(dlx);
+        declarables.add(dlq);
+        declarables.add(BindingBuilder.bind(dlq).to(dlx));
+        return new Declarables(declarables);
+    }
+
+    @Bean
+    public TopicExchange paymentExchange() {
+        return new TopicExchange(PAYMENT_EXCHANGE);
+    }
+
+    @Bean
+    public Queue settlementResultQueue() {
+        return QueueBuilder.durable(SETTLEMENT_RESULT_QUEUE).build();
+    }
+
+    @Bean
+    public Binding settlementResultBinding() {
+        return BindingBuilder.bind(settlementResultQueue())
+                .to(paymentExchange())
+                .with(SETTLEMENT_COMPLETED_ROUTING);
+    }
+
+    @Bean
+    public String[] parkingGateQueueNames() {
+        String[] names = new String[gateShards];
+        for (int shard = 0; shard < gateShards; shard++) {
+            names[shard] = PARKING_GATE_PREFIX + shard + ".queue";
+        }
+        return names;
+    }
+
+    /**
+     * Jeden konsument na kolejkę shardu: wiadomości z jednego shardu obsługiwane są po kolei,
+     * różne shardy (parkingi) równolegle. Konwerter czyta JSON i format binarny ocr-service (GateEventCodec z messaging-common).
+     * Wyjątek z listenera odrzuca wiadomość bez requeue (do DLQ przez DLX) - bez tego nieudana wiadomość
+     * wracałaby na początek kolejki i była ponawiana w kółko.
+     */
+    @Bean(name = PARKING_GATE_CONTAINER_FACTORY)
+    public DirectRabbitListenerContainerFactory parkingGateContainerFactory(ConnectionFactory connectionFactory,
+                                                                           Jackson2JsonMessageConverter converter) {
+        DirectRabbitListenerContainerFactory factory = new DirectRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(new GateEventMessageConverter(converter));
+        factory.setConsumersPerQueue(1);
+        factory.setDefaultRequeueRejected(false);
+        return factory;
+    }
+}
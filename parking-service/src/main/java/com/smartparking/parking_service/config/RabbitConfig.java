@@ -1,17 +1,33 @@
 package com.smartparking.parking_service.config;
 
+import com.smartparking.messaging.ConfirmingPublisher;
+import com.smartparking.parking_service.dto.OcrEntryEvent;
+import com.smartparking.parking_service.dto.OcrExitEvent;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.DefaultJackson2JavaTypeMapper;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Map;
+
 @Configuration
 public class RabbitConfig {
 
     @Bean
     public Jackson2JsonMessageConverter jackson2JsonMessageConverter() {
-        return new Jackson2JsonMessageConverter();
+        // Kolejki shardów niosą wjazdy i wyjazdy naraz, więc typ zdarzenia bierzemy z __TypeId__ (ocr-service)
+        // Nieznany __TypeId__ spoza pakietu DTO jest odrzucany zamiast deserializowany do dowolnej klasy
+        DefaultJackson2JavaTypeMapper typeMapper = new DefaultJackson2JavaTypeMapper();
+        typeMapper.setTrustedPackages("com.smartparking.parking_service.dto");
+        typeMapper.setIdClassMapping(Map.of(
+                ParkingAmqpConfig.PARKING_ENTRY_TYPE_ID, OcrEntryEvent.class,
+                ParkingAmqpConfig.PARKING_EXIT_TYPE_ID, OcrExitEvent.class
+        ));
+        Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter();
+        converter.setJavaTypeMapper(typeMapper);
+        return converter;
     }
 
     @Bean
@@ -20,11 +36,14 @@ public class RabbitConfig {
         rt.setMessageConverter(converter);
         return rt;
     }
-}
-
-
-
-
-
-
 
+    /**
+     * Publikacja z potwierdzeniami (GET /parking/admin/stats/publisher) - na własnym RabbitTemplate z mandatory=true,
+     * więc wspólny szablon powyżej nie dostaje callbacku zwrotów.
+     */
+    @Bean
+    public ConfirmingPublisher confirmingPublisher(ConnectionFactory connectionFactory,
+                                                   Jackson2JsonMessageConverter converter) {
+        return new ConfirmingPublisher(connectionFactory, converter, "parking");
+    }
+}
@@ -1,14 +1,24 @@
 package com.smartparking.parking_service.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartparking.messaging.ConfirmingPublisher;
 import com.smartparking.parking_service.dto.AddParkingRequest;
+import com.smartparking.parking_service.messaging.GateEventDeadLetterService;
 import com.smartparking.parking_service.service.ParkingCreationService;
 import com.smartparking.parking_service.service.ParkingQueryService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
@@ -16,21 +26,44 @@ import java.util.List;
 import java.util.Map;
 import com.smartparking.parking_service.dto.IdResponse;
 import com.smartparking.parking_service.dto.ParkingUsageDto;
+import com.smartparking.parking_service.model.AccountSession;
+import com.smartparking.parking_service.model.ActiveReservation;
+import com.smartparking.parking_service.model.LocationDetails;
+import com.smartparking.parking_service.model.LocationSummary;
+import com.smartparking.parking_service.model.ReservationDetails;
+import com.smartparking.parking_service.model.SpotSummary;
+import com.smartparking.parking_service.scheduler.PenaltyReconciliationScheduler;
 import com.smartparking.parking_service.service.ParkingSessionService;
+import com.smartparking.parking_service.service.SessionSettlementService;
 
 @RestController
 @RequestMapping("/parking")
 public class ParkingController {
 
     private static final Logger log = LoggerFactory.getLogger(ParkingController.class);
+    private static final int MAX_ACCOUNT_PAGE_SIZE = 500;
+    private static final int MAX_DEAD_LETTER_BATCH = 5000;
     private final ParkingQueryService queries;
     private final ParkingCreationService parkingCreationService;
     private final ParkingSessionService sessionService;
+    private final GateEventDeadLetterService deadLetterService;
+    private final ConfirmingPublisher confirmingPublisher;
+    private final PenaltyReconciliationScheduler penaltyReconciler;
+    private final SessionSettlementService settlementService;
+    private final ObjectMapper objectMapper;
     
-    public ParkingController(ParkingQueryService queries, ParkingCreationService parkingCreationService, ParkingSessionService sessionService) {
+    public ParkingController(ParkingQueryService queries, ParkingCreationService parkingCreationService, ParkingSessionService sessionService,
+                             GateEventDeadLetterService deadLetterService, ConfirmingPublisher confirmingPublisher,
+                             PenaltyReconciliationScheduler penaltyReconciler, SessionSettlementService settlementService,
+                             ObjectMapper objectMapper) {
         this.queries = queries;
         this.parkingCreationService = parkingCreationService;
         this.sessionService = sessionService;
+        this.deadLetterService = deadLetterService;
+        this.confirmingPublisher = confirmingPublisher;
+        this.penaltyReconciler = penaltyReconciler;
+        this.settlementService = settlementService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping("/health")
@@ -39,12 +72,12 @@ public class ParkingController {
     }
 
     @GetMapping("/locations")
-    public ResponseEntity<List<Map<String, Object>>> listLocations() {
+    public ResponseEntity<List<LocationSummary>> listLocations() {
         return ResponseEntity.ok(queries.getLocations());
     }
 
     @GetMapping("/spots")
-    public ResponseEntity<List<Map<String, Object>>> listSpots(@RequestParam(required = false) Long locationId) {
+    public ResponseEntity<List<SpotSummary>> listSpots(@RequestParam(required = false) Long locationId) {
         return ResponseEntity.ok(queries.getSpots(locationId));
     }
 
@@ -112,9 +145,19 @@ public class ParkingController {
     }
 
     // Customer-facing reservation endpoints (called by customer-service)
+    /**
+     * GET /parking/reservations?accountId=...&limit=100
+     * Rezerwacje konta od najnowszych. Kolejna strona: afterReservationId = id_reservation
+     * ostatniej rezerwacji poprzedniej strony.
+     */
     @GetMapping("/reservations")
-    public ResponseEntity<List<Map<String, Object>>> listReservations(@RequestParam Long accountId) {
-        return ResponseEntity.ok(queries.getReservationsByAccountId(accountId));
+    public ResponseEntity<?> listReservations(@RequestParam Long accountId,
+                                              @RequestParam(required = false) Long afterReservationId,
+                                              @RequestParam(defaultValue = "100") int limit) {
+        if (limit <= 0 || limit > MAX_ACCOUNT_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be between 1 and " + MAX_ACCOUNT_PAGE_SIZE));
+        }
+        return ResponseEntity.ok(queries.getReservationsByAccountId(accountId, afterReservationId, limit));
     }
 
     @PostMapping("/reservations")
@@ -139,14 +182,14 @@ public class ParkingController {
 
     // Worker-facing endpoint for active reservations
     @GetMapping("/reservations/active")
-    public ResponseEntity<List<Map<String, Object>>> getActiveReservations() {
+    public ResponseEntity<List<ActiveReservation>> getActiveReservations() {
         return ResponseEntity.ok(queries.getActiveReservations());
     }
 
     // Customer-facing endpoints for parking details
     @GetMapping("/locations/{id}/details")
     public ResponseEntity<?> getLocationDetails(@PathVariable Long id) {
-        java.util.Optional<Map<String, Object>> details = queries.getLocationDetails(id);
+        java.util.Optional<LocationDetails> details = queries.getLocationDetails(id);
         return details.map(ResponseEntity::ok)
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
@@ -262,24 +305,41 @@ public class ParkingController {
         }
     }
 
-    @GetMapping("/sessions/ids-by-parking")
-    public ResponseEntity<List<Long>> getSessionIdsByParkingId(
-            @RequestParam Long parkingId,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
-
-        List<Long> sessionIds = queries.getSessionIdsByParkingId(parkingId, startDate, endDate);
-        return ResponseEntity.ok(sessionIds);
+    /**
+     * GET /parking/locations/{parkingId}/sessions?from=...&to=...&limit=100
+     * Sesje parkingu w zakresie dat wjazdu, od najnowszych. Kolejna strona:
+     * afterEntryTime + afterSessionId z nextCursor poprzedniej odpowiedzi.
+     */
+    @GetMapping("/locations/{parkingId}/sessions")
+    public ResponseEntity<?> getParkingSessions(
+            @PathVariable Long parkingId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime afterEntryTime,
+            @RequestParam(required = false) Long afterSessionId,
+            @RequestParam(defaultValue = "100") int limit) {
+        if (limit <= 0 || limit > 1000) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be between 1 and 1000"));
+        }
+        if ((afterEntryTime == null) != (afterSessionId == null)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "afterEntryTime and afterSessionId must be given together"));
+        }
+        return ResponseEntity.ok(queries.getSessionsPage(parkingId, from, to, afterEntryTime, afterSessionId, limit));
     }
 
-    @GetMapping("/sessions/ids-by-company")
-    public ResponseEntity<List<Long>> getSessionIdsByCompanyId(
-            @RequestParam Long companyId,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
-
-        List<Long> sessionIds = queries.getSessionIdsByCompanyId(companyId, startDate, endDate);
-        return ResponseEntity.ok(sessionIds);
+    /**
+     * Body: [sessionId1, sessionId2, ...] (paczki do 1000 sesji)
+     * Returns: {sessionId: parkingId}
+     */
+    @PostMapping("/sessions/parking-ids")
+    public ResponseEntity<?> getParkingIdsBySessionIds(@RequestBody List<Long> sessionIds) {
+        if (sessionIds == null || sessionIds.isEmpty()) {
+            return ResponseEntity.ok(Map.of());
+        }
+        if (sessionIds.size() > 1000) {
+            return ResponseEntity.badRequest().body(Map.of("error", "At most 1000 session IDs per request"));
+        }
+        return ResponseEntity.ok(queries.getParkingIdsBySessionIds(sessionIds));
     }
 
     @GetMapping("/sessions/{sessionId}/parking-id")
@@ -295,21 +355,121 @@ public class ParkingController {
     // Customer-facing endpoint for active parking session
     @GetMapping("/sessions/active")
     public ResponseEntity<?> getActiveSession(@RequestParam Long accountId) {
-        java.util.Optional<Map<String, Object>> session = queries.getActiveSessionByAccountId(accountId);
+        java.util.Optional<AccountSession> session = queries.getActiveSessionByAccountId(accountId);
         return session.map(ResponseEntity::ok)
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     /**
-     * Pobiera wszystkie sesje parkingowe dla danego konta użytkownika
+     * GET /parking/sessions?accountId=...&limit=100
+     * Sesje parkingowe konta od najnowszych. Kolejna strona: afterEntryTime + afterSessionId
+     * = entry_time i session_id ostatniej sesji poprzedniej strony.
      */
     @GetMapping("/sessions")
-    public ResponseEntity<List<Map<String, Object>>> getSessions(@RequestParam Long accountId,
-                                                                  @RequestParam(required = false, defaultValue = "false") boolean unpaidOnly) {
+    public ResponseEntity<?> getSessions(@RequestParam Long accountId,
+                                         @RequestParam(required = false, defaultValue = "false") boolean unpaidOnly,
+                                         @RequestParam(required = false) String afterEntryTime,
+                                         @RequestParam(required = false) Long afterSessionId,
+                                         @RequestParam(defaultValue = "100") int limit) {
+        if (limit <= 0 || limit > MAX_ACCOUNT_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be between 1 and " + MAX_ACCOUNT_PAGE_SIZE));
+        }
+        if ((afterEntryTime == null) != (afterSessionId == null)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "afterEntryTime and afterSessionId must be given together"));
+        }
+        java.time.Instant after;
+        try {
+            after = afterEntryTime != null ? java.time.Instant.parse(afterEntryTime) : null;
+        } catch (java.time.format.DateTimeParseException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", "afterEntryTime must be an ISO-8601 instant"));
+        }
         if (unpaidOnly) {
-            return ResponseEntity.ok(queries.getUnpaidSessionsByAccountId(accountId));
+            return ResponseEntity.ok(queries.getUnpaidSessionsByAccountId(accountId, after, afterSessionId, limit));
+        }
+        return ResponseEntity.ok(queries.getSessionsByAccountId(accountId, after, afterSessionId, limit));
+    }
+
+    /**
+     * GET /parking/sessions/export?accountId=...
+     * Wszystkie sesje konta jako NDJSON (jeden obiekt JSON na linię), zapisywane w miarę czytania
+     * kursora z bazy - pamięć na żądanie nie zależy od długości historii.
+     */
+    @GetMapping(value = "/sessions/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportSessions(@RequestParam Long accountId) {
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            queries.streamSessionsByAccountId(accountId, row -> {
+                try {
+                    writer.write(objectMapper.writeValueAsString(row));
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
+    /**
+     * Podgląd eventów wjazdu/wyjazdu, które nie przeszły po wszystkich ponowieniach (parking.gate.dlq)
+     */
+    @GetMapping("/admin/gate-events/dead-letters")
+    public ResponseEntity<?> getDeadLetteredGateEvents(@RequestParam(defaultValue = "50") int limit) {
+        if (limit < 1 || limit > MAX_DEAD_LETTER_BATCH) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + MAX_DEAD_LETTER_BATCH);
+        }
+        return ResponseEntity.ok(deadLetterService.inspect(limit));
+    }
+
+    /**
+     * Ponownie wysyła eventy z parking.gate.dlq do ich shardów (np. po powrocie customer-service)
+     */
+    @PostMapping("/admin/gate-events/dead-letters/replay")
+    public ResponseEntity<?> replayDeadLetteredGateEvents(@RequestParam(defaultValue = "500") int limit) {
+        if (limit < 1 || limit > MAX_DEAD_LETTER_BATCH) {
+            return ResponseEntity.badRequest().body("limit must be between 1 and " + MAX_DEAD_LETTER_BATCH);
         }
-        return ResponseEntity.ok(queries.getSessionsByAccountId(accountId));
+        try {
+            return ResponseEntity.ok(deadLetterService.replay(limit));
+        } catch (Exception e) {
+            log.error("Failed to replay dead-lettered gate events", e);
+            return ResponseEntity.status(500).body("Failed to replay dead-lettered events: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Metryki dopasowania przybliżonego tablic przy wyjeździe (błędy odczytu OCR)
+     */
+    @GetMapping("/admin/stats/plate-matching")
+    public ResponseEntity<Map<String, Object>> getPlateMatchingStats() {
+        return ResponseEntity.ok(sessionService.getPlateMatchingStats());
+    }
+
+    /**
+     * Metryki publikacji z potwierdzeniami brokera (niepotwierdzone, zwrócone, czas potwierdzenia paczki)
+     */
+    @GetMapping("/admin/stats/publisher")
+    public ResponseEntity<Map<String, Object>> getPublisherStats() {
+        return ResponseEntity.ok(confirmingPublisher.stats());
+    }
+
+    /**
+     * Metryki pobierania kar za przekroczenie rezerwacji w tle (pobrane, nieudane próby, oczekujące)
+     */
+    @GetMapping("/admin/stats/penalties")
+    public ResponseEntity<Map<String, Object>> getPenaltyStats() {
+        return ResponseEntity.ok(penaltyReconciler.stats());
+    }
+
+    /**
+     * Metryki asynchronicznego rozliczania sesji (wysłane polecenia, wyniki, opóźnienie rozliczenia, sesje w Settling)
+     */
+    @GetMapping("/admin/stats/settlement")
+    public ResponseEntity<Map<String, Object>> getSettlementStats() {
+        return ResponseEntity.ok(settlementService.stats());
     }
 
     /**
@@ -325,8 +485,13 @@ public class ParkingController {
      * Pobiera płatność z portfela i zmienia status na "Paid"
      */
     @PostMapping("/sessions/{sessionId}/pay")
-    public ResponseEntity<?> payForSession(@PathVariable Long sessionId) {
+    public ResponseEntity<?> payForSession(@PathVariable Long sessionId,
+                                           @RequestParam(required = false) Long accountId) {
         try {
+            // Opcjonalna weryfikacja właściciela (customer-service) - bez pobierania całej historii sesji konta
+            if (accountId != null && !accountId.equals(queries.getSessionAccountId(sessionId))) {
+                return ResponseEntity.status(403).body(Map.of("error", "Session not found or does not belong to the account."));
+            }
             ParkingSessionService.PaymentResult result = sessionService.payForSession(sessionId);
             
             if (!result.isSuccess()) {
@@ -384,7 +549,7 @@ public class ParkingController {
 
     @GetMapping("/reservations/{reservationId}")
     public ResponseEntity<?> getReservationById(@PathVariable Long reservationId) {
-        java.util.Optional<Map<String, Object>> reservationOpt = queries.getReservationById(reservationId);
+        java.util.Optional<ReservationDetails> reservationOpt = queries.getReservationById(reservationId);
         return reservationOpt.map(ResponseEntity::ok)
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
@@ -393,14 +558,12 @@ public class ParkingController {
     public ResponseEntity<?> cancelReservation(@PathVariable Long reservationId,
                                                @RequestParam Long accountId) {
         // Walidacja: sprawdź czy rezerwacja istnieje i należy do użytkownika
-        java.util.Optional<Map<String, Object>> reservationOpt = queries.getReservationById(reservationId);
+        java.util.Optional<ReservationDetails> reservationOpt = queries.getReservationById(reservationId);
         if (reservationOpt.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
         
-        Map<String, Object> reservation = reservationOpt.get();
-        Long reservationAccountId = Long.valueOf(reservation.get("ref_account_id").toString());
-        if (!reservationAccountId.equals(accountId)) {
+        if (reservationOpt.get().refAccountId() != accountId) {
             return ResponseEntity.status(403).body(Map.of("error", "Reservation does not belong to this account"));
         }
         
@@ -0,0 +1,94 @@
+package com.smartparking.parking_service.dto;
+
+import java.time.Instant;
+
+public class PricingChangedEvent {
+    private Long parkingId;
+    private Long pricingId;
+    private String currencyCode;
+    private Integer ratePerMin;
+    private Integer freeMinutes;
+    private Integer roundingStepMin;
+    private Integer reservationFeeMinor;
+    private Instant changedAt;
+
+    public PricingChangedEvent() {
+    }
+
+    public PricingChangedEvent(Long parkingId, Long pricingId, String currencyCode,
+                               Integer ratePerMin, Integer freeMinutes, Integer roundingStepMin,
+                               Integer reservationFeeMinor, Instant changedAt) {
+        this.parkingId = parkingId;
+        this.pricingId = pricingId;
+        this.currencyCode = currencyCode;
+        this.ratePerMin = ratePerMin;
+        this.freeMinutes = freeMinutes;
+        this.roundingStepMin = roundingStepMin;
+        this.reservationFeeMinor = reservationFeeMinor;
+        this.changedAt = changedAt;
+    }
+
+    public Long getParkingId() {
+        return parkingId;
+    }
+
+    public void setParkingId(Long parkingId) {
+        this.parkingId = parkingId;
+    }
+
+    public Long getPricingId() {
+        return pricingId;
+    }
+
+    public void setPricingId(Long pricingId) {
+        this.pricingId = pricingId;
+    }
+
+    public String getCurrencyCode() {
+        return currencyCode;
+    }
+
+    public void setCurrencyCode(String currencyCode) {
+        this.currencyCode = currencyCode;
+    }
+
+    public Integer getRatePerMin() {
+        return ratePerMin;
+    }
+
+    public void setRatePerMin(Integer ratePerMin) {
+        this.ratePerMin = ratePerMin;
+    }
+
+    public Integer getFreeMinutes() {
+        return freeMinutes;
+    }
+
+    public void setFreeMinutes(Integer freeMinutes) {
+        this.freeMinutes = freeMinutes;
+    }
+
+    public Integer getRoundingStepMin() {
+        return roundingStepMin;
+    }
+
+    public void setRoundingStepMin(Integer roundingStepMin) {
+        this.roundingStepMin = roundingStepMin;
+    }
+
+    public Integer getReservationFeeMinor() {
+        return reservationFeeMinor;
+    }
+
+    public void setReservationFeeMinor(Integer reservationFeeMinor) {
+        this.reservationFeeMinor = reservationFeeMinor;
+    }
+
+    public Instant getChangedAt() {
+        return changedAt;
+    }
+
+    public void setChangedAt(Instant changedAt) {
+        this.changedAt = changedAt;
+    }
+}
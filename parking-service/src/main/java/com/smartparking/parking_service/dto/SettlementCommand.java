@@ -0,0 +1,32 @@
+package com.smartparking.parking_service.dto;
+
+import java.time.Instant;
+
+/**
+ * Polecenie rozliczenia zakończonej sesji (parking-service -> payment-service, payment.settlement.requested).
+ * idempotencyKey = "session-{id}-parking" - powtórzone polecenie nie obciąża portfela drugi raz.
+ */
+public class SettlementCommand {
+    private Long sessionId;
+    private Long accountId;
+    private Long parkingId;
+    private Long amountMinor;
+    private String idempotencyKey;
+    private Instant requestedAt; // zamknięcie sesji przy wyjeździe - od niego liczone jest opóźnienie rozliczenia
+
+    public SettlementCommand() {
+    }
+
+    public Long getSessionId() { return sessionId; }
+    public void setSessionId(Long sessionId) { this.sessionId = sessionId; }
+    public Long getAccountId() { return accountId; }
+    public void setAccountId(Long accountId) { this.accountId = accountId; }
+    public Long getParkingId() { return parkingId; }
+    public void setParkingId(Long parkingId) { this.parkingId = parkingId; }
+    public Long getAmountMinor() { return amountMinor; }
+    public void setAmountMinor(Long amountMinor) { this.amountMinor = amountMinor; }
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+    public Instant getRequestedAt() { return requestedAt; }
+    public void setRequestedAt(Instant requestedAt) { this.requestedAt = requestedAt; }
+}
@@ -0,0 +1,29 @@
+package com.smartparking.parking_service.dto;
+
+import java.time.Instant;
+
+/**
+ * Wynik rozliczenia sesji (payment-service -> parking-service, payment.settlement.completed).
+ * status: "Paid", "Failed" (brak środków, brak portfela, odrzucone) albo "Pending" (wynik nieznany - sesja czeka na ponowienie).
+ */
+public class SettlementResult {
+    private Long sessionId;
+    private Long paymentId;
+    private String status;
+    private Instant requestedAt; // z polecenia
+    private Instant settledAt;
+
+    public SettlementResult() {
+    }
+
+    public Long getSessionId() { return sessionId; }
+    public void setSessionId(Long sessionId) { this.sessionId = sessionId; }
+    public Long getPaymentId() { return paymentId; }
+    public void setPaymentId(Long paymentId) { this.paymentId = paymentId; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public Instant getRequestedAt() { return requestedAt; }
+    public void setRequestedAt(Instant requestedAt) { this.requestedAt = requestedAt; }
+    public Instant getSettledAt() { return settledAt; }
+    public void setSettledAt(Instant settledAt) { this.settledAt = settledAt; }
+}
@@ -0,0 +1,63 @@
+package com.smartparking.parking_service.dto;
+
+import java.time.Instant;
+
+public class VehicleChangedEvent {
+    private Long vehicleId;
+    private String licencePlate;
+    private String previousLicencePlate;
+    private String changeType;
+    private Instant changedAt;
+
+    public VehicleChangedEvent() {
+    }
+
+    public VehicleChangedEvent(Long vehicleId, String licencePlate, String previousLicencePlate,
+                               String changeType, Instant changedAt) {
+        this.vehicleId = vehicleId;
+        this.licencePlate = licencePlate;
+        this.previousLicencePlate = previousLicencePlate;
+        this.changeType = changeType;
+        this.changedAt = changedAt;
+    }
+
+    public Long getVehicleId() {
+        return vehicleId;
+    }
+
+    public void setVehicleId(Long vehicleId) {
+        this.vehicleId = vehicleId;
+    }
+
+    public String getLicencePlate() {
+        return licencePlate;
+    }
+
+    public void setLicencePlate(String licencePlate) {
+        this.licencePlate = licencePlate;
+    }
+
+    public String getPreviousLicencePlate() {
+        return previousLicencePlate;
+    }
+
+    public void setPreviousLicencePlate(String previousLicencePlate) {
+        this.previousLicencePlate = previousLicencePlate;
+    }
+
+    public String getChangeType() {
+        return changeType;
+    }
+
+    public void setChangeType(String changeType) {
+        this.changeType = changeType;
+    }
+
+    public Instant getChangedAt() {
+        return changedAt;
+    }
+
+    public void setChangedAt(Instant changedAt) {
+        this.changedAt = changedAt;
+    }
+}
@@ -0,0 +1,155 @@
+package com.smartparking.parking_service.messaging;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.GetResponse;
+import com.smartparking.messaging.GateEvent;
+import com.smartparking.messaging.GateEventCodec;
+import com.smartparking.parking_service.config.ParkingAmqpConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Podgląd i ponowne wysłanie eventów wjazdu/wyjazdu z parking.gate.dlq (endpointy /parking/admin/gate-events).
+ *
+ * Podgląd pobiera wiadomości bez potwierdzania i od razu oddaje je do kolejki (basicNack z requeue).
+ * Replay publikuje wiadomości z powrotem do parking.exchange z ich oryginalnym routing key (shard),
+ * czeka na potwierdzenia brokera i dopiero wtedy usuwa je z DLQ. Licznik prób jest zerowany.
+ * Powtórzone wysłanie (np. po przerwanym replay) jest bezpieczne - parking-service odrzuca duplikaty po eventId.
+ */
+@Service
+public class GateEventDeadLetterService {
+    private static final Logger log = LoggerFactory.getLogger(GateEventDeadLetterService.class);
+
+    private static final String TYPE_ID_HEADER = "__TypeId__";
+    private static final int MAX_PAYLOAD_PREVIEW = 1000;
+    private static final long CONFIRM_TIMEOUT_MS = 10_000;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final GateEventRetryPublisher retryPublisher;
+
+    public GateEventDeadLetterService(RabbitTemplate rabbitTemplate, GateEventRetryPublisher retryPublisher) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.retryPublisher = retryPublisher;
+    }
+
+    /**
+     * Najstarsze wiadomości z DLQ (bez usuwania) oraz liczniki ponowień.
+     */
+    public Map<String, Object> inspect(int limit) {
+        List<Map<String, Object>> messages = new ArrayList<>();
+        Long depth = rabbitTemplate.execute(channel -> {
+            long lastTag = -1;
+            try {
+                for (int i = 0; i < limit; i++) {
+                    GetResponse response = channel.basicGet(ParkingAmqpConfig.PARKING_GATE_DLQ, false);
+                    if (response == null) {
+                        break;
+                    }
+                    lastTag = response.getEnvelope().getDeliveryTag();
+                    messages.add(describe(response));
+                }
+            } finally {
+                if (lastTag >= 0) {
+                    channel.basicNack(lastTag, true, true);
+                }
+            }
+            return channel.messageCount(ParkingAmqpConfig.PARKING_GATE_DLQ);
+        });
+
+        Map<String, Object> result = new HashMap<>(retryPublisher.stats());
+        result.put("queue", ParkingAmqpConfig.PARKING_GATE_DLQ);
+        result.put("depth", depth);
+        result.put("messages", messages);
+        return result;
+    }
+
+    /**
+     * Wysyła do limit wiadomości z DLQ z powrotem do ich shardów.
+     * @return liczba wysłanych wiadomości i liczba wiadomości pozostałych w DLQ
+     */
+    public Map<String, Object> replay(int limit) {
+        Map<String, Object> result = rabbitTemplate.invoke(ops -> ops.execute(channel -> {
+            int replayed = 0;
+            long lastTag = -1;
+            try {
+                for (int i = 0; i < limit; i++) {
+                    GetResponse response = channel.basicGet(ParkingAmqpConfig.PARKING_GATE_DLQ, false);
+                    if (response == null) {
+                        break;
+                    }
+                    lastTag = response.getEnvelope().getDeliveryTag();
+                    channel.basicPublish(ParkingAmqpConfig.PARKING_EXCHANGE, response.getEnvelope().getRoutingKey(),
+                            resetAttempts(response.getProps()), response.getBody());
+                    replayed++;
+                }
+                if (lastTag >= 0) {
+                    // Usuń z DLQ dopiero gdy broker potwierdził wszystkie ponowne publikacje
+                    channel.waitForConfirmsOrDie(CONFIRM_TIMEOUT_MS);
+                    channel.basicAck(lastTag, true);
+                }
+            } catch (Exception e) {
+                if (lastTag >= 0 && channel.isOpen()) {
+                    channel.basicNack(lastTag, true, true);
+                }
+                throw e;
+            }
+            Map<String, Object> summary = new HashMap<>();
+            summary.put("replayed", replayed);
+            summary.put("remaining", channel.messageCount(ParkingAmqpConfig.PARKING_GATE_DLQ));
+            return summary;
+        }));
+        log.info("Replayed dead-lettered gate events: {}", result);
+        return result;
+    }
+
+    private static AMQP.BasicProperties resetAttempts(AMQP.BasicProperties props) {
+        Map<String, Object> headers = props.getHeaders() != null ? new HashMap<>(props.getHeaders()) : new HashMap<>();
+        headers.remove(GateEventRetryPublisher.ATTEMPT_HEADER);
+        headers.remove("x-death");
+        return props.builder().headers(headers).build();
+    }
+
+    private static Map<String, Object> describe(GetResponse response) {
+        AMQP.BasicProperties props = response.getProps();
+        Map<String, Object> headers = props.getHeaders() != null ? props.getHeaders() : Map.of();
+        String payload = payloadPreview(props.getContentType(), response.getBody());
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("messageId", props.getMessageId());
+        message.put("type", headerString(headers, TYPE_ID_HEADER));
+        message.put("routingKey", response.getEnvelope().getRoutingKey());
+        message.put("attempts", headers.get(GateEventRetryPublisher.ATTEMPT_HEADER));
+        message.put("error", headerString(headers, GateEventRetryPublisher.ERROR_HEADER));
+        message.put("failedAt", headerString(headers, GateEventRetryPublisher.FAILED_AT_HEADER));
+        message.put("payload", payload.length() > MAX_PAYLOAD_PREVIEW ? payload.substring(0, MAX_PAYLOAD_PREVIEW) : payload);
+        return message;
+    }
+
+    private static String payloadPreview(String contentType, byte[] body) {
+        if (GateEventCodec.CONTENT_TYPE.equals(contentType)) {
+            try {
+                GateEvent event = GateEventCodec.decode(body);
+                return (event.type() == GateEvent.Type.ENTRY ? "entry" : "exit")
+                        + " plate=" + event.licencePlate() + ", parkingId=" + event.parkingId()
+                        + ", timestamp=" + event.timestamp() + ", eventId=" + event.eventId();
+            } catch (Exception e) {
+                return "<undecodable binary body, " + body.length + " bytes>";
+            }
+        }
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    // Nagłówki tekstowe przychodzą z klienta RabbitMQ jako LongString
+    private static String headerString(Map<String, Object> headers, String name) {
+        Object value = headers.get(name);
+        return value != null ? value.toString() : null;
+    }
+}
@@ -0,0 +1,58 @@
+package com.smartparking.parking_service.messaging;
+
+import com.smartparking.messaging.GateEvent;
+import com.smartparking.messaging.GateEventCodec;
+import com.smartparking.parking_service.dto.OcrEntryEvent;
+import com.smartparking.parking_service.dto.OcrExitEvent;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+/**
+ * Konwerter kolejek shardów wjazdów/wyjazdów: wiadomości z content type GateEventCodec.CONTENT_TYPE
+ * dekoduje z formatu binarnego (wspólny GateEventCodec z messaging-common) do OcrEntryEvent/OcrExitEvent,
+ * wszystkie pozostałe (JSON z __TypeId__) oddaje konwerterowi Jackson.
+ * Dzięki temu ocr-service może przełączać format per exchange bez zatrzymywania konsumentów.
+ */
+public class GateEventMessageConverter implements MessageConverter {
+    private final MessageConverter jsonConverter;
+
+    public GateEventMessageConverter(MessageConverter jsonConverter) {
+        this.jsonConverter = jsonConverter;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) throws MessageConversionException {
+        return jsonConverter.toMessage(object, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) throws MessageConversionException {
+        if (GateEventCodec.CONTENT_TYPE.equals(message.getMessageProperties().getContentType())) {
+            return decodeBinary(message.getBody());
+        }
+        return jsonConverter.fromMessage(message);
+    }
+
+    /**
+     * @return OcrEntryEvent albo OcrExitEvent
+     * @throws MessageConversionException dla nieznanej wersji schematu, nieznanego typu lub uciętego ciała
+     */
+    static Object decodeBinary(byte[] body) {
+        GateEvent event;
+        try {
+            event = GateEventCodec.decode(body);
+        } catch (IllegalArgumentException e) {
+            throw new MessageConversionException(e.getMessage(), e);
+        }
+        if (event.type() == GateEvent.Type.ENTRY) {
+            OcrEntryEvent entry = new OcrEntryEvent(event.licencePlate(), event.parkingId(), event.cameraId(), event.timestamp());
+            entry.setEventId(event.eventId());
+            return entry;
+        }
+        OcrExitEvent exit = new OcrExitEvent(event.licencePlate(), event.parkingId(), event.cameraId(), event.timestamp());
+        exit.setEventId(event.eventId());
+        return exit;
+    }
+}
@@ -0,0 +1,151 @@
+package com.smartparking.parking_service.messaging;
+
+import com.smartparking.parking_service.config.ParkingAmqpConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.ImmediateRequeueAmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ponawia nieudany event wjazdu/wyjazdu, a po wyczerpaniu prób przenosi go do parking.gate.dlq.
+ *
+ * Ponawiane są tylko błędy przejściowe (baza lub inny serwis chwilowo niedostępny, zob. isTransient). Błąd biznesowy
+ * (np. brak aktywnej sesji, brak cennika) skończyłby się tak samo przy każdej próbie, więc event od razu trafia do DLQ
+ * i nie blokuje shardu na czas wszystkich ponowień.
+ *
+ * Ponowienia są w miejscu: konsument shardu czeka ParkingAmqpConfig.GATE_RETRY_DELAYS_MS i próbuje jeszcze raz,
+ * zanim weźmie następną wiadomość z kolejki. Shard stoi przez czas ponowień, ale kolejne eventy tego samego parkingu
+ * (np. wyjazd po nieudanym wjeździe) nie mogą wyprzedzić ponawianego - kolejka opóźniająca z TTL by na to pozwoliła.
+ *
+ * Do DLQ event trafia z numerem próby i ostatnim błędem w nagłówkach; publikacja czeka na potwierdzenie brokera.
+ * Jeśli się nie uda, wiadomość jest odrzucana bez requeue i kolejka shardu sama przenosi ją przez DLX
+ * (parking.gate.dlx) do tej samej DLQ - bez nagłówków z błędem, ale też bez ponawiania w kółko.
+ */
+@Component
+public class GateEventRetryPublisher {
+    private static final Logger log = LoggerFactory.getLogger(GateEventRetryPublisher.class);
+
+    public static final String ATTEMPT_HEADER = "x-gate-attempt";
+    public static final String ERROR_HEADER = "x-gate-error";
+    public static final String FAILED_AT_HEADER = "x-gate-failed-at";
+    private static final int MAX_ERROR_LENGTH = 500;
+    private static final long CONFIRM_TIMEOUT_MS = 5000;
+
+    private final RabbitTemplate rabbitTemplate;
+
+    // Metryki (GET /parking/admin/gate-events/dead-letters)
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final AtomicLong deadLetteredWithoutRetry = new AtomicLong();
+    private final AtomicLong rejectedToDlx = new AtomicLong();
+
+    public GateEventRetryPublisher(RabbitTemplate rabbitTemplate) {
+        this.rabbitTemplate = rabbitTemplate;
+    }
+
+    /**
+     * Wykonuje obsługę eventu z ponowieniami błędów przejściowych; błąd biznesowy albo ostatnia nieudana próba
+     * przenosi wiadomość do DLQ.
+     * @param message oryginalna wiadomość z kolejki shardu (nagłówki i ciało idą do DLQ bez zmian)
+     * @param handler obsługa eventu (processEntry/processExit)
+     * @throws AmqpRejectAndDontRequeueException gdy publikacja do DLQ się nie udała - kontener odrzuca wiadomość do DLX
+     * @throws ImmediateRequeueAmqpException gdy wątek został przerwany w trakcie czekania (zamykanie aplikacji)
+     */
+    public void runWithRetry(Message message, Runnable handler) {
+        String routingKey = message.getMessageProperties().getReceivedRoutingKey();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                handler.run();
+                return;
+            } catch (Exception e) {
+                if (!isTransient(e)) {
+                    deadLetteredWithoutRetry.incrementAndGet();
+                    deadLetter(message, e, attempt);
+                    return;
+                }
+                if (attempt > ParkingAmqpConfig.GATE_RETRY_DELAYS_MS.length) {
+                    deadLetter(message, e, attempt);
+                    return;
+                }
+                long delay = ParkingAmqpConfig.GATE_RETRY_DELAYS_MS[attempt - 1];
+                log.warn("Gate event failed (attempt {}), retrying in {} ms: messageId={}, routingKey={}, error={}",
+                        attempt, delay, message.getMessageProperties().getMessageId(), routingKey, e.getMessage());
+                retried.incrementAndGet();
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    // Wiadomość wraca do kolejki shardu na swoje miejsce - kolejność zostaje zachowana
+                    throw new ImmediateRequeueAmqpException("Interrupted while waiting to retry gate event", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Czy ponowienie ma szansę się udać: zerwane połączenie lub timeout bazy albo błąd wywołania innego serwisu
+     * - także opakowany (np. IllegalStateException z przyczyną RestClientException).
+     */
+    static boolean isTransient(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DataAccessResourceFailureException
+                    || cause instanceof TransientDataAccessException
+                    || cause instanceof RestClientException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void deadLetter(Message message, Exception cause, int attempts) {
+        MessageProperties props = message.getMessageProperties();
+        String routingKey = props.getReceivedRoutingKey();
+        props.setHeader(ATTEMPT_HEADER, attempts);
+        props.setHeader(ERROR_HEADER, describe(cause));
+        props.setHeader(FAILED_AT_HEADER, Instant.now().toString());
+        props.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        log.error("Gate event failed after {} attempt(s), moving to {}: messageId={}, routingKey={}, error={}",
+                attempts, ParkingAmqpConfig.PARKING_GATE_DLQ, props.getMessageId(), routingKey, cause.getMessage());
+
+        try {
+            rabbitTemplate.invoke(ops -> {
+                ops.send(ParkingAmqpConfig.PARKING_GATE_DLX, routingKey, message);
+                ops.waitForConfirmsOrDie(CONFIRM_TIMEOUT_MS);
+                return null;
+            });
+            deadLettered.incrementAndGet();
+        } catch (Exception e) {
+            rejectedToDlx.incrementAndGet();
+            log.error("Failed to publish gate event to {}, rejecting to DLX: messageId={}, error={}",
+                    ParkingAmqpConfig.PARKING_GATE_DLQ, props.getMessageId(), e.getMessage());
+            throw new AmqpRejectAndDontRequeueException("Gate event dead-lettering failed", e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("retried", retried.get());
+        stats.put("deadLettered", deadLettered.get());
+        stats.put("deadLetteredWithoutRetry", deadLetteredWithoutRetry.get());
+        stats.put("rejectedToDlx", rejectedToDlx.get());
+        return stats;
+    }
+
+    private static String describe(Exception cause) {
+        String description = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        return description.length() > MAX_ERROR_LENGTH ? description.substring(0, MAX_ERROR_LENGTH) : description;
+    }
+}
@@ -5,6 +5,7 @@ import com.smartparking.parking_service.dto.OcrEntryEvent;
 import com.smartparking.parking_service.service.ParkingSessionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
 
@@ -12,36 +13,37 @@ import org.springframework.stereotype.Component;
 public class OcrEntryListener {
     private static final Logger log = LoggerFactory.getLogger(OcrEntryListener.class);
     private final ParkingSessionService sessionService;
+    private final GateEventRetryPublisher retryPublisher;
 
-    public OcrEntryListener(ParkingSessionService sessionService) {
+    public OcrEntryListener(ParkingSessionService sessionService, GateEventRetryPublisher retryPublisher) {
         this.sessionService = sessionService;
+        this.retryPublisher = retryPublisher;
     }
 
+    /**
+     * Nieudany wjazd nie jest gubiony: błąd przejściowy (np. customer-service chwilowo niedostępny) jest ponawiany
+     * w miejscu, a błąd biznesowy albo wyczerpanie prób przenosi event do parking.gate.dlq (GateEventRetryPublisher).
+     */
     @RabbitListener(queues = ParkingAmqpConfig.PARKING_ENTRY_QUEUE)
-    public void handleOcrEntry(OcrEntryEvent event) {
-        try {
-            String plate = event.getLicencePlate();
-            log.info("License plate recognized: plate={}, parking={}, camera={}, timestamp={}", 
-                plate, event.getParkingId(), event.getCameraId(), event.getTimestamp());
-            
-            Long sessionId = sessionService.createSessionOnEntry(
-                event.getLicencePlate(),
-                event.getParkingId(),
-                event.getCameraId(),
-                event.getTimestamp()
-            );
-            
-            log.info("Entry processed: plate={}, parking={}, sessionId={}", 
-                plate, event.getParkingId(), sessionId);
-        } catch (IllegalStateException e) {
-            // To może być błąd duplikatu - już zalogowano w ParkingSessionService
-            log.warn("Entry event rejected: plate={}, parking={}, reason={}", 
-                event.getLicencePlate(), event.getParkingId(), e.getMessage());
-            // Nie rzucaj wyjątku - event był zduplikowany i został poprawnie obsłużony
-        } catch (Exception e) {
-            log.error("Failed to process OCR entry event: plate={}, parking={}, error={}", 
-                event.getLicencePlate(), event.getParkingId(), e.getMessage(), e);
-        }
+    public void handleOcrEntry(OcrEntryEvent event, Message message) {
+        retryPublisher.runWithRetry(message, () -> processEntry(event));
     }
-}
 
+    private void processEntry(OcrEntryEvent event) {
+        String plate = event.getLicencePlate();
+        log.info("License plate recognized: plate={}, parking={}, camera={}, timestamp={}", 
+            plate, event.getParkingId(), event.getCameraId(), event.getTimestamp());
+        
+        // Duplikaty są obsługiwane w ParkingSessionService (zwraca istniejącą sesję) - wyjątek to prawdziwy błąd
+        Long sessionId = sessionService.createSessionOnEntry(
+            event.getLicencePlate(),
+            event.getParkingId(),
+            event.getCameraId(),
+            event.getTimestamp(),
+            event.getEventId()
+        );
+        
+        log.info("Entry processed: plate={}, parking={}, sessionId={}", 
+            plate, event.getParkingId(), sessionId);
+    }
+}
@@ -5,6 +5,7 @@ import com.smartparking.parking_service.dto.OcrExitEvent;
 import com.smartparking.parking_service.service.ParkingSessionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
 
@@ -12,30 +13,35 @@ import org.springframework.stereotype.Component;
 public class OcrExitListener {
     private static final Logger log = LoggerFactory.getLogger(OcrExitListener.class);
     private final ParkingSessionService sessionService;
+    private final GateEventRetryPublisher retryPublisher;
 
-    public OcrExitListener(ParkingSessionService sessionService) {
+    public OcrExitListener(ParkingSessionService sessionService, GateEventRetryPublisher retryPublisher) {
         this.sessionService = sessionService;
+        this.retryPublisher = retryPublisher;
     }
 
+    /**
+     * Wyjazd z błędem przejściowym jest ponawiany w miejscu (następne eventy shardu na niego czekają); błąd biznesowy
+     * (np. brak aktywnej sesji albo cennika) lub wyczerpanie prób przenosi go do parking.gate.dlq (GateEventRetryPublisher).
+     */
     @RabbitListener(queues = ParkingAmqpConfig.PARKING_EXIT_QUEUE)
-    public void handleOcrExit(OcrExitEvent event) {
-        try {
-            log.info("Received OCR exit event: plate={}, parking={}, camera={}", 
-                event.getLicencePlate(), event.getParkingId(), event.getCameraId());
-            
-            ParkingSessionService.PaymentResult result = sessionService.processExit(
-                event.getLicencePlate(),
-                event.getParkingId(),
-                event.getCameraId(),
-                event.getTimestamp()
-            );
-            
-            log.info("Processed exit for plate {}: payment {}", 
-                event.getLicencePlate(), result.isSuccess() ? "success" : "failed");
-        } catch (Exception e) {
-            log.error("Failed to process exit for OCR event: {}", event, e);
-            // Don't throw - message will be retried or sent to DLQ
-        }
+    public void handleOcrExit(OcrExitEvent event, Message message) {
+        retryPublisher.runWithRetry(message, () -> processExit(event));
     }
-}
 
+    private void processExit(OcrExitEvent event) {
+        log.info("Received OCR exit event: plate={}, parking={}, camera={}", 
+            event.getLicencePlate(), event.getParkingId(), event.getCameraId());
+        
+        ParkingSessionService.PaymentResult result = sessionService.processExit(
+            event.getLicencePlate(),
+            event.getParkingId(),
+            event.getCameraId(),
+            event.getTimestamp(),
+            event.getEventId()
+        );
+        
+        log.info("Processed exit for plate {}: payment {}", 
+            event.getLicencePlate(), result.isSuccess() ? "success" : "failed");
+    }
+}
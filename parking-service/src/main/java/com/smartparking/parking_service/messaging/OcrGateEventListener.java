@@ -0,0 +1,39 @@
+package com.smartparking.parking_service.messaging;
+
+import com.smartparking.parking_service.config.ParkingAmqpConfig;
+import com.smartparking.parking_service.dto.OcrEntryEvent;
+import com.smartparking.parking_service.dto.OcrExitEvent;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitHandler;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Component;
+
+/**
+ * Konsumuje shardowane kolejki wjazdów i wyjazdów (parking.gate.<shard>.queue).
+ * Wjazd i wyjazd z jednego parkingu są w tej samej kolejce, więc wyjazd nie wyprzedzi swojego wjazdu;
+ * każdy shard ma jednego konsumenta, a shardy działają równolegle (ParkingAmqpConfig.parkingGateContainerFactory).
+ * Nieudany event jest ponawiany w miejscu, więc następne eventy shardu czekają na niego (GateEventRetryPublisher).
+ */
+@Component
+@RabbitListener(queues = "#{parkingGateQueueNames}",
+        containerFactory = ParkingAmqpConfig.PARKING_GATE_CONTAINER_FACTORY)
+public class OcrGateEventListener {
+    private final OcrEntryListener entryListener;
+    private final OcrExitListener exitListener;
+
+    public OcrGateEventListener(OcrEntryListener entryListener, OcrExitListener exitListener) {
+        this.entryListener = entryListener;
+        this.exitListener = exitListener;
+    }
+
+    @RabbitHandler
+    public void handleEntry(@Payload OcrEntryEvent event, Message message) {
+        entryListener.handleOcrEntry(event, message);
+    }
+
+    @RabbitHandler
+    public void handleExit(@Payload OcrExitEvent event, Message message) {
+        exitListener.handleOcrExit(event, message);
+    }
+}
@@ -1,10 +1,10 @@
 package com.smartparking.parking_service.messaging;
 
+import com.smartparking.messaging.ConfirmingPublisher;
 import com.smartparking.parking_service.client.AccountClient;
 import com.smartparking.parking_service.dto.ParkingPaymentConfirmationEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
@@ -12,11 +12,11 @@ import java.time.Instant;
 @Component
 public class ParkingPaymentEventPublisher {
     private static final Logger log = LoggerFactory.getLogger(ParkingPaymentEventPublisher.class);
-    private final RabbitTemplate rabbitTemplate;
+    private final ConfirmingPublisher confirmingPublisher;
     private final AccountClient accountClient;
 
-    public ParkingPaymentEventPublisher(RabbitTemplate rabbitTemplate, AccountClient accountClient) {
-        this.rabbitTemplate = rabbitTemplate;
+    public ParkingPaymentEventPublisher(ConfirmingPublisher confirmingPublisher, AccountClient accountClient) {
+        this.confirmingPublisher = confirmingPublisher;
         this.accountClient = accountClient;
     }
 
@@ -36,12 +36,19 @@ public class ParkingPaymentEventPublisher {
             ParkingPaymentConfirmationEvent event = new ParkingPaymentConfirmationEvent(
                 email, accountId, sessionId, entryTime, exitTime, amountMinor, durationMinutes
             );
-            rabbitTemplate.convertAndSend(
+            // Potwierdzenie brokera przychodzi asynchronicznie - wyjazd nie czeka na RabbitMQ
+            confirmingPublisher.send(
                 "email.exchange", // Użyj tego samego exchange co customer-service
                 "email.parking.payment",
                 event
-            );
-            log.info("Parking payment confirmation event published successfully: email={}", email);
+            ).whenComplete((ok, error) -> {
+                if (error != null) {
+                    log.error("Broker did not confirm parking payment confirmation event: email={}, sessionId={}, error={}",
+                        email, sessionId, error.getMessage());
+                } else {
+                    log.info("Parking payment confirmation event published successfully: email={}", email);
+                }
+            });
         } catch (Exception e) {
             log.error("Failed to publish parking payment confirmation event: email={}", email, e);
             // Don't throw - email failure shouldn't fail the payment
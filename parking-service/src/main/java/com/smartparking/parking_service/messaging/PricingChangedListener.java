@@ -0,0 +1,41 @@
+package com.smartparking.parking_service.messaging;
+
+import com.smartparking.parking_service.config.ParkingAmqpConfig;
+import com.smartparking.parking_service.dto.PricingChangedEvent;
+import com.smartparking.parking_service.service.PricingCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Unieważnia PricingCache po zmianie cennika na innej replice parking-service.
+ * Kolejka jest anonimowa (exclusive, auto-delete), więc zdarzenie trafia do każdej instancji.
+ */
+@Component
+public class PricingChangedListener {
+    private static final Logger log = LoggerFactory.getLogger(PricingChangedListener.class);
+    private final PricingCache pricingCache;
+
+    public PricingChangedListener(PricingCache pricingCache) {
+        this.pricingCache = pricingCache;
+    }
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(exclusive = "true", autoDelete = "true"),
+            exchange = @Exchange(value = ParkingAmqpConfig.PARKING_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = ParkingAmqpConfig.PARKING_PRICING_ROUTING))
+    public void handlePricingChanged(PricingChangedEvent event) {
+        try {
+            log.info("Received pricing changed event: parkingId={}, pricingId={}",
+                event.getParkingId(), event.getPricingId());
+            pricingCache.invalidate(event.getParkingId());
+        } catch (Exception e) {
+            log.error("Failed to handle pricing changed event: parkingId={}", event.getParkingId(), e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.smartparking.parking_service.messaging;
+
+import com.smartparking.parking_service.config.ParkingAmqpConfig;
+import com.smartparking.parking_service.dto.PricingChangedEvent;
+import com.smartparking.parking_service.model.ParkingPricing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+@Component
+public class PricingEventPublisher {
+    private static final Logger log = LoggerFactory.getLogger(PricingEventPublisher.class);
+    private final RabbitTemplate rabbitTemplate;
+
+    public PricingEventPublisher(RabbitTemplate rabbitTemplate) {
+        this.rabbitTemplate = rabbitTemplate;
+    }
+
+    public void publishPricingChanged(ParkingPricing pricing) {
+        try {
+            PricingChangedEvent event = new PricingChangedEvent(
+                pricing.getParkingId(), pricing.getId(), pricing.getCurrencyCode(),
+                pricing.getRatePerMin(), pricing.getFreeMinutes(), pricing.getRoundingStepMin(),
+                pricing.getReservationFeeMinor(), Instant.now()
+            );
+            rabbitTemplate.convertAndSend(
+                ParkingAmqpConfig.PARKING_EXCHANGE,
+                ParkingAmqpConfig.PARKING_PRICING_ROUTING,
+                event
+            );
+            log.info("Pricing changed event published: parkingId={}, pricingId={}",
+                pricing.getParkingId(), pricing.getId());
+        } catch (Exception e) {
+            log.error("Failed to publish pricing changed event: parkingId={}", pricing.getParkingId(), e);
+            // Don't throw - caches on other instances fall back to their TTL
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.smartparking.parking_service.messaging;
+
+import com.smartparking.parking_service.config.ParkingAmqpConfig;
+import com.smartparking.parking_service.dto.SettlementResult;
+import com.smartparking.parking_service.service.SessionSettlementService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Odbiera wyniki rozliczeń sesji z payment-service (payment.settlement.completed).
+ * Błąd nie wraca do kolejki - sesja zostaje w Settling i resync wyśle polecenie ponownie.
+ */
+@Component
+public class SettlementResultListener {
+    private static final Logger log = LoggerFactory.getLogger(SettlementResultListener.class);
+    private final SessionSettlementService settlementService;
+
+    public SettlementResultListener(SessionSettlementService settlementService) {
+        this.settlementService = settlementService;
+    }
+
+    @RabbitListener(queues = ParkingAmqpConfig.SETTLEMENT_RESULT_QUEUE)
+    public void handleSettlementResult(SettlementResult result) {
+        try {
+            settlementService.onResult(result);
+        } catch (Exception e) {
+            log.error("Failed to apply settlement result: sessionId={}, status={}",
+                result.getSessionId(), result.getStatus(), e);
+        }
+    }
+}
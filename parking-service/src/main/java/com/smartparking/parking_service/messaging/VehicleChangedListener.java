@@ -0,0 +1,42 @@
+package com.smartparking.parking_service.messaging;
+
+import com.smartparking.parking_service.config.ParkingAmqpConfig;
+import com.smartparking.parking_service.dto.VehicleChangedEvent;
+import com.smartparking.parking_service.service.VehicleResolutionCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Unieważnia VehicleResolutionCache po rejestracji, zmianie tablicy lub usunięciu pojazdu w customer-service.
+ * Kolejka jest anonimowa (exclusive, auto-delete), więc zdarzenie trafia do każdej instancji.
+ */
+@Component
+public class VehicleChangedListener {
+    private static final Logger log = LoggerFactory.getLogger(VehicleChangedListener.class);
+    private final VehicleResolutionCache vehicleCache;
+
+    public VehicleChangedListener(VehicleResolutionCache vehicleCache) {
+        this.vehicleCache = vehicleCache;
+    }
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(exclusive = "true", autoDelete = "true"),
+            exchange = @Exchange(value = ParkingAmqpConfig.CUSTOMER_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = ParkingAmqpConfig.CUSTOMER_VEHICLE_ROUTING))
+    public void handleVehicleChanged(VehicleChangedEvent event) {
+        try {
+            log.info("Received vehicle changed event: vehicleId={}, plate={}, type={}",
+                event.getVehicleId(), event.getLicencePlate(), event.getChangeType());
+            vehicleCache.invalidate(event.getLicencePlate());
+            vehicleCache.invalidate(event.getPreviousLicencePlate());
+        } catch (Exception e) {
+            log.error("Failed to handle vehicle changed event: vehicleId={}", event.getVehicleId(), e);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.smartparking.parking_service.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+
+/**
+ * Rezerwacja na liście rezerwacji konta (/parking/reservations) z nazwą parkingu i kodem miejsca.
+ */
+public record AccountReservation(
+        @JsonProperty("id_reservation") long idReservation,
+        @JsonProperty("id_account") long idAccount,
+        @JsonProperty("id_parking") long idParking,
+        @JsonProperty("id_spot") long idSpot,
+        @JsonProperty("vehicle_id") @JsonInclude(JsonInclude.Include.NON_NULL) Long vehicleId,
+        @JsonProperty("start_time") Instant startTime,
+        @JsonProperty("end_time") Instant endTime,
+        @JsonProperty("status") String status,
+        @JsonProperty("parkingName") String parkingName,
+        @JsonProperty("address") String address,
+        @JsonProperty("spot_code") String spotCode) {
+}
@@ -0,0 +1,28 @@
+package com.smartparking.parking_service.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Sesja parkingowa konta z nazwą i adresem parkingu (/parking/sessions, /parking/sessions/active, eksport NDJSON).
+ * spotCode i spotFloor wypełnia tylko zapytanie o aktywną sesję.
+ */
+public record AccountSession(
+        @JsonProperty("session_id") long sessionId,
+        @JsonProperty("entry_time") Instant entryTime,
+        @JsonProperty("exit_time") Instant exitTime,
+        @JsonProperty("price_total_minor") BigDecimal priceTotalMinor,
+        @JsonProperty("payment_status") String paymentStatus,
+        @JsonProperty("parking_id") long parkingId,
+        @JsonProperty("spot_id") long spotId,
+        @JsonProperty("vehicle_id") long vehicleId,
+        @JsonProperty("account_id") Long accountId,
+        @JsonProperty("reservation_id") Long reservationId,
+        @JsonProperty("parking_name") String parkingName,
+        @JsonProperty("parking_address") String parkingAddress,
+        @JsonProperty("spot_code") @JsonInclude(JsonInclude.Include.NON_NULL) String spotCode,
+        @JsonProperty("spot_floor") @JsonInclude(JsonInclude.Include.NON_NULL) Integer spotFloor) {
+}
@@ -0,0 +1,8 @@
+package com.smartparking.parking_service.model;
+
+/**
+ * Tablica rejestracyjna aktywnej sesji (exit_time IS NULL) używana do zasilania indeksu tablic.
+ * plate = tablica odczytana przy wjeździe (parking_session.entry_plate).
+ */
+public record ActivePlate(long sessionId, long parkingId, long vehicleId, String plate) {
+}
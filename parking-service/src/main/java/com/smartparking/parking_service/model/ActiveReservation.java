@@ -0,0 +1,22 @@
+package com.smartparking.parking_service.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+
+/**
+ * Obowiązująca rezerwacja 'Paid' dla worker-service (/parking/reservations/active).
+ * type = "Reserved" zachowany dla kompatybilności wstecznej.
+ */
+public record ActiveReservation(
+        @JsonProperty("id_reservation") long idReservation,
+        @JsonProperty("id_account") long idAccount,
+        @JsonProperty("id_parking") long idParking,
+        @JsonProperty("id_spot") long idSpot,
+        @JsonProperty("start_time") Instant startTime,
+        @JsonProperty("end_time") Instant endTime,
+        @JsonProperty("type") String type,
+        @JsonProperty("parkingName") String parkingName,
+        @JsonProperty("address") String address,
+        @JsonProperty("spot_code") String spotCode) {
+}
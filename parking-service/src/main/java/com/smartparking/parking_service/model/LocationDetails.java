@@ -0,0 +1,18 @@
+package com.smartparking.parking_service.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Szczegóły parkingu dla /parking/locations/{id}/details (liczniki miejsc + cennik).
+ */
+public record LocationDetails(
+        @JsonProperty("id_parking") long idParking,
+        @JsonProperty("name_parking") String nameParking,
+        @JsonProperty("address_line") String addressLine,
+        @JsonProperty("total_spots") long totalSpots,
+        @JsonProperty("available_spots") long availableSpots,
+        @JsonProperty("reserved_spots") long reservedSpots,
+        @JsonProperty("occupied_spots") long occupiedSpots,
+        @JsonProperty("price_per_hour_minor") long pricePerHourMinor,
+        @JsonProperty("reservation_fee_minor") long reservationFeeMinor) {
+}
@@ -0,0 +1,16 @@
+package com.smartparking.parking_service.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Parking na liście /parking/locations. Liczby miejsc pochodzą z ParkingAvailabilityCounters.
+ * Nazwy pól JSON są takie same jak w dotychczasowym kontrakcie API (snake_case).
+ */
+public record LocationSummary(
+        @JsonProperty("id_parking") long idParking,
+        @JsonProperty("name_parking") String nameParking,
+        @JsonProperty("address_line") String addressLine,
+        @JsonProperty("total_spots") long totalSpots,
+        @JsonProperty("available_spots") long availableSpots,
+        @JsonProperty("price_per_hour_minor") long pricePerHourMinor) {
+}
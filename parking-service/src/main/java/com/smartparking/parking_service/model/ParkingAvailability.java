@@ -0,0 +1,14 @@
+package com.smartparking.parking_service.model;
+
+/**
+ * Liczniki dostępności miejsc dla jednego parkingu.
+ * availableSpots = miejsca nierezerwowalne ('Available', to_reserved = false) bez aktywnej sesji,
+ * reservedSpots = miejsca z obowiązującą rezerwacją 'Paid', occupiedSpots = aktywne sesje.
+ */
+public record ParkingAvailability(long parkingId, int totalSpots, int availableSpots,
+                                  int reservedSpots, int occupiedSpots) {
+
+    public static ParkingAvailability empty(long parkingId) {
+        return new ParkingAvailability(parkingId, 0, 0, 0, 0);
+    }
+}
@@ -15,6 +15,11 @@ public class ParkingSession {
     private Long refVehicleId;
     private Long refAccountId;
     private Long reservationId; // ID rezerwacji jeśli sesja powstała z rezerwacji
+    private String entryPlate; // tablica z OCR przy wjeździe - zapisywana tylko przy INSERT
+    private String entryEventId; // klucz idempotencji eventu wjazdu - zapisywany tylko przy INSERT
+    private String exitEventId; // klucz idempotencji eventu wyjazdu - zapisywany przy zamknięciu sesji
+    private Long penaltyMinor; // kara za przekroczenie rezerwacji - zapisywana przy zamknięciu, pobiera ją PenaltyReconciliationScheduler
+    private LocalDateTime settlementRequestedAt; // wysłanie polecenia rozliczenia do payment-service (status Settling)
 
     public Long getId() {return id;}
     public void setId(Long id) {this.id = id;}
@@ -36,4 +41,14 @@ public class ParkingSession {
     public void setRefAccountId(Long refAccountId) {this.refAccountId = refAccountId;}
     public Long getReservationId() {return reservationId;}
     public void setReservationId(Long reservationId) {this.reservationId = reservationId;}
+    public String getEntryPlate() {return entryPlate;}
+    public void setEntryPlate(String entryPlate) {this.entryPlate = entryPlate;}
+    public String getEntryEventId() {return entryEventId;}
+    public void setEntryEventId(String entryEventId) {this.entryEventId = entryEventId;}
+    public String getExitEventId() {return exitEventId;}
+    public void setExitEventId(String exitEventId) {this.exitEventId = exitEventId;}
+    public Long getPenaltyMinor() {return penaltyMinor;}
+    public void setPenaltyMinor(Long penaltyMinor) {this.penaltyMinor = penaltyMinor;}
+    public LocalDateTime getSettlementRequestedAt() {return settlementRequestedAt;}
+    public void setSettlementRequestedAt(LocalDateTime settlementRequestedAt) {this.settlementRequestedAt = settlementRequestedAt;}
 }
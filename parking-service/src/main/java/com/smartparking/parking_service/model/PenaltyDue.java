@@ -0,0 +1,7 @@
+package com.smartparking.parking_service.model;
+
+/**
+ * Zakończona sesja z naliczoną, jeszcze niepobraną karą (parking_session.penalty_minor, penalty_charged_at IS NULL).
+ */
+public record PenaltyDue(long sessionId, long parkingId, long accountId, long penaltyMinor) {
+}
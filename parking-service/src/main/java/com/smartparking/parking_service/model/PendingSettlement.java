@@ -0,0 +1,11 @@
+package com.smartparking.parking_service.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Sesja zamknięta ze statusem Settling, czekająca na wynik rozliczenia z payment-service.
+ * requestedAt = zamknięcie sesji (od niego liczone jest opóźnienie rozliczenia), attempt = numer ponowienia.
+ */
+public record PendingSettlement(long sessionId, long parkingId, long accountId, long amountMinor,
+                                LocalDateTime requestedAt, int attempt) {
+}
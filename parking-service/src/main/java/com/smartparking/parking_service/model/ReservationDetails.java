@@ -0,0 +1,22 @@
+package com.smartparking.parking_service.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+
+/**
+ * Pojedyncza rezerwacja (reservation_spot) - używana przy wjeździe i wyjeździe
+ * oraz zwracana przez /parking/reservations/{id}.
+ * validFrom i vehicleId mogą być puste w starszych rezerwacjach - wtedy nie trafiają do JSON.
+ */
+public record ReservationDetails(
+        @JsonProperty("reservation_id") long reservationId,
+        @JsonProperty("spot_id") long spotId,
+        @JsonProperty("valid_from") @JsonInclude(JsonInclude.Include.NON_NULL) Instant validFrom,
+        @JsonProperty("valid_until") Instant validUntil,
+        @JsonProperty("status_reservation") String status,
+        @JsonProperty("parking_id") long parkingId,
+        @JsonProperty("ref_account_id") long refAccountId,
+        @JsonProperty("vehicle_id") @JsonInclude(JsonInclude.Include.NON_NULL) Long vehicleId) {
+}
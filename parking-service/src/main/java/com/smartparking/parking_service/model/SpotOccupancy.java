@@ -0,0 +1,8 @@
+package com.smartparking.parking_service.model;
+
+/**
+ * Migawka stanu pojedynczego miejsca używana do zasilania indeksu zajętości.
+ * free = miejsce 'Available', bez aktywnej sesji i bez obowiązującej rezerwacji 'Paid'.
+ */
+public record SpotOccupancy(long spotId, long parkingId, boolean free) {
+}
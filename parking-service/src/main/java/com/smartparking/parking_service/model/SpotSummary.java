@@ -0,0 +1,15 @@
+package com.smartparking.parking_service.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Miejsce parkingowe na listach /parking/spots i /parking/spots/for-reservation.
+ */
+public record SpotSummary(
+        @JsonProperty("id_spot") long idSpot,
+        @JsonProperty("id_parking") long idParking,
+        @JsonProperty("code") String code,
+        @JsonProperty("floor_lvl") int floorLvl,
+        @JsonProperty("to_reserved") boolean toReserved,
+        @JsonProperty("type") String type) {
+}
@@ -1,6 +1,9 @@
 package com.smartparking.parking_service.repository;
 
+import com.smartparking.parking_service.model.ActivePlate;
 import com.smartparking.parking_service.model.ParkingSession;
+import com.smartparking.parking_service.model.PenaltyDue;
+import com.smartparking.parking_service.model.PendingSettlement;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -8,17 +11,58 @@ import org.springframework.stereotype.Repository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Repository
 public class JdbcParkingSessionRepository implements ParkingSessionRepository {
 
     private static final Logger log = LoggerFactory.getLogger(JdbcParkingSessionRepository.class);
+
+    // Częściowy unikalny indeks: co najwyżej jedna aktywna sesja na miejsce (database-test/parking_db.sql)
+    private static final String ACTIVE_SPOT_INDEX = "uq_parking_session_active_spot";
+    // Klucze idempotencji eventów z ocr-service (database-test/parking_db.sql)
+    private static final String ENTRY_EVENT_INDEX = "uq_parking_session_entry_event";
+    // Ponowienia po konflikcie session_id (rozjechana sekwencja). Konflikt na miejscu ponawiamy bez limitu:
+    // każdy oznacza, że inna sesja zajęła miejsce, więc wolnych ubywa, aż zapytanie znajdzie miejsce albo zwróci pusto
+    private static final int MAX_SEQUENCE_RETRIES = 3;
+
+    private static final String CLAIM_SQL_TEMPLATE = "WITH candidate AS (" +
+            "    SELECT ps.spot_id FROM parking_spot ps " +
+            "    WHERE %s " +
+            "    AND ps.id_parking = ? " +
+            "    AND ps.type = 'Available' " +
+            "    AND NOT EXISTS (" +
+            "        SELECT 1 FROM reservation_spot rs " +
+            "        WHERE rs.spot_id = ps.spot_id " +
+            "        AND rs.status_reservation = 'Paid' " +
+            "        AND rs.valid_until > NOW()" +
+            "    ) " +
+            "    AND NOT EXISTS (" +
+            "        SELECT 1 FROM parking_session psess " +
+            "        WHERE psess.spot_id = ps.spot_id " +
+            "        AND psess.exit_time IS NULL" +
+            "    ) " +
+            "    %s " +
+            "    LIMIT 1 " +
+            "    FOR UPDATE OF ps SKIP LOCKED" +
+            ") " +
+            "INSERT INTO parking_session(" +
+            "entry_time, exit_time, price_total_minor, payment_status, " +
+            "parking_id, spot_id, ref_vehicle_id, ref_account_id, reservation_id, entry_plate, entry_event_id" +
+            ") SELECT ?, NULL, NULL, ?::payment_status, ?, c.spot_id, ?, ?, NULL, ?, CAST(? AS uuid) FROM candidate c " +
+            "RETURNING session_id, spot_id";
+    private static final String CLAIM_PREFERRED_SQL = String.format(CLAIM_SQL_TEMPLATE, "ps.spot_id = ?", "");
+    private static final String CLAIM_RANDOM_SQL = String.format(CLAIM_SQL_TEMPLATE, "ps.id_parking = ?", "ORDER BY RANDOM()");
+
     private final JdbcTemplate jdbc;
 
     public JdbcParkingSessionRepository(JdbcTemplate jdbc) {
@@ -92,13 +136,59 @@ public class JdbcParkingSessionRepository implements ParkingSessionRepository {
     }
 
     @Override
-    public List<ParkingSession> findByParkingId(Long parkingId) {
+    public List<ParkingSession> findByParkingIdAndEntryRange(Long parkingId, LocalDateTime from, LocalDateTime to,
+                                                             LocalDateTime afterEntryTime, Long afterSessionId, int limit) {
+        if (afterEntryTime != null && afterSessionId != null) {
+            return jdbc.query(
+                    "SELECT session_id , entry_time, exit_time, price_total_minor, payment_status,parking_id, spot_id, ref_vehicle_id, " +
+                            " ref_account_id, reservation_id FROM parking_session " +
+                            "WHERE parking_id = ? AND entry_time >= ? AND entry_time < ? " +
+                            "AND (entry_time, session_id) < (?, ?) " +
+                            "ORDER BY entry_time DESC, session_id DESC LIMIT ?",
+                    mapper,
+                    parkingId, Timestamp.valueOf(from), Timestamp.valueOf(to),
+                    Timestamp.valueOf(afterEntryTime), afterSessionId, limit
+            );
+        }
         return jdbc.query(
                 "SELECT session_id , entry_time, exit_time, price_total_minor, payment_status,parking_id, spot_id, ref_vehicle_id, " +
-                        " ref_account_id, reservation_id FROM parking_session WHERE parking_id = ? ORDER BY entry_time DESC",
+                        " ref_account_id, reservation_id FROM parking_session " +
+                        "WHERE parking_id = ? AND entry_time >= ? AND entry_time < ? " +
+                        "ORDER BY entry_time DESC, session_id DESC LIMIT ?",
                 mapper,
+                parkingId, Timestamp.valueOf(from), Timestamp.valueOf(to), limit
+        );
+    }
+
+    @Override
+    public long countOpenSessionsByParkingId(Long parkingId) {
+        Long count = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM parking_session WHERE parking_id = ? AND exit_time IS NULL",
+                Long.class,
                 parkingId
         );
+        return count != null ? count : 0L;
+    }
+
+    @Override
+    public Map<Long, Long> findParkingIdsBySessionIds(List<Long> sessionIds) {
+        Map<Long, Long> result = new HashMap<>();
+        if (sessionIds == null || sessionIds.isEmpty()) {
+            return result;
+        }
+        // Jeden parametr tablicowy zamiast IN (?,?,...) - lista nie jest ograniczona limitem parametrów bind
+        String ids = sessionIds.stream()
+                .filter(java.util.Objects::nonNull)
+                .map(String::valueOf)
+                .collect(Collectors.joining(",", "{", "}"));
+        jdbc.query(
+                "SELECT session_id, parking_id FROM parking_session WHERE session_id = ANY(CAST(? AS bigint[]))",
+                rs -> {
+                    result.put(rs.getLong("session_id"), rs.getLong("parking_id"));
+                },
+                ids
+        );
+        return result;
     }
 
     @Override
@@ -119,6 +209,40 @@ public class JdbcParkingSessionRepository implements ParkingSessionRepository {
         );
     }
 
+    @Override
+    public Optional<Long> findSessionIdByEntryEventId(String eventId) {
+        var list = jdbc.queryForList(
+                "SELECT session_id FROM parking_session WHERE entry_event_id = CAST(? AS uuid)",
+                Long.class,
+                eventId
+        );
+        return list.stream().findFirst();
+    }
+
+    @Override
+    public Optional<ParkingSession> findByExitEventId(String eventId) {
+        var list = jdbc.query(
+                "SELECT session_id , entry_time, exit_time, price_total_minor, payment_status,parking_id, spot_id, ref_vehicle_id, " +
+                        " ref_account_id, reservation_id FROM parking_session WHERE exit_event_id = CAST(? AS uuid)",
+                mapper,
+                eventId
+        );
+        return list.stream().findFirst();
+    }
+
+    @Override
+    public List<ActivePlate> findActivePlates() {
+        return jdbc.query(
+                "SELECT session_id, parking_id, ref_vehicle_id, entry_plate FROM parking_session " +
+                        "WHERE exit_time IS NULL AND entry_plate IS NOT NULL",
+                (rs, i) -> new ActivePlate(
+                        rs.getLong("session_id"),
+                        rs.getLong("parking_id"),
+                        rs.getLong("ref_vehicle_id"),
+                        rs.getString("entry_plate"))
+        );
+    }
+
     @Override
     public Optional<ParkingSession> findActiveSessionByVehicleAndParking(Long vehicleId, Long parkingId) {
         var list = jdbc.query(
@@ -147,6 +271,81 @@ public class JdbcParkingSessionRepository implements ParkingSessionRepository {
     public ParkingSession save(ParkingSession session) {
         return save(session, 0);
     }
+
+    /**
+     * Wybór miejsca i INSERT sesji w jednym zapytaniu. FOR UPDATE SKIP LOCKED sprawia, że równoległe
+     * wjazdy (również z innych replik) omijają miejsce, które ktoś właśnie zajmuje, zamiast na nie czekać.
+     * Okno między snapshotem zapytania a blokadą domyka unikalny indeks aktywnej sesji na miejscu -
+     * przy konflikcie próbujemy ponownie z nowym snapshotem, dopóki są wolne miejsca.
+     */
+    @Override
+    public Optional<ParkingSession> claimFreeSpot(ParkingSession session, Long preferredSpotId) {
+        if (session.getEntryTime() == null) {
+            session.setEntryTime(LocalDateTime.now());
+        }
+
+        int sequenceRetries = 0;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                // Najpierw tani lookup po kluczu dla kandydata z indeksu, losowanie tylko gdy go brak lub jest zajęty
+                Optional<long[]> claimed = preferredSpotId != null
+                        ? claim(CLAIM_PREFERRED_SQL, session, preferredSpotId)
+                        : Optional.empty();
+                if (claimed.isEmpty()) {
+                    claimed = claim(CLAIM_RANDOM_SQL, session, session.getParkingId());
+                }
+                if (claimed.isEmpty()) {
+                    return Optional.empty();
+                }
+                session.setId(claimed.get()[0]);
+                session.setSpotId(claimed.get()[1]);
+                session.setReservationId(null);
+                return Optional.of(session);
+            } catch (DuplicateKeyException e) {
+                if (isConflictOn(e, ENTRY_EVENT_INDEX)) {
+                    throw duplicateEntryEvent(session, e);
+                }
+                if (!isConflictOn(e, ACTIVE_SPOT_INDEX)) {
+                    if (++sequenceRetries > MAX_SEQUENCE_RETRIES) {
+                        throw new IllegalStateException("Failed to claim spot at parking " + session.getParkingId()
+                                + " - session_id sequence still out of sync after " + MAX_SEQUENCE_RETRIES + " retries", e);
+                    }
+                    log.warn("Duplicate session_id while claiming spot at parking {} - synchronizing sequence (attempt {})",
+                            session.getParkingId(), attempt);
+                    synchronizeSequence();
+                } else {
+                    log.debug("Spot claimed concurrently at parking {} - retrying (attempt {})",
+                            session.getParkingId(), attempt);
+                }
+                // Kandydat z indeksu mógł być właśnie tym zajętym miejscem
+                preferredSpotId = null;
+            }
+        }
+    }
+
+    private Optional<long[]> claim(String sql, ParkingSession session, Long spotFilter) {
+        var list = jdbc.query(sql, (rs, i) -> new long[]{rs.getLong("session_id"), rs.getLong("spot_id")},
+                spotFilter,
+                session.getParkingId(),
+                Timestamp.valueOf(session.getEntryTime()),
+                session.getPaymentStatus() != null ? session.getPaymentStatus() : "Session",
+                session.getParkingId(),
+                session.getRefVehicleId(),
+                session.getRefAccountId(),
+                session.getEntryPlate(),
+                session.getEntryEventId());
+        return list.stream().findFirst();
+    }
+
+    private static boolean isConflictOn(DuplicateKeyException e, String indexName) {
+        String message = e.getMessage();
+        return message != null && message.contains(indexName);
+    }
+
+    private static IllegalStateException duplicateEntryEvent(ParkingSession session, DuplicateKeyException e) {
+        return new IllegalStateException("Entry event " + session.getEntryEventId() + " already processed at parking "
+                + session.getParkingId(), e);
+    }
     
     /**
      * Wewnętrzna metoda save z licznikiem rekurencji dla zabezpieczenia przed nieskończoną pętlą.
@@ -165,8 +364,8 @@ public class JdbcParkingSessionRepository implements ParkingSessionRepository {
                 Long id = jdbc.queryForObject(
                         "INSERT INTO parking_session(" +
                                 "entry_time, exit_time, price_total_minor, payment_status, " +
-                                "parking_id, spot_id, ref_vehicle_id, ref_account_id, reservation_id" +
-                                ") VALUES (?, ?, ?, ?::payment_status, ?, ?, ?, ?, ?) RETURNING session_id",
+                                "parking_id, spot_id, ref_vehicle_id, ref_account_id, reservation_id, entry_plate, entry_event_id" +
+                                ") VALUES (?, ?, ?, ?::payment_status, ?, ?, ?, ?, ?, ?, CAST(? AS uuid)) RETURNING session_id",
                         Long.class,
                         Timestamp.valueOf(session.getEntryTime()),
                         session.getExitTime() != null ? Timestamp.valueOf(session.getExitTime()) : null,
@@ -176,11 +375,22 @@ public class JdbcParkingSessionRepository implements ParkingSessionRepository {
                         session.getSpotId(),
                         session.getRefVehicleId(),
                         session.getRefAccountId() != null ? session.getRefAccountId() : null,
-                        session.getReservationId() != null ? session.getReservationId() : null
+                        session.getReservationId() != null ? session.getReservationId() : null,
+                        session.getEntryPlate(),
+                        session.getEntryEventId()
                 );
                 session.setId(id);
                 return session;
             } catch (DuplicateKeyException e) {
+                if (isConflictOn(e, ENTRY_EVENT_INDEX)) {
+                    // Ten sam event wjazdu został już przetworzony - nie ponawiamy
+                    throw duplicateEntryEvent(session, e);
+                }
+                if (isConflictOn(e, ACTIVE_SPOT_INDEX)) {
+                    // Miejsce ma już aktywną sesję - to nie jest problem sekwencji, nie ponawiamy
+                    throw new SpotOccupiedException("Spot " + session.getSpotId() + " is already occupied at parking "
+                            + session.getParkingId(), e);
+                }
                 // Sekwencja może być niezsynchronizowana - spróbuj znaleźć istniejącą sesję
                 log.error("Duplicate key error when creating session - sequence may be out of sync. " +
                         "Attempting to find existing session for vehicleId={}, parkingId={}, entryTime={}", 
@@ -245,7 +455,10 @@ public class JdbcParkingSessionRepository implements ParkingSessionRepository {
             jdbc.update(
                     "UPDATE parking_session SET " +
                             "entry_time = ?, exit_time = ?, price_total_minor = ?, payment_status = ?::payment_status, " +
-                            "parking_id = ?, spot_id = ?, ref_vehicle_id = ?, ref_account_id = ?, reservation_id = ? " +
+                            "parking_id = ?, spot_id = ?, ref_vehicle_id = ?, ref_account_id = ?, reservation_id = ?, " +
+                            "exit_event_id = COALESCE(CAST(? AS uuid), exit_event_id), " +
+                            "penalty_minor = COALESCE(?, penalty_minor), " +
+                            "settlement_requested_at = COALESCE(?, settlement_requested_at) " +
                             "WHERE session_id = ?",
                     Timestamp.valueOf(session.getEntryTime()),
                     session.getExitTime() != null ? Timestamp.valueOf(session.getExitTime()) : null,
@@ -256,12 +469,125 @@ public class JdbcParkingSessionRepository implements ParkingSessionRepository {
                     session.getRefVehicleId(),
                     session.getRefAccountId() != null ? session.getRefAccountId() : null,
                     session.getReservationId() != null ? session.getReservationId() : null,
+                    session.getExitEventId(),
+                    session.getPenaltyMinor(),
+                    session.getSettlementRequestedAt() != null ? Timestamp.valueOf(session.getSettlementRequestedAt()) : null,
                     session.getId()
             );
             return session;
         }
     }
     
+    @Override
+    public List<PenaltyDue> findUnchargedPenalties(int retryAfterSeconds, int limit) {
+        return jdbc.query(
+                "SELECT session_id, parking_id, ref_account_id, penalty_minor FROM parking_session " +
+                        "WHERE penalty_minor > 0 AND penalty_charged_at IS NULL AND ref_account_id IS NOT NULL " +
+                        "AND (penalty_attempted_at IS NULL " +
+                        "     OR penalty_attempted_at < (now() AT TIME ZONE 'UTC') - make_interval(secs => ?)) " +
+                        "ORDER BY session_id LIMIT ?",
+                (rs, rowNum) -> new PenaltyDue(
+                        rs.getLong("session_id"),
+                        rs.getLong("parking_id"),
+                        rs.getLong("ref_account_id"),
+                        rs.getLong("penalty_minor")),
+                retryAfterSeconds,
+                limit
+        );
+    }
+
+    @Override
+    public void markPenaltyCharged(Long sessionId) {
+        jdbc.update(
+                "UPDATE parking_session SET penalty_charged_at = (now() AT TIME ZONE 'UTC') " +
+                        "WHERE session_id = ? AND penalty_charged_at IS NULL",
+                sessionId
+        );
+    }
+
+    @Override
+    public void markPenaltyAttempted(Long sessionId) {
+        jdbc.update(
+                "UPDATE parking_session SET penalty_attempted_at = (now() AT TIME ZONE 'UTC') WHERE session_id = ?",
+                sessionId
+        );
+    }
+
+    @Override
+    public long countUnchargedPenalties() {
+        Long count = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM parking_session WHERE penalty_minor > 0 AND penalty_charged_at IS NULL",
+                Long.class
+        );
+        return count != null ? count : 0L;
+    }
+
+    @Override
+    public boolean completeSettlement(Long sessionId, String paymentStatus) {
+        // Opłacona płatność wygrywa także z Unpaid (użytkownik zapłacił w aplikacji tym samym kluczem obciążenia)
+        String fromStatuses = "Paid".equals(paymentStatus) ? "('Settling', 'Unpaid')" : "('Settling')";
+        return jdbc.update(
+                "UPDATE parking_session SET payment_status = ?::payment_status " +
+                        "WHERE session_id = ? AND payment_status IN " + fromStatuses,
+                paymentStatus,
+                sessionId
+        ) > 0;
+    }
+
+    @Override
+    public List<PendingSettlement> claimStaleSettlements(int olderThanSeconds, int maxAttempts, int limit) {
+        // Przesunięcie settlement_requested_at w tym samym UPDATE - następny resync bierze kolejne sesje,
+        // a nie w kółko te same najstarsze; SKIP LOCKED pozwala dwóm instancjom nie wysyłać tych samych poleceń
+        return jdbc.query(
+                "UPDATE parking_session SET settlement_requested_at = (now() AT TIME ZONE 'UTC'), " +
+                        "settlement_attempts = settlement_attempts + 1 " +
+                        "WHERE session_id IN (" +
+                        "  SELECT session_id FROM parking_session " +
+                        "  WHERE payment_status = 'Settling' " +
+                        "  AND settlement_requested_at < (now() AT TIME ZONE 'UTC') - make_interval(secs => ?) " +
+                        "  AND settlement_attempts < ? " +
+                        "  AND price_total_minor IS NOT NULL AND ref_account_id IS NOT NULL " +
+                        "  ORDER BY settlement_requested_at LIMIT ? FOR UPDATE SKIP LOCKED) " +
+                        "RETURNING session_id, parking_id, ref_account_id, price_total_minor, settlement_attempts, " +
+                        "COALESCE(exit_time, settlement_requested_at) AS closed_at",
+                (rs, rowNum) -> {
+                    BigDecimal price = rs.getBigDecimal("price_total_minor");
+                    return new PendingSettlement(
+                            rs.getLong("session_id"),
+                            rs.getLong("parking_id"),
+                            rs.getLong("ref_account_id"),
+                            price != null ? price.longValue() : 0L,
+                            rs.getTimestamp("closed_at").toLocalDateTime(),
+                            rs.getInt("settlement_attempts"));
+                },
+                olderThanSeconds,
+                maxAttempts,
+                limit
+        );
+    }
+
+    @Override
+    public int abandonStaleSettlements(int olderThanSeconds, int maxAttempts) {
+        // Sesje bez ceny lub konta nie mogą zostać rozliczone w ogóle - nie czekają na wyczerpanie prób
+        return jdbc.update(
+                "UPDATE parking_session SET payment_status = 'Unpaid'::payment_status " +
+                        "WHERE payment_status = 'Settling' " +
+                        "AND settlement_requested_at < (now() AT TIME ZONE 'UTC') - make_interval(secs => ?) " +
+                        "AND (settlement_attempts >= ? OR price_total_minor IS NULL OR ref_account_id IS NULL)",
+                olderThanSeconds,
+                maxAttempts
+        );
+    }
+
+    @Override
+    public long countSettling() {
+        Long count = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM parking_session WHERE payment_status = 'Settling'",
+                Long.class
+        );
+        return count != null ? count : 0L;
+    }
+
     /**
      * Synchronizuje sekwencję session_id z maksymalnym ID w bazie danych.
      * Używane gdy sekwencja jest niezsynchronizowana (np. po operacjach COPY).
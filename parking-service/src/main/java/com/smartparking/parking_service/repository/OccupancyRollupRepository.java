@@ -0,0 +1,87 @@
+package com.smartparking.parking_service.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Utrzymuje tabelę parking_occupancy_hourly: liczba sesji per (parking, dzień, godzina wjazdu).
+ *
+ * Czyta ją ParkingRepository.getOccupancyData, więc koszt wykresu obłożenia nie zależy od długości historii.
+ * Godzina i dzień tygodnia liczone są tym samym wyrażeniem co wcześniej w getOccupancyData
+ * (entry_time AT TIME ZONE 'Europe/Warsaw'), więc wykres obłożenia nie zmienia się po przejściu na rollup.
+ * Postęp przyrostowego odświeżania to ostatni przetworzony session_id w parking_occupancy_rollup_state;
+ * blokada tego wiersza (FOR UPDATE) chroni przed podwójnym zliczeniem przy kilku replikach.
+ */
+@Repository
+public class OccupancyRollupRepository {
+    private static final Logger log = LoggerFactory.getLogger(OccupancyRollupRepository.class);
+
+    private static final String LOCAL_ENTRY_TIME = "(entry_time AT TIME ZONE 'Europe/Warsaw')";
+
+    private static final String INSERT_BUCKETS_SQL =
+            "INSERT INTO parking_occupancy_hourly(parking_id, bucket_date, day_of_week, hour_of_day, session_count) " +
+            "SELECT parking_id, " +
+            "    " + LOCAL_ENTRY_TIME + "::date, " +
+            "    EXTRACT(DOW FROM " + LOCAL_ENTRY_TIME + ")::smallint, " +
+            "    EXTRACT(HOUR FROM " + LOCAL_ENTRY_TIME + ")::smallint, " +
+            "    COUNT(*) " +
+            "FROM parking_session " +
+            "WHERE session_id > ? AND session_id <= ? " +
+            "GROUP BY 1, 2, 3, 4 " +
+            "ON CONFLICT (parking_id, bucket_date, hour_of_day) " +
+            "DO UPDATE SET session_count = parking_occupancy_hourly.session_count + EXCLUDED.session_count";
+
+    private final JdbcTemplate jdbc;
+
+    public OccupancyRollupRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Dolicza do rollupu sesje utworzone od ostatniego odświeżenia.
+     * Sesja zapisana z niższym session_id już po odświeżeniu (równoległa transakcja) zostanie
+     * uwzględniona dopiero przy rebuild - stąd nocne przeliczenie w OccupancyRollupScheduler.
+     * @return liczba zaktualizowanych kubełków (parking, dzień, godzina)
+     */
+    @Transactional
+    public int refresh() {
+        long lastSessionId = lockWatermark();
+        Long maxSessionId = jdbc.queryForObject(
+                "SELECT COALESCE(MAX(session_id), 0) FROM parking_session", Long.class);
+        if (maxSessionId == null || maxSessionId <= lastSessionId) {
+            return 0;
+        }
+
+        int buckets = jdbc.update(INSERT_BUCKETS_SQL, lastSessionId, maxSessionId);
+        updateWatermark(maxSessionId);
+        return buckets;
+    }
+
+    /**
+     * Przelicza cały rollup od zera (naprawa po zmianach historycznych danych lub rozjazdach).
+     */
+    @Transactional
+    public void rebuild() {
+        lockWatermark();
+        Long maxSessionId = jdbc.queryForObject(
+                "SELECT COALESCE(MAX(session_id), 0) FROM parking_session", Long.class);
+        jdbc.update("DELETE FROM parking_occupancy_hourly");
+        jdbc.update(INSERT_BUCKETS_SQL, 0L, maxSessionId);
+        updateWatermark(maxSessionId);
+        log.info("Occupancy rollup rebuilt up to session_id={}", maxSessionId);
+    }
+
+    private long lockWatermark() {
+        Long last = jdbc.queryForObject(
+                "SELECT last_session_id FROM parking_occupancy_rollup_state WHERE id = 1 FOR UPDATE", Long.class);
+        return last != null ? last : 0L;
+    }
+
+    private void updateWatermark(long sessionId) {
+        jdbc.update("UPDATE parking_occupancy_rollup_state SET last_session_id = ?, updated_at = now() WHERE id = 1",
+                sessionId);
+    }
+}
@@ -3,15 +3,31 @@ package com.smartparking.parking_service.repository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import com.smartparking.parking_service.dto.ParkingUsageDto;
+import com.smartparking.parking_service.model.AccountReservation;
+import com.smartparking.parking_service.model.AccountSession;
+import com.smartparking.parking_service.model.ActiveReservation;
+import com.smartparking.parking_service.model.LocationDetails;
+import com.smartparking.parking_service.model.LocationSummary;
+import com.smartparking.parking_service.model.ParkingAvailability;
+import com.smartparking.parking_service.model.ReservationDetails;
+import com.smartparking.parking_service.model.SpotOccupancy;
+import com.smartparking.parking_service.model.SpotSummary;
 
 @Repository
 public class ParkingRepository {
@@ -21,74 +37,58 @@ public class ParkingRepository {
         this.jdbc = jdbc;
     }
 
-    public List<Map<String, Object>> listLocations() {
+    /**
+     * Lista parkingów z liczbą miejsc z liczników w pamięci (ParkingAvailabilityCounters),
+     * bez skanowania parking_spot × parking_session przy każdym wywołaniu.
+     */
+    public List<LocationSummary> listLocations(Function<Long, ParkingAvailability> availability) {
         // parking_db.parking_location: parking_id, name_parking, address_line, ref_company_id
-        // Rozszerzamy zapytanie o agregowane dane: total_spots, available_spots, price_per_hour
-        // available_spots = miejsca nierezerwowalne (to_reserved = false) bez aktywnych sesji
         String sql = "SELECT " +
                 "pl.parking_id AS id_parking, " +
                 "pl.name_parking, " +
                 "pl.address_line, " +
-                "COUNT(DISTINCT ps.spot_id) AS total_spots, " +
-                "COUNT(DISTINCT CASE WHEN ps.type = 'Available' " +
-                "    AND ps.to_reserved = false " +  // TYLKO miejsca nierezerwowalne
-                "    AND NOT EXISTS (" +
-                "        SELECT 1 FROM parking_session psess " +
-                "        WHERE psess.spot_id = ps.spot_id " +
-                "        AND psess.parking_id = ps.id_parking " +  // Dodatkowa walidacja - parking_id
-                "        AND psess.exit_time IS NULL" +  // Sprawdza aktywne sesje
-                "    ) " +
-                "THEN ps.spot_id END) AS available_spots, " +
                 "COALESCE(MAX(pp.rate_per_min) * 60, 0) AS price_per_hour_minor " +
                 "FROM parking_location pl " +
-                "LEFT JOIN parking_spot ps ON pl.parking_id = ps.id_parking " +
                 "LEFT JOIN parking_pricing pp ON pp.parking_id = pl.parking_id " +
                 "GROUP BY pl.parking_id, pl.name_parking, pl.address_line " +
                 "ORDER BY pl.parking_id";
         
         return jdbc.query(sql, (rs, i) -> {
-            long totalSpots = rs.getLong("total_spots");
-            long availableSpots = rs.getLong("available_spots");
-            // price_per_hour_minor is in cents (rate_per_min * 60), convert to dollars
-            long pricePerHourMinor = rs.getLong("price_per_hour_minor");
-            
-            return Map.of(
-                    "id_parking", rs.getLong("id_parking"),
-                    "name_parking", rs.getString("name_parking"),
-                    "address_line", rs.getString("address_line"),
-                    "total_spots", totalSpots,
-                    "available_spots", availableSpots,
-                    "price_per_hour_minor", pricePerHourMinor
+            long parkingId = rs.getLong("id_parking");
+            ParkingAvailability counters = availability.apply(parkingId);
+            // price_per_hour_minor is in cents (rate_per_min * 60)
+            return new LocationSummary(
+                    parkingId,
+                    rs.getString("name_parking"),
+                    rs.getString("address_line"),
+                    counters.totalSpots(),
+                    counters.availableSpots(),
+                    rs.getLong("price_per_hour_minor")
             );
         });
     }
 
-    public List<Map<String, Object>> listSpots(Long locationId) {
+    private static final RowMapper<SpotSummary> SPOT_MAPPER = (rs, i) -> new SpotSummary(
+            rs.getLong("id_spot"),
+            rs.getLong("id_parking"),
+            rs.getString("code"),
+            rs.getInt("floor_lvl"),
+            rs.getBoolean("to_reserved"),
+            rs.getString("type")
+    );
+
+    public List<SpotSummary> listSpots(Long locationId) {
         if (locationId == null) {
             // parking_db.parking_spot: spot_id, code, floor_lvl, to_reserved, type, id_parking
             // Aliasujemy spot_id jako id_spot, żeby nie zmieniać kontraktu API
             return jdbc.query("SELECT spot_id AS id_spot, id_parking, code, floor_lvl, to_reserved, type FROM parking_spot ORDER BY spot_id",
-                    (rs, i) -> Map.of(
-                            "id_spot", rs.getLong("id_spot"),
-                            "id_parking", rs.getLong("id_parking"),
-                            "code", rs.getString("code"),
-                            "floor_lvl", rs.getInt("floor_lvl"),
-                            "to_reserved", rs.getBoolean("to_reserved"),
-                            "type", rs.getString("type")
-                    ));
+                    SPOT_MAPPER);
         }
         return jdbc.query("SELECT spot_id AS id_spot, id_parking, code, floor_lvl, to_reserved, type FROM parking_spot WHERE id_parking = ? ORDER BY spot_id",
-                (rs, i) -> Map.of(
-                        "id_spot", rs.getLong("id_spot"),
-                        "id_parking", rs.getLong("id_parking"),
-                        "code", rs.getString("code"),
-                        "floor_lvl", rs.getInt("floor_lvl"),
-                        "to_reserved", rs.getBoolean("to_reserved"),
-                        "type", rs.getString("type")
-                ), locationId);
+                SPOT_MAPPER, locationId);
     }
 
-    public List<Map<String, Object>> listSpotsForReservation(Long locationId, java.time.Instant start, java.time.Instant end) {
+    public List<SpotSummary> listSpotsForReservation(Long locationId, java.time.Instant start, java.time.Instant end) {
         if (locationId == null) {
             throw new IllegalArgumentException("locationId is required for reservation spots");
         }
@@ -113,14 +113,7 @@ public class ParkingRepository {
                      "  ) " +
                      "ORDER BY ps.spot_id";
         
-        return jdbc.query(sql, (rs, i) -> Map.of(
-                "id_spot", rs.getLong("id_spot"),
-                "id_parking", rs.getLong("id_parking"),
-                "code", rs.getString("code"),
-                "floor_lvl", rs.getInt("floor_lvl"),
-                "to_reserved", rs.getBoolean("to_reserved"),
-                "type", rs.getString("type")
-        ), locationId, java.sql.Timestamp.from(end), java.sql.Timestamp.from(start));
+        return jdbc.query(sql, SPOT_MAPPER, locationId, java.sql.Timestamp.from(end), java.sql.Timestamp.from(start));
     }
 
     public long createLocation(String name, String address, Long companyId) {
@@ -147,7 +140,11 @@ public class ParkingRepository {
     }
 
     // Reservation operations - reservation_spot is in parking_db
-    public List<Map<String, Object>> findReservationsByAccountId(Long accountId) {
+    /**
+     * Strona rezerwacji konta, od najnowszych (stronicowanie kluczem reservation_id).
+     * @param afterReservationId reservation_id ostatniej rezerwacji poprzedniej strony (null = pierwsza strona)
+     */
+    public List<AccountReservation> findReservationsByAccountId(Long accountId, Long afterReservationId, int limit) {
         // parking_db.reservation_spot: reservation_id, valid_from (może nie istnieć), valid_until, status_reservation, spot_id, parking_id, ref_account_id, vehicle_id (może nie istnieć)
         // Używamy COALESCE dla valid_from - jeśli kolumna nie istnieje, użyj valid_until - 2h jako fallback
         String sql = "SELECT " +
@@ -166,51 +163,37 @@ public class ParkingRepository {
                      "LEFT JOIN parking_location pl ON rs.parking_id = pl.parking_id " +
                      "LEFT JOIN parking_spot ps ON rs.spot_id = ps.spot_id " +
                      "WHERE rs.ref_account_id = ? " +
-                     "ORDER BY rs.reservation_id DESC";
-        return jdbc.query(sql, (rs, rowNum) -> {
-            // SQL używa COALESCE, więc valid_from zawsze będzie miało wartość
-            java.time.Instant validFrom = rs.getTimestamp("valid_from").toInstant();
-            java.time.Instant validUntil = rs.getTimestamp("valid_until").toInstant();
-            Map<String, Object> result = new HashMap<>();
-            result.put("id_reservation", rs.getLong("id_reservation"));
-            result.put("id_account", rs.getLong("id_account"));
-            result.put("id_parking", rs.getLong("id_parking"));
-            result.put("id_spot", rs.getLong("id_spot"));
-            
-            // Bezpieczne pobieranie vehicle_id - może nie istnieć w starszych wersjach
-            Object vehicleIdObj = null;
-            try {
-                vehicleIdObj = rs.getObject("vehicle_id");
-            } catch (java.sql.SQLException e) {
-                // Kolumna vehicle_id może nie istnieć - zignoruj
-            }
-            if (vehicleIdObj != null) {
-                try {
-                    // Konwertuj na Long niezależnie od typu (Integer, Long, BigInteger, itp.)
-                    Long vehicleId;
-                    if (vehicleIdObj instanceof Number) {
-                        vehicleId = ((Number) vehicleIdObj).longValue();
-                    } else {
-                        vehicleId = Long.parseLong(vehicleIdObj.toString());
-                    }
-                    // Jeśli vehicleIdObj != null, to wartość istnieje - zapisz do result
-                    result.put("vehicle_id", vehicleId);
-                } catch (Exception e) {
-                    // Loguj błąd, ale kontynuuj
-                    System.err.println("Failed to convert vehicle_id for reservation " + 
-                                     rs.getLong("id_reservation") + ": " + e.getMessage());
-                }
-            }
-            // Jeśli vehicleIdObj == null, vehicle_id nie zostanie dodany do result (to jest OK)
-            
-            result.put("start_time", validFrom);
-            result.put("end_time", validUntil);
-            result.put("status", rs.getString("status"));
-            result.put("parkingName", rs.getString("parkingName") != null ? rs.getString("parkingName") : "Unknown");
-            result.put("address", rs.getString("address") != null ? rs.getString("address") : "");
-            result.put("spot_code", rs.getString("spot_code") != null ? rs.getString("spot_code") : "Unknown");
-            return result;
-        }, accountId);
+                     (afterReservationId != null ? "AND rs.reservation_id < ? " : "") +
+                     "ORDER BY rs.reservation_id DESC LIMIT ?";
+        Object[] params = afterReservationId != null
+                ? new Object[]{accountId, afterReservationId, limit}
+                : new Object[]{accountId, limit};
+        return jdbc.query(sql, ACCOUNT_RESERVATION_MAPPER, params);
+    }
+
+    private static final RowMapper<AccountReservation> ACCOUNT_RESERVATION_MAPPER = (rs, rowNum) -> {
+        // SQL używa COALESCE, więc valid_from zawsze będzie miało wartość
+        String parkingName = rs.getString("parkingName");
+        String address = rs.getString("address");
+        String spotCode = rs.getString("spot_code");
+        return new AccountReservation(
+                rs.getLong("id_reservation"),
+                rs.getLong("id_account"),
+                rs.getLong("id_parking"),
+                rs.getLong("id_spot"),
+                getNullableLong(rs, "vehicle_id"), // vehicle_id == null nie trafia do JSON (to jest OK)
+                rs.getTimestamp("valid_from").toInstant(),
+                rs.getTimestamp("valid_until").toInstant(),
+                rs.getString("status"),
+                parkingName != null ? parkingName : "Unknown",
+                address != null ? address : "",
+                spotCode != null ? spotCode : "Unknown"
+        );
+    };
+
+    private static Long getNullableLong(ResultSet rs, String column) throws java.sql.SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
     }
 
     public long createReservation(Long accountId, Long parkingId, Long spotId, Long vehicleId, java.time.Instant validFrom, java.time.Instant validUntil, String status) {
@@ -253,7 +236,7 @@ public class ParkingRepository {
     }
 
     // Get all active reservations (for workers) - status = 'Paid' and valid_until > now
-    public List<Map<String, Object>> findActiveReservations() {
+    public List<ActiveReservation> findActiveReservations() {
         // parking_db.reservation_spot: reservation_id, valid_from, valid_until, status_reservation, spot_id, parking_id, ref_account_id
         String sql = "SELECT " +
                      "rs.reservation_id AS id_reservation, " +
@@ -272,110 +255,80 @@ public class ParkingRepository {
                      "WHERE rs.status_reservation = 'Paid' AND rs.valid_until > now() " +
                      "ORDER BY rs.valid_until ASC";
         return jdbc.query(sql, (rs, rowNum) -> {
-            java.time.Instant validFrom = rs.getTimestamp("valid_from").toInstant();
-            java.time.Instant validUntil = rs.getTimestamp("valid_until").toInstant();
-            Map<String, Object> result = new HashMap<>();
-            result.put("id_reservation", rs.getLong("id_reservation"));
-            result.put("id_account", rs.getLong("id_account"));
-            result.put("id_parking", rs.getLong("id_parking"));
-            result.put("id_spot", rs.getLong("id_spot"));
-            result.put("start_time", validFrom);
-            result.put("end_time", validUntil);
-            result.put("type", "Reserved"); // Map status to type for backward compatibility
-            result.put("parkingName", rs.getString("parkingName") != null ? rs.getString("parkingName") : "Unknown");
-            result.put("address", rs.getString("address") != null ? rs.getString("address") : "");
-            result.put("spot_code", rs.getString("spot_code") != null ? rs.getString("spot_code") : "Unknown");
-            return result;
+            String parkingName = rs.getString("parkingName");
+            String address = rs.getString("address");
+            String spotCode = rs.getString("spot_code");
+            return new ActiveReservation(
+                    rs.getLong("id_reservation"),
+                    rs.getLong("id_account"),
+                    rs.getLong("id_parking"),
+                    rs.getLong("id_spot"),
+                    rs.getTimestamp("valid_from").toInstant(),
+                    rs.getTimestamp("valid_until").toInstant(),
+                    "Reserved", // Map status to type for backward compatibility
+                    parkingName != null ? parkingName : "Unknown",
+                    address != null ? address : "",
+                    spotCode != null ? spotCode : "Unknown"
+            );
         });
     }
 
-    public Optional<Map<String, Object>> getLocationDetails(Long locationId) {
+    public Optional<LocationDetails> getLocationDetails(Long locationId, Function<Long, ParkingAvailability> availability) {
         String sql = "SELECT " +
                 "pl.parking_id AS id_parking, " +
                 "pl.name_parking, " +
                 "pl.address_line, " +
-                "COUNT(DISTINCT ps.spot_id) AS total_spots, " +
-                "COUNT(DISTINCT CASE WHEN ps.type = 'Available' " +
-                "    AND ps.to_reserved = false " +  // TYLKO miejsca nierezerwowalne
-                "    AND NOT EXISTS (" +
-                "        SELECT 1 FROM parking_session psess " +
-                "        WHERE psess.spot_id = ps.spot_id " +
-                "        AND psess.parking_id = ps.id_parking " +  // Dodatkowa walidacja - parking_id
-                "        AND psess.exit_time IS NULL" +  // Sprawdza aktywne sesje
-                "    ) " +
-                "THEN ps.spot_id END) AS available_spots, " +
                 "COALESCE(MAX(pp.rate_per_min) * 60, 0) AS price_per_hour_minor, " +
                 "COALESCE(MAX(pp.reservation_fee_minor), 0) AS reservation_fee_minor " +
                 "FROM parking_location pl " +
-                "LEFT JOIN parking_spot ps ON pl.parking_id = ps.id_parking " +
                 "LEFT JOIN parking_pricing pp ON pp.parking_id = pl.parking_id " +
                 "WHERE pl.parking_id = ? " +
                 "GROUP BY pl.parking_id, pl.name_parking, pl.address_line";
         
         var list = jdbc.query(sql, (rs, i) -> {
-            long totalSpots = rs.getLong("total_spots");
-            long availableSpots = rs.getLong("available_spots");
-            long pricePerHourMinor = rs.getLong("price_per_hour_minor");
-            long reservationFeeMinor = rs.getLong("reservation_fee_minor");
-            
-            Map<String, Object> result = new HashMap<>();
-            result.put("id_parking", rs.getLong("id_parking"));
-            result.put("name_parking", rs.getString("name_parking"));
-            result.put("address_line", rs.getString("address_line"));
-            result.put("total_spots", totalSpots);
-            result.put("available_spots", availableSpots);
-            result.put("price_per_hour_minor", pricePerHourMinor);
-            result.put("reservation_fee_minor", reservationFeeMinor);
-            return result;
+            long parkingId = rs.getLong("id_parking");
+            ParkingAvailability counters = availability.apply(parkingId);
+            return new LocationDetails(
+                    parkingId,
+                    rs.getString("name_parking"),
+                    rs.getString("address_line"),
+                    counters.totalSpots(),
+                    counters.availableSpots(),
+                    counters.reservedSpots(),
+                    counters.occupiedSpots(),
+                    rs.getLong("price_per_hour_minor"),
+                    rs.getLong("reservation_fee_minor")
+            );
         }, locationId);
         
         return list.stream().findFirst();
     }
 
-    public Map<String, Object> getOccupancyData(Long locationId, Integer dayOfWeek) {
+    public Map<String, Object> getOccupancyData(Long locationId, Integer dayOfWeek, ParkingAvailability availability) {
         // Calculate occupancy statistics based on parking sessions
         // parking_session table: session_id, entry_time, exit_time, parking_id, spot_id
         
-        // Get total spots for the parking
-        Long totalSpots = jdbc.queryForObject(
-                "SELECT COUNT(*) FROM parking_spot WHERE id_parking = ?",
-                Long.class, locationId);
-        
-        // Get current available spots (nierezerwowalne miejsca bez aktywnych sesji)
-        Long availableSpots = jdbc.queryForObject(
-                "SELECT COUNT(*) FROM parking_spot ps " +
-                "WHERE ps.id_parking = ? " +
-                "AND ps.type = 'Available' " +
-                "AND ps.to_reserved = false " +  // TYLKO miejsca nierezerwowalne
-                "AND NOT EXISTS (" +
-                "    SELECT 1 FROM parking_session psess " +
-                "    WHERE psess.spot_id = ps.spot_id " +
-                "    AND psess.parking_id = ps.id_parking " +  // Dodatkowa walidacja - parking_id
-                "    AND psess.exit_time IS NULL" +  // Sprawdza aktywne sesje
-                ")",
-                Long.class, locationId);
+        // Aktualna liczba miejsc z liczników w pamięci (ParkingAvailabilityCounters)
+        Long totalSpots = (long) availability.totalSpots();
+        Long availableSpots = (long) availability.availableSpots();
         
         // Jeśli dayOfWeek == null, użyj aktualnego dnia tygodnia
         int targetDayOfWeek = (dayOfWeek != null) ? dayOfWeek : getCurrentDayOfWeek();
         
-        // Pobierz statystyki obłożenia na podstawie parking_session dla wybranego dnia tygodnia z ostatnich 8 tygodni
+        // Pobierz statystyki obłożenia dla wybranego dnia tygodnia z ostatnich 8 tygodni
+        // z rollupu parking_occupancy_hourly (utrzymywany przez OccupancyRollupScheduler)
         // PostgreSQL DOW: 0=Sunday, 1=Monday, ..., 6=Saturday
-        // Używamy entry_time do określenia godziny wejścia
-        // Zakładamy że dane są zapisane jako lokalny czas (Europe/Warsaw)
-        // Aby mieć spójność, używamy SET timezone='Europe/Warsaw' w sesji, lub konwertujemy w zapytaniu
-        // Najprostsze: zakładamy że entry_time jest już w lokalnym czasie i używamy AT TIME ZONE
-        // aby PostgreSQL interpretował je jako lokalny czas w Europe/Warsaw
+        // Godzina/dzień liczone przy zapisie do rollupu z entry_time AT TIME ZONE 'Europe/Warsaw'
         String occupancyStatsSql = 
             "SELECT " +
-            "    EXTRACT(HOUR FROM (entry_time AT TIME ZONE 'Europe/Warsaw'))::INTEGER AS hour_of_day, " +
-            "    COUNT(*)::INTEGER AS session_count " +
-            "FROM parking_session " +
+            "    hour_of_day, " +
+            "    SUM(session_count)::INTEGER AS session_count " +
+            "FROM parking_occupancy_hourly " +
             "WHERE parking_id = ? " +
-            "    AND EXTRACT(DOW FROM (entry_time AT TIME ZONE 'Europe/Warsaw')) = ? " +
-            "    AND entry_time >= (CURRENT_TIMESTAMP AT TIME ZONE 'Europe/Warsaw')::timestamp - INTERVAL '8 weeks' " +
-            "    AND EXTRACT(HOUR FROM (entry_time AT TIME ZONE 'Europe/Warsaw')) >= 6 " +
-            "    AND EXTRACT(HOUR FROM (entry_time AT TIME ZONE 'Europe/Warsaw')) <= 22 " +
-            "GROUP BY EXTRACT(HOUR FROM (entry_time AT TIME ZONE 'Europe/Warsaw')) " +
+            "    AND day_of_week = ? " +
+            "    AND bucket_date >= (CURRENT_TIMESTAMP AT TIME ZONE 'Europe/Warsaw')::date - 56 " +
+            "    AND hour_of_day BETWEEN 6 AND 22 " +
+            "GROUP BY hour_of_day " +
             "ORDER BY hour_of_day";
 
         List<Map<String, Object>> occupancyStats = jdbc.query(occupancyStatsSql, (rs, i) -> {
@@ -486,13 +439,12 @@ public class ParkingRepository {
     }
 
     /**
-     * Wybiera losowe wolne miejsce parkingowe dla danego parkingu
+     * Ładuje stan zajętości miejsc 'Available' do zasilenia indeksu w pamięci.
+     * @param parkingId ID parkingu lub null dla wszystkich parkingów
      */
-    public Optional<Long> pickRandomFreeSpot(Long parkingId) {
-        String sql = "SELECT ps.spot_id FROM parking_spot ps " +
-                "WHERE ps.id_parking = ? " +
-                "AND ps.type = 'Available' " +
-                "AND NOT EXISTS (" +
+    public List<SpotOccupancy> loadSpotOccupancy(Long parkingId) {
+        String sql = "SELECT ps.spot_id, ps.id_parking, " +
+                "NOT EXISTS (" +
                 "    SELECT 1 FROM reservation_spot rs " +
                 "    WHERE rs.spot_id = ps.spot_id " +
                 "    AND rs.status_reservation = 'Paid' " +
@@ -502,11 +454,63 @@ public class ParkingRepository {
                 "    SELECT 1 FROM parking_session psess " +
                 "    WHERE psess.spot_id = ps.spot_id " +
                 "    AND psess.exit_time IS NULL" +
-                ") " +
-                "ORDER BY RANDOM() LIMIT 1";
-        
-        var list = jdbc.query(sql, (rs, i) -> rs.getLong("spot_id"), parkingId);
-        return list.stream().findFirst();
+                ") AS is_free " +
+                "FROM parking_spot ps " +
+                "WHERE ps.type = 'Available' " +
+                (parkingId != null ? "AND ps.id_parking = ? " : "") +
+                "ORDER BY ps.id_parking, ps.spot_id";
+
+        RowMapper<SpotOccupancy> mapper = (rs, i) -> new SpotOccupancy(
+                rs.getLong("spot_id"),
+                rs.getLong("id_parking"),
+                rs.getBoolean("is_free"));
+        return parkingId != null ? jdbc.query(sql, mapper, parkingId) : jdbc.query(sql, mapper);
+    }
+
+    /**
+     * Liczy miejsca per parking do zasilenia liczników dostępności (ParkingAvailabilityCounters).
+     * Pełny skan parking_spot × parking_session - wywoływane tylko przy starcie i okresowym resync.
+     * @param parkingId ID parkingu lub null dla wszystkich parkingów
+     */
+    public List<ParkingAvailability> loadParkingAvailability(Long parkingId) {
+        String sql = "SELECT pl.parking_id, " +
+                "COUNT(ps.spot_id) AS total_spots, " +
+                "COUNT(ps.spot_id) FILTER (WHERE ps.type = 'Available' " +
+                "    AND ps.to_reserved = false " +
+                "    AND active.spot_id IS NULL) AS available_spots, " +
+                "COUNT(reserved.spot_id) AS reserved_spots, " +
+                "COUNT(active.spot_id) AS occupied_spots " +
+                "FROM parking_location pl " +
+                "LEFT JOIN parking_spot ps ON ps.id_parking = pl.parking_id " +
+                "LEFT JOIN (" +
+                "    SELECT DISTINCT spot_id, parking_id FROM parking_session WHERE exit_time IS NULL" +
+                ") active ON active.spot_id = ps.spot_id AND active.parking_id = ps.id_parking " +
+                "LEFT JOIN (" +
+                "    SELECT DISTINCT spot_id FROM reservation_spot " +
+                "    WHERE status_reservation = 'Paid' AND valid_until > NOW()" +
+                ") reserved ON reserved.spot_id = ps.spot_id " +
+                (parkingId != null ? "WHERE pl.parking_id = ? " : "") +
+                "GROUP BY pl.parking_id";
+
+        RowMapper<ParkingAvailability> mapper = (rs, i) -> new ParkingAvailability(
+                rs.getLong("parking_id"),
+                rs.getInt("total_spots"),
+                rs.getInt("available_spots"),
+                rs.getInt("reserved_spots"),
+                rs.getInt("occupied_spots"));
+        return parkingId != null ? jdbc.query(sql, mapper, parkingId) : jdbc.query(sql, mapper);
+    }
+
+    /**
+     * Zwraca spot_id miejsc liczonych jako "available" w licznikach ('Available', to_reserved = false).
+     * @param parkingId ID parkingu lub null dla wszystkich parkingów
+     */
+    public List<Long> loadWalkInSpotIds(Long parkingId) {
+        String sql = "SELECT spot_id FROM parking_spot " +
+                "WHERE type = 'Available' AND to_reserved = false" +
+                (parkingId != null ? " AND id_parking = ?" : "");
+        RowMapper<Long> mapper = (rs, i) -> rs.getLong("spot_id");
+        return parkingId != null ? jdbc.query(sql, mapper, parkingId) : jdbc.query(sql, mapper);
     }
 
     /**
@@ -521,38 +525,13 @@ public class ParkingRepository {
      * @param entryTime Czas wjazdu (sprawdza czy entryTime jest w przedziale valid_from - 5min do valid_until włącznie)
      * @return Rezerwacja jeśli znaleziona, Optional.empty() jeśli brak
      */
-    public Optional<Map<String, Object>> findActiveReservation(Long accountId, Long parkingId, Long vehicleId, java.time.Instant entryTime) {
+    public Optional<ReservationDetails> findActiveReservation(Long accountId, Long parkingId, Long vehicleId, java.time.Instant entryTime) {
         log.info("Searching for active reservation: accountId={}, parkingId={}, vehicleId={}, entryTime={}", 
             accountId, parkingId, vehicleId, entryTime);
         
-        // Debug query - sprawdź wszystkie rezerwacje dla tego konta i parkingu
-        String debugSql = "SELECT reservation_id, spot_id, valid_from, valid_until, vehicle_id, status_reservation " +
-                "FROM reservation_spot " +
-                "WHERE ref_account_id = ? AND parking_id = ? " +
-                "ORDER BY valid_until DESC";
-        
-        var debugList = jdbc.query(debugSql, (rs, i) -> {
-            Map<String, Object> debug = new HashMap<>();
-            debug.put("reservation_id", rs.getLong("reservation_id"));
-            debug.put("spot_id", rs.getLong("spot_id"));
-            debug.put("valid_from", rs.getTimestamp("valid_from").toInstant());
-            debug.put("valid_until", rs.getTimestamp("valid_until").toInstant());
-            Object vehicleIdObj = rs.getObject("vehicle_id");
-            if (vehicleIdObj != null) {
-                debug.put("vehicle_id", rs.getLong("vehicle_id"));
-            } else {
-                debug.put("vehicle_id", null);
-            }
-            debug.put("status", rs.getString("status_reservation"));
-            return debug;
-        }, accountId, parkingId);
-        
-        log.info("Found {} reservations for accountId={}, parkingId={}: {}", 
-            debugList.size(), accountId, parkingId, debugList);
-        
         java.time.Instant entryTimePlus5Min = entryTime.plus(5, java.time.temporal.ChronoUnit.MINUTES);
         
-        String sql = "SELECT reservation_id, spot_id, valid_from, valid_until, vehicle_id, status_reservation " +
+        String sql = "SELECT " + RESERVATION_COLUMNS +
                 "FROM reservation_spot " +
                 "WHERE ref_account_id = ? " +
                 "AND parking_id = ? " +
@@ -562,68 +541,65 @@ public class ParkingRepository {
                 "AND (vehicle_id IS NULL OR vehicle_id = ?) " +
                 "ORDER BY valid_until ASC LIMIT 1";
         
-        var list = jdbc.query(sql, (rs, i) -> {
-            Map<String, Object> result = new HashMap<>();
-            result.put("reservation_id", rs.getLong("reservation_id"));
-            result.put("spot_id", rs.getLong("spot_id"));
-            Object validFromObj = rs.getObject("valid_from");
-            if (validFromObj != null) {
-                result.put("valid_from", rs.getTimestamp("valid_from").toInstant());
-            }
-            result.put("valid_until", rs.getTimestamp("valid_until").toInstant());
-            Object vehicleIdObj = rs.getObject("vehicle_id");
-            if (vehicleIdObj != null) {
-                result.put("vehicle_id", rs.getLong("vehicle_id"));
-            } else {
-                result.put("vehicle_id", null);
-            }
-            result.put("status", rs.getString("status_reservation"));
-            return result;
-        }, accountId, parkingId, 
+        var list = jdbc.query(sql, RESERVATION_MAPPER, accountId, parkingId,
            java.sql.Timestamp.from(entryTimePlus5Min),
            java.sql.Timestamp.from(entryTime),
            vehicleId);
         
-        Optional<Map<String, Object>> result = list.stream().findFirst();
+        Optional<ReservationDetails> result = list.stream().findFirst();
         if (result.isPresent()) {
+            ReservationDetails r = result.get();
             log.info("Found active reservation: reservationId={}, spotId={}, validFrom={}, validUntil={}, vehicleId={}, status={}", 
-                result.get().get("reservation_id"), result.get().get("spot_id"), 
-                result.get().get("valid_from"), result.get().get("valid_until"),
-                result.get().get("vehicle_id"), result.get().get("status"));
+                r.reservationId(), r.spotId(), r.validFrom(), r.validUntil(), r.vehicleId(), r.status());
         } else {
             log.warn("No active reservation found: accountId={}, parkingId={}, vehicleId={}, entryTime={}, entryTime+5min={}", 
                 accountId, parkingId, vehicleId, entryTime, entryTimePlus5Min);
-            if (!debugList.isEmpty()) {
-                log.warn("Analyzing why reservations don't match:");
-                for (Map<String, Object> res : debugList) {
-                    String status = (String) res.get("status");
-                    java.time.Instant validFrom = (java.time.Instant) res.get("valid_from");
-                    java.time.Instant validUntil = (java.time.Instant) res.get("valid_until");
-                    Object resVehicleId = res.get("vehicle_id");
-                    
-                    boolean statusOk = "Paid".equals(status) || "Active".equals(status);
-                    boolean timeOk = validFrom.isBefore(entryTimePlus5Min) || validFrom.equals(entryTimePlus5Min); // valid_from <= entryTime + 5min
-                    boolean validUntilOk = validUntil.isAfter(entryTime) || validUntil.equals(entryTime); // entryTime <= valid_until
-                    boolean vehicleOk = resVehicleId == null || resVehicleId.equals(vehicleId);
-                    
-                    log.warn("  Reservation {}: status={} (OK: {}), validFrom={} <= entryTime+5min={} (OK: {}), " +
-                            "validUntil={} >= entryTime={} (OK: {}), vehicleId={} matches {} (OK: {})",
-                        res.get("reservation_id"), status, statusOk,
-                        validFrom, entryTimePlus5Min, timeOk,
-                        validUntil, entryTime, validUntilOk,
-                        resVehicleId, vehicleId, vehicleOk);
-                }
-            }
+            logReservationMismatch(accountId, parkingId, vehicleId, entryTime, entryTimePlus5Min);
         }
         
         return result;
     }
 
+    /**
+     * Diagnostyka: dlaczego żadna rezerwacja konta na tym parkingu nie pasuje do wjazdu.
+     * Wykonywana tylko gdy findActiveReservation nic nie znalazło - nie obciąża udanych wjazdów.
+     */
+    private void logReservationMismatch(Long accountId, Long parkingId, Long vehicleId,
+                                        java.time.Instant entryTime, java.time.Instant entryTimePlus5Min) {
+        String debugSql = "SELECT " + RESERVATION_COLUMNS +
+                "FROM reservation_spot " +
+                "WHERE ref_account_id = ? AND parking_id = ? " +
+                "ORDER BY valid_until DESC";
+        List<ReservationDetails> debugList = jdbc.query(debugSql, RESERVATION_MAPPER, accountId, parkingId);
+        if (debugList.isEmpty()) {
+            return;
+        }
+        log.warn("Analyzing why reservations don't match:");
+        for (ReservationDetails res : debugList) {
+            String status = res.status();
+            java.time.Instant validFrom = res.validFrom();
+            java.time.Instant validUntil = res.validUntil();
+            Long resVehicleId = res.vehicleId();
+            
+            boolean statusOk = "Paid".equals(status) || "Active".equals(status);
+            boolean timeOk = validFrom != null && !validFrom.isAfter(entryTimePlus5Min); // valid_from <= entryTime + 5min
+            boolean validUntilOk = !validUntil.isBefore(entryTime); // entryTime <= valid_until
+            boolean vehicleOk = resVehicleId == null || resVehicleId.equals(vehicleId);
+            
+            log.warn("  Reservation {}: status={} (OK: {}), validFrom={} <= entryTime+5min={} (OK: {}), " +
+                    "validUntil={} >= entryTime={} (OK: {}), vehicleId={} matches {} (OK: {})",
+                res.reservationId(), status, statusOk,
+                validFrom, entryTimePlus5Min, timeOk,
+                validUntil, entryTime, validUntilOk,
+                resVehicleId, vehicleId, vehicleOk);
+        }
+    }
+
     /**
      * Znajduje aktywną sesję parkingową dla danego konta użytkownika
      * Zwraca sesję z wzbogaconymi danymi o parking i miejsce parkingowe
      */
-    public Optional<Map<String, Object>> findActiveSessionByAccountId(Long accountId) {
+    public Optional<AccountSession> findActiveSessionByAccountId(Long accountId) {
         String sql = "SELECT " +
                 "ps.session_id, " +
                 "ps.entry_time, " +
@@ -648,36 +624,7 @@ public class ParkingRepository {
                 "ORDER BY ps.entry_time DESC " +
                 "LIMIT 1";
         
-        List<Map<String, Object>> results = jdbc.query(sql, (rs, rowNum) -> {
-            Map<String, Object> result = new HashMap<>();
-            result.put("session_id", rs.getLong("session_id"));
-            result.put("entry_time", rs.getTimestamp("entry_time").toInstant());
-            result.put("exit_time", rs.getTimestamp("exit_time") != null ? rs.getTimestamp("exit_time").toInstant() : null);
-            result.put("price_total_minor", rs.getBigDecimal("price_total_minor"));
-            result.put("payment_status", rs.getString("payment_status"));
-            result.put("parking_id", rs.getLong("parking_id"));
-            result.put("spot_id", rs.getLong("spot_id"));
-            result.put("vehicle_id", rs.getLong("ref_vehicle_id"));
-            // Obsługa NULL w ref_account_id - dla niezarejestrowanych klientów
-            Object accountIdObj = rs.getObject("ref_account_id");
-            if (accountIdObj != null) {
-                result.put("account_id", rs.getLong("ref_account_id"));
-            } else {
-                result.put("account_id", null);
-            }
-            // Obsługa NULL w reservation_id - tylko sesje z rezerwacji mają to pole
-            Object reservationIdObj = rs.getObject("reservation_id");
-            if (reservationIdObj != null) {
-                result.put("reservation_id", rs.getLong("reservation_id"));
-            } else {
-                result.put("reservation_id", null);
-            }
-            result.put("parking_name", rs.getString("parking_name"));
-            result.put("parking_address", rs.getString("parking_address"));
-            result.put("spot_code", rs.getString("spot_code"));
-            result.put("spot_floor", rs.getInt("spot_floor"));
-            return result;
-        }, accountId);
+        List<AccountSession> results = jdbc.query(sql, ACTIVE_SESSION_MAPPER, accountId);
         
         return results.stream().findFirst();
     }
@@ -692,6 +639,22 @@ public class ParkingRepository {
         );
     }
 
+    /**
+     * Warunkowo oznacza rezerwację jako "Active" przy wjeździe - tylko jeśli nadal jest 'Paid' lub 'Active'.
+     * Sprawdzenie statusu i zmiana odbywają się w jednym UPDATE, więc nie trzeba ponownie czytać rezerwacji.
+     *
+     * @return valid_from rezerwacji lub Optional.empty() jeśli rezerwacja została w międzyczasie użyta/anulowana
+     */
+    public Optional<java.time.Instant> activateReservation(Long reservationId) {
+        String sql = "UPDATE reservation_spot " +
+                "SET status_reservation = 'Active'::public.reservation_status " +
+                "WHERE reservation_id = ? " +
+                "AND status_reservation IN ('Paid', 'Active') " +
+                "RETURNING valid_from";
+        var list = jdbc.query(sql, (rs, i) -> rs.getTimestamp("valid_from").toInstant(), reservationId);
+        return list.stream().findFirst();
+    }
+
     /**
      * Automatycznie wygasa niewykorzystane rezerwacje (status "Paid" -> "Expired").
      * Rezerwacje, które minęły (valid_until < now()) i nie zostały użyte (nie ma sesji parkingowej),
@@ -760,88 +723,118 @@ public class ParkingRepository {
      * @param reservationId ID rezerwacji
      * @return Rezerwacja jeśli znaleziona, Optional.empty() jeśli brak
      */
-    public Optional<Map<String, Object>> findReservationById(Long reservationId) {
-        String sql = "SELECT reservation_id, spot_id, valid_from, valid_until, status_reservation, " +
-                "parking_id, ref_account_id, vehicle_id " +
+    public Optional<ReservationDetails> findReservationById(Long reservationId) {
+        String sql = "SELECT " + RESERVATION_COLUMNS +
                 "FROM reservation_spot " +
                 "WHERE reservation_id = ?";
         
-        var list = jdbc.query(sql, (rs, i) -> {
-            Map<String, Object> result = new HashMap<>();
-            result.put("reservation_id", rs.getLong("reservation_id"));
-            result.put("spot_id", rs.getLong("spot_id"));
-            Object validFromObj = rs.getObject("valid_from");
-            if (validFromObj != null) {
-                result.put("valid_from", rs.getTimestamp("valid_from").toInstant());
-            }
-            result.put("valid_until", rs.getTimestamp("valid_until").toInstant());
-            result.put("status_reservation", rs.getString("status_reservation"));
-            result.put("parking_id", rs.getLong("parking_id"));
-            result.put("ref_account_id", rs.getLong("ref_account_id"));
-            Object vehicleIdObj = rs.getObject("vehicle_id");
-            if (vehicleIdObj != null) {
-                result.put("vehicle_id", rs.getLong("vehicle_id"));
-            }
-            return result;
-        }, reservationId);
+        var list = jdbc.query(sql, RESERVATION_MAPPER, reservationId);
         
         return list.stream().findFirst();
     }
 
+    private static final String RESERVATION_COLUMNS = "reservation_id, spot_id, valid_from, valid_until, status_reservation, " +
+            "parking_id, ref_account_id, vehicle_id ";
+
+    // Widoczność pakietowa: ParkingRowMappingBenchmark (src/test) porównuje mappery ze starym mapowaniem do HashMap
+    static final RowMapper<ReservationDetails> RESERVATION_MAPPER = (rs, i) -> {
+        java.sql.Timestamp validFrom = rs.getTimestamp("valid_from");
+        return new ReservationDetails(
+                rs.getLong("reservation_id"),
+                rs.getLong("spot_id"),
+                validFrom != null ? validFrom.toInstant() : null,
+                rs.getTimestamp("valid_until").toInstant(),
+                rs.getString("status_reservation"),
+                rs.getLong("parking_id"),
+                rs.getLong("ref_account_id"),
+                getNullableLong(rs, "vehicle_id")
+        );
+    };
+
+    private static final String ACCOUNT_SESSIONS_SQL = "SELECT " +
+            "ps.session_id, " +
+            "ps.entry_time, " +
+            "ps.exit_time, " +
+            "ps.price_total_minor, " +
+            "ps.payment_status, " +
+            "ps.parking_id, " +
+            "ps.spot_id, " +
+            "ps.ref_vehicle_id, " +
+            "ps.ref_account_id, " +
+            "ps.reservation_id, " +
+            "pl.name_parking AS parking_name, " +
+            "pl.address_line AS parking_address " +
+            "FROM parking_session ps " +
+            "LEFT JOIN parking_location pl ON ps.parking_id = pl.parking_id " +
+            "WHERE ps.ref_account_id = ? ";
+
+    private static final RowMapper<AccountSession> ACCOUNT_SESSION_MAPPER =
+            (rs, rowNum) -> mapAccountSession(rs, null, null);
+
+    // spot_floor z LEFT JOIN - sesja bez miejsca (lub miejsce bez piętra) ma NULL, a nie parter (0)
+    static final RowMapper<AccountSession> ACTIVE_SESSION_MAPPER =
+            (rs, rowNum) -> mapAccountSession(rs, rs.getString("spot_code"), rs.getObject("spot_floor", Integer.class));
+
+    private static AccountSession mapAccountSession(ResultSet rs, String spotCode, Integer spotFloor) throws java.sql.SQLException {
+        java.sql.Timestamp exitTime = rs.getTimestamp("exit_time");
+        return new AccountSession(
+                rs.getLong("session_id"),
+                rs.getTimestamp("entry_time").toInstant(),
+                exitTime != null ? exitTime.toInstant() : null,
+                rs.getBigDecimal("price_total_minor"),
+                rs.getString("payment_status"),
+                rs.getLong("parking_id"),
+                rs.getLong("spot_id"),
+                rs.getLong("ref_vehicle_id"),
+                getNullableLong(rs, "ref_account_id"),  // NULL dla niezarejestrowanych klientów
+                getNullableLong(rs, "reservation_id"),  // tylko sesje z rezerwacji mają to pole
+                rs.getString("parking_name"),
+                rs.getString("parking_address"),
+                spotCode,
+                spotFloor
+        );
+    }
+
     /**
-     * Znajduje wszystkie sesje parkingowe dla danego konta użytkownika
-     * @param accountId ID konta użytkownika
-     * @param unpaidOnly jeśli true, zwraca tylko niezapłacone sesje (exit_time != NULL, status != 'Paid')
-     * @return Lista sesji parkingowych z wzbogaconymi danymi o parking i miejsce parkingowe
+     * Strona sesji konta, od najnowszych. Stronicowanie kluczem (entry_time, session_id):
+     * kolejna strona zaczyna się za ostatnim wierszem poprzedniej (afterEntryTime + afterSessionId),
+     * więc koszt nie rośnie z numerem strony (indeks idx_parking_session_account_entry).
+     * @param afterEntryTime entry_time ostatniej sesji poprzedniej strony (null = pierwsza strona)
+     * @param afterSessionId session_id ostatniej sesji poprzedniej strony (null = pierwsza strona)
      */
-    public List<Map<String, Object>> findSessionsByAccountId(Long accountId, boolean unpaidOnly) {
-        String sql = "SELECT " +
-                "ps.session_id, " +
-                "ps.entry_time, " +
-                "ps.exit_time, " +
-                "ps.price_total_minor, " +
-                "ps.payment_status, " +
-                "ps.parking_id, " +
-                "ps.spot_id, " +
-                "ps.ref_vehicle_id, " +
-                "ps.ref_account_id, " +
-                "ps.reservation_id, " +
-                "pl.name_parking AS parking_name, " +
-                "pl.address_line AS parking_address " +
-                "FROM parking_session ps " +
-                "LEFT JOIN parking_location pl ON ps.parking_id = pl.parking_id " +
-                "WHERE ps.ref_account_id = ? " +
-                (unpaidOnly ? "AND ps.exit_time IS NOT NULL AND ps.payment_status IN ('Unpaid') " : "") +
-                "ORDER BY ps.entry_time DESC";
-        
-        return jdbc.query(sql, (rs, rowNum) -> {
-            Map<String, Object> result = new HashMap<>();
-            result.put("session_id", rs.getLong("session_id"));
-            result.put("entry_time", rs.getTimestamp("entry_time").toInstant());
-            result.put("exit_time", rs.getTimestamp("exit_time") != null ? rs.getTimestamp("exit_time").toInstant() : null);
-            result.put("price_total_minor", rs.getBigDecimal("price_total_minor"));
-            result.put("payment_status", rs.getString("payment_status"));
-            result.put("parking_id", rs.getLong("parking_id"));
-            result.put("spot_id", rs.getLong("spot_id"));
-            result.put("vehicle_id", rs.getLong("ref_vehicle_id"));
-            // Obsługa NULL w ref_account_id - dla niezarejestrowanych klientów
-            Object accountIdObj = rs.getObject("ref_account_id");
-            if (accountIdObj != null) {
-                result.put("account_id", rs.getLong("ref_account_id"));
-            } else {
-                result.put("account_id", null);
-            }
-            // Obsługa NULL w reservation_id - tylko sesje z rezerwacji mają to pole
-            Object reservationIdObj = rs.getObject("reservation_id");
-            if (reservationIdObj != null) {
-                result.put("reservation_id", rs.getLong("reservation_id"));
-            } else {
-                result.put("reservation_id", null);
-            }
-            result.put("parking_name", rs.getString("parking_name"));
-            result.put("parking_address", rs.getString("parking_address"));
-            return result;
-        }, accountId);
+    public List<AccountSession> findSessionsByAccountId(Long accountId, boolean unpaidOnly,
+                                                             java.time.Instant afterEntryTime, Long afterSessionId,
+                                                             int limit) {
+        StringBuilder sql = new StringBuilder(ACCOUNT_SESSIONS_SQL);
+        List<Object> params = new ArrayList<>();
+        params.add(accountId);
+        if (unpaidOnly) {
+            sql.append("AND ps.exit_time IS NOT NULL AND ps.payment_status IN ('Unpaid') ");
+        }
+        if (afterEntryTime != null && afterSessionId != null) {
+            sql.append("AND (ps.entry_time, ps.session_id) < (?, ?) ");
+            params.add(java.sql.Timestamp.from(afterEntryTime));
+            params.add(afterSessionId);
+        }
+        sql.append("ORDER BY ps.entry_time DESC, ps.session_id DESC LIMIT ?");
+        params.add(limit);
+        return jdbc.query(sql.toString(), ACCOUNT_SESSION_MAPPER, params.toArray());
+    }
+
+    /**
+     * Eksport wszystkich sesji konta bez ładowania ich do pamięci: wiersze trafiają do handlera
+     * w miarę czytania kursora JDBC (fetchSize). Sterownik PostgreSQL używa kursora tylko
+     * przy wyłączonym autocommit, stąd transakcja tylko do odczytu.
+     */
+    @Transactional(readOnly = true)
+    public void streamSessionsByAccountId(Long accountId, int fetchSize, Consumer<AccountSession> handler) {
+        String sql = ACCOUNT_SESSIONS_SQL + "ORDER BY ps.entry_time DESC, ps.session_id DESC";
+        jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setLong(1, accountId);
+            return ps;
+        }, (RowCallbackHandler) rs -> handler.accept(ACCOUNT_SESSION_MAPPER.mapRow(rs, rs.getRow())));
     }
 
     /**
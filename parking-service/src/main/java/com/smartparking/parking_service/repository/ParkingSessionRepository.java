@@ -1,8 +1,13 @@
 package com.smartparking.parking_service.repository;
 
+import com.smartparking.parking_service.model.ActivePlate;
 import com.smartparking.parking_service.model.ParkingSession;
+import com.smartparking.parking_service.model.PenaltyDue;
+import com.smartparking.parking_service.model.PendingSettlement;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface ParkingSessionRepository {
@@ -13,16 +18,92 @@ public interface ParkingSessionRepository {
 
     List<ParkingSession> findByVehicleId(Long vehicleId);
 
-    List<ParkingSession> findByParkingId(Long parkingId);
+    /**
+     * Sesje parkingu z wjazdem w [from, to), od najnowszych, stronicowane kluczem (entry_time, session_id).
+     * Korzysta z indeksu idx_parking_session_parking_entry - nie ładuje całej historii parkingu.
+     * @param afterEntryTime entry_time ostatniej sesji poprzedniej strony (null = pierwsza strona)
+     * @param afterSessionId session_id ostatniej sesji poprzedniej strony (null = pierwsza strona)
+     */
+    List<ParkingSession> findByParkingIdAndEntryRange(Long parkingId, LocalDateTime from, LocalDateTime to,
+                                                      LocalDateTime afterEntryTime, Long afterSessionId, int limit);
+
+    /**
+     * Liczba otwartych sesji (exit_time IS NULL) na parkingu - częściowy indeks idx_parking_session_open
+     */
+    long countOpenSessionsByParkingId(Long parkingId);
+
+    /**
+     * Mapa session_id -> parking_id dla podanych sesji (nieistniejące sesje są pomijane)
+     */
+    Map<Long, Long> findParkingIdsBySessionIds(List<Long> sessionIds);
 
     List<ParkingSession> findAll();
 
     public List<ParkingSession> findActiveSession();
 
+    /**
+     * Sesja założona przez event wjazdu o podanym kluczu idempotencji (entry_event_id)
+     */
+    Optional<Long> findSessionIdByEntryEventId(String eventId);
+
+    /**
+     * Sesja zamknięta przez event wyjazdu o podanym kluczu idempotencji (exit_event_id)
+     */
+    Optional<ParkingSession> findByExitEventId(String eventId);
+
+    /**
+     * Tablice z wjazdu wszystkich aktywnych sesji (sesje bez entry_plate są pomijane)
+     */
+    List<ActivePlate> findActivePlates();
+
     Optional<ParkingSession> findActiveSessionByVehicleAndParking(Long vehicleId, Long parkingId);
 
     Long countActiveSessionsByParkingId(Long parkingId);
 
+    /**
+     * Zapis nowej sesji (INSERT) albo aktualizacja istniejącej (id ustawione).
+     * @throws SpotOccupiedException gdy wskazane spot_id ma już aktywną sesję
+     */
     ParkingSession save(ParkingSession session);
 
+    /**
+     * Atomowo wybiera wolne miejsce na parkingu i zakłada na nim sesję (jedno zapytanie).
+     * @param session sesja bez spot_id (parking_id, pojazd, konto i entry_time muszą być ustawione)
+     * @param preferredSpotId miejsce sprawdzane w pierwszej kolejności (np. z indeksu zajętości), może być null
+     * @return zapisana sesja z ustawionym spot_id lub Optional.empty() gdy parking jest pełny
+     */
+    Optional<ParkingSession> claimFreeSpot(ParkingSession session, Long preferredSpotId);
+
+    /**
+     * Sesje z niepobraną karą (częściowy indeks idx_parking_session_penalty_due), od najstarszych.
+     * Sesje po nieudanej próbie wracają dopiero po retryAfterSeconds.
+     */
+    List<PenaltyDue> findUnchargedPenalties(int retryAfterSeconds, int limit);
+
+    void markPenaltyCharged(Long sessionId);
+
+    void markPenaltyAttempted(Long sessionId);
+
+    long countUnchargedPenalties();
+
+    /**
+     * Ustawia wynik rozliczenia sesji czekającej w statusie Settling (Paid także dla sesji Unpaid)
+     * @return false gdy sesja została już rozliczona (powtórzona odpowiedź)
+     */
+    boolean completeSettlement(Long sessionId, String paymentStatus);
+
+    /**
+     * Sesje w statusie Settling dłużej niż olderThanSeconds (częściowy indeks idx_parking_session_settling), od najstarszych,
+     * z mniej niż maxAttempts ponowieniami. Pobrane sesje dostają nowe settlement_requested_at i kolejny numer próby.
+     */
+    List<PendingSettlement> claimStaleSettlements(int olderThanSeconds, int maxAttempts, int limit);
+
+    /**
+     * Przenosi do Unpaid sesje w Settling dłużej niż olderThanSeconds po ostatniej próbie (albo bez ceny lub konta)
+     * @return liczba sesji przeniesionych do Unpaid
+     */
+    int abandonStaleSettlements(int olderThanSeconds, int maxAttempts);
+
+    long countSettling();
+
 }
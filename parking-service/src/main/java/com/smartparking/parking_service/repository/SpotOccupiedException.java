@@ -0,0 +1,12 @@
+package com.smartparking.parking_service.repository;
+
+/**
+ * Zapis sesji na wskazanym miejscu (np. zarezerwowanym) naruszył uq_parking_session_active_spot -
+ * miejsce ma już aktywną sesję. Wywołujący może przydzielić inne wolne miejsce.
+ */
+public class SpotOccupiedException extends IllegalStateException {
+
+    public SpotOccupiedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,45 @@
+package com.smartparking.parking_service.scheduler;
+
+import com.smartparking.parking_service.repository.OccupancyRollupRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Scheduled task utrzymujący rollup obłożenia parking_occupancy_hourly.
+ *
+ * Co 5 minut dolicza nowe sesje (przyrostowo po session_id), a raz na dobę przelicza rollup od zera,
+ * żeby uwzględnić sesje zatwierdzone poza kolejnością oraz poprawki danych historycznych.
+ */
+@Component
+public class OccupancyRollupScheduler {
+    private static final Logger log = LoggerFactory.getLogger(OccupancyRollupScheduler.class);
+
+    private final OccupancyRollupRepository rollupRepo;
+
+    public OccupancyRollupScheduler(OccupancyRollupRepository rollupRepo) {
+        this.rollupRepo = rollupRepo;
+    }
+
+    @Scheduled(fixedRate = 300000, initialDelay = 30000) // 5 minut = 300000 ms
+    public void refresh() {
+        try {
+            int buckets = rollupRepo.refresh();
+            if (buckets > 0) {
+                log.debug("Occupancy rollup refreshed: {} hourly buckets updated", buckets);
+            }
+        } catch (Exception e) {
+            log.error("Error in occupancy rollup refresh: {}", e.getMessage(), e);
+        }
+    }
+
+    @Scheduled(cron = "0 30 3 * * *", zone = "Europe/Warsaw") // codziennie o 3:30
+    public void rebuild() {
+        try {
+            rollupRepo.rebuild();
+        } catch (Exception e) {
+            log.error("Error in occupancy rollup rebuild: {}", e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.smartparking.parking_service.scheduler;
+
+import com.smartparking.parking_service.client.PaymentClient;
+import com.smartparking.parking_service.model.PenaltyDue;
+import com.smartparking.parking_service.repository.ParkingSessionRepository;
+import com.smartparking.parking_service.service.ParkingSessionService.PaymentResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pobiera kary za przekroczenie rezerwacji zapisane przy wyjeździe (parking_session.penalty_minor).
+ *
+ * Wyjazd nie czeka na payment-service - sesja dostaje tylko kwotę kary, a ten job paczkami obciąża portfele.
+ * Każde obciążenie ma klucz idempotencji "session-{id}-penalty", więc ponowienie (np. po timeoucie
+ * albo gdy dwie repliki trafią na tę samą sesję) nie pobiera kary drugi raz.
+ * Nieudane obciążenie (brak środków, payment-service niedostępny) wraca po RETRY_AFTER_SECONDS.
+ */
+@Component
+public class PenaltyReconciliationScheduler {
+    private static final Logger log = LoggerFactory.getLogger(PenaltyReconciliationScheduler.class);
+    private static final int BATCH_SIZE = 200;
+    private static final int RETRY_AFTER_SECONDS = 900;
+    // Po tylu nieudanych obciążeniach z rzędu przebieg się kończy - najpewniej payment-service nie odpowiada
+    private static final int MAX_CONSECUTIVE_FAILURES = 5;
+
+    private final ParkingSessionRepository sessionRepo;
+    private final PaymentClient paymentClient;
+
+    // Metryki (GET /parking/admin/stats/penalties)
+    private final AtomicLong charged = new AtomicLong();
+    private final AtomicLong chargedMinor = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong runs = new AtomicLong();
+
+    public PenaltyReconciliationScheduler(ParkingSessionRepository sessionRepo, PaymentClient paymentClient) {
+        this.sessionRepo = sessionRepo;
+        this.paymentClient = paymentClient;
+    }
+
+    @Scheduled(fixedDelay = 30000, initialDelay = 30000) // co 30 sekund
+    public void reconcile() {
+        runs.incrementAndGet();
+        try {
+            List<PenaltyDue> due = sessionRepo.findUnchargedPenalties(RETRY_AFTER_SECONDS, BATCH_SIZE);
+            int consecutiveFailures = 0;
+            for (PenaltyDue penalty : due) {
+                if (charge(penalty)) {
+                    consecutiveFailures = 0;
+                } else if (++consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+                    log.warn("Penalty reconciliation stopped after {} consecutive failures", consecutiveFailures);
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Error in penalty reconciliation: {}", e.getMessage(), e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("charged", charged.get());
+        stats.put("chargedMinor", chargedMinor.get());
+        stats.put("failed", failed.get());
+        stats.put("runs", runs.get());
+        try {
+            stats.put("pending", sessionRepo.countUnchargedPenalties());
+        } catch (Exception e) {
+            stats.put("pending", "unavailable");
+        }
+        return stats;
+    }
+
+    private boolean charge(PenaltyDue penalty) {
+        PaymentResult result = paymentClient.chargeForParkingSession(
+            penalty.accountId(), penalty.sessionId(), penalty.parkingId(), penalty.penaltyMinor(),
+            PaymentClient.CHARGE_PENALTY);
+        if (result.isSuccess()) {
+            sessionRepo.markPenaltyCharged(penalty.sessionId());
+            charged.incrementAndGet();
+            chargedMinor.addAndGet(penalty.penaltyMinor());
+            log.info("Penalty {} charged for session {} (account {})",
+                penalty.penaltyMinor(), penalty.sessionId(), penalty.accountId());
+            return true;
+        }
+        sessionRepo.markPenaltyAttempted(penalty.sessionId());
+        failed.incrementAndGet();
+        log.warn("Failed to charge penalty {} for session {} (account {}), retrying in {}s: {}",
+            penalty.penaltyMinor(), penalty.sessionId(), penalty.accountId(), RETRY_AFTER_SECONDS,
+            result.getErrorMessage());
+        return false;
+    }
+}
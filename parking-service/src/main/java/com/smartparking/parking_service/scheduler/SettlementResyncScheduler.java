@@ -0,0 +1,34 @@
+package com.smartparking.parking_service.scheduler;
+
+import com.smartparking.parking_service.service.SessionSettlementService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ponownie wysyła polecenia rozliczenia sesji, które zbyt długo czekają w statusie Settling
+ * (zgubione polecenie lub odpowiedź, payment-service niedostępny).
+ */
+@Component
+public class SettlementResyncScheduler {
+    private static final Logger log = LoggerFactory.getLogger(SettlementResyncScheduler.class);
+
+    private final SessionSettlementService settlementService;
+
+    public SettlementResyncScheduler(SessionSettlementService settlementService) {
+        this.settlementService = settlementService;
+    }
+
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000) // co minutę
+    public void resendStale() {
+        try {
+            int resent = settlementService.resendStale();
+            if (resent > 0) {
+                log.info("Resent {} settlement commands for sessions still settling", resent);
+            }
+        } catch (Exception e) {
+            log.error("Error in settlement resync: {}", e.getMessage(), e);
+        }
+    }
+}
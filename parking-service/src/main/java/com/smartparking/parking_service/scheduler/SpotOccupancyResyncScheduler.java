@@ -0,0 +1,38 @@
+package com.smartparking.parking_service.scheduler;
+
+import com.smartparking.parking_service.service.ActivePlateIndex;
+import com.smartparking.parking_service.service.ParkingAvailabilityCounters;
+import com.smartparking.parking_service.service.SpotOccupancyIndex;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Scheduled task do okresowej synchronizacji indeksu zajętości miejsc, liczników dostępności
+ * i indeksu tablic aktywnych sesji z bazą danych.
+ *
+ * Wszystkie są aktualizowane przyrostowo przy wjazdach, wyjazdach i rezerwacjach,
+ * ale rezerwacje wygasają z upływem czasu, a sesje mogą tworzyć inne repliki -
+ * resync wyrównuje te różnice.
+ */
+@Component
+public class SpotOccupancyResyncScheduler {
+
+    private final SpotOccupancyIndex occupancyIndex;
+    private final ParkingAvailabilityCounters availabilityCounters;
+    private final ActivePlateIndex plateIndex;
+
+    public SpotOccupancyResyncScheduler(SpotOccupancyIndex occupancyIndex,
+                                        ParkingAvailabilityCounters availabilityCounters,
+                                        ActivePlateIndex plateIndex) {
+        this.occupancyIndex = occupancyIndex;
+        this.availabilityCounters = availabilityCounters;
+        this.plateIndex = plateIndex;
+    }
+
+    @Scheduled(fixedRate = 60000, initialDelay = 60000) // co minutę
+    public void resync() {
+        occupancyIndex.rebuild();
+        availabilityCounters.rebuild();
+        plateIndex.rebuild();
+    }
+}
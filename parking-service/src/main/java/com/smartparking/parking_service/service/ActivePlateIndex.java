@@ -0,0 +1,323 @@
+package com.smartparking.parking_service.service;
+
+import com.smartparking.parking_service.model.ActivePlate;
+import com.smartparking.parking_service.repository.ParkingSessionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Indeks tablic rejestracyjnych aktywnych sesji per parking, trzymany w pamięci parking-service.
+ *
+ * Wyjazd szuka sesji po dokładnej tablicy - jeden źle odczytany znak (O/0, B/8, I/1) kończył się
+ * "No active session found" i ręczną obsługą szlabanu. Gdy dokładne wyszukiwanie nie trafi,
+ * ParkingSessionService pyta indeks o najbliższą tablicę aktywnej sesji na tym parkingu:
+ * najpierw po kluczu ze zwiniętymi znakami mylonymi przez OCR (O->0, B->8, I->1, ...),
+ * potem w odległości edycyjnej co najwyżej MAX_EDIT_DISTANCE od tego klucza.
+ * Jeśli najbliższych kandydatów jest kilku, indeks nie zgaduje i zwraca pusty wynik.
+ *
+ * Aktywnych sesji na parkingu jest najwyżej tyle co miejsc, a tablice ciągle dochodzą i znikają,
+ * więc zamiast BK-drzewa (bez taniego usuwania) wystarcza mapa po kluczu i liniowy przegląd kluczy
+ * o zbliżonej długości z odległością liczoną w pasie szerokości MAX_EDIT_DISTANCE.
+ *
+ * Indeks jest tylko podpowiedzią - wywołujący sprawdza w bazie, czy znaleziona sesja nadal trwa,
+ * a okresowy resync (SpotOccupancyResyncScheduler) dokłada sesje utworzone przez inne repliki.
+ */
+@Component
+public class ActivePlateIndex {
+    private static final Logger log = LoggerFactory.getLogger(ActivePlateIndex.class);
+
+    private static final int MAX_EDIT_DISTANCE = 1;
+    // Krótsze klucze w odległości 1 pasują do zbyt wielu tablic
+    private static final int MIN_FUZZY_LENGTH = 5;
+
+    private final ParkingSessionRepository sessionRepo;
+    private volatile Map<Long, ParkingPlates> byParking = new ConcurrentHashMap<>();
+
+    // Metryki (GET /parking/admin/stats/plate-matching)
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong confusableHits = new AtomicLong();
+    private final AtomicLong editDistanceHits = new AtomicLong();
+    private final AtomicLong ambiguous = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong rescuedExits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong lookupNanosTotal = new AtomicLong();
+    private volatile long maxLookupNanos;
+
+    public ActivePlateIndex(ParkingSessionRepository sessionRepo) {
+        this.sessionRepo = sessionRepo;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        rebuild();
+    }
+
+    /**
+     * Przebudowuje cały indeks na podstawie aktywnych sesji w bazie danych.
+     */
+    public void rebuild() {
+        try {
+            List<ActivePlate> rows = sessionRepo.findActivePlates();
+            Map<Long, ParkingPlates> fresh = new ConcurrentHashMap<>();
+            for (ActivePlate row : rows) {
+                fresh.computeIfAbsent(row.parkingId(), k -> new ParkingPlates()).add(row);
+            }
+            byParking = fresh;
+            log.debug("Active plate index rebuilt: parkings={}, plates={}", fresh.size(), rows.size());
+        } catch (Exception e) {
+            log.error("Failed to rebuild active plate index: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Dodaje tablicę rozpoczętej sesji (wywoływane po zapisie sesji przy wjeździe).
+     */
+    public void add(Long parkingId, Long sessionId, Long vehicleId, String plate) {
+        if (parkingId == null || sessionId == null || vehicleId == null || plate == null) {
+            return;
+        }
+        byParking.computeIfAbsent(parkingId, k -> new ParkingPlates())
+                .add(new ActivePlate(sessionId, parkingId, vehicleId, plate));
+    }
+
+    /**
+     * Usuwa zakończoną sesję z indeksu.
+     */
+    public void remove(Long parkingId, Long sessionId) {
+        if (parkingId == null || sessionId == null) {
+            return;
+        }
+        ParkingPlates plates = byParking.get(parkingId);
+        if (plates != null) {
+            plates.remove(sessionId);
+        }
+    }
+
+    /**
+     * Szuka aktywnej sesji na parkingu, której tablica najpewniej została źle odczytana jako podana.
+     * @param plate tablica z OCR (znormalizowana: uppercase, trimmed)
+     * @return jedyny najbliższy kandydat lub Optional.empty() gdy brak kandydata albo wynik jest niejednoznaczny
+     */
+    public Optional<ActivePlate> findClosest(Long parkingId, String plate) {
+        if (parkingId == null || plate == null) {
+            return Optional.empty();
+        }
+        long start = System.nanoTime();
+        lookups.incrementAndGet();
+        try {
+            ParkingPlates plates = byParking.get(parkingId);
+            if (plates == null) {
+                misses.incrementAndGet();
+                return Optional.empty();
+            }
+            return plates.findClosest(fold(plate));
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            lookupNanosTotal.addAndGet(elapsed);
+            if (elapsed > maxLookupNanos) {
+                maxLookupNanos = elapsed;
+            }
+        }
+    }
+
+    /**
+     * Wyjazd został zamknięty dzięki dopasowaniu przybliżonemu.
+     */
+    public void recordRescuedExit() {
+        rescuedExits.incrementAndGet();
+    }
+
+    /**
+     * Kandydat z indeksu nie był już aktywną sesją w bazie (np. zakończyła go inna replika).
+     */
+    public void recordStaleHit() {
+        staleHits.incrementAndGet();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        long total = lookups.get();
+        int indexed = 0;
+        for (ParkingPlates plates : byParking.values()) {
+            indexed += plates.size();
+        }
+        stats.put("indexedPlates", indexed);
+        stats.put("indexedParkings", byParking.size());
+        stats.put("maxEditDistance", MAX_EDIT_DISTANCE);
+        stats.put("fuzzyLookups", total);
+        stats.put("confusableHits", confusableHits.get());
+        stats.put("editDistanceHits", editDistanceHits.get());
+        stats.put("ambiguous", ambiguous.get());
+        stats.put("misses", misses.get());
+        stats.put("staleHits", staleHits.get());
+        stats.put("rescuedExits", rescuedExits.get());
+        stats.put("avgLookupMicros", total > 0 ? lookupNanosTotal.get() / total / 1_000.0 : 0.0);
+        stats.put("maxLookupMicros", maxLookupNanos / 1_000.0);
+        return stats;
+    }
+
+    /**
+     * Klucz odporny na typowe pomyłki OCR: tylko litery i cyfry, znaki mylone z cyframi zamienione na cyfry.
+     */
+    static String fold(String plate) {
+        StringBuilder sb = new StringBuilder(plate.length());
+        for (int i = 0; i < plate.length(); i++) {
+            char c = Character.toUpperCase(plate.charAt(i));
+            switch (c) {
+                case 'O', 'Q', 'D' -> sb.append('0');
+                case 'I', 'L' -> sb.append('1');
+                case 'Z' -> sb.append('2');
+                case 'S' -> sb.append('5');
+                case 'G' -> sb.append('6');
+                case 'B' -> sb.append('8');
+                default -> {
+                    if ((c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Odległość Levenshteina ograniczona do max - liczona tylko w pasie |i - j| <= max,
+     * zwraca max + 1 gdy odległość jest większa.
+     */
+    static int boundedDistance(String a, String b, int max) {
+        int n = a.length();
+        int m = b.length();
+        if (Math.abs(n - m) > max) {
+            return max + 1;
+        }
+        int[] prev = new int[m + 1];
+        int[] curr = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            int from = Math.max(1, i - max);
+            int to = Math.min(m, i + max);
+            curr[0] = i;
+            if (from > 1) {
+                curr[from - 1] = max + 1;
+            }
+            int rowMin = from > 1 ? max + 1 : i;
+            for (int j = from; j <= to; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int best = prev[j - 1] + cost;
+                if (j - 1 >= i - max) {
+                    best = Math.min(best, curr[j - 1] + 1);
+                }
+                if (j <= i - 1 + max) {
+                    best = Math.min(best, prev[j] + 1);
+                }
+                curr[j] = best;
+                rowMin = Math.min(rowMin, best);
+            }
+            if (to < m) {
+                curr[to + 1] = max + 1;
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] tmp = prev;
+            prev = curr;
+            curr = tmp;
+        }
+        return Math.min(prev[m], max + 1);
+    }
+
+    /**
+     * Tablice aktywnych sesji jednego parkingu. Zmiany są O(1), przegląd tylko przy nietrafionym wyjeździe.
+     */
+    private final class ParkingPlates {
+        private final Map<Long, ActivePlate> bySession = new HashMap<>();
+        private final Map<String, List<ActivePlate>> byKey = new LinkedHashMap<>();
+
+        synchronized void add(ActivePlate plate) {
+            removeSession(plate.sessionId());
+            bySession.put(plate.sessionId(), plate);
+            byKey.computeIfAbsent(fold(plate.plate()), k -> new ArrayList<>(1)).add(plate);
+        }
+
+        synchronized void remove(long sessionId) {
+            removeSession(sessionId);
+        }
+
+        synchronized int size() {
+            return bySession.size();
+        }
+
+        synchronized Optional<ActivePlate> findClosest(String key) {
+            List<ActivePlate> sameKey = byKey.get(key);
+            if (sameKey != null) {
+                if (sameKey.size() == 1) {
+                    confusableHits.incrementAndGet();
+                    return Optional.of(sameKey.get(0));
+                }
+                ambiguous.incrementAndGet();
+                return Optional.empty();
+            }
+            if (key.length() < MIN_FUZZY_LENGTH) {
+                misses.incrementAndGet();
+                return Optional.empty();
+            }
+
+            ActivePlate best = null;
+            int bestDistance = MAX_EDIT_DISTANCE + 1;
+            boolean tie = false;
+            for (Map.Entry<String, List<ActivePlate>> entry : byKey.entrySet()) {
+                int distance = boundedDistance(key, entry.getKey(), MAX_EDIT_DISTANCE);
+                if (distance > MAX_EDIT_DISTANCE) {
+                    continue;
+                }
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = entry.getValue().get(0);
+                    tie = entry.getValue().size() > 1;
+                } else if (distance == bestDistance) {
+                    tie = true;
+                }
+            }
+            if (best == null) {
+                misses.incrementAndGet();
+                return Optional.empty();
+            }
+            if (tie) {
+                ambiguous.incrementAndGet();
+                return Optional.empty();
+            }
+            editDistanceHits.incrementAndGet();
+            return Optional.of(best);
+        }
+
+        private void removeSession(long sessionId) {
+            ActivePlate existing = bySession.remove(sessionId);
+            if (existing == null) {
+                return;
+            }
+            String key = fold(existing.plate());
+            List<ActivePlate> sameKey = byKey.get(key);
+            if (sameKey != null) {
+                sameKey.removeIf(p -> p.sessionId() == sessionId);
+                if (sameKey.isEmpty()) {
+                    byKey.remove(key);
+                }
+            }
+        }
+    }
+}
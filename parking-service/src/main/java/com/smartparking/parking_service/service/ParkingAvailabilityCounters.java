@@ -0,0 +1,192 @@
+package com.smartparking.parking_service.service;
+
+import com.smartparking.parking_service.model.ParkingAvailability;
+import com.smartparking.parking_service.repository.ParkingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Liczniki dostępności miejsc (total / available / reserved / occupied) per parking, trzymane w pamięci.
+ *
+ * Zastępują agregację COUNT(DISTINCT ...) po parking_spot × parking_session w listLocations,
+ * getLocationDetails i getOccupancyData - te endpointy są publiczne i odpytywane cyklicznie przez mapę.
+ * Liczniki są aktualizowane przyrostowo przy wjazdach, wyjazdach i rezerwacjach; okresowy resync
+ * (SpotOccupancyResyncScheduler) wyrównuje rozjazdy, np. rezerwacje wygasłe z upływem czasu
+ * lub sesje utworzone przez inną replikę.
+ */
+@Component
+public class ParkingAvailabilityCounters {
+    private static final Logger log = LoggerFactory.getLogger(ParkingAvailabilityCounters.class);
+    // Jak długo parking nieznaleziony w bazie nie jest doczytywany ponownie (endpointy publiczne - dowolne id)
+    private static final long UNKNOWN_TTL_MILLIS = 30_000;
+    private static final int MAX_UNKNOWN_ENTRIES = 10_000;
+
+    private final ParkingRepository parkingRepo;
+    private volatile Map<Long, Counters> byParking = new ConcurrentHashMap<>();
+    // Miejsca liczone jako "available" ('Available', to_reserved = false)
+    private volatile Set<Long> walkInSpots = ConcurrentHashMap.newKeySet();
+    // parking_id nieistniejących parkingów -> czas (ms), do którego get() nie pyta o nie bazy
+    private final Map<Long, Long> unknownUntil = new ConcurrentHashMap<>();
+
+    public ParkingAvailabilityCounters(ParkingRepository parkingRepo) {
+        this.parkingRepo = parkingRepo;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        rebuild();
+    }
+
+    /**
+     * Przelicza wszystkie liczniki na podstawie stanu w bazie danych.
+     */
+    public void rebuild() {
+        try {
+            Map<Long, Counters> fresh = new ConcurrentHashMap<>();
+            for (ParkingAvailability row : parkingRepo.loadParkingAvailability(null)) {
+                fresh.put(row.parkingId(), new Counters(row));
+            }
+            Set<Long> freshWalkIn = ConcurrentHashMap.newKeySet();
+            freshWalkIn.addAll(parkingRepo.loadWalkInSpotIds(null));
+
+            byParking = fresh;
+            walkInSpots = freshWalkIn;
+            unknownUntil.clear();
+            log.debug("Parking availability counters rebuilt: parkings={}", fresh.size());
+        } catch (Exception e) {
+            log.error("Failed to rebuild parking availability counters: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Przelicza liczniki jednego parkingu (np. po utworzeniu parkingu lub dodaniu miejsc).
+     * @return false, gdy odczyt z bazy się nie udał
+     */
+    public boolean reloadParking(Long parkingId) {
+        if (parkingId == null) {
+            return false;
+        }
+        unknownUntil.remove(parkingId);
+        try {
+            List<ParkingAvailability> rows = parkingRepo.loadParkingAvailability(parkingId);
+            walkInSpots.addAll(parkingRepo.loadWalkInSpotIds(parkingId));
+            if (rows.isEmpty()) {
+                byParking.remove(parkingId);
+            } else {
+                byParking.put(parkingId, new Counters(rows.get(0)));
+            }
+            return true;
+        } catch (Exception e) {
+            log.error("Failed to reload availability counters for parking {}: {}", parkingId, e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Zwraca liczniki parkingu. Parking nieznany licznikom (np. utworzony przez inną replikę)
+     * jest doładowywany z bazy przy pierwszym odczycie. Id, którego nie ma też w bazie, jest zapamiętywane
+     * na UNKNOWN_TTL_MILLIS - kolejne zapytania o nie nie trafiają do bazy.
+     */
+    public ParkingAvailability get(Long parkingId) {
+        Counters counters = byParking.get(parkingId);
+        if (counters == null) {
+            Long until = unknownUntil.get(parkingId);
+            long now = System.currentTimeMillis();
+            if (until != null && now < until) {
+                return ParkingAvailability.empty(parkingId);
+            }
+            boolean loaded = reloadParking(parkingId);
+            counters = byParking.get(parkingId);
+            // Błąd bazy nie oznacza, że parkingu nie ma - wtedy nie zapamiętujemy
+            if (counters == null && loaded) {
+                if (unknownUntil.size() >= MAX_UNKNOWN_ENTRIES) {
+                    unknownUntil.clear();
+                }
+                unknownUntil.put(parkingId, now + UNKNOWN_TTL_MILLIS);
+            }
+        }
+        return counters != null ? counters.snapshot(parkingId) : ParkingAvailability.empty(parkingId);
+    }
+
+    /**
+     * Wjazd: miejsce staje się zajęte.
+     * @param releasedReservation true jeśli sesja zużyła rezerwację 'Paid' (liczoną dotąd jako reserved)
+     */
+    public void onSessionStarted(Long parkingId, Long spotId, boolean releasedReservation) {
+        Counters counters = parkingId != null ? byParking.get(parkingId) : null;
+        if (counters == null) {
+            return;
+        }
+        synchronized (counters) {
+            counters.occupied++;
+            if (spotId != null && walkInSpots.contains(spotId)) {
+                counters.available = Math.max(0, counters.available - 1);
+            }
+            if (releasedReservation) {
+                counters.reserved = Math.max(0, counters.reserved - 1);
+            }
+        }
+    }
+
+    /**
+     * Wyjazd: miejsce zostaje zwolnione.
+     */
+    public void onSessionEnded(Long parkingId, Long spotId) {
+        Counters counters = parkingId != null ? byParking.get(parkingId) : null;
+        if (counters == null) {
+            return;
+        }
+        synchronized (counters) {
+            counters.occupied = Math.max(0, counters.occupied - 1);
+            if (spotId != null && walkInSpots.contains(spotId)) {
+                counters.available = Math.min(counters.total, counters.available + 1);
+            }
+        }
+    }
+
+    public void onReservationPaid(Long parkingId) {
+        Counters counters = parkingId != null ? byParking.get(parkingId) : null;
+        if (counters == null) {
+            return;
+        }
+        synchronized (counters) {
+            counters.reserved++;
+        }
+    }
+
+    public void onReservationReleased(Long parkingId) {
+        Counters counters = parkingId != null ? byParking.get(parkingId) : null;
+        if (counters == null) {
+            return;
+        }
+        synchronized (counters) {
+            counters.reserved = Math.max(0, counters.reserved - 1);
+        }
+    }
+
+    private static final class Counters {
+        private int total;
+        private int available;
+        private int reserved;
+        private int occupied;
+
+        Counters(ParkingAvailability row) {
+            this.total = row.totalSpots();
+            this.available = row.availableSpots();
+            this.reserved = row.reservedSpots();
+            this.occupied = row.occupiedSpots();
+        }
+
+        synchronized ParkingAvailability snapshot(long parkingId) {
+            return new ParkingAvailability(parkingId, total, available, reserved, occupied);
+        }
+    }
+}
@@ -23,14 +23,20 @@ public class ParkingCreationService {
     private final ParkingLocationRepository locationRepo;
     private final ParkingSpotRepository spotRepo;
     private final ParkingPricingRepository pricingRepo;
+    private final SpotOccupancyIndex occupancyIndex;
+    private final ParkingAvailabilityCounters availabilityCounters;
 
     public ParkingCreationService(
             ParkingLocationRepository locationRepo,
             ParkingSpotRepository spotRepo,
-            ParkingPricingRepository pricingRepo) {
+            ParkingPricingRepository pricingRepo,
+            SpotOccupancyIndex occupancyIndex,
+            ParkingAvailabilityCounters availabilityCounters) {
         this.locationRepo = locationRepo;
         this.spotRepo = spotRepo;
         this.pricingRepo = pricingRepo;
+        this.occupancyIndex = occupancyIndex;
+        this.availabilityCounters = availabilityCounters;
     }
 
     /**
@@ -79,6 +85,8 @@ public class ParkingCreationService {
             }
 
             log.info("Created {} total spots for parking {}", totalSpots, parkingId);
+            occupancyIndex.reloadParking(parkingId);
+            availabilityCounters.reloadParking(parkingId);
         } else {
             log.warn("No sections provided for parking {}", parkingId);
         }
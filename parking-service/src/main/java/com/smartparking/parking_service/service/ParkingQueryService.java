@@ -1,9 +1,15 @@
 package com.smartparking.parking_service.service;
 
+import com.smartparking.parking_service.model.AccountReservation;
+import com.smartparking.parking_service.model.AccountSession;
+import com.smartparking.parking_service.model.ActiveReservation;
+import com.smartparking.parking_service.model.LocationDetails;
+import com.smartparking.parking_service.model.LocationSummary;
 import com.smartparking.parking_service.model.ParkingLocation;
 import com.smartparking.parking_service.model.ParkingPricing;
 import com.smartparking.parking_service.model.ParkingSession;
-import com.smartparking.parking_service.model.ParkingSpot;
+import com.smartparking.parking_service.model.ReservationDetails;
+import com.smartparking.parking_service.model.SpotSummary;
 import com.smartparking.parking_service.repository.*;
 import org.springframework.stereotype.Service;
 
@@ -12,48 +18,67 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import com.smartparking.parking_service.dto.ParkingUsageDto;
+import com.smartparking.parking_service.messaging.PricingEventPublisher;
 
 @Service
 public class ParkingQueryService {
+    private static final int EXPORT_FETCH_SIZE = 500;
+
     private final ParkingRepository repo;
     private final ParkingPricingRepository pricingRepo;
     private final ParkingLocationRepository parkingLocationRepository;
     private final ParkingSpotRepository spotRepo;
     private final ParkingSessionRepository sessionRepo;
+    private final SpotOccupancyIndex occupancyIndex;
+    private final ParkingAvailabilityCounters availabilityCounters;
+    private final PricingCache pricingCache;
+    private final PricingEventPublisher pricingEventPublisher;
 
     public ParkingQueryService(ParkingRepository repo,
                                ParkingPricingRepository pricingRepo,
                                ParkingLocationRepository parkingLocationRepository,
                                ParkingSpotRepository spotRepo,
-                               ParkingSessionRepository sessionRepo) {
+                               ParkingSessionRepository sessionRepo,
+                               SpotOccupancyIndex occupancyIndex,
+                               ParkingAvailabilityCounters availabilityCounters,
+                               PricingCache pricingCache,
+                               PricingEventPublisher pricingEventPublisher) {
         this.repo = repo;
         this.pricingRepo = pricingRepo;
         this.parkingLocationRepository = parkingLocationRepository;
         this.spotRepo = spotRepo;
         this.sessionRepo = sessionRepo;
+        this.occupancyIndex = occupancyIndex;
+        this.availabilityCounters = availabilityCounters;
+        this.pricingCache = pricingCache;
+        this.pricingEventPublisher = pricingEventPublisher;
     }
 
-    public List<Map<String, Object>> getLocations() {
-        return repo.listLocations();
+    public List<LocationSummary> getLocations() {
+        return repo.listLocations(availabilityCounters::get);
     }
 
-    public List<Map<String, Object>> getSpots(Long locationId) {
+    public List<SpotSummary> getSpots(Long locationId) {
         return repo.listSpots(locationId);
     }
 
-    public List<Map<String, Object>> getSpotsForReservation(Long locationId, java.time.Instant start, java.time.Instant end) {
+    public List<SpotSummary> getSpotsForReservation(Long locationId, java.time.Instant start, java.time.Instant end) {
         return repo.listSpotsForReservation(locationId, start, end);
     }
 
     public long createLocation(String name, String address, Long companyId) {
-        return repo.createLocation(name, address, companyId);
+        long parkingId = repo.createLocation(name, address, companyId);
+        availabilityCounters.reloadParking(parkingId);
+        return parkingId;
     }
 
     public long createSpot(Long locationId, String code, Integer floorLvl, boolean toReserved, String type) {
-        return repo.createSpot(locationId, code, floorLvl, toReserved, type);
+        long spotId = repo.createSpot(locationId, code, floorLvl, toReserved, type);
+        occupancyIndex.reloadParking(locationId);
+        availabilityCounters.reloadParking(locationId);
+        return spotId;
     }
 
     public List<ParkingUsageDto> usageReport() {
@@ -61,32 +86,38 @@ public class ParkingQueryService {
     }
 
     // Reservation operations
-    public List<Map<String, Object>> getReservationsByAccountId(Long accountId) {
-        return repo.findReservationsByAccountId(accountId);
+    public List<AccountReservation> getReservationsByAccountId(Long accountId, Long afterReservationId, int limit) {
+        return repo.findReservationsByAccountId(accountId, afterReservationId, limit);
     }
     
     public long createReservation(Long accountId, Long parkingId, Long spotId, Long vehicleId, java.time.Instant validFrom, java.time.Instant validUntil, String status) {
-        return repo.createReservation(accountId, parkingId, spotId, vehicleId, validFrom, validUntil, status);
+        long reservationId = repo.createReservation(accountId, parkingId, spotId, vehicleId, validFrom, validUntil, status);
+        if ("Paid".equals(status)) {
+            // Opłacona rezerwacja blokuje miejsce dla losowego przydziału przy wjeździe
+            occupancyIndex.markOccupied(parkingId, spotId);
+            availabilityCounters.onReservationPaid(parkingId);
+        }
+        return reservationId;
     }
 
     public boolean isSpotAvailableForTimeRange(Long spotId, java.time.Instant start, java.time.Instant end) {
         return repo.isSpotAvailableForTimeRange(spotId, start, end);
     }
 
-    public List<Map<String, Object>> getActiveReservations() {
+    public List<ActiveReservation> getActiveReservations() {
         return repo.findActiveReservations();
     }
 
-    public java.util.Optional<Map<String, Object>> getLocationDetails(Long locationId) {
-        return repo.getLocationDetails(locationId);
+    public Optional<LocationDetails> getLocationDetails(Long locationId) {
+        return repo.getLocationDetails(locationId, availabilityCounters::get);
     }
 
     public Map<String, Object> getOccupancyData(Long locationId, Integer dayOfWeek) {
-        return repo.getOccupancyData(locationId, dayOfWeek);
+        return repo.getOccupancyData(locationId, dayOfWeek, availabilityCounters.get(locationId));
     }
 
     public java.util.Optional<Integer> getReservationFee(Long parkingId) {
-        return pricingRepo.findByParkingId(parkingId)
+        return pricingCache.get(parkingId)
                 .map(pricing -> pricing.getReservationFeeMinor());
     }
 
@@ -116,16 +147,12 @@ public class ParkingQueryService {
 
         ParkingLocation location = locationOpt.get();
 
-        // Count total spots using SpotRepository
-        List<ParkingSpot> allSpots = spotRepo.findByParkingId(parkingId);
-        int totalSpots = allSpots.size();
+        // Count total spots (COUNT(*) in SQL)
+        Long spotCount = spotRepo.countAllSpotsByParkingId(parkingId);
+        int totalSpots = spotCount != null ? spotCount.intValue() : 0;
 
-        // Count occupied spots (active sessions where exit_time IS NULL)
-        List<ParkingSession> activeSessions = sessionRepo.findByParkingId(parkingId)
-                .stream()
-                .filter(session -> session.getExitTime() == null)
-                .toList();
-        int occupiedSpots = activeSessions.size();
+        // Count occupied spots (active sessions where exit_time IS NULL) - partial index, no history load
+        int occupiedSpots = (int) sessionRepo.countOpenSessionsByParkingId(parkingId);
 
         int availableSpots = totalSpots - occupiedSpots;
 
@@ -145,7 +172,7 @@ public class ParkingQueryService {
      * Returns pricingId so frontend can update pricing
      */
     public Map<String, Object> getParkingPricing(Long parkingId) {
-        Optional<ParkingPricing> pricingOpt = pricingRepo.findByParkingId(parkingId);
+        Optional<ParkingPricing> pricingOpt = pricingCache.get(parkingId);
 
         if (pricingOpt.isEmpty()) {
             return null;
@@ -170,7 +197,7 @@ public class ParkingQueryService {
      * Useful when frontend needs to update pricing
      */
     public Long getPricingIdByParkingId(Long parkingId) {
-        Optional<ParkingPricing> pricingOpt = pricingRepo.findByParkingId(parkingId);
+        Optional<ParkingPricing> pricingOpt = pricingCache.get(parkingId);
         return pricingOpt.map(ParkingPricing::getId).orElse(null);
     }
 
@@ -197,6 +224,8 @@ public class ParkingQueryService {
             pricing.setReservationFeeMinor(reservationFeeMinor);
 
             pricingRepo.save(pricing);
+            pricingCache.invalidate(pricing.getParkingId());
+            pricingEventPublisher.publishPricingChanged(pricing);
             return true;
 
         } catch (Exception e) {
@@ -207,41 +236,26 @@ public class ParkingQueryService {
 
 
     /**
-     * Get session IDs by parking ID and date range
-     * Used by admin-service to get sessions for financial reports
-     */
-    public List<Long> getSessionIdsByParkingId(Long parkingId, LocalDateTime startDate, LocalDateTime endDate) {
-        return sessionRepo.findByParkingId(parkingId)
-                .stream()
-                .filter(session -> {
-                    LocalDateTime entryTime = session.getEntryTime();
-                    return entryTime != null &&
-                            !entryTime.isBefore(startDate) &&
-                            !entryTime.isAfter(endDate);
-                })
-                .map(ParkingSession::getId)
-                .collect(Collectors.toList());
-    }
-
-    /**
-     * Get session IDs by company ID and date range
-     * Used by admin-service to get ALL sessions for a company's parkings
+     * Strona sesji parkingu z wjazdem w [from, to), od najnowszych (stronicowanie kluczem).
+     * nextCursor == null oznacza ostatnią stronę.
      */
-    public List<Long> getSessionIdsByCompanyId(Long companyId, LocalDateTime startDate, LocalDateTime endDate) {
-        // Get all parking IDs for this company
-        List<Long> parkingIds = parkingLocationRepository.getIdsByCompanyId(companyId);
-
-        // Get sessions for all these parkings
-        return parkingIds.stream()
-                .flatMap(parkingId -> sessionRepo.findByParkingId(parkingId).stream())
-                .filter(session -> {
-                    LocalDateTime entryTime = session.getEntryTime();
-                    return entryTime != null &&
-                            !entryTime.isBefore(startDate) &&
-                            !entryTime.isAfter(endDate);
-                })
-                .map(ParkingSession::getId)
-                .collect(Collectors.toList());
+    public Map<String, Object> getSessionsPage(Long parkingId, LocalDateTime from, LocalDateTime to,
+                                               LocalDateTime afterEntryTime, Long afterSessionId, int limit) {
+        List<ParkingSession> sessions = sessionRepo.findByParkingIdAndEntryRange(
+                parkingId, from, to, afterEntryTime, afterSessionId, limit);
+
+        Map<String, Object> page = new HashMap<>();
+        page.put("sessions", sessions);
+        if (sessions.size() == limit) {
+            ParkingSession last = sessions.get(sessions.size() - 1);
+            Map<String, Object> cursor = new HashMap<>();
+            cursor.put("afterEntryTime", last.getEntryTime().toString());
+            cursor.put("afterSessionId", last.getId());
+            page.put("nextCursor", cursor);
+        } else {
+            page.put("nextCursor", null);
+        }
+        return page;
     }
 
     /**
@@ -253,39 +267,70 @@ public class ParkingQueryService {
         return sessionOpt.map(ParkingSession::getParkingId).orElse(null);
     }
 
+    /**
+     * Konto właściciela sesji (null dla nieistniejącej sesji lub klienta niezarejestrowanego)
+     */
+    public Long getSessionAccountId(Long sessionId) {
+        return sessionRepo.findById(sessionId).map(ParkingSession::getRefAccountId).orElse(null);
+    }
+
+    /**
+     * Parking dla paczki sesji - używane przez payment-service do uzupełniania ref_parking_id płatności
+     */
+    public Map<Long, Long> getParkingIdsBySessionIds(List<Long> sessionIds) {
+        return sessionRepo.findParkingIdsBySessionIds(sessionIds);
+    }
+
 
     public java.util.Optional<com.smartparking.parking_service.model.ParkingPricing> getPricing(Long parkingId) {
-        return pricingRepo.findByParkingId(parkingId);
+        return pricingCache.get(parkingId);
     }
 
     public boolean cancelReservation(Long reservationId, Long accountId) {
-        return repo.cancelReservation(reservationId, accountId);
+        Optional<ReservationDetails> reservation = repo.findReservationById(reservationId);
+        boolean cancelled = repo.cancelReservation(reservationId, accountId);
+        if (cancelled && reservation.isPresent()) {
+            // Optymistycznie zwalniamy miejsce - inne rezerwacje i tak zweryfikuje baza przy wjeździe
+            long parkingId = reservation.get().parkingId();
+            occupancyIndex.markFree(parkingId, reservation.get().spotId());
+            availabilityCounters.onReservationReleased(parkingId);
+        }
+        return cancelled;
     }
     
     /**
      * Pobiera rezerwację po ID
      */
-    public Optional<Map<String, Object>> getReservationById(Long reservationId) {
+    public Optional<ReservationDetails> getReservationById(Long reservationId) {
         return repo.findReservationById(reservationId);
     }
 
     // Parking session operations
-    public java.util.Optional<Map<String, Object>> getActiveSessionByAccountId(Long accountId) {
+    public Optional<AccountSession> getActiveSessionByAccountId(Long accountId) {
         return repo.findActiveSessionByAccountId(accountId);
     }
 
     /**
-     * Pobiera wszystkie sesje parkingowe dla danego konta użytkownika
+     * Pobiera stronę sesji parkingowych dla danego konta użytkownika (od najnowszych)
+     */
+    public List<AccountSession> getSessionsByAccountId(Long accountId, java.time.Instant afterEntryTime,
+                                                            Long afterSessionId, int limit) {
+        return repo.findSessionsByAccountId(accountId, false, afterEntryTime, afterSessionId, limit); // Wszystkie sesje
+    }
+
+    /**
+     * Pobiera stronę niezapłaconych sesji parkingowych dla danego konta użytkownika
      */
-    public List<Map<String, Object>> getSessionsByAccountId(Long accountId) {
-        return repo.findSessionsByAccountId(accountId, false); // Wszystkie sesje
+    public List<AccountSession> getUnpaidSessionsByAccountId(Long accountId, java.time.Instant afterEntryTime,
+                                                                  Long afterSessionId, int limit) {
+        return repo.findSessionsByAccountId(accountId, true, afterEntryTime, afterSessionId, limit); // Tylko niezapłacone
     }
 
     /**
-     * Pobiera tylko niezapłacone sesje parkingowe dla danego konta użytkownika
+     * Przekazuje wszystkie sesje konta do handlera wiersz po wierszu (eksport NDJSON)
      */
-    public List<Map<String, Object>> getUnpaidSessionsByAccountId(Long accountId) {
-        return repo.findSessionsByAccountId(accountId, true); // Tylko niezapłacone
+    public void streamSessionsByAccountId(Long accountId, java.util.function.Consumer<AccountSession> handler) {
+        repo.streamSessionsByAccountId(accountId, EXPORT_FETCH_SIZE, handler);
     }
 
     /**
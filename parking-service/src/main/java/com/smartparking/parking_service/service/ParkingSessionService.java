@@ -1,13 +1,14 @@
 package com.smartparking.parking_service.service;
 
-import com.smartparking.parking_service.client.CustomerVehicleClient;
 import com.smartparking.parking_service.client.PaymentClient;
 import com.smartparking.parking_service.messaging.ParkingPaymentEventPublisher;
+import com.smartparking.parking_service.model.ActivePlate;
 import com.smartparking.parking_service.model.ParkingSession;
 import com.smartparking.parking_service.model.ParkingPricing;
+import com.smartparking.parking_service.model.ReservationDetails;
 import com.smartparking.parking_service.repository.ParkingSessionRepository;
 import com.smartparking.parking_service.repository.ParkingRepository;
-import com.smartparking.parking_service.repository.ParkingPricingRepository;
+import com.smartparking.parking_service.repository.SpotOccupiedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -20,6 +21,7 @@ import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 
 @Service
 public class ParkingSessionService {
@@ -27,39 +29,62 @@ public class ParkingSessionService {
     
     private final ParkingSessionRepository sessionRepo;
     private final ParkingRepository parkingRepo;
-    private final ParkingPricingRepository pricingRepo;
-    private final CustomerVehicleClient vehicleClient;
+    private final PricingCache pricingCache;
+    private final VehicleResolutionCache vehicleCache;
     private final PaymentClient paymentClient;
     private final ParkingPaymentEventPublisher eventPublisher;
+    private final SpotOccupancyIndex occupancyIndex;
+    private final ParkingAvailabilityCounters availabilityCounters;
+    private final ActivePlateIndex plateIndex;
+    private final SessionSettlementService settlementService;
 
     public ParkingSessionService(ParkingSessionRepository sessionRepo,
                                 ParkingRepository parkingRepo,
-                                ParkingPricingRepository pricingRepo,
-                                CustomerVehicleClient vehicleClient,
+                                PricingCache pricingCache,
+                                VehicleResolutionCache vehicleCache,
                                 PaymentClient paymentClient,
-                                ParkingPaymentEventPublisher eventPublisher) {
+                                ParkingPaymentEventPublisher eventPublisher,
+                                SpotOccupancyIndex occupancyIndex,
+                                ParkingAvailabilityCounters availabilityCounters,
+                                ActivePlateIndex plateIndex,
+                                SessionSettlementService settlementService) {
         this.sessionRepo = sessionRepo;
         this.parkingRepo = parkingRepo;
-        this.pricingRepo = pricingRepo;
-        this.vehicleClient = vehicleClient;
+        this.pricingCache = pricingCache;
+        this.vehicleCache = vehicleCache;
         this.paymentClient = paymentClient;
         this.eventPublisher = eventPublisher;
+        this.occupancyIndex = occupancyIndex;
+        this.availabilityCounters = availabilityCounters;
+        this.plateIndex = plateIndex;
+        this.settlementService = settlementService;
     }
 
     /**
      * Tworzy parking_session gdy OCR wykryje wjazd
      * Obsługuje zarówno zarejestrowanych jak i niezarejestrowanych klientów
      */
-    public Long createSessionOnEntry(String licencePlate, Long parkingId, Integer cameraId, Instant entryTime) {
+    public Long createSessionOnEntry(String licencePlate, Long parkingId, Integer cameraId, Instant entryTime,
+                                     String eventId) {
         String normalizedPlate = licencePlate.toUpperCase().trim();
+        String entryEventId = idempotencyKey(eventId);
+        
+        // 0. Ten sam event wjazdu (ponowna publikacja z outboxa ocr-service) - sesja już istnieje
+        if (entryEventId != null) {
+            Optional<Long> processed = sessionRepo.findSessionIdByEntryEventId(entryEventId);
+            if (processed.isPresent()) {
+                log.info("Entry event {} already processed - returning sessionId={}", entryEventId, processed.get());
+                return processed.get();
+            }
+        }
         
         // 1. Znajdź lub utwórz pojazd (dla niezarejestrowanych tworzy nowy pojazd bez customer_id)
         Map<String, Object> vehicleData;
         try {
-            vehicleData = vehicleClient.createOrGetVehicle(normalizedPlate);
+            vehicleData = vehicleCache.createOrGetVehicle(normalizedPlate);
         } catch (Exception e) {
             log.error("Failed to create or get vehicle for plate: {}", normalizedPlate, e);
-            throw new IllegalStateException("Failed to create or get vehicle: " + e.getMessage());
+            throw new IllegalStateException("Failed to create or get vehicle: " + e.getMessage(), e);
         }
         
         Long vehicleId = Long.valueOf(vehicleData.get("vehicleId").toString());
@@ -85,6 +110,7 @@ public class ParkingSessionService {
                 normalizedPlate, vehicleId, parkingId, existingSession.getId(), existingSession.getEntryTime(), 
                 existingSession.getPaymentStatus(), existingSession.getReservationId());
             log.info("Ignoring duplicate entry event - returning existing sessionId={}", existingSession.getId());
+            plateIndex.add(parkingId, existingSession.getId(), vehicleId, normalizedPlate);
             return existingSession.getId(); // Zwróć ID istniejącej sesji zamiast tworzyć nową
         } else {
             log.debug("No existing active session found for vehicleId={}, parkingId={} - proceeding with new session creation", 
@@ -92,98 +118,126 @@ public class ParkingSessionService {
         }
         
         // 3. Sprawdź czy istnieje aktywna, nieużyta rezerwacja (tylko dla zarejestrowanych)
-        Long spotId;
+        Long reservedSpotId = null;
         Long reservationId = null;
+        boolean reservationWasPaid = false;
+        Instant sessionEntryTime = entryTime;
         
         if (isRegistered) {
             log.info("Checking for active reservation: accountId={}, parkingId={}, vehicleId={}, entryTime={}", 
                 accountId, parkingId, vehicleId, entryTime);
             
-            Optional<Map<String, Object>> activeReservation = parkingRepo.findActiveReservation(
+            Optional<ReservationDetails> activeReservation = parkingRepo.findActiveReservation(
                 accountId, parkingId, vehicleId, entryTime
             );
             
             if (activeReservation.isEmpty()) {
                 log.warn("No active reservation found, using random spot: accountId={}, parkingId={}, vehicleId={}, entryTime={}", 
                     accountId, parkingId, vehicleId, entryTime);
-            }
-            
-            if (activeReservation.isPresent()) {
-                // Użyj miejsca z rezerwacji
-                spotId = Long.valueOf(activeReservation.get().get("spot_id").toString());
-                reservationId = Long.valueOf(activeReservation.get().get("reservation_id").toString());
+            } else {
+                Long candidateReservationId = activeReservation.get().reservationId();
                 
-                // Dodatkowa ochrona - sprawdź jeszcze raz status przed użyciem (race condition)
-                // Jeśli status już nie jest 'Paid' ani 'Active', ktoś inny właśnie użył tej rezerwacji
-                Optional<Map<String, Object>> reservationCheck = parkingRepo.findReservationById(reservationId);
-                String currentStatus = reservationCheck.map(r -> (String) r.get("status_reservation")).orElse(null);
-                if (reservationCheck.isEmpty() || (!"Paid".equals(currentStatus) && !"Active".equals(currentStatus))) {
-                    log.warn("Reservation {} status changed during processing (current: {}) - falling back to random spot", 
-                        reservationId, currentStatus);
-                    Optional<Long> freeSpotOpt = parkingRepo.pickRandomFreeSpot(parkingId);
-                    if (freeSpotOpt.isEmpty()) {
-                        throw new IllegalStateException("No free spots available at parking: " + parkingId);
-                    }
-                    spotId = freeSpotOpt.get();
-                    reservationId = null;
+                // Ochrona przed race condition - zmiana statusu na "Active" tylko jeśli nadal jest 'Paid' lub 'Active'.
+                // Jeśli UPDATE nic nie zmienił, ktoś inny właśnie użył tej rezerwacji
+                Optional<Instant> validFrom = parkingRepo.activateReservation(candidateReservationId);
+                if (validFrom.isEmpty()) {
+                    log.warn("Reservation {} status changed during processing - falling back to random spot", 
+                        candidateReservationId);
                 } else {
-                    // Zmień status rezerwacji na "Active" (w trakcie) - tylko jeśli nadal jest 'Paid' lub 'Active'
-                    if ("Paid".equals(currentStatus)) {
-                        parkingRepo.updateReservationStatus(reservationId, "Active");
-                        log.info("Using reserved spot {} for vehicle {} (reservation {} - status changed from Paid to Active)", 
-                            spotId, vehicleId, reservationId);
-                    } else {
-                        log.info("Using reserved spot {} for vehicle {} (reservation {} - already Active, reusing)", 
-                            spotId, vehicleId, reservationId);
-                    }
+                    reservationId = candidateReservationId;
+                    reservedSpotId = activeReservation.get().spotId();
+                    reservationWasPaid = "Paid".equals(activeReservation.get().status());
+                    sessionEntryTime = validFrom.get();
+                    log.info("Using reserved spot {} for vehicle {} (reservation {}, previous status {}); using valid_from as entry_time: validFrom={}, actualEntryTime={}", 
+                        reservedSpotId, vehicleId, reservationId, activeReservation.get().status(), validFrom.get(), entryTime);
                 }
-            } else {
-                Optional<Long> freeSpotOpt = parkingRepo.pickRandomFreeSpot(parkingId);
-                if (freeSpotOpt.isEmpty()) {
-                    throw new IllegalStateException("No free spots available at parking: " + parkingId);
-                }
-                spotId = freeSpotOpt.get();
             }
-        } else {
-            Optional<Long> freeSpotOpt = parkingRepo.pickRandomFreeSpot(parkingId);
-            if (freeSpotOpt.isEmpty()) {
-                throw new IllegalStateException("No free spots available at parking: " + parkingId);
-            }
-            spotId = freeSpotOpt.get();
-            log.info("Unregistered vehicle {} assigned to spot {}", vehicleId, spotId);
         }
         
         // 4. Utwórz parking_session
-        Instant sessionEntryTime = entryTime;
-        if (reservationId != null) {
-            Optional<Map<String, Object>> reservationOpt = parkingRepo.findReservationById(reservationId);
-            if (reservationOpt.isPresent()) {
-                Instant validFrom = (Instant) reservationOpt.get().get("valid_from");
-                sessionEntryTime = validFrom;
-                log.info("Using reservation valid_from as entry_time: reservationId={}, validFrom={}, actualEntryTime={}", 
-                    reservationId, validFrom, entryTime);
-            }
-        }
-        
         ParkingSession session = new ParkingSession();
         session.setParkingId(parkingId);
-        session.setSpotId(spotId);
         session.setRefVehicleId(vehicleId); // ZAWSZE ustaw (NOT NULL)
         session.setRefAccountId(accountId);  // NULL dla niezarejestrowanych
-        session.setReservationId(reservationId);  // NULL jeśli nie z rezerwacji
         session.setEntryTime(LocalDateTime.ofInstant(sessionEntryTime, ZoneId.of("UTC")));
         session.setExitTime(null);
         session.setPaymentStatus("Session");
         session.setPriceTotalMinor(null);
+        session.setEntryPlate(normalizedPlate);
+        session.setEntryEventId(entryEventId);
         
-        ParkingSession saved = sessionRepo.save(session);
+        ParkingSession saved;
+        try {
+            if (reservationId != null) {
+                session.setSpotId(reservedSpotId);
+                session.setReservationId(reservationId);
+                try {
+                    saved = sessionRepo.save(session);
+                } catch (SpotOccupiedException e) {
+                    // Zarezerwowane miejsce ma jeszcze aktywną sesję (np. niezamknięty wyjazd poprzedniego pojazdu).
+                    // Rezerwacja jest już aktywowana, więc pojazd dostaje inne wolne miejsce zamiast zostać bez sesji
+                    log.warn("Reserved spot {} is still occupied at parking {} - assigning a free spot for reservation {}",
+                        reservedSpotId, parkingId, reservationId);
+                    session.setSpotId(null);
+                    saved = claimFreeSpot(session);
+                    saved.setReservationId(reservationId);
+                    saved = sessionRepo.save(saved);
+                }
+            } else {
+                // Wybór miejsca i zapis sesji w jednym zapytaniu - bez wyścigu między równoległymi wjazdami
+                saved = claimFreeSpot(session);
+                if (!isRegistered) {
+                    log.info("Unregistered vehicle {} assigned to spot {}", vehicleId, saved.getSpotId());
+                }
+            }
+        } catch (IllegalStateException e) {
+            // Unikalny entry_event_id - ten sam event założył sesję równolegle (np. replay z parking.gate.dlq)
+            if (entryEventId != null) {
+                Optional<Long> processed = sessionRepo.findSessionIdByEntryEventId(entryEventId);
+                if (processed.isPresent()) {
+                    log.info("Entry event {} processed concurrently - returning sessionId={}", entryEventId, processed.get());
+                    return processed.get();
+                }
+            }
+            throw e;
+        }
+        occupancyIndex.markOccupied(parkingId, saved.getSpotId());
+        availabilityCounters.onSessionStarted(parkingId, saved.getSpotId(), reservationWasPaid);
+        plateIndex.add(parkingId, saved.getId(), vehicleId, normalizedPlate);
         log.info("Parking session created: plate={}, sessionId={}, vehicleId={}, accountId={}, parking={}, spot={}, reservationId={}", 
-            normalizedPlate, saved.getId(), vehicleId, accountId != null ? accountId : "NULL", parkingId, spotId, 
+            normalizedPlate, saved.getId(), vehicleId, accountId != null ? accountId : "NULL", parkingId, saved.getSpotId(), 
             reservationId != null ? reservationId : "NULL");
         
         return saved.getId();
     }
 
+    /**
+     * Zajmuje wolne miejsce i zapisuje sesję atomowo (SELECT ... FOR UPDATE SKIP LOCKED + INSERT).
+     * Kandydat z indeksu w pamięci jest tylko preferencją - o wyborze decyduje baza.
+     */
+    private ParkingSession claimFreeSpot(ParkingSession session) {
+        Long parkingId = session.getParkingId();
+        Long preferredSpotId = occupancyIndex.claimCandidate(parkingId).orElse(null);
+        
+        Optional<ParkingSession> claimed;
+        try {
+            claimed = sessionRepo.claimFreeSpot(session, preferredSpotId);
+        } catch (RuntimeException e) {
+            // Baza nie potwierdziła zajęcia - kandydat wraca do puli wolnych miejsc w indeksie
+            occupancyIndex.releaseCandidate(parkingId, preferredSpotId);
+            throw e;
+        }
+        if (preferredSpotId != null && (claimed.isEmpty() || !preferredSpotId.equals(claimed.get().getSpotId()))) {
+            // Kandydat nie został zajęty przez tę sesję - zwalniamy go w indeksie zamiast czekać na resync
+            log.debug("Spot {} from occupancy index was not claimable at parking {}", preferredSpotId, parkingId);
+            occupancyIndex.releaseCandidate(parkingId, preferredSpotId);
+        }
+        if (claimed.isEmpty()) {
+            throw new IllegalStateException("No free spots available at parking: " + parkingId);
+        }
+        return claimed.get();
+    }
+
     /**
      * Opłaca zakończoną sesję parkingową (exit_time != NULL, status Unpaid).
      * Pobiera płatność z portfela i zmienia status na "Paid".
@@ -230,7 +284,9 @@ public class ParkingSessionService {
         PaymentResult paymentResult = paymentClient.chargeForParkingSession(
             accountId,
             sessionId,
-            totalPriceMinor
+            session.getParkingId(),
+            totalPriceMinor,
+            PaymentClient.CHARGE_PARKING
         );
         
         // 6. Aktualizuj status sesji
@@ -268,13 +324,36 @@ public class ParkingSessionService {
      * Przetwarza wyjazd: oblicza koszt i kończy sesję (ustawia exit_time).
      * NIE pobiera płatności automatycznie - użytkownik musi opłacić sesję później w aplikacji.
      */
-    public PaymentResult processExit(String licencePlate, Long parkingId, Integer cameraId, Instant exitTime) {
+    public PaymentResult processExit(String licencePlate, Long parkingId, Integer cameraId, Instant exitTime,
+                                     String eventId) {
         String normalizedPlate = licencePlate.toUpperCase().trim();
+        String exitEventId = idempotencyKey(eventId);
+        
+        // 0. Ten sam event wyjazdu (ponowna publikacja z outboxa ocr-service) - sesja już zamknięta
+        if (exitEventId != null) {
+            Optional<ParkingSession> processed = sessionRepo.findByExitEventId(exitEventId);
+            if (processed.isPresent()) {
+                ParkingSession closed = processed.get();
+                long priceMinor = closed.getPriceTotalMinor() != null ? closed.getPriceTotalMinor().longValue() : 0L;
+                log.info("Exit event {} already processed - sessionId={}, status={}",
+                    exitEventId, closed.getId(), closed.getPaymentStatus());
+                if ("Paid".equals(closed.getPaymentStatus())) {
+                    return PaymentResult.success(closed.getId(), priceMinor);
+                }
+                return "Settling".equals(closed.getPaymentStatus())
+                    ? PaymentResult.settling(closed.getId(), priceMinor)
+                    : PaymentResult.unpaid(closed.getId(), priceMinor);
+            }
+        }
         
         // 1. Znajdź pojazd
-        Optional<Map<String, Object>> vehicleOpt = vehicleClient.findVehicleByPlate(normalizedPlate);
+        Optional<Map<String, Object>> vehicleOpt = vehicleCache.findVehicleByPlate(normalizedPlate);
         if (vehicleOpt.isEmpty()) {
-            throw new IllegalArgumentException("Vehicle not found for plate: " + normalizedPlate);
+            // Nieznana tablica - najpewniej błąd odczytu OCR, spróbuj dopasować aktywną sesję na tym parkingu.
+            // Tylko tutaj: tablica znanego pojazdu bez sesji to inny przypadek (noActiveSession)
+            ParkingSession matched = findSessionByMisreadPlate(normalizedPlate, parkingId)
+                .orElseThrow(() -> new IllegalArgumentException("Vehicle not found for plate: " + normalizedPlate));
+            return completeExit(matched, normalizedPlate, parkingId, matched.getRefAccountId(), exitTime, exitEventId);
         }
         
         Long vehicleId = Long.valueOf(vehicleOpt.get().get("vehicleId").toString());
@@ -298,16 +377,16 @@ public class ParkingSessionService {
                 log.warn("No active session found for plate {} (vehicleId={}) at parking {}, checking for active reservation", 
                     normalizedPlate, vehicleId, parkingId);
                 
-                Optional<Map<String, Object>> activeReservationOpt = parkingRepo.findActiveReservation(
+                Optional<ReservationDetails> activeReservationOpt = parkingRepo.findActiveReservation(
                     accountId, parkingId, vehicleId, exitTime
                 );
                 
                 if (activeReservationOpt.isPresent()) {
-                    Map<String, Object> reservation = activeReservationOpt.get();
-                    Long reservationId = Long.valueOf(reservation.get("reservation_id").toString());
-                    Long spotId = Long.valueOf(reservation.get("spot_id").toString());
-                    Instant validFrom = (Instant) reservation.get("valid_from");
-                    String reservationStatus = (String) reservation.get("status");
+                    ReservationDetails reservation = activeReservationOpt.get();
+                    Long reservationId = reservation.reservationId();
+                    Long spotId = reservation.spotId();
+                    Instant validFrom = reservation.validFrom();
+                    String reservationStatus = reservation.status();
                     
                     log.info("Found active reservation {} (status={}) but no session, creating backfill session with entry_time={}", 
                         reservationId, reservationStatus, validFrom);
@@ -323,20 +402,63 @@ public class ParkingSessionService {
                     session.setExitTime(null);
                     session.setPaymentStatus("Session");
                     session.setPriceTotalMinor(null);
+                    session.setEntryPlate(normalizedPlate);
                     
                     session = sessionRepo.save(session);
+                    availabilityCounters.onSessionStarted(parkingId, spotId, "Paid".equals(reservationStatus));
                     log.info("Created backfill session: sessionId={}, reservationId={}, entryTime={}", 
                         session.getId(), reservationId, validFrom);
                 } else {
-                    throw new IllegalStateException("No active session found for plate: " + normalizedPlate + " at parking: " + parkingId);
+                    throw noActiveSession(normalizedPlate, parkingId);
                 }
             } else {
-                throw new IllegalStateException("No active session found for plate: " + normalizedPlate + " at parking: " + parkingId);
+                throw noActiveSession(normalizedPlate, parkingId);
             }
         } else {
             session = sessionOpt.get();
         }
         
+        return completeExit(session, normalizedPlate, parkingId, accountId, exitTime, exitEventId);
+    }
+
+    /**
+     * Tablica należy do znanego pojazdu, ale bez aktywnej sesji na parkingu. Dopasowanie przybliżone
+     * (findSessionByMisreadPlate) nie jest tu używane - poprawny odczyt cudzej tablicy mógłby zamknąć sesję
+     * innego pojazdu o podobnej tablicy.
+     */
+    private static IllegalStateException noActiveSession(String normalizedPlate, Long parkingId) {
+        return new IllegalStateException("No active session found for plate: " + normalizedPlate + " at parking: " + parkingId);
+    }
+
+    /**
+     * Dopasowanie przybliżone tablicy z wyjazdu do tablic aktywnych sesji (ActivePlateIndex).
+     * Kandydat z indeksu jest potwierdzany w bazie - sesja musi nadal trwać na tym parkingu.
+     */
+    private Optional<ParkingSession> findSessionByMisreadPlate(String normalizedPlate, Long parkingId) {
+        Optional<ActivePlate> candidate = plateIndex.findClosest(parkingId, normalizedPlate);
+        if (candidate.isEmpty()) {
+            return Optional.empty();
+        }
+        ActivePlate match = candidate.get();
+        Optional<ParkingSession> sessionOpt = sessionRepo.findById(match.sessionId())
+            .filter(s -> s.getExitTime() == null && parkingId.equals(s.getParkingId()));
+        if (sessionOpt.isEmpty()) {
+            plateIndex.recordStaleHit();
+            plateIndex.remove(parkingId, match.sessionId());
+            return Optional.empty();
+        }
+        plateIndex.recordRescuedExit();
+        log.warn("Exit plate {} matched active session {} (entry plate {}, vehicleId={}) at parking {} by fuzzy plate match",
+            normalizedPlate, match.sessionId(), match.plate(), match.vehicleId(), parkingId);
+        return sessionOpt;
+    }
+
+    /**
+     * Kończy znalezioną aktywną sesję: oblicza koszt, ustawia exit_time i zwalnia miejsce.
+     */
+    private PaymentResult completeExit(ParkingSession session, String normalizedPlate, Long parkingId,
+                                       Long accountId, Instant exitTime, String exitEventId) {
+        session.setExitEventId(exitEventId);
         LocalDateTime entryTime = session.getEntryTime();
         Instant entryInstant = entryTime.atZone(ZoneId.of("UTC")).toInstant();
         
@@ -349,22 +471,22 @@ public class ParkingSessionService {
         
         if (isFromReservation) {
             // SESJA Z REZERWACJI - płatność już była pobrana z góry przy rezerwacji
-            Optional<Map<String, Object>> reservationOpt = parkingRepo.findReservationById(reservationId);
+            Optional<ReservationDetails> reservationOpt = parkingRepo.findReservationById(reservationId);
             
             if (reservationOpt.isPresent()) {
-                Map<String, Object> reservation = reservationOpt.get();
-                String reservationStatus = (String) reservation.get("status_reservation");
+                ReservationDetails reservation = reservationOpt.get();
+                String reservationStatus = reservation.status();
                 
                 if ("Active".equals(reservationStatus) || "Paid".equals(reservationStatus)) {
                     // Pobierz okres rezerwacji
-                    Instant validFrom = (Instant) reservation.get("valid_from");
-                    Instant validUntil = (Instant) reservation.get("valid_until");
+                    Instant validFrom = reservation.validFrom();
+                    Instant validUntil = reservation.validUntil();
                     
                     // Oblicz czas trwania rezerwacji (nie faktyczny czas postoju)
                     durationMinutes = Duration.between(validFrom, validUntil).toMinutes();
                     
                     // Pobierz cennik do obliczenia rzeczywistej ceny rezerwacji (dla historii)
-                    Optional<ParkingPricing> pricingOpt = pricingRepo.findByParkingId(parkingId);
+                    Optional<ParkingPricing> pricingOpt = pricingCache.get(parkingId);
                     if (pricingOpt.isEmpty()) {
                         throw new IllegalStateException("No pricing found for parking: " + parkingId);
                     }
@@ -391,31 +513,16 @@ public class ParkingSessionService {
                     // Całkowita cena = cena rezerwacji + kara (jeśli przekroczono grace period)
                     totalPriceMinor = reservationPriceMinor + penaltyMinor;
                     
-                    // Jeśli jest kara, pobierz ją z portfela
+                    // Kara nie jest pobierana przy wyjeździe - zapis w sesji, pobierze ją PenaltyReconciliationScheduler
                     if (penaltyMinor > 0 && accountId != null) {
-                        try {
-                            PaymentResult penaltyResult = paymentClient.chargeForParkingSession(
-                                accountId, session.getId(), penaltyMinor
-                            );
-                            if (!penaltyResult.isSuccess()) {
-                                log.warn("Failed to charge penalty {} for reservation {}: {}", 
-                                    penaltyMinor, reservationId, penaltyResult.getErrorMessage());
-                                // Kontynuuj mimo błędu - kara może być pobrana później
-                            } else {
-                                log.info("Penalty {} charged for reservation {} (exceeded grace period)", 
-                                    penaltyMinor, reservationId);
-                            }
-                        } catch (Exception e) {
-                            log.error("Exception charging penalty for reservation {}: {}", reservationId, e.getMessage(), e);
-                            // Kontynuuj mimo błędu
-                        }
+                        session.setPenaltyMinor(penaltyMinor);
                     }
                     
                     // Zmień status rezerwacji na "Expired" (zakończona)
                     parkingRepo.updateReservationStatus(reservationId, "Expired");
                     
                     // Zapisz rzeczywistą cenę rezerwacji (dla historii) - już zapłacone przy rezerwacji
-                    session.setPaymentStatus("Paid"); // Już zapłacone przy rezerwacji (kara pobrana osobno jeśli była)
+                    session.setPaymentStatus("Paid"); // Już zapłacone przy rezerwacji (kara pobierana osobno w tle)
                     session.setPriceTotalMinor(new BigDecimal(totalPriceMinor)); // Zapisz całkowitą cenę (rezerwacja + kara)
                     
                     // Dla rezerwacji: jeśli wyjechaliśmy w czasie rezerwacji, exit_time = valid_until
@@ -425,6 +532,9 @@ public class ParkingSessionService {
                         : exitTime;
                     session.setExitTime(LocalDateTime.ofInstant(sessionExitTime, ZoneId.of("UTC")));
                     sessionRepo.save(session);
+                    occupancyIndex.markFree(parkingId, session.getSpotId());
+                    availabilityCounters.onSessionEnded(parkingId, session.getSpotId());
+                    plateIndex.remove(parkingId, session.getId());
                     
                     log.info("Exit from reservation: sessionId={}, reservationId={}, plate={}, " +
                             "reservationDuration={}min (from {} to {}), reservationPrice={}, penalty={}, totalPrice={}, status=Paid",
@@ -463,7 +573,7 @@ public class ParkingSessionService {
             durationMinutes = Duration.between(entryInstant, exitTime).toMinutes();
             
             // 4a. Pobierz cennik
-            Optional<ParkingPricing> pricingOpt = pricingRepo.findByParkingId(parkingId);
+            Optional<ParkingPricing> pricingOpt = pricingCache.get(parkingId);
             if (pricingOpt.isEmpty()) {
                 throw new IllegalStateException("No pricing found for parking: " + parkingId);
             }
@@ -484,11 +594,19 @@ public class ParkingSessionService {
             // 6. Oblicz cenę w groszach
             totalPriceMinor = (long) billableMinutes * ratePerMin;
             
-            // 7. NIE pobieramy płatności automatycznie - tylko ustawiamy status
+            // 7. Wyjazd nie czeka na płatność - przy parking.settlement.auto-charge zarejestrowany klient
+            //    jest rozliczany asynchronicznie z portfela, bez niej płaci w aplikacji jak dotychczas
             Long sessionAccountId = session.getRefAccountId();
+            boolean settle = settlementService.isAutoChargeEnabled() && sessionAccountId != null && totalPriceMinor > 0;
             
-            if (sessionAccountId != null) {
-                // ZAREJESTROWANY - status "Unpaid" (użytkownik musi opłacić w aplikacji)
+            if (settle) {
+                // ZAREJESTROWANY - status "Settling", portfel obciąży payment-service (SessionSettlementService)
+                session.setPaymentStatus("Settling");
+                session.setSettlementRequestedAt(LocalDateTime.now(ZoneId.of("UTC")));
+                log.info("Exit processed: sessionId={}, plate={}, duration={}min, price={}, status=Settling", 
+                    session.getId(), normalizedPlate, durationMinutes, totalPriceMinor);
+            } else if (sessionAccountId != null) {
+                // ZAREJESTROWANY, bez opłaty - status "Unpaid" jak dotychczas (opłacenie zera oznacza sesję jako Paid)
                 session.setPaymentStatus("Unpaid");
                 log.info("Exit processed: sessionId={}, plate={}, duration={}min, price={}, status=Unpaid (payment required)", 
                     session.getId(), normalizedPlate, durationMinutes, totalPriceMinor);
@@ -503,9 +621,16 @@ public class ParkingSessionService {
             session.setExitTime(LocalDateTime.ofInstant(exitTime, ZoneId.of("UTC")));
             session.setPriceTotalMinor(new BigDecimal(totalPriceMinor));
             sessionRepo.save(session);
+            occupancyIndex.markFree(parkingId, session.getSpotId());
+            availabilityCounters.onSessionEnded(parkingId, session.getSpotId());
+            plateIndex.remove(parkingId, session.getId());
             
             // 9. NIE wysyłamy emaila - płatność jeszcze nie wykonana
-            // Email zostanie wysłany po opłaceniu sesji przez użytkownika (metoda payForSession)
+            // Email zostanie wysłany po rozliczeniu (SessionSettlementService) albo opłaceniu sesji w aplikacji (payForSession)
+            if (settle) {
+                settlementService.requestSettlement(session);
+                return PaymentResult.settling(session.getId(), totalPriceMinor);
+            }
             
             return PaymentResult.unpaid(session.getId(), totalPriceMinor);
         }
@@ -514,6 +639,29 @@ public class ParkingSessionService {
         return PaymentResult.unpaid(session.getId(), totalPriceMinor);
     }
 
+    /**
+     * Klucz idempotencji eventu z ocr-service (UUID). Starsze eventy nie mają klucza - wtedy null
+     * i sesja jest przetwarzana jak dotychczas.
+     */
+    private static String idempotencyKey(String eventId) {
+        if (eventId == null || eventId.isBlank()) {
+            return null;
+        }
+        try {
+            return UUID.fromString(eventId.trim()).toString();
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring malformed gate event id: {}", eventId);
+            return null;
+        }
+    }
+
+    /**
+     * Metryki dopasowania przybliżonego tablic przy wyjeździe
+     */
+    public Map<String, Object> getPlateMatchingStats() {
+        return plateIndex.stats();
+    }
+
     public static class PaymentResult {
         private final boolean success;
         private final Long sessionId;
@@ -539,6 +687,10 @@ public class ParkingSessionService {
             return new PaymentResult(false, sessionId, amountMinor, "Unpaid - payment required at exit");
         }
 
+        public static PaymentResult settling(Long sessionId, Long amountMinor) {
+            return new PaymentResult(false, sessionId, amountMinor, "Settling - wallet charge in progress");
+        }
+
         public boolean isSuccess() {
             return success;
         }
@@ -0,0 +1,87 @@
+package com.smartparking.parking_service.service;
+
+import com.smartparking.parking_service.model.ParkingPricing;
+import com.smartparking.parking_service.repository.ParkingPricingRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Cache cenników per parking_id trzymany w pamięci parking-service.
+ *
+ * Cennik czytany jest przy każdym wyjeździe, płatności za sesję i rezerwacji, a zmienia się rzadko
+ * (PUT /parking/admin/pricing/{pricingId}). Cache jest ograniczony (LRU) i unieważniany przy zmianie cennika;
+ * pozostałe repliki dostają zdarzenie parking.pricing.changed (PricingChangedListener).
+ * TTL jest tylko siatką bezpieczeństwa na wypadek zgubionego zdarzenia.
+ *
+ * Każde unieważnienie podbija generację parkingu. Odczyt z bazy zapisuje wynik tylko wtedy, gdy generacja
+ * się w międzyczasie nie zmieniła - inaczej zapytanie rozpoczęte przed zmianą cennika wpisałoby stary cennik
+ * z powrotem na pełny TTL.
+ *
+ * Zwracane obiekty ParkingPricing są współdzielone - wolno je tylko czytać.
+ */
+@Component
+public class PricingCache {
+    private static final int MAX_ENTRIES = 1024;
+    private static final long TTL_MILLIS = 10 * 60 * 1000L; // 10 minut
+
+    private final ParkingPricingRepository pricingRepo;
+    private final Map<Long, Entry> byParking = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    // Generacja per parking_id (chroniona tym samym monitorem co byParking); rośnie tylko z liczbą parkingów
+    private final Map<Long, Long> generations = new HashMap<>();
+
+    public PricingCache(ParkingPricingRepository pricingRepo) {
+        this.pricingRepo = pricingRepo;
+    }
+
+    /**
+     * Zwraca cennik parkingu; przy braku w cache lub po upływie TTL doczytuje go z bazy.
+     * Brak cennika nie jest cache'owany, żeby nowo utworzony parking był widoczny od razu.
+     */
+    public Optional<ParkingPricing> get(Long parkingId) {
+        if (parkingId == null) {
+            return Optional.empty();
+        }
+        long now = System.currentTimeMillis();
+        long generation;
+        synchronized (byParking) {
+            Entry entry = byParking.get(parkingId);
+            if (entry != null && now - entry.loadedAt < TTL_MILLIS) {
+                return Optional.of(entry.pricing);
+            }
+            generation = generations.getOrDefault(parkingId, 0L);
+        }
+
+        Optional<ParkingPricing> loaded = pricingRepo.findByParkingId(parkingId);
+        loaded.ifPresent(pricing -> {
+            synchronized (byParking) {
+                // Unieważnienie w trakcie odczytu - wynik może być sprzed zmiany, zwracamy go bez zapisu
+                if (generations.getOrDefault(parkingId, 0L) == generation) {
+                    byParking.put(parkingId, new Entry(pricing, now));
+                }
+            }
+        });
+        return loaded;
+    }
+
+    public void invalidate(Long parkingId) {
+        if (parkingId == null) {
+            return;
+        }
+        synchronized (byParking) {
+            byParking.remove(parkingId);
+            generations.merge(parkingId, 1L, Long::sum);
+        }
+    }
+
+    private record Entry(ParkingPricing pricing, long loadedAt) {
+    }
+}
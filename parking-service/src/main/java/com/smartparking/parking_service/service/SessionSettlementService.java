@@ -0,0 +1,228 @@
+package com.smartparking.parking_service.service;
+
+import com.smartparking.messaging.ConfirmingPublisher;
+import com.smartparking.parking_service.client.PaymentClient;
+import com.smartparking.parking_service.config.ParkingAmqpConfig;
+import com.smartparking.parking_service.dto.SettlementCommand;
+import com.smartparking.parking_service.dto.SettlementResult;
+import com.smartparking.parking_service.messaging.ParkingPaymentEventPublisher;
+import com.smartparking.parking_service.model.ParkingSession;
+import com.smartparking.parking_service.model.PendingSettlement;
+import com.smartparking.parking_service.repository.ParkingSessionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rozliczanie zakończonych sesji poza ścieżką wyjazdu.
+ *
+ * Włączane przez parking.settlement.auto-charge (domyślnie wyłączone - portfel nie jest obciążany bez zgody
+ * operatora, sesja zamyka się jako Unpaid). Gdy włączone, wyjazd zamyka sesję ze statusem Settling i wysyła polecenie rozliczenia do payment-service (RabbitMQ),
+ * więc szlaban nie czeka na payment-service, customer-service i ich bazy. payment-service obciąża portfel
+ * z kluczem "session-{id}-parking" i odsyła wynik: Paid -> sesja Paid (i e-mail z potwierdzeniem),
+ * Pending (wynik nieznany) -> sesja czeka dalej, każdy inny wynik (Failed, brak portfela) -> Unpaid
+ * (użytkownik opłaca w aplikacji).
+ *
+ * Sesje bez wyniku dłużej niż RESEND_AFTER_SECONDS są wysyłane ponownie (SettlementResyncScheduler),
+ * najwyżej MAX_RESENDS razy; potem sesja przechodzi do Unpaid. Zgubione polecenie albo odpowiedź nie zostawia
+ * sesji w Settling na zawsze, a klucz idempotencji gwarantuje jedno obciążenie - także gdy spóźniona
+ * odpowiedź Paid przyjdzie po przejściu do Unpaid (completeSettlement).
+ */
+@Service
+public class SessionSettlementService {
+    private static final Logger log = LoggerFactory.getLogger(SessionSettlementService.class);
+
+    private static final int RESEND_AFTER_SECONDS = 120;
+    private static final int RESEND_BATCH_SIZE = 200;
+    private static final int MAX_RESENDS = 5;
+
+    private final ParkingSessionRepository sessionRepo;
+    private final ConfirmingPublisher publisher;
+    private final ParkingPaymentEventPublisher eventPublisher;
+    private final boolean autoCharge;
+
+    // Metryki (GET /parking/admin/stats/settlement)
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong resent = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+    private final AtomicLong publishFailures = new AtomicLong();
+    private final AtomicLong paid = new AtomicLong();
+    private final AtomicLong unpaid = new AtomicLong();
+    private final AtomicLong pendingReplies = new AtomicLong();
+    private final AtomicLong duplicateReplies = new AtomicLong();
+    private final AtomicLong lagMillisTotal = new AtomicLong();
+    private final AtomicLong paymentMillisTotal = new AtomicLong();
+    private volatile long maxLagMillis;
+
+    public SessionSettlementService(ParkingSessionRepository sessionRepo, ConfirmingPublisher publisher,
+                                    ParkingPaymentEventPublisher eventPublisher,
+                                    @Value("${parking.settlement.auto-charge:false}") boolean autoCharge) {
+        this.sessionRepo = sessionRepo;
+        this.publisher = publisher;
+        this.eventPublisher = eventPublisher;
+        this.autoCharge = autoCharge;
+        log.info("Wallet auto-charge on exit {}", autoCharge ? "enabled" : "disabled");
+    }
+
+    /**
+     * Czy wyjazd zarejestrowanego klienta ma zamykać sesję jako Settling i obciążać portfel (parking.settlement.auto-charge)
+     */
+    public boolean isAutoChargeEnabled() {
+        return autoCharge;
+    }
+
+    /**
+     * Wysyła polecenie rozliczenia sesji zapisanej właśnie ze statusem Settling.
+     * Nie rzuca wyjątków - niewysłane polecenie ponowi resync.
+     */
+    public void requestSettlement(ParkingSession session) {
+        Instant requestedAt = session.getSettlementRequestedAt().atZone(ZoneId.of("UTC")).toInstant();
+        send(session.getId(), session.getParkingId(), session.getRefAccountId(),
+            session.getPriceTotalMinor().longValue(), requestedAt);
+        requested.incrementAndGet();
+    }
+
+    /**
+     * Ponownie wysyła polecenia dla sesji, które czekają na wynik dłużej niż RESEND_AFTER_SECONDS,
+     * a sesje bez wyniku po MAX_RESENDS ponowieniach przenosi do Unpaid.
+     * Działa także przy wyłączonym auto-charge - dokańcza sesje zamknięte jako Settling przed wyłączeniem.
+     * @return liczba wysłanych poleceń
+     */
+    public int resendStale() {
+        int gaveUp = sessionRepo.abandonStaleSettlements(RESEND_AFTER_SECONDS, MAX_RESENDS);
+        if (gaveUp > 0) {
+            abandoned.addAndGet(gaveUp);
+            log.warn("{} sessions still settling after {} resends - left Unpaid for payment in the app", gaveUp, MAX_RESENDS);
+        }
+
+        List<PendingSettlement> stale = sessionRepo.claimStaleSettlements(RESEND_AFTER_SECONDS, MAX_RESENDS, RESEND_BATCH_SIZE);
+        for (PendingSettlement pending : stale) {
+            log.debug("Resending settlement command for session {} (resend {}/{})",
+                pending.sessionId(), pending.attempt(), MAX_RESENDS);
+            send(pending.sessionId(), pending.parkingId(), pending.accountId(), pending.amountMinor(),
+                pending.requestedAt().atZone(ZoneId.of("UTC")).toInstant());
+        }
+        resent.addAndGet(stale.size());
+        return stale.size();
+    }
+
+    /**
+     * Wynik rozliczenia z payment-service.
+     */
+    public void onResult(SettlementResult result) {
+        String status = result.getStatus();
+        if ("Pending".equals(status)) {
+            // Wynik nieznany (np. customer-service niedostępny) - sesja zostaje w Settling do resyncu
+            pendingReplies.incrementAndGet();
+            log.warn("Settlement of session {} still pending (payment {})", result.getSessionId(), result.getPaymentId());
+            return;
+        }
+
+        // Tylko Pending jest przejściowy - Failed, brak portfela i nieznany status nie zmienią się przy ponowieniu
+        String sessionStatus = "Paid".equals(status) ? "Paid" : "Unpaid";
+        if (!sessionRepo.completeSettlement(result.getSessionId(), sessionStatus)) {
+            duplicateReplies.incrementAndGet();
+            log.debug("Session {} already settled - ignoring {} reply", result.getSessionId(), status);
+            return;
+        }
+        recordLag(result);
+
+        if ("Paid".equals(status)) {
+            paid.incrementAndGet();
+            sendConfirmation(result.getSessionId());
+        } else {
+            unpaid.incrementAndGet();
+            log.warn("Settlement of session {} failed (payment {}, status={}) - session left Unpaid for payment in the app",
+                result.getSessionId(), result.getPaymentId(), status);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+        long settled = paid.get() + unpaid.get();
+        stats.put("requested", requested.get());
+        stats.put("autoCharge", autoCharge);
+        stats.put("resent", resent.get());
+        stats.put("abandoned", abandoned.get());
+        stats.put("publishFailures", publishFailures.get());
+        stats.put("paid", paid.get());
+        stats.put("unpaid", unpaid.get());
+        stats.put("pendingReplies", pendingReplies.get());
+        stats.put("duplicateReplies", duplicateReplies.get());
+        // Opóźnienie: od zamknięcia sesji do zapisania wyniku; czas płatności: od zamknięcia do obciążenia w payment-service
+        stats.put("avgSettlementLagMillis", settled > 0 ? lagMillisTotal.get() / settled : 0);
+        stats.put("maxSettlementLagMillis", maxLagMillis);
+        stats.put("avgPaymentMillis", settled > 0 ? paymentMillisTotal.get() / settled : 0);
+        try {
+            stats.put("settling", sessionRepo.countSettling());
+        } catch (Exception e) {
+            stats.put("settling", "unavailable");
+        }
+        return stats;
+    }
+
+    private void send(long sessionId, long parkingId, long accountId, long amountMinor, Instant requestedAt) {
+        SettlementCommand command = new SettlementCommand();
+        command.setSessionId(sessionId);
+        command.setParkingId(parkingId);
+        command.setAccountId(accountId);
+        command.setAmountMinor(amountMinor);
+        command.setIdempotencyKey(PaymentClient.chargeKey(sessionId, PaymentClient.CHARGE_PARKING));
+        command.setRequestedAt(requestedAt);
+        try {
+            publisher.send(ParkingAmqpConfig.PAYMENT_EXCHANGE, ParkingAmqpConfig.SETTLEMENT_REQUESTED_ROUTING, command)
+                .whenComplete((ok, error) -> {
+                    if (error != null) {
+                        publishFailures.incrementAndGet();
+                        log.error("Broker did not confirm settlement command for session {} - resync will resend: {}",
+                            sessionId, error.getMessage());
+                    }
+                });
+        } catch (Exception e) {
+            publishFailures.incrementAndGet();
+            log.error("Failed to publish settlement command for session {} - resync will resend: {}",
+                sessionId, e.getMessage());
+        }
+    }
+
+    private void recordLag(SettlementResult result) {
+        if (result.getRequestedAt() == null) {
+            return;
+        }
+        long lag = Duration.between(result.getRequestedAt(), Instant.now()).toMillis();
+        lagMillisTotal.addAndGet(lag);
+        if (lag > maxLagMillis) {
+            maxLagMillis = lag;
+        }
+        if (result.getSettledAt() != null) {
+            paymentMillisTotal.addAndGet(Duration.between(result.getRequestedAt(), result.getSettledAt()).toMillis());
+        }
+    }
+
+    private void sendConfirmation(Long sessionId) {
+        sessionRepo.findById(sessionId).ifPresent(session -> {
+            if (session.getRefAccountId() == null || session.getExitTime() == null) {
+                return;
+            }
+            Instant entryInstant = session.getEntryTime().atZone(ZoneId.of("UTC")).toInstant();
+            Instant exitInstant = session.getExitTime().atZone(ZoneId.of("UTC")).toInstant();
+            eventPublisher.publishParkingPaymentConfirmation(
+                session.getRefAccountId(),
+                sessionId,
+                entryInstant,
+                exitInstant,
+                session.getPriceTotalMinor() != null ? session.getPriceTotalMinor().longValue() : 0L,
+                Duration.between(entryInstant, exitInstant).toMinutes()
+            );
+        });
+    }
+}
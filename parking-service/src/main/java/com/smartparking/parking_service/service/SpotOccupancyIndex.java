@@ -0,0 +1,171 @@
+package com.smartparking.parking_service.service;
+
+import com.smartparking.parking_service.model.SpotOccupancy;
+import com.smartparking.parking_service.repository.ParkingRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Indeks zajętości miejsc parkingowych trzymany w pamięci parking-service.
+ *
+ * Dla każdego parkingu przechowuje posortowaną tablicę spot_id oraz BitSet wolnych miejsc,
+ * dzięki czemu wybór kandydata przy wjeździe nie wymaga zapytania z ORDER BY RANDOM().
+ * Indeks jest tylko podpowiedzią - o zajęciu miejsca zawsze decyduje baza danych
+ * (ParkingSessionRepository.claimFreeSpot), a okresowy resync naprawia ewentualne rozjazdy
+ * (np. sesje utworzone przez inną replikę lub rezerwacje, które wygasły z upływem czasu).
+ */
+@Component
+public class SpotOccupancyIndex {
+    private static final Logger log = LoggerFactory.getLogger(SpotOccupancyIndex.class);
+
+    private final ParkingRepository parkingRepo;
+    private volatile Map<Long, ParkingSpots> byParking = new ConcurrentHashMap<>();
+
+    public SpotOccupancyIndex(ParkingRepository parkingRepo) {
+        this.parkingRepo = parkingRepo;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        rebuild();
+    }
+
+    /**
+     * Przebudowuje cały indeks na podstawie stanu w bazie danych.
+     */
+    public void rebuild() {
+        try {
+            List<SpotOccupancy> rows = parkingRepo.loadSpotOccupancy(null);
+            Map<Long, List<SpotOccupancy>> grouped = new LinkedHashMap<>();
+            for (SpotOccupancy row : rows) {
+                grouped.computeIfAbsent(row.parkingId(), k -> new ArrayList<>()).add(row);
+            }
+
+            Map<Long, ParkingSpots> fresh = new ConcurrentHashMap<>();
+            grouped.forEach((parkingId, spots) -> fresh.put(parkingId, new ParkingSpots(spots)));
+            byParking = fresh;
+            log.debug("Spot occupancy index rebuilt: parkings={}, spots={}", fresh.size(), rows.size());
+        } catch (Exception e) {
+            log.error("Failed to rebuild spot occupancy index: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Przeładowuje indeks jednego parkingu (np. po dodaniu miejsc).
+     */
+    public void reloadParking(Long parkingId) {
+        if (parkingId == null) {
+            return;
+        }
+        try {
+            List<SpotOccupancy> rows = parkingRepo.loadSpotOccupancy(parkingId);
+            if (rows.isEmpty()) {
+                byParking.remove(parkingId);
+            } else {
+                byParking.put(parkingId, new ParkingSpots(rows));
+            }
+        } catch (Exception e) {
+            log.error("Failed to reload spot occupancy index for parking {}: {}", parkingId, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Wybiera losowe wolne miejsce z indeksu i od razu oznacza je jako zajęte,
+     * żeby równoległe wjazdy w tej samej instancji nie dostały tego samego kandydata.
+     * Jeśli zajęcie w bazie się nie powiedzie, wywołujący musi oddać kandydata przez releaseCandidate.
+     *
+     * @return spot_id kandydata lub Optional.empty() jeśli indeks nie zna wolnych miejsc
+     */
+    public Optional<Long> claimCandidate(Long parkingId) {
+        ParkingSpots spots = parkingId != null ? byParking.get(parkingId) : null;
+        if (spots == null) {
+            return Optional.empty();
+        }
+        return spots.claimRandom();
+    }
+
+    /**
+     * Zwraca kandydata z claimCandidate do puli wolnych miejsc, gdy baza nie potwierdziła jego zajęcia
+     * (zajęte miejsce, zablokowany wiersz lub błąd zapisu). Jeśli miejsce jest faktycznie zajęte
+     * przez inną replikę, kolejny wjazd trafi w nie tanim lookupem po kluczu, a resync je poprawi.
+     */
+    public void releaseCandidate(Long parkingId, Long spotId) {
+        markFree(parkingId, spotId);
+    }
+
+    public void markOccupied(Long parkingId, Long spotId) {
+        ParkingSpots spots = parkingId != null ? byParking.get(parkingId) : null;
+        if (spots != null && spotId != null) {
+            spots.set(spotId, false);
+        }
+    }
+
+    public void markFree(Long parkingId, Long spotId) {
+        ParkingSpots spots = parkingId != null ? byParking.get(parkingId) : null;
+        if (spots != null && spotId != null) {
+            spots.set(spotId, true);
+        }
+    }
+
+    /**
+     * Zwraca liczbę wolnych miejsc wg indeksu dla każdego parkingu (do monitoringu).
+     */
+    public Map<Long, Integer> freeCounts() {
+        Map<Long, Integer> counts = new HashMap<>();
+        byParking.forEach((parkingId, spots) -> counts.put(parkingId, spots.freeCount()));
+        return counts;
+    }
+
+    private static final class ParkingSpots {
+        private final long[] spotIds;
+        private final BitSet free;
+
+        ParkingSpots(List<SpotOccupancy> rows) {
+            this.spotIds = rows.stream().mapToLong(SpotOccupancy::spotId).sorted().toArray();
+            this.free = new BitSet(spotIds.length);
+            for (SpotOccupancy row : rows) {
+                if (row.free()) {
+                    free.set(Arrays.binarySearch(spotIds, row.spotId()));
+                }
+            }
+        }
+
+        synchronized Optional<Long> claimRandom() {
+            if (spotIds.length == 0 || free.isEmpty()) {
+                return Optional.empty();
+            }
+            int start = ThreadLocalRandom.current().nextInt(spotIds.length);
+            int idx = free.nextSetBit(start);
+            if (idx < 0) {
+                idx = free.nextSetBit(0);
+            }
+            free.clear(idx);
+            return Optional.of(spotIds[idx]);
+        }
+
+        synchronized void set(long spotId, boolean isFree) {
+            int idx = Arrays.binarySearch(spotIds, spotId);
+            if (idx >= 0) {
+                free.set(idx, isFree);
+            }
+        }
+
+        synchronized int freeCount() {
+            return free.cardinality();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.smartparking.parking_service.service;
+
+import com.smartparking.parking_service.client.CustomerVehicleClient;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Cache tablica rejestracyjna -> pojazd (vehicleId, accountId) dla wjazdów i wyjazdów z OCR.
+ *
+ * Każde zdarzenie z bramki wymagało synchronicznego zapytania do customer-service (create-or-get / by-plate),
+ * a te same tablice wracają codziennie. Wpis przechowuje odpowiedź customer-service bez zmian, więc
+ * ParkingSessionService parsuje ją tak jak wcześniej. customer-service rozgłasza rejestrację, zmianę tablicy
+ * i usunięcie pojazdu zdarzeniem customer.vehicle.changed (VehicleChangedListener), które unieważnia wpis;
+ * TTL ogranicza skutki zgubionego zdarzenia.
+ *
+ * Brak pojazdu (by-plate 404 lub błąd customer-service) nie jest cache'owany.
+ */
+@Component
+public class VehicleResolutionCache {
+    private static final int MAX_ENTRIES = 10_000;
+    private static final long TTL_MILLIS = 5 * 60 * 1000L; // 5 minut
+
+    private final CustomerVehicleClient vehicleClient;
+    private final Map<String, Entry> byPlate = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    public VehicleResolutionCache(CustomerVehicleClient vehicleClient) {
+        this.vehicleClient = vehicleClient;
+    }
+
+    /**
+     * Odpowiednik CustomerVehicleClient.findVehicleByPlate.
+     * @param licencePlate - tablica rejestracyjna (znormalizowana: uppercase, trimmed)
+     */
+    public Optional<Map<String, Object>> findVehicleByPlate(String licencePlate) {
+        Map<String, Object> cached = getFresh(licencePlate);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<Map<String, Object>> loaded = vehicleClient.findVehicleByPlate(licencePlate)
+                .map(Collections::unmodifiableMap);
+        loaded.ifPresent(vehicle -> put(licencePlate, vehicle));
+        return loaded;
+    }
+
+    /**
+     * Odpowiednik CustomerVehicleClient.createOrGetVehicle - przy trafieniu w cache pojazd na pewno już istnieje.
+     * @param licencePlate - tablica rejestracyjna (znormalizowana: uppercase, trimmed)
+     */
+    public Map<String, Object> createOrGetVehicle(String licencePlate) {
+        Map<String, Object> cached = getFresh(licencePlate);
+        if (cached != null) {
+            return cached;
+        }
+        Map<String, Object> vehicle = vehicleClient.createOrGetVehicle(licencePlate);
+        if (vehicle == null) {
+            return null;
+        }
+        Map<String, Object> readOnly = Collections.unmodifiableMap(vehicle);
+        put(licencePlate, readOnly);
+        return readOnly;
+    }
+
+    public void invalidate(String licencePlate) {
+        if (licencePlate == null) {
+            return;
+        }
+        synchronized (byPlate) {
+            byPlate.remove(licencePlate.toUpperCase().trim());
+        }
+    }
+
+    private Map<String, Object> getFresh(String licencePlate) {
+        synchronized (byPlate) {
+            Entry entry = byPlate.get(licencePlate);
+            if (entry != null && System.currentTimeMillis() - entry.loadedAt < TTL_MILLIS) {
+                return entry.vehicle;
+            }
+            return null;
+        }
+    }
+
+    private void put(String licencePlate, Map<String, Object> vehicle) {
+        synchronized (byPlate) {
+            byPlate.put(licencePlate, new Entry(vehicle, System.currentTimeMillis()));
+        }
+    }
+
+    private record Entry(Map<String, Object> vehicle, long loadedAt) {
+    }
+}
@@ -0,0 +1,84 @@
+package com.smartparking.parking_service.messaging;
+
+import com.smartparking.messaging.GateEvent;
+import com.smartparking.messaging.GateEventCodec;
+import com.smartparking.parking_service.config.ParkingAmqpConfig;
+import com.smartparking.parking_service.config.RabbitConfig;
+import com.smartparking.parking_service.dto.OcrEntryEvent;
+import com.smartparking.parking_service.dto.OcrExitEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Zgodność konsumenta shardów z tym, co wysyła ocr-service: ten sam event w formacie binarnym
+ * (bajty wersji 1, jak w GateEventCodecTest w messaging-common) i w JSON z __TypeId__ daje ten sam DTO.
+ */
+class GateEventMessageConverterTest {
+
+    private static final String ENTRY_V1 =
+            "01011f000000000000002a00000003000000006ad48022075bcd15"
+            + "3f2504e04f8911d39a0c0305e82c3301" + "0757413132333435";
+    private static final Instant TIMESTAMP = Instant.parse("2026-10-18T08:15:30.123456789Z");
+    private static final String EVENT_ID = "3f2504e0-4f89-11d3-9a0c-0305e82c3301";
+
+    private final GateEventMessageConverter converter =
+            new GateEventMessageConverter(new RabbitConfig().jackson2JsonMessageConverter());
+
+    @Test
+    void binaryEntryFromOcrServiceDecodesToEntryEvent() {
+        Object event = converter.fromMessage(binary(HexFormat.of().parseHex(ENTRY_V1)));
+
+        OcrEntryEvent entry = assertInstanceOf(OcrEntryEvent.class, event);
+        assertEquals("WA12345", entry.getLicencePlate());
+        assertEquals(42L, entry.getParkingId());
+        assertEquals(3, entry.getCameraId());
+        assertEquals(TIMESTAMP, entry.getTimestamp());
+        assertEquals(EVENT_ID, entry.getEventId());
+    }
+
+    @Test
+    void jsonAndBinaryExitGiveTheSameEvent() {
+        String json = "{\"licencePlate\":\"KR 9ŁŹ\",\"parkingId\":7,\"cameraId\":null,"
+                + "\"timestamp\":\"2026-10-18T08:15:30.123456789Z\",\"eventId\":\"" + EVENT_ID + "\"}";
+        MessageProperties props = new MessageProperties();
+        props.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+        props.setContentEncoding(StandardCharsets.UTF_8.name());
+        props.setHeader("__TypeId__", ParkingAmqpConfig.PARKING_EXIT_TYPE_ID);
+        OcrExitEvent fromJson = assertInstanceOf(OcrExitEvent.class,
+                converter.fromMessage(new Message(json.getBytes(StandardCharsets.UTF_8), props)));
+
+        byte[] body = GateEventCodec.encode(new GateEvent(GateEvent.Type.EXIT, "KR 9ŁŹ", 7L, null, TIMESTAMP, EVENT_ID));
+        OcrExitEvent fromBinary = assertInstanceOf(OcrExitEvent.class, converter.fromMessage(binary(body)));
+
+        assertEquals(fromJson.getLicencePlate(), fromBinary.getLicencePlate());
+        assertEquals(fromJson.getParkingId(), fromBinary.getParkingId());
+        assertNull(fromBinary.getCameraId());
+        assertNull(fromJson.getCameraId());
+        assertEquals(fromJson.getTimestamp(), fromBinary.getTimestamp());
+        assertEquals(fromJson.getEventId(), fromBinary.getEventId());
+    }
+
+    @Test
+    void malformedBinaryBodyIsConversionError() {
+        byte[] truncated = HexFormat.of().parseHex(ENTRY_V1.substring(0, 30));
+        // MessageConversionException jest dla kontenera błędem fatalnym - wiadomość idzie do DLQ bez ponawiania
+        assertThrows(MessageConversionException.class, () -> converter.fromMessage(binary(truncated)));
+    }
+
+    private static Message binary(byte[] body) {
+        MessageProperties props = new MessageProperties();
+        props.setContentType(GateEventCodec.CONTENT_TYPE);
+        return new Message(body, props);
+    }
+}
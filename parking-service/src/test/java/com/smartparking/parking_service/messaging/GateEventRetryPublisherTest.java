@@ -0,0 +1,66 @@
+package com.smartparking.parking_service.messaging;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Klasyfikacja błędów obsługi eventu: przejściowe są ponawiane w miejscu, biznesowe idą od razu do DLQ.
+ */
+class GateEventRetryPublisherTest {
+
+    @Test
+    void infrastructureErrorsAreTransientEvenWhenWrapped() {
+        assertTrue(GateEventRetryPublisher.isTransient(new DataAccessResourceFailureException("connection refused")));
+        assertTrue(GateEventRetryPublisher.isTransient(new CannotAcquireLockException("lock timeout")));
+        assertTrue(GateEventRetryPublisher.isTransient(new ResourceAccessException("customer-service timed out")));
+        assertTrue(GateEventRetryPublisher.isTransient(new IllegalStateException("Failed to create or get vehicle",
+                new ResourceAccessException("customer-service timed out"))));
+    }
+
+    @Test
+    void businessErrorsAreNotTransient() {
+        assertFalse(GateEventRetryPublisher.isTransient(new IllegalStateException("No active session found")));
+        assertFalse(GateEventRetryPublisher.isTransient(new IllegalArgumentException("Vehicle not found for plate")));
+        assertFalse(GateEventRetryPublisher.isTransient(new DataIntegrityViolationException("duplicate key")));
+    }
+
+    @Test
+    void businessErrorGoesToDeadLetterWithoutRetry() {
+        AtomicInteger published = new AtomicInteger();
+        RabbitTemplate template = new RabbitTemplate() {
+            @Override
+            public <T> T invoke(OperationsCallback<T> action) {
+                published.incrementAndGet();
+                return null;
+            }
+        };
+        GateEventRetryPublisher publisher = new GateEventRetryPublisher(template);
+        AtomicInteger calls = new AtomicInteger();
+        MessageProperties props = new MessageProperties();
+        props.setReceivedRoutingKey("parking.gate.3");
+
+        publisher.runWithRetry(new Message(new byte[0], props), () -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("No pricing found for parking: 3");
+        });
+
+        assertEquals(1, calls.get());
+        assertEquals(1, published.get());
+        assertEquals(1, props.getHeaders().get(GateEventRetryPublisher.ATTEMPT_HEADER));
+        assertEquals(0L, publisher.stats().get("retried"));
+        assertEquals(1L, publisher.stats().get("deadLetteredWithoutRetry"));
+        assertEquals(1L, publisher.stats().get("deadLettered"));
+    }
+}
@@ -0,0 +1,169 @@
+package com.smartparking.parking_service.messaging;
+
+import com.smartparking.parking_service.config.ParkingAmqpConfig;
+import com.smartparking.parking_service.config.RabbitConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.config.DirectRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.DirectMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.RabbitMQContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test obciążeniowy shardowania wjazdów/wyjazdów (ParkingAmqpConfig.parkingGateShards + parkingGateContainerFactory):
+ * ten sam strumień eventów z wielu parkingów przetwarzany przy 1, 2, 4 i 8 shardach.
+ * Przepustowość ma rosnąć z liczbą konsumentów, a eventy jednego parkingu muszą przyjść w kolejności publikacji.
+ *
+ * Obsługa eventu jest symulowana stałym opóźnieniem (odpowiednik zapytań do bazy w processEntry/processExit),
+ * więc wynik zależy od równoległości konsumentów, a nie od szybkości maszyny.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class GateShardThroughputTest {
+    private static final Logger log = LoggerFactory.getLogger(GateShardThroughputTest.class);
+
+    private static final int PARKINGS = 32;
+    private static final int EVENTS_PER_PARKING = 15;
+    private static final long HANDLING_MILLIS = 4;
+
+    @Container
+    static final RabbitMQContainer rabbit = new RabbitMQContainer("rabbitmq:3-management");
+
+    private static CachingConnectionFactory connectionFactory;
+    private static RabbitAdmin admin;
+    private static RabbitTemplate template;
+
+    @BeforeAll
+    static void setUp() {
+        connectionFactory = new CachingConnectionFactory(rabbit.getHost(), rabbit.getAmqpPort());
+        connectionFactory.setUsername(rabbit.getAdminUsername());
+        connectionFactory.setPassword(rabbit.getAdminPassword());
+        admin = new RabbitAdmin(connectionFactory);
+        template = new RabbitTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    @Test
+    void throughputScalesWithShardCountAndKeepsPerParkingOrder() throws Exception {
+        Map<Integer, Double> throughput = new TreeMap<>();
+        for (int shards : new int[]{1, 2, 4, 8}) {
+            throughput.put(shards, runWithShards(shards));
+        }
+        log.info("Gate shard throughput (events/s): {}", throughput);
+
+        assertTrue(throughput.get(2) > throughput.get(1) * 1.5,
+                "2 shards should be clearly faster than 1: " + throughput);
+        assertTrue(throughput.get(4) > throughput.get(2) * 1.3,
+                "4 shards should be faster than 2: " + throughput);
+        assertTrue(throughput.get(8) > throughput.get(1) * 4,
+                "8 shards should be at least 4x faster than 1: " + throughput);
+    }
+
+    private double runWithShards(int shards) throws Exception {
+        ParkingAmqpConfig config = new ParkingAmqpConfig();
+        ReflectionTestUtils.setField(config, "gateShards", shards);
+        TopicExchange exchange = config.parkingExchange();
+        String[] queueNames = config.parkingGateQueueNames();
+
+        for (String queueName : queueNames) {
+            admin.deleteQueue(queueName);
+        }
+        admin.declareExchange(exchange);
+        for (Declarable declarable : config.parkingGateShards(exchange).getDeclarables()) {
+            if (declarable instanceof Queue queue) {
+                admin.declareQueue(queue);
+            } else if (declarable instanceof Binding binding) {
+                admin.declareBinding(binding);
+            }
+        }
+
+        int total = PARKINGS * EVENTS_PER_PARKING;
+        CountDownLatch done = new CountDownLatch(total);
+        Map<Integer, List<Integer>> receivedByParking = new ConcurrentHashMap<>();
+        AtomicLong firstReceived = new AtomicLong();
+
+        MessageListener listener = message -> {
+            firstReceived.compareAndSet(0, System.nanoTime());
+            ByteBuffer body = ByteBuffer.wrap(message.getBody());
+            int parkingId = body.getInt();
+            int sequence = body.getInt();
+            receivedByParking.computeIfAbsent(parkingId, k -> new CopyOnWriteArrayList<>()).add(sequence);
+            try {
+                Thread.sleep(HANDLING_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        };
+
+        // Publikacja przed startem konsumentów - mierzymy samo opróżnianie kolejek
+        for (int sequence = 0; sequence < EVENTS_PER_PARKING; sequence++) {
+            for (int parkingId = 1; parkingId <= PARKINGS; parkingId++) {
+                int shard = (int) Math.floorMod((long) parkingId, (long) shards);
+                byte[] body = ByteBuffer.allocate(8).putInt(parkingId).putInt(sequence).array();
+                template.send(ParkingAmqpConfig.PARKING_EXCHANGE, ParkingAmqpConfig.PARKING_GATE_PREFIX + shard,
+                        MessageBuilder.withBody(body).build());
+            }
+        }
+
+        DirectRabbitListenerContainerFactory factory = config.parkingGateContainerFactory(
+                connectionFactory, new RabbitConfig().jackson2JsonMessageConverter());
+        SimpleRabbitListenerEndpoint endpoint = new SimpleRabbitListenerEndpoint();
+        endpoint.setId("gate-shards-" + shards);
+        endpoint.setQueueNames(queueNames);
+        endpoint.setMessageListener(listener);
+        DirectMessageListenerContainer container = factory.createListenerContainer(endpoint);
+        container.afterPropertiesSet();
+        container.start();
+        long finished;
+        try {
+            assertTrue(done.await(60, TimeUnit.SECONDS), "Not all gate events consumed with " + shards + " shards");
+            finished = System.nanoTime();
+        } finally {
+            container.stop();
+        }
+        double seconds = (finished - firstReceived.get()) / 1e9;
+
+        assertEquals(PARKINGS, receivedByParking.size());
+        receivedByParking.forEach((parkingId, sequences) -> {
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < EVENTS_PER_PARKING; i++) {
+                expected.add(i);
+            }
+            assertEquals(expected, sequences, "Events reordered for parking " + parkingId + " with " + shards + " shards");
+        });
+        return total / seconds;
+    }
+}
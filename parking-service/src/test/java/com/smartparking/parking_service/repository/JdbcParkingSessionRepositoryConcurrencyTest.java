@@ -0,0 +1,172 @@
+package com.smartparking.parking_service.repository;
+
+import com.smartparking.parking_service.model.ParkingSession;
+import com.smartparking.parking_service.support.ParkingDb;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Setki równoległych wjazdów na jeden parking - claimFreeSpot nie może przydzielić
+ * tego samego miejsca dwóm aktywnym sesjom (FOR UPDATE SKIP LOCKED + uq_parking_session_active_spot)
+ * ani odrzucić wjazdu, dopóki zostało wolne miejsce.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class JdbcParkingSessionRepositoryConcurrencyTest {
+
+    private static final int THREADS = 64;
+    private static final int ENTRIES = 400;
+
+    private static HikariDataSource dataSource;
+    private static JdbcTemplate jdbc;
+    private static JdbcParkingSessionRepository repository;
+
+    @BeforeAll
+    static void setUp() {
+        dataSource = ParkingDb.dataSource(THREADS);
+        jdbc = new JdbcTemplate(dataSource);
+        repository = new JdbcParkingSessionRepository(jdbc);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    void parallelEntriesNeverShareSpotWhenSpotsAreScarce() throws Exception {
+        long parkingId = createParking(9001, 100);
+
+        List<Optional<Long>> results = enterInParallel(parkingId, ENTRIES);
+
+        List<Long> claimedSpots = results.stream().flatMap(Optional::stream).toList();
+        // Konflikty na miejscach nie mogą odrzucić wjazdu, dopóki są wolne miejsca - zajęte dokładnie wszystkie
+        assertEquals(100, claimedSpots.size(), "Entries rejected although free spots were left");
+        assertEquals(100, new HashSet<>(claimedSpots).size(), "Spot assigned twice");
+        assertEquals(100, countActiveSessions(parkingId));
+        assertEquals(0, countDoubleBookedSpots(parkingId));
+    }
+
+    @Test
+    void parallelEntriesAllSucceedWhenSpotsAreAvailable() throws Exception {
+        long parkingId = createParking(9002, ENTRIES * 2);
+
+        List<Optional<Long>> results = enterInParallel(parkingId, ENTRIES);
+
+        List<Long> claimedSpots = results.stream().flatMap(Optional::stream).toList();
+        assertEquals(ENTRIES, claimedSpots.size(), "Entry rejected although free spots were left");
+        assertEquals(ENTRIES, new HashSet<>(claimedSpots).size(), "Spot assigned twice");
+        assertEquals(ENTRIES, countActiveSessions(parkingId));
+        assertEquals(0, countDoubleBookedSpots(parkingId));
+    }
+
+    @Test
+    void parallelEntriesPreferringSameSpotClaimItOnce() throws Exception {
+        long parkingId = createParking(9003, ENTRIES * 2);
+        Long contestedSpot = jdbc.queryForObject(
+                "SELECT MIN(spot_id) FROM parking_spot WHERE id_parking = ?", Long.class, parkingId);
+
+        // Wszystkie wjazdy dostają z indeksu tego samego kandydata - tylko jeden może go zająć
+        List<Optional<Long>> results = enterInParallel(parkingId, ENTRIES, contestedSpot);
+
+        List<Long> claimedSpots = results.stream().flatMap(Optional::stream).toList();
+        assertEquals(ENTRIES, claimedSpots.size());
+        assertEquals(1, claimedSpots.stream().filter(contestedSpot::equals).count());
+        assertEquals(ENTRIES, new HashSet<>(claimedSpots).size(), "Spot assigned twice");
+        assertEquals(0, countDoubleBookedSpots(parkingId));
+    }
+
+    @Test
+    void savingOnOccupiedSpotReportsSpotOccupied() {
+        long parkingId = createParking(9004, 1);
+        Long spotId = enter(parkingId, 2_000_000L, null).orElseThrow();
+
+        // Jak wjazd na rezerwację, gdy miejsce ma jeszcze sesję - ParkingSessionService przydziela wtedy inne miejsce
+        ParkingSession reserved = new ParkingSession();
+        reserved.setParkingId(parkingId);
+        reserved.setRefVehicleId(2_000_001L);
+        reserved.setPaymentStatus("Session");
+        reserved.setSpotId(spotId);
+        reserved.setEntryEventId(UUID.randomUUID().toString());
+        assertThrows(SpotOccupiedException.class, () -> repository.save(reserved));
+        assertEquals(1, countActiveSessions(parkingId));
+    }
+
+    private List<Optional<Long>> enterInParallel(long parkingId, int entries) throws Exception {
+        return enterInParallel(parkingId, entries, null);
+    }
+
+    private List<Optional<Long>> enterInParallel(long parkingId, int entries, Long preferredSpotId) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Optional<Long>>> futures = new ArrayList<>();
+            for (int i = 0; i < entries; i++) {
+                long vehicleId = 1_000_000L + i;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return enter(parkingId, vehicleId, preferredSpotId);
+                }));
+            }
+            start.countDown();
+
+            List<Optional<Long>> results = new ArrayList<>();
+            for (Future<Optional<Long>> future : futures) {
+                results.add(future.get(60, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Optional<Long> enter(long parkingId, long vehicleId, Long preferredSpotId) {
+        ParkingSession session = new ParkingSession();
+        session.setParkingId(parkingId);
+        session.setRefVehicleId(vehicleId);
+        session.setPaymentStatus("Session");
+        session.setEntryPlate("T" + vehicleId);
+        session.setEntryEventId(UUID.randomUUID().toString());
+        // Optional.empty() tylko przy pełnym parkingu - wyjątek (np. wyczerpane ponowienia) oblewa test
+        return repository.claimFreeSpot(session, preferredSpotId).map(ParkingSession::getSpotId);
+    }
+
+    private long createParking(long parkingId, int spots) {
+        jdbc.update("INSERT INTO parking_location(parking_id, name_parking, address_line, ref_company_id) "
+                + "VALUES (?, ?, 'Test', 1)", parkingId, "Test " + parkingId);
+        jdbc.update("INSERT INTO parking_spot(spot_id, code, floor_lvl, to_reserved, type, id_parking) "
+                + "SELECT ? * 1000 + n, 'T' || n, 0, false, 'Available', ? FROM generate_series(1, ?) AS n",
+                parkingId, parkingId, spots);
+        return parkingId;
+    }
+
+    private int countActiveSessions(long parkingId) {
+        Integer count = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM parking_session WHERE parking_id = ? AND exit_time IS NULL",
+                Integer.class, parkingId);
+        return count != null ? count : 0;
+    }
+
+    private int countDoubleBookedSpots(long parkingId) {
+        return jdbc.queryForList(
+                "SELECT spot_id FROM parking_session WHERE parking_id = ? AND exit_time IS NULL "
+                        + "GROUP BY spot_id HAVING COUNT(*) > 1", Long.class, parkingId).size();
+    }
+}
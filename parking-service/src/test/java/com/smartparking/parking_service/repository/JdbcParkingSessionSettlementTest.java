@@ -0,0 +1,131 @@
+package com.smartparking.parking_service.repository;
+
+import com.smartparking.parking_service.model.PendingSettlement;
+import com.smartparking.parking_service.support.ParkingDb;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Resync rozliczeń (SessionSettlementService.resendStale): claimStaleSettlements przesuwa settlement_requested_at,
+ * więc kolejne przebiegi nie wysyłają w kółko tych samych najstarszych sesji, a po MAX prób
+ * abandonStaleSettlements przenosi sesję do Unpaid zamiast zostawiać ją w Settling.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class JdbcParkingSessionSettlementTest {
+
+    private static final long PARKING_ID = 9101;
+    private static final int RESEND_AFTER_SECONDS = 120;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final AtomicLong SESSION_IDS = new AtomicLong(PARKING_ID * 10_000);
+
+    private static HikariDataSource dataSource;
+    private static JdbcTemplate jdbc;
+    private static JdbcParkingSessionRepository repository;
+
+    @BeforeAll
+    static void setUp() {
+        dataSource = ParkingDb.dataSource(4);
+        jdbc = new JdbcTemplate(dataSource);
+        repository = new JdbcParkingSessionRepository(jdbc);
+        jdbc.update("INSERT INTO parking_location(parking_id, name_parking, address_line, ref_company_id) "
+                + "VALUES (?, 'Settlement test', 'Test', 1)", PARKING_ID);
+        jdbc.update("INSERT INTO parking_spot(spot_id, code, floor_lvl, to_reserved, type, id_parking) "
+                + "VALUES (?, 'S1', 0, false, 'Available', ?)", PARKING_ID * 1000 + 1, PARKING_ID);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        dataSource.close();
+    }
+
+    @BeforeEach
+    void noOtherSessionsSettling() {
+        jdbc.update("UPDATE parking_session SET payment_status = 'Unpaid' WHERE payment_status = 'Settling'");
+    }
+
+    @Test
+    void claimMovesSessionsToTheBackSoNextResyncTakesOthers() {
+        LocalDateTime exitTime = LocalDateTime.now().minusHours(1).withNano(0);
+        List<Long> sessions = List.of(
+                settling("1200", exitTime, 600, 0),
+                settling("1300", exitTime, 500, 0),
+                settling("1400", exitTime, 400, 0),
+                settling("1500", exitTime, 300, 0),
+                settling("1600", exitTime, 200, 0));
+
+        List<PendingSettlement> first = repository.claimStaleSettlements(RESEND_AFTER_SECONDS, MAX_ATTEMPTS, 3);
+        assertEquals(sessions.subList(0, 3), first.stream().map(PendingSettlement::sessionId).toList());
+        assertEquals(1, first.get(0).attempt());
+        assertEquals(1200L, first.get(0).amountMinor());
+        // Opóźnienie rozliczenia liczone od wyjazdu, nie od ostatniego ponowienia
+        assertEquals(exitTime, first.get(0).requestedAt());
+
+        List<PendingSettlement> second = repository.claimStaleSettlements(RESEND_AFTER_SECONDS, MAX_ATTEMPTS, 3);
+        assertEquals(sessions.subList(3, 5), second.stream().map(PendingSettlement::sessionId).toList());
+
+        assertTrue(repository.claimStaleSettlements(RESEND_AFTER_SECONDS, MAX_ATTEMPTS, 3).isEmpty(),
+                "Sessions resent again before RESEND_AFTER_SECONDS passed");
+    }
+
+    @Test
+    void sessionAfterLastResendIsAbandonedToUnpaid() {
+        LocalDateTime exitTime = LocalDateTime.now().minusHours(1).withNano(0);
+        long exhausted = settling("1000", exitTime, 600, MAX_ATTEMPTS);
+        long lastResendInFlight = settling("1000", exitTime, 10, MAX_ATTEMPTS);
+        long retriable = settling("1000", exitTime, 600, MAX_ATTEMPTS - 1);
+
+        List<PendingSettlement> claimed = repository.claimStaleSettlements(RESEND_AFTER_SECONDS, MAX_ATTEMPTS, 10);
+        assertEquals(List.of(retriable), claimed.stream().map(PendingSettlement::sessionId).toList());
+        assertEquals(MAX_ATTEMPTS, claimed.get(0).attempt());
+
+        assertEquals(1, repository.abandonStaleSettlements(RESEND_AFTER_SECONDS, MAX_ATTEMPTS));
+        assertEquals("Unpaid", status(exhausted));
+        // Ostatnie ponowienie czeka jeszcze na odpowiedź
+        assertEquals("Settling", status(lastResendInFlight));
+
+        // Spóźnione Paid po porzuceniu nadal oznacza sesję jako opłaconą (ten sam klucz obciążenia)
+        assertTrue(repository.completeSettlement(exhausted, "Paid"));
+        assertEquals("Paid", status(exhausted));
+    }
+
+    @Test
+    void sessionWithoutPriceIsNeverResentAndIsAbandoned() {
+        LocalDateTime exitTime = LocalDateTime.now().minusHours(1).withNano(0);
+        long withoutPrice = settling(null, exitTime, 600, 0);
+
+        assertTrue(repository.claimStaleSettlements(RESEND_AFTER_SECONDS, MAX_ATTEMPTS, 10).isEmpty());
+        assertEquals(1, repository.abandonStaleSettlements(RESEND_AFTER_SECONDS, MAX_ATTEMPTS));
+        assertEquals("Unpaid", status(withoutPrice));
+    }
+
+    private static long settling(String price, LocalDateTime exitTime, int requestedSecondsAgo, int attempts) {
+        long sessionId = SESSION_IDS.incrementAndGet();
+        jdbc.update("INSERT INTO parking_session(session_id, entry_time, exit_time, price_total_minor, payment_status, "
+                        + "parking_id, spot_id, ref_vehicle_id, ref_account_id, settlement_requested_at, settlement_attempts) "
+                        + "VALUES (?, ?, ?, ?, 'Settling', ?, ?, 1, 7, "
+                        + "(now() AT TIME ZONE 'UTC') - make_interval(secs => ?), ?)",
+                sessionId, Timestamp.valueOf(exitTime.minusHours(2)), Timestamp.valueOf(exitTime),
+                price != null ? new BigDecimal(price) : null, PARKING_ID, PARKING_ID * 1000 + 1,
+                requestedSecondsAgo, attempts);
+        return sessionId;
+    }
+
+    private static String status(long sessionId) {
+        return jdbc.queryForObject("SELECT payment_status::text FROM parking_session WHERE session_id = ?",
+                String.class, sessionId);
+    }
+}
@@ -0,0 +1,183 @@
+package com.smartparking.parking_service.repository;
+
+import com.smartparking.parking_service.model.AccountSession;
+import com.smartparking.parking_service.model.ReservationDetails;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Koszt mapowania wiersza rezerwacji i aktywnej sesji: typowane rekordy (RESERVATION_MAPPER,
+ * ACTIVE_SESSION_MAPPER) kontra dawne mapowanie do HashMap z kluczami tekstowymi i odczytem
+ * w ParkingSessionService przez Long.valueOf(map.get(..).toString()).
+ *
+ * Wiersz pochodzi z CachedRowSet w pamięci, więc mierzymy samo mapowanie i odczyt pól, bez bazy.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParkingRowMappingBenchmark {
+
+    private ResultSet reservationRow;
+    private ResultSet sessionRow;
+
+    @Setup
+    public void setUp() throws SQLException {
+        Instant validFrom = Instant.parse("2026-10-18T08:00:00Z");
+        reservationRow = singleRow(
+                new String[]{"reservation_id", "spot_id", "valid_from", "valid_until", "status_reservation",
+                        "parking_id", "ref_account_id", "vehicle_id"},
+                new int[]{Types.BIGINT, Types.BIGINT, Types.TIMESTAMP, Types.TIMESTAMP, Types.VARCHAR,
+                        Types.BIGINT, Types.BIGINT, Types.BIGINT},
+                new Object[]{1234L, 56L, Timestamp.from(validFrom), Timestamp.from(validFrom.plusSeconds(7200)), "Paid",
+                        3L, 789L, 42L});
+        sessionRow = singleRow(
+                new String[]{"session_id", "entry_time", "exit_time", "price_total_minor", "payment_status",
+                        "parking_id", "spot_id", "ref_vehicle_id", "ref_account_id", "reservation_id",
+                        "parking_name", "parking_address", "spot_code", "spot_floor"},
+                new int[]{Types.BIGINT, Types.TIMESTAMP, Types.TIMESTAMP, Types.NUMERIC, Types.VARCHAR,
+                        Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.BIGINT,
+                        Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.INTEGER},
+                new Object[]{98765L, Timestamp.from(validFrom), null, null, "Session",
+                        3L, 56L, 42L, 789L, null,
+                        "Parking Centrum", "ul. Długa 1", "A-12", 1});
+    }
+
+    @Benchmark
+    public void reservationLegacyMap(Blackhole bh) throws SQLException {
+        Map<String, Object> reservation = legacyReservation(reservationRow);
+        bh.consume(Long.valueOf(reservation.get("reservation_id").toString()));
+        bh.consume(Long.valueOf(reservation.get("spot_id").toString()));
+        bh.consume((Instant) reservation.get("valid_from"));
+        bh.consume((String) reservation.get("status_reservation"));
+    }
+
+    @Benchmark
+    public void reservationTypedRecord(Blackhole bh) throws SQLException {
+        ReservationDetails reservation = ParkingRepository.RESERVATION_MAPPER.mapRow(reservationRow, 0);
+        bh.consume(reservation.reservationId());
+        bh.consume(reservation.spotId());
+        bh.consume(reservation.validFrom());
+        bh.consume(reservation.status());
+    }
+
+    @Benchmark
+    public void activeSessionLegacyMap(Blackhole bh) throws SQLException {
+        Map<String, Object> session = legacyActiveSession(sessionRow);
+        bh.consume(Long.valueOf(session.get("session_id").toString()));
+        bh.consume(Long.valueOf(session.get("spot_id").toString()));
+        bh.consume(session.get("spot_code"));
+        bh.consume(session.get("entry_time"));
+    }
+
+    @Benchmark
+    public void activeSessionTypedRecord(Blackhole bh) throws SQLException {
+        AccountSession session = ParkingRepository.ACTIVE_SESSION_MAPPER.mapRow(sessionRow, 0);
+        bh.consume(session.sessionId());
+        bh.consume(session.spotId());
+        bh.consume(session.spotCode());
+        bh.consume(session.entryTime());
+    }
+
+    // Dawne mapowanie z ParkingRepository.findReservationById (przed typowanymi rekordami)
+    private static Map<String, Object> legacyReservation(ResultSet rs) throws SQLException {
+        Map<String, Object> result = new HashMap<>();
+        result.put("reservation_id", rs.getLong("reservation_id"));
+        result.put("spot_id", rs.getLong("spot_id"));
+        Object validFromObj = rs.getObject("valid_from");
+        if (validFromObj != null) {
+            result.put("valid_from", rs.getTimestamp("valid_from").toInstant());
+        }
+        result.put("valid_until", rs.getTimestamp("valid_until").toInstant());
+        result.put("status_reservation", rs.getString("status_reservation"));
+        result.put("parking_id", rs.getLong("parking_id"));
+        result.put("ref_account_id", rs.getLong("ref_account_id"));
+        Object vehicleIdObj = rs.getObject("vehicle_id");
+        if (vehicleIdObj != null) {
+            result.put("vehicle_id", rs.getLong("vehicle_id"));
+        }
+        return result;
+    }
+
+    // Dawne mapowanie z ParkingRepository.findActiveSessionByAccountId (przed typowanymi rekordami)
+    private static Map<String, Object> legacyActiveSession(ResultSet rs) throws SQLException {
+        Map<String, Object> result = new HashMap<>();
+        result.put("session_id", rs.getLong("session_id"));
+        result.put("entry_time", rs.getTimestamp("entry_time").toInstant());
+        result.put("exit_time", rs.getTimestamp("exit_time") != null ? rs.getTimestamp("exit_time").toInstant() : null);
+        result.put("price_total_minor", rs.getBigDecimal("price_total_minor"));
+        result.put("payment_status", rs.getString("payment_status"));
+        result.put("parking_id", rs.getLong("parking_id"));
+        result.put("spot_id", rs.getLong("spot_id"));
+        result.put("vehicle_id", rs.getLong("ref_vehicle_id"));
+        Object accountIdObj = rs.getObject("ref_account_id");
+        result.put("account_id", accountIdObj != null ? rs.getLong("ref_account_id") : null);
+        Object reservationIdObj = rs.getObject("reservation_id");
+        result.put("reservation_id", reservationIdObj != null ? rs.getLong("reservation_id") : null);
+        result.put("parking_name", rs.getString("parking_name"));
+        result.put("parking_address", rs.getString("parking_address"));
+        result.put("spot_code", rs.getString("spot_code"));
+        result.put("spot_floor", rs.getInt("spot_floor"));
+        return result;
+    }
+
+    private static ResultSet singleRow(String[] columns, int[] types, Object[] values) throws SQLException {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            metaData.setColumnName(i + 1, columns[i]);
+            metaData.setColumnType(i + 1, types[i]);
+            metaData.setNullable(i + 1, ResultSetMetaData.columnNullable);
+        }
+
+        CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+        rowSet.setMetaData(metaData);
+        rowSet.moveToInsertRow();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                rowSet.updateNull(i + 1);
+            } else {
+                rowSet.updateObject(i + 1, values[i]);
+            }
+        }
+        rowSet.insertRow();
+        rowSet.moveToCurrentRow();
+        rowSet.beforeFirst();
+        rowSet.next();
+        return rowSet;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ParkingRowMappingBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
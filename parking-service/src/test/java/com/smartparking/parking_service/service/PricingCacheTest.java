@@ -0,0 +1,88 @@
+package com.smartparking.parking_service.service;
+
+import com.smartparking.parking_service.model.ParkingPricing;
+import com.smartparking.parking_service.repository.ParkingPricingRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Odczyt cennika trwający w chwili unieważnienia nie może wpisać starego cennika z powrotem do cache.
+ */
+class PricingCacheTest {
+
+    private static final long PARKING_ID = 7;
+
+    @Test
+    void loadInFlightDuringInvalidateIsNotCached() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StubRepository repo = new StubRepository(loading, release);
+        PricingCache cache = new PricingCache(repo);
+
+        repo.rate = 10;
+        CompletableFuture<Optional<ParkingPricing>> stale = CompletableFuture.supplyAsync(() -> cache.get(PARKING_ID));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        // Zmiana cennika, gdy pierwszy odczyt jeszcze czeka na bazę
+        repo.rate = 20;
+        cache.invalidate(PARKING_ID);
+        release.countDown();
+        assertEquals(10, stale.get(5, TimeUnit.SECONDS).orElseThrow().getRatePerMin());
+
+        assertEquals(20, cache.get(PARKING_ID).orElseThrow().getRatePerMin());
+        assertEquals(2, repo.loads.get());
+        // Świeży odczyt jest już w cache
+        assertEquals(20, cache.get(PARKING_ID).orElseThrow().getRatePerMin());
+        assertEquals(2, repo.loads.get());
+    }
+
+    private static final class StubRepository implements ParkingPricingRepository {
+        private final CountDownLatch loading;
+        private final CountDownLatch release;
+        private final AtomicInteger loads = new AtomicInteger();
+        private volatile int rate;
+
+        private StubRepository(CountDownLatch loading, CountDownLatch release) {
+            this.loading = loading;
+            this.release = release;
+        }
+
+        @Override
+        public Optional<ParkingPricing> findByParkingId(Long parkingId) {
+            ParkingPricing pricing = new ParkingPricing();
+            pricing.setRatePerMin(rate);
+            if (loads.incrementAndGet() == 1) {
+                loading.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return Optional.of(pricing);
+        }
+
+        @Override
+        public Optional<ParkingPricing> findById(Long id) {
+            return Optional.empty();
+        }
+
+        @Override
+        public List<ParkingPricing> findAll() {
+            return List.of();
+        }
+
+        @Override
+        public ParkingPricing save(ParkingPricing pricing) {
+            return pricing;
+        }
+    }
+}
@@ -7,9 +7,9 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
-import java.math.BigDecimal;
 import java.util.Map;
 import java.util.Optional;
 
@@ -50,19 +50,51 @@ public class CustomerWalletClient {
         }
     }
 
-    public boolean updateBalance(Long accountId, BigDecimal newBalance) {
+    /**
+     * Atomowo obciąża portfel o kwotę (customer-service: jedno warunkowe UPDATE z kluczem idempotencji).
+     * @param amountMinor kwota w groszach
+     * @param idempotencyKey klucz operacji - ponowienie z tym samym kluczem nie obciąża drugi raz
+     */
+    public WalletOperationStatus debit(Long accountId, long amountMinor, String idempotencyKey) {
+        return walletOperation(accountId, "charge", amountMinor, idempotencyKey);
+    }
+
+    /**
+     * Atomowo uznaje portfel o kwotę (zwroty), z kluczem idempotencji jak w debit().
+     */
+    public WalletOperationStatus credit(Long accountId, long amountMinor, String idempotencyKey) {
+        return walletOperation(accountId, "credit", amountMinor, idempotencyKey);
+    }
+
+    private WalletOperationStatus walletOperation(Long accountId, String operation, long amountMinor, String idempotencyKey) {
         try {
-            Map<String, Object> body = Map.of("balance_minor", newBalance.toString());
+            Map<String, Object> body = Map.of("amount_minor", amountMinor, "idempotency_key", idempotencyKey);
             HttpEntity<Map<String, Object>> req = new HttpEntity<>(body, authHeaders());
             ResponseEntity<Void> res = rest.exchange(
-                    baseUrl + "/internal/wallet/" + accountId + "/debit",
+                    baseUrl + "/internal/wallet/" + accountId + "/" + operation,
                     HttpMethod.POST,
                     req,
                     Void.class
             );
-            return res.getStatusCode().is2xxSuccessful();
+            return res.getStatusCode().is2xxSuccessful() ? WalletOperationStatus.APPLIED : WalletOperationStatus.UNAVAILABLE;
+        } catch (HttpClientErrorException.NotFound e) {
+            return WalletOperationStatus.NOT_FOUND;
+        } catch (HttpClientErrorException.Conflict e) {
+            String response = e.getResponseBodyAsString();
+            return response.contains("KEY_CONFLICT") ? WalletOperationStatus.REJECTED : WalletOperationStatus.INSUFFICIENT_FUNDS;
+        } catch (HttpClientErrorException e) {
+            return WalletOperationStatus.REJECTED;
         } catch (Exception e) {
-            return false;
+            // Timeout, 5xx, brak połączenia - nie wiadomo, czy operacja się wykonała (bezpieczne ponowienie tym samym kluczem)
+            return WalletOperationStatus.UNAVAILABLE;
         }
     }
+
+    public enum WalletOperationStatus {
+        APPLIED,            // wykonane teraz albo wcześniej z tym samym kluczem
+        INSUFFICIENT_FUNDS,
+        NOT_FOUND,          // konto nie ma portfela
+        REJECTED,           // błędne żądanie albo klucz użyty wcześniej z inną kwotą
+        UNAVAILABLE         // wynik nieznany
+    }
 }
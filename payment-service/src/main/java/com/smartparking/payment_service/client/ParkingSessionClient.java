@@ -0,0 +1,57 @@
+package com.smartparking.payment_service.client;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Component
+public class ParkingSessionClient {
+    private final RestTemplate rest;
+    private final String baseUrl;
+    private final String internalToken;
+
+    public ParkingSessionClient(RestTemplate rest,
+                                @Value("${PARKING_SERVICE_URL:http://parking-service:8083}") String baseUrl,
+                                @Value("${INTERNAL_SERVICE_TOKEN:}") String internalToken) {
+        this.rest = rest;
+        this.baseUrl = baseUrl;
+        this.internalToken = internalToken;
+    }
+
+    /**
+     * Mapa sessionId -> parkingId dla paczki sesji (sesje nieznane parking-service są pomijane).
+     * Rzuca wyjątek przy błędzie komunikacji - wywołujący ponowi próbę w kolejnym przebiegu.
+     */
+    public Map<Long, Long> getParkingIdsBySessionIds(List<Long> sessionIds) {
+        HttpHeaders headers = new HttpHeaders();
+        if (internalToken != null && !internalToken.isBlank()) {
+            headers.set("X-Internal-Token", internalToken);
+        }
+        HttpEntity<List<Long>> req = new HttpEntity<>(sessionIds, headers);
+        ResponseEntity<Map<String, Long>> res = rest.exchange(
+                baseUrl + "/parking/sessions/parking-ids",
+                HttpMethod.POST,
+                req,
+                new ParameterizedTypeReference<Map<String, Long>>() {}
+        );
+
+        Map<Long, Long> result = new HashMap<>();
+        if (res.getBody() != null) {
+            res.getBody().forEach((sessionId, parkingId) -> {
+                if (parkingId != null) {
+                    result.put(Long.parseLong(sessionId), parkingId);
+                }
+            });
+        }
+        return result;
+    }
+}
@@ -0,0 +1,54 @@
+package com.smartparking.payment_service.config;
+
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Rozliczanie zakończonych sesji parkingowych przez RabbitMQ (ten sam układ w parking-service, ParkingAmqpConfig):
+ * parking-service publikuje polecenie na payment.settlement.requested, payment-service obciąża portfel
+ * i odpowiada wynikiem na payment.settlement.completed.
+ */
+@Configuration
+public class PaymentAmqpConfig {
+    public static final String PAYMENT_EXCHANGE = "payment.exchange";
+    public static final String SETTLEMENT_REQUESTED_ROUTING = "payment.settlement.requested";
+    public static final String SETTLEMENT_QUEUE = "payment.settlement.queue";
+    public static final String SETTLEMENT_COMPLETED_ROUTING = "payment.settlement.completed";
+
+    @Bean
+    public TopicExchange paymentExchange() {
+        return new TopicExchange(PAYMENT_EXCHANGE);
+    }
+
+    @Bean
+    public Queue settlementQueue() {
+        return QueueBuilder.durable(SETTLEMENT_QUEUE).build();
+    }
+
+    @Bean
+    public Binding settlementBinding(Queue settlementQueue, TopicExchange paymentExchange) {
+        return BindingBuilder.bind(settlementQueue)
+                .to(paymentExchange)
+                .with(SETTLEMENT_REQUESTED_ROUTING);
+    }
+
+    @Bean
+    public Jackson2JsonMessageConverter jackson2JsonMessageConverter() {
+        return new Jackson2JsonMessageConverter();
+    }
+
+    @Bean
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory, Jackson2JsonMessageConverter converter) {
+        RabbitTemplate rt = new RabbitTemplate(connectionFactory);
+        rt.setMessageConverter(converter);
+        return rt;
+    }
+}
@@ -1,17 +1,29 @@
 package com.smartparking.payment_service.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.smartparking.payment_service.dto.ChargeRequest;
 import com.smartparking.payment_service.dto.PaymentDto;
 import com.smartparking.payment_service.dto.PaymentStatus;
+import com.smartparking.payment_service.dto.TransactionDto;
 import com.smartparking.payment_service.security.RequestContext;
 import com.smartparking.payment_service.security.JwtContextFilter;
 import com.smartparking.payment_service.service.PaymentService;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 
@@ -19,9 +31,15 @@ import java.util.Map;
 @RequestMapping("/payment")
 public class PaymentController {
 
+    private static final int MAX_TRANSACTIONS_PAGE_SIZE = 500;
+    // Limit długości klucza operacji portfela w customer-service (wallet_operation.idempotency_key)
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 100;
+
     private final PaymentService payments;
-    public PaymentController(PaymentService payments) {
+    private final ObjectMapper objectMapper;
+    public PaymentController(PaymentService payments, ObjectMapper objectMapper) {
         this.payments = payments;
+        this.objectMapper = objectMapper;
     }
 
     private Long requireAccountId(HttpServletRequest request) {
@@ -46,13 +64,24 @@ public class PaymentController {
     }
 
     /**
-     * Pobiera historię transakcji dla danego konta użytkownika
+     * Pobiera stronę historii transakcji dla danego konta użytkownika (od najnowszych).
+     * Kolejna strona: afterDate + afterId = date i id ostatniej transakcji poprzedniej strony.
      */
     @GetMapping("/transactions")
-    public ResponseEntity<List<Map<String, Object>>> getTransactions(HttpServletRequest request) {
+    public ResponseEntity<?> getTransactions(
+            HttpServletRequest request,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime afterDate,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(defaultValue = "100") int limit) {
+        if (limit <= 0 || limit > MAX_TRANSACTIONS_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be between 1 and " + MAX_TRANSACTIONS_PAGE_SIZE));
+        }
+        if ((afterDate == null) != (afterId == null)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "afterDate and afterId must be given together"));
+        }
         try {
             Long accountId = requireAccountId(request);
-            List<Map<String, Object>> transactions = payments.getTransactionsByAccountId(accountId);
+            List<TransactionDto> transactions = payments.getTransactionsByAccountId(accountId, afterDate, afterId, limit);
             return ResponseEntity.ok(transactions);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.status(401).build();
@@ -61,6 +90,35 @@ public class PaymentController {
         }
     }
 
+    /**
+     * Eksport całej historii transakcji konta jako NDJSON (jeden obiekt JSON na linię).
+     * Wiersze są zapisywane w miarę czytania kursora z bazy, więc pamięć nie zależy od długości historii.
+     */
+    @GetMapping(value = "/transactions/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(HttpServletRequest request) {
+        Long accountId;
+        try {
+            accountId = requireAccountId(request);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(401).build();
+        }
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            payments.streamTransactionsByAccountId(accountId, row -> {
+                try {
+                    writer.write(objectMapper.writeValueAsString(row));
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
+    }
+
     /**
      * Pobiera statystyki dla danego konta użytkownika (totalSpent, totalTopUps, totalTransactions)
      */
@@ -83,8 +141,9 @@ public class PaymentController {
         // Check if this is an internal call (from parking-service) - if so, use accountId from request body
         Long accountId;
         String internalToken = request.getHeader("X-Internal-Token");
-        if (internalToken != null && !internalToken.isBlank() && 
-            internalToken.equals(System.getenv("INTERNAL_SERVICE_TOKEN"))) {
+        boolean internalCall = internalToken != null && !internalToken.isBlank() &&
+            internalToken.equals(System.getenv("INTERNAL_SERVICE_TOKEN"));
+        if (internalCall) {
             // Internal call - use accountId from request body
             if (req.getAccountId() != null) {
                 accountId = req.getAccountId();
@@ -96,12 +155,34 @@ public class PaymentController {
             accountId = requireAccountId(request);
         }
         
+        String idempotencyKey = req.getIdempotencyKey();
+        if (idempotencyKey != null && idempotencyKey.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        // Klucze serwisowe (session-<id>-parking, -penalty) przyjmujemy tylko z tokenem wewnętrznym. Klucz użytkownika
+        // dostaje prefiks jego konta, więc nie może zająć klucza, którym parking-service rozliczy cudzą sesję
+        if (idempotencyKey != null && !internalCall) {
+            idempotencyKey = "account-" + accountId + ":" + idempotencyKey;
+        }
+        if (idempotencyKey != null && idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            return ResponseEntity.badRequest().build();
+        }
+
         // Note: req.getUserId() is ignored for security - accountId comes from JWT token or internal token
-        com.smartparking.payment_service.dto.PaymentResult result = payments.chargeFromWallet(
-                accountId, 
-                req.getSessionId() != null ? req.getSessionId() : 0L, 
-                req.getAmount(), 
-                req.getCurrency() != null ? req.getCurrency() : "PLN");
+        com.smartparking.payment_service.dto.PaymentResult result = idempotencyKey != null
+                ? payments.chargeFromWallet(
+                        accountId,
+                        req.getSessionId() != null ? req.getSessionId() : 0L,
+                        req.getParkingId(),
+                        req.getAmount(),
+                        req.getCurrency() != null ? req.getCurrency() : "PLN",
+                        idempotencyKey)
+                : payments.chargeFromWallet(
+                        accountId, 
+                        req.getSessionId() != null ? req.getSessionId() : 0L, 
+                        req.getParkingId(),
+                        req.getAmount(), 
+                        req.getCurrency() != null ? req.getCurrency() : "PLN");
         
         PaymentStatus status = mapStatus(result.getStatus());
         PaymentDto dto = new PaymentDto(result.getPaymentId(), accountId, req.getAmount(), status, Instant.now(), "WALLET");
@@ -187,7 +268,7 @@ public class PaymentController {
         // Convert amount to minor units (amount is in main units like PLN)
         Long amountMinor = req.getAmount().multiply(new java.math.BigDecimal(100)).longValue();
         
-        com.smartparking.payment_service.dto.PaymentResult result = payments.chargeReservationFee(accountId, amountMinor);
+        com.smartparking.payment_service.dto.PaymentResult result = payments.chargeReservationFee(accountId, req.getParkingId(), amountMinor);
         
         PaymentStatus status = mapStatus(result.getStatus());
         PaymentDto dto = new PaymentDto(result.getPaymentId(), accountId, req.getAmount(), status, Instant.now(), "WALLET");
@@ -263,9 +344,21 @@ public class PaymentController {
         
         String paymentMethod = body.getOrDefault("paymentMethod", "cash").toString();
         
+        Long parkingId = null;
+        Object parkingIdObj = body.get("parkingId");
+        if (parkingIdObj instanceof Number) {
+            parkingId = ((Number) parkingIdObj).longValue();
+        } else if (parkingIdObj != null) {
+            try {
+                parkingId = Long.parseLong(parkingIdObj.toString());
+            } catch (NumberFormatException e) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Invalid parkingId format: " + parkingIdObj));
+            }
+        }
+        
         try {
             com.smartparking.payment_service.dto.PaymentResult result = 
-                payments.payForUnregisteredSession(sessionId, amountMinor, paymentMethod);
+                payments.payForUnregisteredSession(sessionId, amountMinor, parkingId, paymentMethod);
             
             return ResponseEntity.ok(Map.of(
                 "paymentId", result.getPaymentId(),
@@ -310,4 +403,62 @@ public class PaymentController {
         java.util.List<java.util.Map<String, Object>> paymentData = payments.getPaymentsBySessionIds(sessionIds);
         return ResponseEntity.ok(paymentData);
     }
+
+    /**
+     * Raporty finansowe per parking - agregacja po stronie payment-service.
+     * Used by admin-service and worker-service instead of /by-sessions
+     *
+     * GET /payment/reports/summary?parkingIds=1,2&startDate=...&endDate=...
+     * Returns: {totalRevenue, parkingUsage, pendingPayments, reservationFees,
+     *           totalTransactions, avgTransactionValue, revenueGrowth}
+     */
+    @GetMapping("/reports/summary")
+    public ResponseEntity<Map<String, Object>> getReportSummary(
+            @RequestParam List<Long> parkingIds,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+        return ResponseEntity.ok(payments.getParkingReportSummary(parkingIds, startDate, endDate));
+    }
+
+    /**
+     * GET /payment/reports/revenue-over-time?parkingIds=...&startDate=...&endDate=...&bucket=day|week|month
+     * Returns: List of {bucketStart, totalRevenue, parkingUsage, transactionCount}
+     */
+    @GetMapping("/reports/revenue-over-time")
+    public ResponseEntity<List<Map<String, Object>>> getReportRevenueOverTime(
+            @RequestParam List<Long> parkingIds,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = "day") String bucket) {
+        return ResponseEntity.ok(payments.getParkingRevenueByBucket(parkingIds, startDate, endDate, bucket));
+    }
+
+    /**
+     * GET /payment/reports/revenue-by-parking?parkingIds=...&startDate=...&endDate=...
+     * Returns: List of {parkingId, revenue, transactionCount}
+     */
+    @GetMapping("/reports/revenue-by-parking")
+    public ResponseEntity<List<Map<String, Object>>> getReportRevenueByParking(
+            @RequestParam List<Long> parkingIds,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
+        return ResponseEntity.ok(payments.getRevenueByParking(parkingIds, startDate, endDate));
+    }
+
+    /**
+     * GET /payment/reports/transactions?parkingIds=...&startDate=...&endDate=...&status=all&limit=100
+     * Returns: List of payment objects (newest first)
+     */
+    @GetMapping("/reports/transactions")
+    public ResponseEntity<?> getReportTransactions(
+            @RequestParam List<Long> parkingIds,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(required = false) String status,
+            @RequestParam(defaultValue = "100") int limit) {
+        if (limit <= 0 || limit > 1000) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be between 1 and 1000"));
+        }
+        return ResponseEntity.ok(payments.getParkingTransactions(parkingIds, startDate, endDate, status, limit));
+    }
 }
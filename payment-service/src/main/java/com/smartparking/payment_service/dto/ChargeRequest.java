@@ -6,8 +6,10 @@ public class ChargeRequest {
     private Long userId;
     private Long accountId; // For internal calls from parking-service
     private Long sessionId;
+    private Long parkingId; // Parking sesji - do raportów finansowych per parking
     private BigDecimal amount;
     private String currency;
+    private String idempotencyKey; // np. "session-12-penalty" - ponowione żądanie nie pobiera opłaty drugi raz
 
     public Long getUserId() { return userId; }
     public void setUserId(Long userId) { this.userId = userId; }
@@ -15,9 +17,13 @@ public class ChargeRequest {
     public void setAccountId(Long accountId) { this.accountId = accountId; }
     public Long getSessionId() { return sessionId; }
     public void setSessionId(Long sessionId) { this.sessionId = sessionId; }
+    public Long getParkingId() { return parkingId; }
+    public void setParkingId(Long parkingId) { this.parkingId = parkingId; }
     public BigDecimal getAmount() { return amount; }
     public void setAmount(BigDecimal amount) { this.amount = amount; }
     public String getCurrency() { return currency; }
     public void setCurrency(String currency) { this.currency = currency; }
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
 }
 
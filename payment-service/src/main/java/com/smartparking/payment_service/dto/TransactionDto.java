@@ -0,0 +1,26 @@
+package com.smartparking.payment_service.dto;
+
+/**
+ * Pozycja historii transakcji konta (/payment/transactions i eksport NDJSON),
+ * mapowana bezpośrednio z wiersza virtual_payment.
+ */
+public class TransactionDto {
+    public final long id;
+    public final double amount;      // w złotówkach
+    public final String currency;
+    public final String status;
+    public final String date;        // ISO, np. "2025-12-20T10:02:00"
+    public final String activity;    // 'deposit', 'reservation', 'parking'
+    public final long sessionId;
+
+    public TransactionDto(long id, double amount, String currency, String status, String date,
+                          String activity, long sessionId) {
+        this.id = id;
+        this.amount = amount;
+        this.currency = currency;
+        this.status = status;
+        this.date = date;
+        this.activity = activity;
+        this.sessionId = sessionId;
+    }
+}
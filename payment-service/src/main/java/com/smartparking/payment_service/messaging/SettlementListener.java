@@ -0,0 +1,64 @@
+package com.smartparking.payment_service.messaging;
+
+import com.smartparking.payment_service.config.PaymentAmqpConfig;
+import com.smartparking.payment_service.dto.PaymentResult;
+import com.smartparking.payment_service.dto.SettlementCommand;
+import com.smartparking.payment_service.dto.SettlementResult;
+import com.smartparking.payment_service.service.PaymentService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Obciąża portfel za zakończoną sesję na polecenie z parking-service i odsyła wynik.
+ *
+ * Obciążenie idzie z kluczem idempotencji z polecenia, więc powtórzone polecenie (resync sesji
+ * czekających na rozliczenie w parking-service) zwraca istniejącą płatność zamiast pobierać drugi raz.
+ * Brak portfela, brak środków i odrzucone obciążenie dają Failed (sesja Unpaid), Pending tylko nieznany wynik.
+ * Błąd nie wraca do kolejki - sesja zostaje w statusie Settling i parking-service wyśle polecenie ponownie
+ * (z limitem prób, po którym sesja i tak przechodzi do Unpaid).
+ */
+@Component
+public class SettlementListener {
+    private static final Logger log = LoggerFactory.getLogger(SettlementListener.class);
+
+    private final PaymentService payments;
+    private final RabbitTemplate rabbitTemplate;
+
+    public SettlementListener(PaymentService payments, RabbitTemplate rabbitTemplate) {
+        this.payments = payments;
+        this.rabbitTemplate = rabbitTemplate;
+    }
+
+    @RabbitListener(queues = PaymentAmqpConfig.SETTLEMENT_QUEUE)
+    public void handleSettlement(SettlementCommand command) {
+        try {
+            PaymentResult result = payments.settleParkingSession(
+                    command.getAccountId(),
+                    command.getSessionId(),
+                    command.getParkingId(),
+                    command.getAmountMinor(),
+                    command.getIdempotencyKey());
+
+            SettlementResult reply = new SettlementResult();
+            reply.setSessionId(command.getSessionId());
+            reply.setPaymentId(result.getPaymentId());
+            reply.setStatus(result.getStatus());
+            reply.setRequestedAt(command.getRequestedAt());
+            reply.setSettledAt(Instant.now());
+            rabbitTemplate.convertAndSend(PaymentAmqpConfig.PAYMENT_EXCHANGE,
+                    PaymentAmqpConfig.SETTLEMENT_COMPLETED_ROUTING, reply);
+
+            log.info("Settled session {}: account={}, amount={}, payment={}, status={}",
+                    command.getSessionId(), command.getAccountId(), command.getAmountMinor(),
+                    result.getPaymentId(), result.getStatus());
+        } catch (Exception e) {
+            log.error("Failed to settle session {} - parking-service will resend: {}",
+                    command.getSessionId(), e.getMessage(), e);
+        }
+    }
+}
@@ -9,6 +9,7 @@ public class VirtualPayment {
     private LocalDateTime dateTransaction;
     private Long refAccountId;
     private Long refSessionId;
+    private Long refParkingId;
     private String activity;
 
     public Long getId() {return id;}
@@ -25,6 +26,8 @@ public class VirtualPayment {
     public void setRefAccountId(Long refAccountId) {this.refAccountId = refAccountId;}
     public Long getRefSessionId() {return refSessionId;}
     public void setRefSessionId(Long refSessionId) {this.refSessionId = refSessionId;}
+    public Long getRefParkingId() {return refParkingId;}
+    public void setRefParkingId(Long refParkingId) {this.refParkingId = refParkingId;}
     public String getActivity() {return activity;}
     public void setActivity(String activity) {this.activity = activity;}
 }
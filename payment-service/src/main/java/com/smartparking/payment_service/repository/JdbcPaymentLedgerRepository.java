@@ -0,0 +1,97 @@
+package com.smartparking.payment_service.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Repository
+public class JdbcPaymentLedgerRepository implements PaymentLedgerRepository {
+
+    // Klucz blokady doradczej foldSnapshots (wspólny dla wszystkich replik payment-service)
+    private static final long FOLD_LOCK_KEY = 0x5041594C45444752L;
+
+    private final JdbcTemplate jdbc;
+
+    public JdbcPaymentLedgerRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public Map<String, Long> getAccountTotals(Long accountId) {
+        // Ogon czytany po idx_payment_ledger_account_entry - tylko wpisy od ostatniego złożenia migawki
+        return jdbc.queryForObject(
+                "SELECT COALESCE(s.spent_minor, 0) + COALESCE(t.spent_minor, 0) AS spent_minor, " +
+                        "COALESCE(s.topups_minor, 0) + COALESCE(t.topups_minor, 0) AS topups_minor, " +
+                        "COALESCE(s.paid_count, 0) + COALESCE(t.paid_count, 0) AS paid_count, " +
+                        "t.tail_entries " +
+                        "FROM (SELECT CAST(? AS integer) AS account_id) a " +
+                        "LEFT JOIN payment_ledger_snapshot s ON s.account_id = a.account_id " +
+                        "CROSS JOIN LATERAL (" +
+                        "  SELECT SUM(l.amount_minor) FILTER (WHERE l.activity IN ('parking', 'reservation')) AS spent_minor, " +
+                        "         SUM(l.amount_minor) FILTER (WHERE l.activity = 'deposit') AS topups_minor, " +
+                        "         SUM(l.paid_count_delta) AS paid_count, " +
+                        "         COUNT(*) AS tail_entries " +
+                        "  FROM payment_ledger l " +
+                        "  WHERE l.account_id = a.account_id AND l.entry_id > COALESCE(s.last_entry_id, 0)" +
+                        ") t",
+                (rs, rowNum) -> {
+                    Map<String, Long> totals = new HashMap<>();
+                    totals.put("spentMinor", rs.getLong("spent_minor"));
+                    totals.put("topUpsMinor", rs.getLong("topups_minor"));
+                    totals.put("paidCount", rs.getLong("paid_count"));
+                    totals.put("tailEntries", rs.getLong("tail_entries"));
+                    return totals;
+                },
+                accountId
+        );
+    }
+
+    @Override
+    @Transactional
+    public int foldSnapshots(int minAgeSeconds, int maxEntries) {
+        Boolean locked = jdbc.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, FOLD_LOCK_KEY);
+        if (!Boolean.TRUE.equals(locked)) {
+            return 0;
+        }
+        // Każde złożenie obejmuje wszystkie konta do wspólnej granicy, więc największe last_entry_id
+        // to granica poprzedniego złożenia. Konto bez nowych wpisów zachowuje swoje last_entry_id -
+        // wpisów tego konta między nim a granicą nie ma, więc ogon w getAccountTotals jest poprawny.
+        // Granica to największe entry_id wpisu starszego niż minAgeSeconds, ale najwyżej maxEntries wpisów
+        // za poprzednią granicą (LEAST pomija NULL).
+        // Wpis jeszcze niezatwierdzony jest niewidoczny, ale entry_id i created_at (clock_timestamp) dostaje przy
+        // wstawieniu - jest młody, więc młode są też wszystkie wpisy z wyższym entry_id i granica zatrzymuje się
+        // przed nim. Zakładamy, że transakcja dopisująca do księgi trwa krócej niż minAgeSeconds.
+        return jdbc.update(
+                "WITH prev AS (" +
+                        "  SELECT COALESCE(MAX(last_entry_id), 0) AS entry_id FROM payment_ledger_snapshot" +
+                        "), bound AS (" +
+                        "  SELECT COALESCE(LEAST(" +
+                        "    (SELECT entry_id FROM payment_ledger WHERE entry_id > (SELECT entry_id FROM prev) " +
+                        "     ORDER BY entry_id OFFSET ? LIMIT 1), " +
+                        "    (SELECT MAX(entry_id) FROM payment_ledger " +
+                        "     WHERE created_at < now() - make_interval(secs => ?))), 0) AS entry_id" +
+                        "), tail AS (" +
+                        "  SELECT account_id, " +
+                        "         COALESCE(SUM(amount_minor) FILTER (WHERE activity IN ('parking', 'reservation')), 0) AS spent_minor, " +
+                        "         COALESCE(SUM(amount_minor) FILTER (WHERE activity = 'deposit'), 0) AS topups_minor, " +
+                        "         SUM(paid_count_delta) AS paid_count " +
+                        "  FROM payment_ledger " +
+                        "  WHERE entry_id > (SELECT entry_id FROM prev) AND entry_id <= (SELECT entry_id FROM bound) " +
+                        "  GROUP BY account_id" +
+                        ") " +
+                        "INSERT INTO payment_ledger_snapshot(account_id, last_entry_id, spent_minor, topups_minor, paid_count, updated_at) " +
+                        "SELECT account_id, (SELECT entry_id FROM bound), spent_minor, topups_minor, paid_count, now() FROM tail " +
+                        "ON CONFLICT (account_id) DO UPDATE SET " +
+                        "last_entry_id = EXCLUDED.last_entry_id, " +
+                        "spent_minor = payment_ledger_snapshot.spent_minor + EXCLUDED.spent_minor, " +
+                        "topups_minor = payment_ledger_snapshot.topups_minor + EXCLUDED.topups_minor, " +
+                        "paid_count = payment_ledger_snapshot.paid_count + EXCLUDED.paid_count, " +
+                        "updated_at = EXCLUDED.updated_at",
+                maxEntries - 1,
+                minAgeSeconds
+        );
+    }
+}
@@ -1,18 +1,23 @@
 package com.smartparking.payment_service.repository;
 
+import com.smartparking.payment_service.dto.TransactionDto;
 import com.smartparking.payment_service.model.VirtualPayment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Repository
 public class JdbcVirtualPaymentRepository implements VirtualPaymentRepository {
@@ -44,6 +49,8 @@ public class JdbcVirtualPaymentRepository implements VirtualPaymentRepository {
                 p.setRefAccountId(null);
             }
             p.setRefSessionId(rs.getLong("ref_session_id"));
+            Object parkingIdObj = rs.getObject("ref_parking_id");
+            p.setRefParkingId(parkingIdObj != null ? rs.getLong("ref_parking_id") : null);
             p.setActivity(rs.getString("activity"));
             return p;
         }
@@ -77,8 +84,8 @@ public class JdbcVirtualPaymentRepository implements VirtualPaymentRepository {
                 Long id = jdbc.queryForObject(
                         "INSERT INTO virtual_payment(" +
                                 "amount_minor, currency_code, status_paid, date_transaction, " +
-                                "ref_account_id, ref_session_id, activity" +
-                                ") VALUES (?, ?, CAST(? AS public.status_paid), ?, ?, ?, CAST(? AS public.activity_type)) RETURNING payment_id",
+                                "ref_account_id, ref_session_id, ref_parking_id, activity" +
+                                ") VALUES (?, ?, CAST(? AS public.status_paid), ?, ?, ?, ?, CAST(? AS public.activity_type)) RETURNING payment_id",
                         Long.class,
                         payment.getAmountMinor(),
                         payment.getCurrencyCode(),
@@ -86,6 +93,7 @@ public class JdbcVirtualPaymentRepository implements VirtualPaymentRepository {
                         Timestamp.valueOf(payment.getDateTransaction()),
                         payment.getRefAccountId() != null ? payment.getRefAccountId() : null,
                         payment.getRefSessionId(),
+                        payment.getRefParkingId(),
                         payment.getActivity()
                 );
 
@@ -103,8 +111,8 @@ public class JdbcVirtualPaymentRepository implements VirtualPaymentRepository {
                     Long id = jdbc.queryForObject(
                             "INSERT INTO virtual_payment(" +
                                     "amount_minor, currency_code, status_paid, date_transaction, " +
-                                    "ref_account_id, ref_session_id, activity" +
-                                    ") VALUES (?, ?, CAST(? AS public.status_paid), ?, ?, ?, CAST(? AS public.activity_type)) RETURNING payment_id",
+                                    "ref_account_id, ref_session_id, ref_parking_id, activity" +
+                                    ") VALUES (?, ?, CAST(? AS public.status_paid), ?, ?, ?, ?, CAST(? AS public.activity_type)) RETURNING payment_id",
                             Long.class,
                             payment.getAmountMinor(),
                             payment.getCurrencyCode(),
@@ -112,6 +120,7 @@ public class JdbcVirtualPaymentRepository implements VirtualPaymentRepository {
                             Timestamp.valueOf(payment.getDateTransaction()),
                             payment.getRefAccountId() != null ? payment.getRefAccountId() : null,
                             payment.getRefSessionId(),
+                            payment.getRefParkingId(),
                             payment.getActivity()
                     );
                     payment.setId(id);
@@ -126,7 +135,7 @@ public class JdbcVirtualPaymentRepository implements VirtualPaymentRepository {
             jdbc.update(
                     "UPDATE virtual_payment SET " +
                             "amount_minor = ?, currency_code = ?, status_paid = CAST(? AS public.status_paid), date_transaction = ?, " +
-                            "ref_account_id = ?, ref_session_id = ?, activity = CAST(? AS public.activity_type) " +
+                            "ref_account_id = ?, ref_session_id = ?, ref_parking_id = ?, activity = CAST(? AS public.activity_type) " +
                             "WHERE payment_id = ?",
                     payment.getAmountMinor(),
                     payment.getCurrencyCode(),
@@ -134,6 +143,7 @@ public class JdbcVirtualPaymentRepository implements VirtualPaymentRepository {
                     Timestamp.valueOf(payment.getDateTransaction()),
                     payment.getRefAccountId() != null ? payment.getRefAccountId() : null,
                     payment.getRefSessionId(),
+                    payment.getRefParkingId(),
                     payment.getActivity(),
                     payment.getId()
             );
@@ -142,6 +152,50 @@ public class JdbcVirtualPaymentRepository implements VirtualPaymentRepository {
     }
 
 
+    @Override
+    public Optional<VirtualPayment> findByIdempotencyKey(String idempotencyKey) {
+        var list = jdbc.query(
+                "SELECT * FROM virtual_payment WHERE idempotency_key = ?",
+                mapper,
+                idempotencyKey
+        );
+        return list.stream().findFirst();
+    }
+
+    /**
+     * ON CONFLICT na częściowym indeksie unikalnym idempotency_key - konflikt klucza nie jest błędem,
+     * więc nie trafia do naprawy sekwencji z save(). Konflikt payment_id (sekwencja) nadal rzuca DuplicateKeyException.
+     */
+    @Override
+    public Optional<Long> insertIfKeyAbsent(VirtualPayment payment, String idempotencyKey) {
+        if (payment.getDateTransaction() == null)
+            payment.setDateTransaction(LocalDateTime.now());
+
+        List<Long> ids = jdbc.queryForList(
+                "INSERT INTO virtual_payment(" +
+                        "amount_minor, currency_code, status_paid, date_transaction, " +
+                        "ref_account_id, ref_session_id, ref_parking_id, activity, idempotency_key" +
+                        ") VALUES (?, ?, CAST(? AS public.status_paid), ?, ?, ?, ?, CAST(? AS public.activity_type), ?) " +
+                        "ON CONFLICT (idempotency_key) WHERE idempotency_key IS NOT NULL DO NOTHING " +
+                        "RETURNING payment_id",
+                Long.class,
+                payment.getAmountMinor(),
+                payment.getCurrencyCode(),
+                payment.getStatusPaid(),
+                Timestamp.valueOf(payment.getDateTransaction()),
+                payment.getRefAccountId(),
+                payment.getRefSessionId(),
+                payment.getRefParkingId(),
+                payment.getActivity(),
+                idempotencyKey
+        );
+        if (ids.isEmpty()) {
+            return Optional.empty();
+        }
+        payment.setId(ids.get(0));
+        return Optional.of(ids.get(0));
+    }
+
     @Override
     public List<VirtualPayment> findByAccountId(Long accountId) {
         return jdbc.query(
@@ -151,6 +205,82 @@ public class JdbcVirtualPaymentRepository implements VirtualPaymentRepository {
         );
     }
 
+    // Tylko kolumny historii transakcji - wiersz trafia od razu do TransactionDto, bez VirtualPayment i mapy
+    private static final String TRANSACTION_COLUMNS =
+            "SELECT payment_id, amount_minor, currency_code, status_paid, date_transaction, activity, ref_session_id " +
+                    "FROM virtual_payment ";
+
+    private final RowMapper<TransactionDto> transactionMapper = (rs, rowNum) -> {
+        Timestamp ts = rs.getTimestamp("date_transaction");
+        return new TransactionDto(
+                rs.getLong("payment_id"),
+                rs.getInt("amount_minor") / 100.0, // Konwersja z groszy na złotówki
+                rs.getString("currency_code"),
+                rs.getString("status_paid"),
+                (ts != null ? ts.toLocalDateTime() : LocalDateTime.now()).toString(),
+                rs.getString("activity"),
+                rs.getLong("ref_session_id"));
+    };
+
+    @Override
+    public List<TransactionDto> findTransactionPage(Long accountId, LocalDateTime afterDate, Long afterPaymentId, int limit) {
+        if (afterDate != null && afterPaymentId != null) {
+            return jdbc.query(
+                    TRANSACTION_COLUMNS + "WHERE ref_account_id = ? " +
+                            "AND (date_transaction, payment_id) < (?, ?) " +
+                            "ORDER BY date_transaction DESC, payment_id DESC LIMIT ?",
+                    transactionMapper,
+                    accountId, Timestamp.valueOf(afterDate), afterPaymentId, limit
+            );
+        }
+        return jdbc.query(
+                TRANSACTION_COLUMNS + "WHERE ref_account_id = ? " +
+                        "ORDER BY date_transaction DESC, payment_id DESC LIMIT ?",
+                transactionMapper,
+                accountId, limit
+        );
+    }
+
+    /**
+     * Sterownik PostgreSQL czyta wyniki partiami (fetchSize) tylko przy wyłączonym autocommit,
+     * stąd transakcja tylko do odczytu - bez niej cały wynik trafiłby do pamięci naraz.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void streamTransactions(Long accountId, int fetchSize, Consumer<TransactionDto> handler) {
+        jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    TRANSACTION_COLUMNS + "WHERE ref_account_id = ? " +
+                            "ORDER BY date_transaction DESC, payment_id DESC",
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setLong(1, accountId);
+            return ps;
+        }, (RowCallbackHandler) rs -> handler.accept(transactionMapper.mapRow(rs, rs.getRow())));
+    }
+
+    /**
+     * Jedno przejście po idx_virtual_payment_account_activity_status (index-only scan dzięki INCLUDE amount_minor)
+     */
+    @Override
+    public Map<String, Long> getAccountTotals(Long accountId) {
+        return jdbc.queryForObject(
+                "SELECT COALESCE(SUM(amount_minor) FILTER (WHERE activity IN ('parking', 'reservation')), 0) AS spent_minor, " +
+                        "COALESCE(SUM(amount_minor) FILTER (WHERE activity = 'deposit'), 0) AS topups_minor, " +
+                        "COUNT(*) AS paid_count " +
+                        "FROM virtual_payment " +
+                        "WHERE ref_account_id = ? AND status_paid = CAST('Paid' AS public.status_paid)",
+                (rs, rowNum) -> {
+                    Map<String, Long> totals = new HashMap<>();
+                    totals.put("spentMinor", rs.getLong("spent_minor"));
+                    totals.put("topUpsMinor", rs.getLong("topups_minor"));
+                    totals.put("paidCount", rs.getLong("paid_count"));
+                    return totals;
+                },
+                accountId
+        );
+    }
+
     @Override
     public List<VirtualPayment> findBySessionId(Long sessionId) {
         return jdbc.query(
@@ -238,13 +368,10 @@ public class JdbcVirtualPaymentRepository implements VirtualPaymentRepository {
             return new ArrayList<>();
         }
 
-        // Create placeholders for IN clause
-        String placeholders = String.join(",", Collections.nCopies(sessionIds.size(), "?"));
-
-        String sql = "SELECT * FROM virtual_payment WHERE ref_session_id IN (" + placeholders + ") " +
+        String sql = "SELECT * FROM virtual_payment WHERE ref_session_id = ANY(CAST(? AS bigint[])) " +
                 "ORDER BY date_transaction DESC";
 
-        return jdbc.query(sql, mapper, sessionIds.toArray());
+        return jdbc.query(sql, mapper, toArrayLiteral(sessionIds));
     }
 
     @Override
@@ -380,24 +507,194 @@ public class JdbcVirtualPaymentRepository implements VirtualPaymentRepository {
             return new ArrayList<>();
         }
 
-        String placeholders = String.join(",", Collections.nCopies(sessionIds.size(), "?"));
-
         String sql = "SELECT * FROM virtual_payment " +
-                "WHERE ref_session_id IN (" + placeholders + ") " +
+                "WHERE ref_session_id = ANY(CAST(? AS bigint[])) " +
                 "AND date_transaction BETWEEN ? AND ? " +
                 "ORDER BY date_transaction DESC";
 
-        List<Object> params = new ArrayList<>(sessionIds);
+        return jdbc.query(sql, mapper,
+                toArrayLiteral(sessionIds),
+                Timestamp.valueOf(startDate),
+                Timestamp.valueOf(endDate));
+    }
+
+    @Override
+    public Map<String, Object> getParkingReportSummary(
+            List<Long> parkingIds,
+            LocalDateTime previousStart,
+            LocalDateTime startDate,
+            LocalDateTime endDate) {
+
+        // Jeden skan indeksu (ref_parking_id, date_transaction) obejmuje okres bieżący i poprzedni
+        String sql = """
+        WITH scoped AS (
+            SELECT amount_minor, status_paid, activity,
+                   date_transaction >= ? AS current_period
+            FROM virtual_payment
+            WHERE ref_parking_id = ANY(CAST(? AS bigint[]))
+              AND date_transaction BETWEEN ? AND ?
+        )
+        SELECT
+            COALESCE(SUM(amount_minor) FILTER (WHERE current_period), 0) AS total_minor,
+            COALESCE(SUM(amount_minor) FILTER (WHERE current_period
+                AND status_paid = 'Paid' AND activity = 'parking'), 0) AS parking_minor,
+            COALESCE(SUM(amount_minor) FILTER (WHERE current_period
+                AND status_paid = 'Pending'), 0) AS pending_minor,
+            COALESCE(SUM(amount_minor) FILTER (WHERE current_period
+                AND status_paid = 'Paid' AND activity = 'reservation'), 0) AS reservation_minor,
+            COUNT(*) FILTER (WHERE current_period) AS transaction_count,
+            COALESCE(SUM(amount_minor) FILTER (WHERE NOT current_period), 0) AS previous_total_minor
+        FROM scoped
+        """;
+
+        return jdbc.queryForMap(sql,
+                Timestamp.valueOf(startDate),
+                toArrayLiteral(parkingIds),
+                Timestamp.valueOf(previousStart),
+                Timestamp.valueOf(endDate));
+    }
+
+    @Override
+    public List<Map<String, Object>> getParkingRevenueByBucket(
+            List<Long> parkingIds,
+            LocalDateTime startDate,
+            LocalDateTime endDate,
+            String bucket) {
+
+        String unit = switch (bucket == null ? "day" : bucket.toLowerCase()) {
+            case "week" -> "week";
+            case "month" -> "month";
+            default -> "day";
+        };
+
+        String sql = String.format("""
+        SELECT
+            DATE_TRUNC('%s', date_transaction) AS bucket_start,
+            COALESCE(SUM(amount_minor), 0) AS total_minor,
+            COALESCE(SUM(amount_minor) FILTER (WHERE status_paid = 'Paid' AND activity = 'parking'), 0) AS parking_minor,
+            COUNT(*) AS transaction_count
+        FROM virtual_payment
+        WHERE ref_parking_id = ANY(CAST(? AS bigint[]))
+          AND date_transaction BETWEEN ? AND ?
+        GROUP BY 1
+        ORDER BY 1
+        """, unit);
+
+        return jdbc.queryForList(sql,
+                toArrayLiteral(parkingIds),
+                Timestamp.valueOf(startDate),
+                Timestamp.valueOf(endDate));
+    }
+
+    @Override
+    public List<Map<String, Object>> getRevenueByParking(
+            List<Long> parkingIds,
+            LocalDateTime startDate,
+            LocalDateTime endDate) {
+
+        String sql = """
+        SELECT
+            ref_parking_id AS parking_id,
+            SUM(amount_minor) AS revenue_minor,
+            COUNT(*) AS transaction_count
+        FROM virtual_payment
+        WHERE ref_parking_id = ANY(CAST(? AS bigint[]))
+          AND status_paid = 'Paid'
+          AND date_transaction BETWEEN ? AND ?
+        GROUP BY ref_parking_id
+        ORDER BY revenue_minor DESC
+        """;
+
+        return jdbc.queryForList(sql,
+                toArrayLiteral(parkingIds),
+                Timestamp.valueOf(startDate),
+                Timestamp.valueOf(endDate));
+    }
+
+    @Override
+    public List<VirtualPayment> findByParkingIds(
+            List<Long> parkingIds,
+            LocalDateTime startDate,
+            LocalDateTime endDate,
+            String status,
+            int limit) {
+
+        List<Object> params = new ArrayList<>();
+        params.add(toArrayLiteral(parkingIds));
         params.add(Timestamp.valueOf(startDate));
         params.add(Timestamp.valueOf(endDate));
 
+        String sql = "SELECT * FROM virtual_payment " +
+                "WHERE ref_parking_id = ANY(CAST(? AS bigint[])) " +
+                "AND date_transaction BETWEEN ? AND ? ";
+        if (status != null) {
+            sql += "AND status_paid = CAST(? AS public.status_paid) ";
+            params.add(status);
+        }
+        sql += "ORDER BY date_transaction DESC LIMIT ?";
+        params.add(limit);
+
         return jdbc.query(sql, mapper, params.toArray());
     }
 
+    @Override
+    public List<Long> findSessionIdsWithoutParking(Long afterSessionId, int limit) {
+        return jdbc.queryForList(
+                "SELECT DISTINCT ref_session_id FROM virtual_payment " +
+                        "WHERE ref_parking_id IS NULL AND ref_session_id > ? " +
+                        "ORDER BY ref_session_id LIMIT ?",
+                Long.class,
+                afterSessionId != null ? afterSessionId : 0L,
+                limit
+        );
+    }
+
+    @Override
+    public int assignParkingIds(Map<Long, Long> parkingBySessionId) {
+        if (parkingBySessionId == null || parkingBySessionId.isEmpty()) {
+            return 0;
+        }
+        List<Object[]> args = new ArrayList<>();
+        parkingBySessionId.forEach((sessionId, parkingId) -> args.add(new Object[]{parkingId, sessionId}));
+
+        int[] counts = jdbc.batchUpdate(
+                "UPDATE virtual_payment SET ref_parking_id = ? " +
+                        "WHERE ref_session_id = ? AND ref_parking_id IS NULL",
+                args
+        );
+        return Arrays.stream(counts).filter(c -> c > 0).sum();
+    }
+
+    @Override
+    public int markParkingUnknown(List<Long> sessionIds) {
+        if (sessionIds == null || sessionIds.isEmpty()) {
+            return 0;
+        }
+        return jdbc.update(
+                "UPDATE virtual_payment SET ref_parking_id = 0 " +
+                        "WHERE ref_session_id = ANY(CAST(? AS bigint[])) AND ref_parking_id IS NULL",
+                toArrayLiteral(sessionIds)
+        );
+    }
+
 // ========================================
 // HELPER METHODS
 // ========================================
 
+    /**
+     * Literał tablicy Postgresa ("{1,2,3}") - jeden parametr zamiast IN (?,?,...) z placeholderem per element,
+     * więc długość listy nie jest ograniczona limitem parametrów bind
+     */
+    private String toArrayLiteral(List<Long> ids) {
+        StringJoiner joiner = new StringJoiner(",", "{", "}");
+        for (Long id : ids) {
+            if (id != null) {
+                joiner.add(id.toString());
+            }
+        }
+        return joiner.toString();
+    }
+
     /**
      * Create empty payment summary (fallback)
      */
@@ -0,0 +1,23 @@
+package com.smartparking.payment_service.repository;
+
+import java.util.Map;
+
+/**
+ * Księga opłaconych płatności (payment_ledger, dopisywana triggerem na virtual_payment)
+ * i migawki sum per konto (payment_ledger_snapshot).
+ */
+public interface PaymentLedgerRepository {
+
+    /**
+     * Sumy konta z migawki i wpisów księgi po niej
+     * @return spentMinor, topUpsMinor, paidCount oraz tailEntries (ile wpisów nie było jeszcze w migawce)
+     */
+    Map<String, Long> getAccountTotals(Long accountId);
+
+    /**
+     * Dolicza do migawek wpisy starsze niż minAgeSeconds, najwyżej maxEntries wpisów na wywołanie.
+     * Tylko jedna replika naraz - pozostałe od razu zwracają 0.
+     * @return liczba zaktualizowanych migawek
+     */
+    int foldSnapshots(int minAgeSeconds, int maxEntries);
+}
@@ -1,16 +1,43 @@
 package com.smartparking.payment_service.repository;
+import com.smartparking.payment_service.dto.TransactionDto;
 import com.smartparking.payment_service.model.VirtualPayment;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 public interface VirtualPaymentRepository {
     Optional<VirtualPayment> findById(Long id);
     List<VirtualPayment> findByAccountId(Long accountId);
+
+    /**
+     * Strona historii transakcji konta od najnowszych, stronicowana kluczem (date_transaction, payment_id).
+     * afterDate/afterPaymentId = ostatnia płatność poprzedniej strony (null = pierwsza strona)
+     */
+    List<TransactionDto> findTransactionPage(Long accountId, LocalDateTime afterDate, Long afterPaymentId, int limit);
+
+    /**
+     * Przekazuje całą historię transakcji konta do handlera w miarę czytania kursora JDBC (eksport)
+     */
+    void streamTransactions(Long accountId, int fetchSize, Consumer<TransactionDto> handler);
+
+    /**
+     * Sumy opłaconych płatności konta jednym zapytaniem z agregatami FILTER
+     * @return spentMinor (parking i rezerwacje), topUpsMinor (doładowania), paidCount
+     */
+    Map<String, Long> getAccountTotals(Long accountId);
     List<VirtualPayment> findBySessionId(Long sessionId);
     List<VirtualPayment> findAll();
     VirtualPayment save(VirtualPayment payment);
+
+    Optional<VirtualPayment> findByIdempotencyKey(String idempotencyKey);
+
+    /**
+     * Zapisuje nową płatność z kluczem idempotencji
+     * @return id płatności albo Optional.empty() gdy płatność z tym kluczem już istnieje
+     */
+    Optional<Long> insertIfKeyAbsent(VirtualPayment payment, String idempotencyKey);
     List<VirtualPayment> findByAccountIdAndActivity(Long accountId, String activity);
     List<VirtualPayment> findByAccountIdAndDateRange(Long accountId, LocalDateTime from, LocalDateTime to);
     Long sumByAccountId(Long accountId);                              // suma płatności klienta
@@ -57,4 +84,67 @@ public interface VirtualPaymentRepository {
             LocalDateTime endDate
     );
 
+    // RAPORTY PER PARKING (ref_parking_id)
+    /**
+     * Sumy i liczniki płatności dla listy parkingów w zakresie dat, agregowane w SQL.
+     * previousStart wyznacza poprzedni okres o tej samej długości (do revenueGrowth).
+     * Zwraca kwoty w groszach: total_minor, parking_minor, pending_minor, reservation_minor,
+     * transaction_count, previous_total_minor
+     */
+    Map<String, Object> getParkingReportSummary(
+            List<Long> parkingIds,
+            LocalDateTime previousStart,
+            LocalDateTime startDate,
+            LocalDateTime endDate
+    );
+
+    /**
+     * Przychód w kubełkach czasowych (bucket: "day", "week", "month")
+     * Zwraca: List of {bucket_start, total_minor, parking_minor, transaction_count}
+     */
+    List<Map<String, Object>> getParkingRevenueByBucket(
+            List<Long> parkingIds,
+            LocalDateTime startDate,
+            LocalDateTime endDate,
+            String bucket
+    );
+
+    /**
+     * Przychód z opłaconych płatności per parking
+     * Zwraca: List of {parking_id, revenue_minor, transaction_count}, malejąco po przychodzie
+     */
+    List<Map<String, Object>> getRevenueByParking(
+            List<Long> parkingIds,
+            LocalDateTime startDate,
+            LocalDateTime endDate
+    );
+
+    /**
+     * Najnowsze płatności dla listy parkingów (status == null oznacza wszystkie)
+     */
+    List<VirtualPayment> findByParkingIds(
+            List<Long> parkingIds,
+            LocalDateTime startDate,
+            LocalDateTime endDate,
+            String status,
+            int limit
+    );
+
+    /**
+     * session_id płatności bez przypisanego parkingu (rosnąco, od afterSessionId) - do uzupełnienia ref_parking_id
+     */
+    List<Long> findSessionIdsWithoutParking(Long afterSessionId, int limit);
+
+    /**
+     * Ustawia ref_parking_id płatnościom sesji z mapy sessionId -> parkingId
+     * @return liczba zaktualizowanych płatności
+     */
+    int assignParkingIds(Map<Long, Long> parkingBySessionId);
+
+    /**
+     * Oznacza płatności sesji nieznanych parking-service (ref_parking_id = 0), żeby uzupełnianie ich nie ponawiało
+     * @return liczba oznaczonych płatności
+     */
+    int markParkingUnknown(List<Long> sessionIds);
+
 }
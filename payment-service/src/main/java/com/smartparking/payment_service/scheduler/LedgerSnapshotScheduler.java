@@ -0,0 +1,49 @@
+package com.smartparking.payment_service.scheduler;
+
+import com.smartparking.payment_service.repository.PaymentLedgerRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Składa nowe wpisy payment_ledger w migawki sum per konto (payment_ledger_snapshot).
+ *
+ * Statystyki konta czytają migawkę i wpisy po niej, więc koszt zapytania zależy od długości ogona
+ * (wpisy z ostatnich kilku minut), a nie od liczby płatności w całej historii konta.
+ * Składane są tylko wpisy starsze niż MIN_ENTRY_AGE_SECONDS, paczkami po BATCH_SIZE - transakcja dopisująca
+ * do księgi musi trwać krócej, inaczej jej wpis mógłby znaleźć się za granicą złożenia.
+ */
+@Component
+public class LedgerSnapshotScheduler {
+    private static final Logger log = LoggerFactory.getLogger(LedgerSnapshotScheduler.class);
+    private static final int BATCH_SIZE = 50_000;
+    private static final int MIN_ENTRY_AGE_SECONDS = 60;
+    // Jeden przebieg nie blokuje harmonogramu na długo przy dużym zaległym ogonie (np. po migracji)
+    private static final int MAX_BATCHES_PER_RUN = 20;
+
+    private final PaymentLedgerRepository ledger;
+
+    public LedgerSnapshotScheduler(PaymentLedgerRepository ledger) {
+        this.ledger = ledger;
+    }
+
+    @Scheduled(fixedDelay = 120000, initialDelay = 20000) // co 2 minuty
+    public void fold() {
+        int updated = 0;
+        try {
+            for (int i = 0; i < MAX_BATCHES_PER_RUN; i++) {
+                int accounts = ledger.foldSnapshots(MIN_ENTRY_AGE_SECONDS, BATCH_SIZE);
+                if (accounts == 0) {
+                    break;
+                }
+                updated += accounts;
+            }
+        } catch (Exception e) {
+            log.warn("Payment ledger snapshot fold failed: {}", e.getMessage());
+        }
+        if (updated > 0) {
+            log.info("Folded payment ledger into {} account snapshots", updated);
+        }
+    }
+}
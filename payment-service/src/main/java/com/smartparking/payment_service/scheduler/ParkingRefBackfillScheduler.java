@@ -0,0 +1,63 @@
+package com.smartparking.payment_service.scheduler;
+
+import com.smartparking.payment_service.client.ParkingSessionClient;
+import com.smartparking.payment_service.repository.VirtualPaymentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uzupełnia virtual_payment.ref_parking_id dla płatności zapisanych bez parkingu
+ * (historia sprzed migracji oraz wywołania, które nie przekazały parkingId).
+ *
+ * Raporty finansowe filtrują po ref_parking_id, więc płatność bez parkingu nie trafia do raportu,
+ * dopóki ten job jej nie uzupełni. Sesje są pobierane paczkami po session_id, żeby jedno
+ * zapytanie do parking-service nigdy nie niosło całej historii.
+ *
+ * Sesja, której parking-service nie zna, dostaje ref_parking_id = 0 - kolejne przebiegi widzą więc tylko nowe
+ * płatności bez parkingu, zamiast co 10 minut pytać od początku o te same osierocone wiersze.
+ */
+@Component
+public class ParkingRefBackfillScheduler {
+    private static final Logger log = LoggerFactory.getLogger(ParkingRefBackfillScheduler.class);
+    private static final int BATCH_SIZE = 500;
+
+    private final VirtualPaymentRepository payments;
+    private final ParkingSessionClient parkingClient;
+
+    public ParkingRefBackfillScheduler(VirtualPaymentRepository payments, ParkingSessionClient parkingClient) {
+        this.payments = payments;
+        this.parkingClient = parkingClient;
+    }
+
+    @Scheduled(fixedDelay = 600000, initialDelay = 30000) // co 10 minut
+    public void backfill() {
+        long afterSessionId = 0L;
+        int updated = 0;
+        int unknown = 0;
+        try {
+            while (true) {
+                List<Long> sessionIds = payments.findSessionIdsWithoutParking(afterSessionId, BATCH_SIZE);
+                if (sessionIds.isEmpty()) {
+                    break;
+                }
+                Map<Long, Long> parkingBySession = parkingClient.getParkingIdsBySessionIds(sessionIds);
+                updated += payments.assignParkingIds(parkingBySession);
+                List<Long> unresolved = new ArrayList<>(sessionIds);
+                unresolved.removeAll(parkingBySession.keySet());
+                unknown += payments.markParkingUnknown(unresolved);
+                afterSessionId = sessionIds.get(sessionIds.size() - 1);
+            }
+        } catch (Exception e) {
+            log.warn("Payment parking backfill interrupted after session_id={}: {}", afterSessionId, e.getMessage());
+        }
+        if (updated > 0 || unknown > 0) {
+            log.info("Assigned ref_parking_id to {} payments, {} payments marked with unknown parking", updated, unknown);
+        }
+    }
+}
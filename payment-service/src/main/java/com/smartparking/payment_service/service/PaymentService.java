@@ -1,9 +1,14 @@
 package com.smartparking.payment_service.service;
 
 import com.smartparking.payment_service.dto.PaymentResult;
+import com.smartparking.payment_service.dto.TransactionDto;
 import com.smartparking.payment_service.model.VirtualPayment;
+import com.smartparking.payment_service.repository.PaymentLedgerRepository;
 import com.smartparking.payment_service.repository.VirtualPaymentRepository;
 import com.smartparking.payment_service.client.CustomerWalletClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
@@ -11,99 +16,176 @@ import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 @Service
 public class PaymentService {
+    private static final Logger log = LoggerFactory.getLogger(PaymentService.class);
+    private static final int EXPORT_FETCH_SIZE = 500;
+    // Próby operacji na portfelu przy nieznanym wyniku (ponowienie z tym samym kluczem idempotencji)
+    private static final int WALLET_OPERATION_ATTEMPTS = 2;
+
     private final VirtualPaymentRepository payments;
     private final CustomerWalletClient walletClient;
-    public PaymentService(VirtualPaymentRepository payments, CustomerWalletClient walletClient) {
+    private final PaymentLedgerRepository ledger;
+    public PaymentService(VirtualPaymentRepository payments, CustomerWalletClient walletClient,
+                          PaymentLedgerRepository ledger) {
         this.payments = payments;
         this.walletClient = walletClient;
+        this.ledger = ledger;
     }
 
     public PaymentResult chargeFromWallet(Long accountId, Long sessionId, BigDecimal amount, String currency) {
+        return chargeFromWallet(accountId, sessionId, null, amount, currency);
+    }
+
+    /**
+     * Obciąża portfel i zapisuje płatność z parkingiem sesji (ref_parking_id) - potrzebnym raportom finansowym
+     * @param parkingId ID parkingu sesji; null gdy wywołujący go nie zna (uzupełni go backfill)
+     */
+    public PaymentResult chargeFromWallet(Long accountId, Long sessionId, Long parkingId, BigDecimal amount, String currency) {
+        return chargeFromWallet(accountId, sessionId, parkingId, amount, currency, newOperationKey());
+    }
+
+    /**
+     * Obciążenie idempotentne: klucz jest zapisywany w virtual_payment.idempotency_key (unikalny) i używany
+     * jako klucz operacji na portfelu. Ponowienie z tym samym kluczem zwraca istniejącą płatność;
+     * płatność, która nie została opłacona (Pending, Failed), jest ponawiana z tym samym kluczem.
+     * @param idempotencyKey klucz obciążenia - np. "session-12-penalty" od parking-service
+     */
+    public PaymentResult chargeFromWallet(Long accountId, Long sessionId, Long parkingId, BigDecimal amount, String currency,
+                                          String idempotencyKey) {
+        return chargeFromWallet(accountId, sessionId, parkingId, amount, currency, idempotencyKey, "Pending");
+    }
+
+    /**
+     * @param missingWalletStatus status płatności, gdy konto nie ma portfela ("Pending" albo "Failed")
+     */
+    private PaymentResult chargeFromWallet(Long accountId, Long sessionId, Long parkingId, BigDecimal amount, String currency,
+                                           String idempotencyKey, String missingWalletStatus) {
         // Convert amount to minor units (grosze) - amount is in main units (PLN)
         BigDecimal amountMinorDecimal = amount.multiply(new BigDecimal(100));
         if (amountMinorDecimal.compareTo(new BigDecimal(Integer.MAX_VALUE)) > 0) {
             // Amount exceeds Integer.MAX_VALUE - create failed payment (amount too large)
-            VirtualPayment payment = createPaymentEntity(accountId, sessionId, 0, currency, "Failed");
+            VirtualPayment payment = createChargeEntity(accountId, sessionId, parkingId, 0, currency, "Failed");
             VirtualPayment saved = payments.save(payment);
             return new PaymentResult(saved.getId(), "Failed");
         }
         int amountMinor = amountMinorDecimal.intValue();
 
-        Optional<Map<String, Object>> walletOpt;
-        try {
-            walletOpt = walletClient.getWallet(accountId);
-        } catch (Exception e) {
-            // Error getting wallet - create pending payment
-            VirtualPayment payment = createPaymentEntity(accountId, sessionId, amountMinor, currency, "Pending");
-            VirtualPayment saved = payments.save(payment);
-            return new PaymentResult(saved.getId(), "Pending");
+        Optional<VirtualPayment> existing = payments.findByIdempotencyKey(idempotencyKey);
+        if (existing.isPresent()) {
+            return retryCharge(existing.get(), accountId, amountMinor, idempotencyKey, missingWalletStatus);
         }
 
-        if (walletOpt.isEmpty()) {
-            // No wallet; treat as pending external
-            VirtualPayment payment = createPaymentEntity(accountId, sessionId, amountMinor, currency, "Pending");
-            VirtualPayment saved = payments.save(payment);
-            return new PaymentResult(saved.getId(), "Pending");
+        String status = debitWallet(accountId, amountMinor, idempotencyKey, missingWalletStatus);
+        VirtualPayment payment = createChargeEntity(accountId, sessionId, parkingId, amountMinor, currency, status);
+        Optional<Long> id = payments.insertIfKeyAbsent(payment, idempotencyKey);
+        if (id.isPresent()) {
+            return new PaymentResult(id.get(), status);
         }
 
-        Map<String, Object> wallet = walletOpt.get();
-        // balance_minor is stored as integer minor units in DB; map might contain Integer/Long or String
-        Object balanceMinorObj = wallet.get("balance_minor");
-        if (balanceMinorObj == null) {
-            // No balance field - treat as insufficient funds
-            VirtualPayment payment = createPaymentEntity(accountId, sessionId, amountMinor, currency, "Failed");
-            VirtualPayment saved = payments.save(payment);
-            return new PaymentResult(saved.getId(), "Failed");
+        // Równoległe żądanie z tym samym kluczem zapisało płatność pierwsze - portfel obciążył tylko raz
+        VirtualPayment winner = payments.findByIdempotencyKey(idempotencyKey)
+            .orElseThrow(() -> new IllegalStateException("Payment with idempotency key vanished: " + idempotencyKey));
+        if ("Paid".equals(status) && !"Paid".equals(winner.getStatusPaid())) {
+            winner.setStatusPaid("Paid");
+            payments.save(winner);
         }
+        log.info("Concurrent charge with idempotency key {} - returning payment {}", idempotencyKey, winner.getId());
+        return new PaymentResult(winner.getId(), winner.getStatusPaid());
+    }
 
-        BigDecimal balanceMinor;
-        try {
-            balanceMinor = new BigDecimal(balanceMinorObj.toString());
-        } catch (Exception e) {
-            // Invalid balance format - create failed payment
-            VirtualPayment payment = createPaymentEntity(accountId, sessionId, amountMinor, currency, "Failed");
-            VirtualPayment saved = payments.save(payment);
-            return new PaymentResult(saved.getId(), "Failed");
+    /**
+     * Ponowienie obciążenia z kluczem, dla którego płatność już istnieje.
+     */
+    private PaymentResult retryCharge(VirtualPayment payment, Long accountId, int amountMinor, String idempotencyKey,
+                                      String missingWalletStatus) {
+        if ("Paid".equals(payment.getStatusPaid())) {
+            log.info("Charge with idempotency key {} already paid - payment {}", idempotencyKey, payment.getId());
+            return new PaymentResult(payment.getId(), "Paid");
         }
+        if (!Objects.equals(payment.getRefAccountId(), accountId) || payment.getAmountMinor() != amountMinor) {
+            // Ten sam klucz, inne obciążenie - nie pobieraj i nie nadpisuj istniejącej płatności
+            log.warn("Idempotency key {} reused for a different charge: payment {} (account={}, amount={}), request (account={}, amount={})",
+                idempotencyKey, payment.getId(), payment.getRefAccountId(), payment.getAmountMinor(), accountId, amountMinor);
+            return new PaymentResult(payment.getId(), "Failed");
+        }
+        String status = debitWallet(accountId, amountMinor, idempotencyKey, missingWalletStatus);
+        if (!status.equals(payment.getStatusPaid())) {
+            payment.setStatusPaid(status);
+            payment.setDateTransaction(LocalDateTime.now());
+            payments.save(payment);
+        }
+        log.info("Retried charge with idempotency key {}: payment {}, status={}", idempotencyKey, payment.getId(), status);
+        return new PaymentResult(payment.getId(), status);
+    }
 
-        BigDecimal amountMinorDecimalCompare = new BigDecimal(amountMinor);
-        if (balanceMinor.compareTo(amountMinorDecimalCompare) >= 0) {
-            BigDecimal newBalanceMinor = balanceMinor.subtract(amountMinorDecimalCompare);
-            boolean updated;
-            try {
-                updated = walletClient.updateBalance(accountId, newBalanceMinor);
-            } catch (Exception e) {
-                // Error updating balance - create failed payment
-                VirtualPayment payment = createPaymentEntity(accountId, sessionId, amountMinor, currency, "Failed");
-                VirtualPayment saved = payments.save(payment);
-                return new PaymentResult(saved.getId(), "Failed");
-            }
-
-            if (updated) {
-                VirtualPayment payment = createPaymentEntity(accountId, sessionId, amountMinor, currency, "Paid");
-                VirtualPayment saved = payments.save(payment);
-                return new PaymentResult(saved.getId(), "Paid");
-            } else {
-                VirtualPayment payment = createPaymentEntity(accountId, sessionId, amountMinor, currency, "Failed");
-                VirtualPayment saved = payments.save(payment);
-                return new PaymentResult(saved.getId(), "Failed");
+    /**
+     * Obciąża portfel jednym atomowym wywołaniem customer-service (kwota + klucz idempotencji) zamiast
+     * odczytu salda i zapisu nowego salda - równoległe obciążenia nie nadpisują się nawzajem.
+     * Nieznany wynik (timeout, 5xx) jest ponawiany z tym samym kluczem, więc nie grozi podwójnym obciążeniem.
+     * @param missingWalletStatus status zwracany, gdy konto nie ma portfela
+     * @return status płatności: "Paid", "Failed" (brak środków, odrzucone), "Pending" (wynik nieznany)
+     *         albo missingWalletStatus (brak portfela)
+     */
+    private String debitWallet(Long accountId, int amountMinor, String idempotencyKey, String missingWalletStatus) {
+        for (int attempt = 1; ; attempt++) {
+            switch (walletClient.debit(accountId, amountMinor, idempotencyKey)) {
+                case APPLIED:
+                    return "Paid";
+                case INSUFFICIENT_FUNDS:
+                case REJECTED:
+                    return "Failed";
+                case NOT_FOUND:
+                    // No wallet; treat as pending external (rozliczenie po wyjeździe: Failed)
+                    return missingWalletStatus;
+                case UNAVAILABLE:
+                default:
+                    if (attempt >= WALLET_OPERATION_ATTEMPTS) {
+                        log.warn("Wallet debit outcome unknown after {} attempts: accountId={}, key={}",
+                                attempt, accountId, idempotencyKey);
+                        return "Pending";
+                    }
             }
-        } else {
-            // insufficient funds
-            VirtualPayment payment = createPaymentEntity(accountId, sessionId, amountMinor, currency, "Failed");
-            VirtualPayment saved = payments.save(payment);
-            return new PaymentResult(saved.getId(), "Failed");
         }
     }
 
-    public com.smartparking.payment_service.dto.PaymentResult chargeForParkingSession(Long accountId, Long sessionId, Long amountMinor) {
+    private static String newOperationKey() {
+        return "payment-" + UUID.randomUUID();
+    }
+
+    public com.smartparking.payment_service.dto.PaymentResult chargeForParkingSession(Long accountId, Long sessionId, Long parkingId, Long amountMinor) {
+        return chargeForParkingSession(accountId, sessionId, parkingId, amountMinor, newOperationKey());
+    }
+
+    /**
+     * @param idempotencyKey klucz obciążenia (np. "session-12-parking") - ponowienie nie pobiera opłaty drugi raz
+     */
+    public com.smartparking.payment_service.dto.PaymentResult chargeForParkingSession(Long accountId, Long sessionId, Long parkingId,
+                                                                                      Long amountMinor, String idempotencyKey) {
+        return chargeForParkingSession(accountId, sessionId, parkingId, amountMinor, idempotencyKey, "Pending");
+    }
+
+    /**
+     * Rozliczenie sesji po wyjeździe (SettlementListener). Brak portfela kończy płatność jako Failed, nie Pending -
+     * portfel nie pojawi się przy ponowieniu polecenia, więc sesja ma przejść do Unpaid zamiast czekać w Settling.
+     * Pending zostaje tylko dla nieznanego wyniku (customer-service niedostępny).
+     */
+    public com.smartparking.payment_service.dto.PaymentResult settleParkingSession(Long accountId, Long sessionId, Long parkingId,
+                                                                                   Long amountMinor, String idempotencyKey) {
+        return chargeForParkingSession(accountId, sessionId, parkingId, amountMinor, idempotencyKey, "Failed");
+    }
+
+    private com.smartparking.payment_service.dto.PaymentResult chargeForParkingSession(Long accountId, Long sessionId, Long parkingId,
+                                                                                       Long amountMinor, String idempotencyKey,
+                                                                                       String missingWalletStatus) {
         BigDecimal amount = new BigDecimal(amountMinor).divide(new BigDecimal(100));
-        com.smartparking.payment_service.dto.PaymentResult result = chargeFromWallet(accountId, sessionId, amount, "PLN");
+        com.smartparking.payment_service.dto.PaymentResult result = chargeFromWallet(accountId, sessionId, parkingId, amount, "PLN",
+                idempotencyKey, missingWalletStatus);
         
         if (result.getStatus().equals("Paid")) {
             // Zaktualizuj virtual_payment z activity='parking'
@@ -118,7 +200,12 @@ public class PaymentService {
         return result;
     }
 
-    public com.smartparking.payment_service.dto.PaymentResult chargeReservationFee(Long accountId, Long amountMinor) {
+    /**
+     * Opłata za rezerwację. Płatność nie ma sesji (ref_session_id = 0), więc parking zapisujemy od razu -
+     * backfill po session_id nie mógłby go uzupełnić, a raport parkingu liczy opłaty po ref_parking_id.
+     */
+    public com.smartparking.payment_service.dto.PaymentResult chargeReservationFee(Long accountId, Long parkingId,
+                                                                                 Long amountMinor) {
         BigDecimal amount = new BigDecimal(amountMinor).divide(new BigDecimal(100));
         
         // Convert amount to minor units (grosze) - amount is in main units (PLN)
@@ -126,76 +213,17 @@ public class PaymentService {
         if (amountMinorDecimal.compareTo(new BigDecimal(Integer.MAX_VALUE)) > 0) {
             // Amount exceeds Integer.MAX_VALUE - create failed payment (amount too large)
             VirtualPayment payment = createPaymentEntity(accountId, 0L, 0, "PLN", "Failed", "reservation");
+            payment.setRefParkingId(parkingId);
             VirtualPayment saved = payments.save(payment);
             return new com.smartparking.payment_service.dto.PaymentResult(saved.getId(), "Failed");
         }
         int amountMinorInt = amountMinorDecimal.intValue();
 
-        Optional<Map<String, Object>> walletOpt;
-        try {
-            walletOpt = walletClient.getWallet(accountId);
-        } catch (Exception e) {
-            // Error getting wallet - create pending payment
-            VirtualPayment payment = createPaymentEntity(accountId, 0L, amountMinorInt, "PLN", "Pending", "reservation");
-            VirtualPayment saved = payments.save(payment);
-            return new com.smartparking.payment_service.dto.PaymentResult(saved.getId(), "Pending");
-        }
-
-        if (walletOpt.isEmpty()) {
-            // No wallet; treat as pending external
-            VirtualPayment payment = createPaymentEntity(accountId, 0L, amountMinorInt, "PLN", "Pending", "reservation");
-            VirtualPayment saved = payments.save(payment);
-            return new com.smartparking.payment_service.dto.PaymentResult(saved.getId(), "Pending");
-        }
-
-        Map<String, Object> wallet = walletOpt.get();
-        // balance_minor is stored as integer minor units in DB; map might contain Integer/Long or String
-        Object balanceMinorObj = wallet.get("balance_minor");
-        if (balanceMinorObj == null) {
-            // No balance field - treat as insufficient funds
-            VirtualPayment payment = createPaymentEntity(accountId, 0L, amountMinorInt, "PLN", "Failed", "reservation");
-            VirtualPayment saved = payments.save(payment);
-            return new com.smartparking.payment_service.dto.PaymentResult(saved.getId(), "Failed");
-        }
-
-        BigDecimal balanceMinor;
-        try {
-            balanceMinor = new BigDecimal(balanceMinorObj.toString());
-        } catch (Exception e) {
-            // Invalid balance format - create failed payment
-            VirtualPayment payment = createPaymentEntity(accountId, 0L, amountMinorInt, "PLN", "Failed", "reservation");
-            VirtualPayment saved = payments.save(payment);
-            return new com.smartparking.payment_service.dto.PaymentResult(saved.getId(), "Failed");
-        }
-
-        BigDecimal amountMinorDecimalCompare = new BigDecimal(amountMinorInt);
-        if (balanceMinor.compareTo(amountMinorDecimalCompare) >= 0) {
-            BigDecimal newBalanceMinor = balanceMinor.subtract(amountMinorDecimalCompare);
-            boolean updated;
-            try {
-                updated = walletClient.updateBalance(accountId, newBalanceMinor);
-            } catch (Exception e) {
-                // Error updating balance - create failed payment
-                VirtualPayment payment = createPaymentEntity(accountId, 0L, amountMinorInt, "PLN", "Failed", "reservation");
-                VirtualPayment saved = payments.save(payment);
-                return new com.smartparking.payment_service.dto.PaymentResult(saved.getId(), "Failed");
-            }
-
-            if (updated) {
-                VirtualPayment payment = createPaymentEntity(accountId, 0L, amountMinorInt, "PLN", "Paid", "reservation");
-                VirtualPayment saved = payments.save(payment);
-                return new com.smartparking.payment_service.dto.PaymentResult(saved.getId(), "Paid");
-            } else {
-                VirtualPayment payment = createPaymentEntity(accountId, 0L, amountMinorInt, "PLN", "Failed", "reservation");
-                VirtualPayment saved = payments.save(payment);
-                return new com.smartparking.payment_service.dto.PaymentResult(saved.getId(), "Failed");
-            }
-        } else {
-            // insufficient funds
-            VirtualPayment payment = createPaymentEntity(accountId, 0L, amountMinorInt, "PLN", "Failed", "reservation");
-            VirtualPayment saved = payments.save(payment);
-            return new com.smartparking.payment_service.dto.PaymentResult(saved.getId(), "Failed");
-        }
+        String status = debitWallet(accountId, amountMinorInt, newOperationKey(), "Pending");
+        VirtualPayment payment = createPaymentEntity(accountId, 0L, amountMinorInt, "PLN", status, "reservation");
+        payment.setRefParkingId(parkingId);
+        VirtualPayment saved = payments.save(payment);
+        return new com.smartparking.payment_service.dto.PaymentResult(saved.getId(), status);
     }
 
     public VirtualPayment createDepositPayment(VirtualPayment payment) {
@@ -233,43 +261,17 @@ public class PaymentService {
             }
         }
         
-        // 2. Pobierz aktualne saldo portfela
-        Optional<Map<String, Object>> walletOpt;
-        try {
-            walletOpt = walletClient.getWallet(accountId);
-        } catch (Exception e) {
-            return new com.smartparking.payment_service.dto.PaymentResult(paymentId, "Failed");
-        }
-        
-        if (walletOpt.isEmpty()) {
-            return new com.smartparking.payment_service.dto.PaymentResult(paymentId, "Failed");
-        }
-        
-        Map<String, Object> wallet = walletOpt.get();
-        Object balanceMinorObj = wallet.get("balance_minor");
-        if (balanceMinorObj == null) {
-            return new com.smartparking.payment_service.dto.PaymentResult(paymentId, "Failed");
-        }
-        
-        BigDecimal balanceMinor;
-        try {
-            balanceMinor = new BigDecimal(balanceMinorObj.toString());
-        } catch (Exception e) {
-            return new com.smartparking.payment_service.dto.PaymentResult(paymentId, "Failed");
-        }
-        
-        // 3. Dodaj środki z powrotem do portfela
-        BigDecimal refundAmountMinor = new BigDecimal(amountMinor);
-        BigDecimal newBalanceMinor = balanceMinor.add(refundAmountMinor);
-        boolean updated;
-        try {
-            updated = walletClient.updateBalance(accountId, newBalanceMinor);
-        } catch (Exception e) {
-            return new com.smartparking.payment_service.dto.PaymentResult(paymentId, "Failed");
+        // 2. Dodaj środki z powrotem do portfela (atomowo; klucz per płatność - drugi zwrot tej samej płatności nie uzna portfela)
+        String refundKey = refundWithoutPayment ? "refund-" + UUID.randomUUID() : "refund-payment-" + paymentId;
+        CustomerWalletClient.WalletOperationStatus credited = walletClient.credit(accountId, amountMinor, refundKey);
+        for (int attempt = 2; attempt <= WALLET_OPERATION_ATTEMPTS
+                && credited == CustomerWalletClient.WalletOperationStatus.UNAVAILABLE; attempt++) {
+            credited = walletClient.credit(accountId, amountMinor, refundKey);
         }
+        boolean updated = credited == CustomerWalletClient.WalletOperationStatus.APPLIED;
         
         if (updated) {
-            // 4. Oznacz płatność jako refundowaną (używamy "Cancelled" bo enum nie ma "Refunded")
+            // 3. Oznacz płatność jako refundowaną (używamy "Cancelled" bo enum nie ma "Refunded")
             // Tylko jeśli mamy paymentId i płatność istnieje
             Long originalRefSessionId = null;
             if (!refundWithoutPayment && paymentId != null && paymentId != 0L) {
@@ -282,7 +284,7 @@ public class PaymentService {
                 }
             }
             
-            // 5. Utwórz rekord refund (opcjonalnie - dla historii)
+            // 4. Utwórz rekord refund (opcjonalnie - dla historii)
             // Używamy activity="deposit" dla refund, bo enum activity_type ma tylko: 'deposit', 'reservation', 'parking'
             VirtualPayment refundPayment = createPaymentEntity(accountId, 0L, amountMinor.intValue(), "PLN", "Paid", "deposit");
             if (originalRefSessionId != null) {
@@ -300,14 +302,21 @@ public class PaymentService {
         return createPaymentEntity(accountId, sessionId, amountMinor, currency, status, "parking");
     }
 
+    private VirtualPayment createChargeEntity(Long accountId, Long sessionId, Long parkingId, int amountMinor, String currency, String status) {
+        VirtualPayment payment = createPaymentEntity(accountId, sessionId, amountMinor, currency, status);
+        payment.setRefParkingId(parkingId);
+        return payment;
+    }
+
     /**
      * Tworzy płatność dla niezarejestrowanego klienta (płatność przy wyjeździe - gotówka/karta)
      * @param sessionId ID sesji parkingowej
      * @param amountMinor Kwota w groszach
+     * @param parkingId ID parkingu sesji (opcjonalne - bez niego uzupełni go backfill)
      * @param paymentMethod Metoda płatności (cash, card, etc.)
      * @return PaymentResult z statusem "Paid"
      */
-    public com.smartparking.payment_service.dto.PaymentResult payForUnregisteredSession(Long sessionId, Long amountMinor, String paymentMethod) {
+    public com.smartparking.payment_service.dto.PaymentResult payForUnregisteredSession(Long sessionId, Long amountMinor, Long parkingId, String paymentMethod) {
         if (amountMinor == null || amountMinor <= 0) {
             throw new IllegalArgumentException("Invalid amount: " + amountMinor);
         }
@@ -322,6 +331,7 @@ public class PaymentService {
         payment.setStatusPaid("Paid"); // Płatność przy wyjeździe zawsze "Paid"
         payment.setRefAccountId(null); // NULL dla niezarejestrowanych
         payment.setRefSessionId(sessionId);
+        payment.setRefParkingId(parkingId);
         payment.setActivity("parking");
         payment.setDateTransaction(LocalDateTime.now());
         
@@ -369,6 +379,7 @@ public class PaymentService {
         map.put("paymentId", payment.getId());
         map.put("accountId", payment.getRefAccountId());
         map.put("sessionId", payment.getRefSessionId());
+        map.put("parkingId", payment.getRefParkingId());
         map.put("amountMinor", payment.getAmountMinor());
         map.put("amount", payment.getAmountMinor() / 100.0); // Convert to main units (PLN)
         map.put("currencyCode", payment.getCurrencyCode());
@@ -378,65 +389,149 @@ public class PaymentService {
                 payment.getDateTransaction().toString() : null);
         return map;
     }
-    /*
-     * Pobiera wszystkie transakcje dla danego konta użytkownika
+
+    // ========================================
+    // RAPORTY FINANSOWE PER PARKING
+    // ========================================
+
+    /**
+     * Podsumowanie finansowe dla listy parkingów (jeden parking albo wszystkie parkingi firmy).
+     * Agregacja w SQL po ref_parking_id - koszt nie zależy od liczby sesji.
+     * Kwoty w PLN; revenueGrowth porównuje z poprzednim okresem o tej samej długości.
+     */
+    public Map<String, Object> getParkingReportSummary(List<Long> parkingIds, LocalDateTime startDate, LocalDateTime endDate) {
+        Map<String, Object> summary = new HashMap<>();
+        if (parkingIds == null || parkingIds.isEmpty()) {
+            summary.put("totalRevenue", 0.0);
+            summary.put("parkingUsage", 0.0);
+            summary.put("pendingPayments", 0.0);
+            summary.put("reservationFees", 0.0);
+            summary.put("totalTransactions", 0L);
+            summary.put("avgTransactionValue", 0.0);
+            summary.put("revenueGrowth", 0.0);
+            return summary;
+        }
+
+        long periodDays = java.time.Duration.between(startDate, endDate).toDays();
+        LocalDateTime previousStart = startDate.minusSeconds(1).minusDays(periodDays);
+        Map<String, Object> row = payments.getParkingReportSummary(parkingIds, previousStart, startDate, endDate);
+
+        long totalMinor = toLong(row.get("total_minor"));
+        long transactionCount = toLong(row.get("transaction_count"));
+        long previousTotalMinor = toLong(row.get("previous_total_minor"));
+
+        summary.put("totalRevenue", totalMinor / 100.0);
+        summary.put("parkingUsage", toLong(row.get("parking_minor")) / 100.0);
+        summary.put("pendingPayments", toLong(row.get("pending_minor")) / 100.0);
+        summary.put("reservationFees", toLong(row.get("reservation_minor")) / 100.0);
+        summary.put("totalTransactions", transactionCount);
+        summary.put("avgTransactionValue", transactionCount > 0 ? totalMinor / 100.0 / transactionCount : 0.0);
+        summary.put("revenueGrowth", previousTotalMinor > 0
+                ? ((totalMinor - previousTotalMinor) * 100.0) / previousTotalMinor
+                : 0.0);
+        return summary;
+    }
+
+    /**
+     * Przychód w kubełkach czasowych (bucket: day / week / month) do wykresów.
+     * Etykiety okresów formatują klienci (admin-service, worker-service) - tu zwracany jest początek kubełka.
+     */
+    public List<Map<String, Object>> getParkingRevenueByBucket(List<Long> parkingIds, LocalDateTime startDate,
+                                                               LocalDateTime endDate, String bucket) {
+        if (parkingIds == null || parkingIds.isEmpty()) {
+            return new java.util.ArrayList<>();
+        }
+        return payments.getParkingRevenueByBucket(parkingIds, startDate, endDate, bucket).stream()
+                .map(row -> {
+                    Map<String, Object> item = new HashMap<>();
+                    Object bucketStart = row.get("bucket_start");
+                    item.put("bucketStart", bucketStart instanceof java.sql.Timestamp ts
+                            ? ts.toLocalDateTime().toString()
+                            : String.valueOf(bucketStart));
+                    item.put("totalRevenue", toLong(row.get("total_minor")) / 100.0);
+                    item.put("parkingUsage", toLong(row.get("parking_minor")) / 100.0);
+                    item.put("transactionCount", toLong(row.get("transaction_count")));
+                    return item;
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Przychód z opłaconych płatności per parking (malejąco)
+     */
+    public List<Map<String, Object>> getRevenueByParking(List<Long> parkingIds, LocalDateTime startDate, LocalDateTime endDate) {
+        if (parkingIds == null || parkingIds.isEmpty()) {
+            return new java.util.ArrayList<>();
+        }
+        return payments.getRevenueByParking(parkingIds, startDate, endDate).stream()
+                .map(row -> {
+                    Map<String, Object> item = new HashMap<>();
+                    item.put("parkingId", toLong(row.get("parking_id")));
+                    item.put("revenue", toLong(row.get("revenue_minor")) / 100.0);
+                    item.put("transactionCount", toLong(row.get("transaction_count")));
+                    return item;
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Najnowsze transakcje dla listy parkingów (status "all" / null - bez filtra)
+     */
+    public List<Map<String, Object>> getParkingTransactions(List<Long> parkingIds, LocalDateTime startDate,
+                                                            LocalDateTime endDate, String status, int limit) {
+        if (parkingIds == null || parkingIds.isEmpty()) {
+            return new java.util.ArrayList<>();
+        }
+        String statusFilter = status == null || status.isBlank() || "all".equalsIgnoreCase(status) ? null : status;
+        return payments.findByParkingIds(parkingIds, startDate, endDate, statusFilter, limit).stream()
+                .map(this::convertPaymentToMap)
+                .collect(Collectors.toList());
+    }
+
+    private long toLong(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+    /**
+     * Pobiera stronę transakcji dla danego konta użytkownika (od najnowszych)
      * @param accountId ID konta użytkownika
-     * @return Lista transakcji w formacie Map
+     * @param afterDate data ostatniej transakcji poprzedniej strony (null = pierwsza strona)
+     * @param afterPaymentId id ostatniej transakcji poprzedniej strony (null = pierwsza strona)
+     * @return Lista transakcji
      */
-    public List<Map<String, Object>> getTransactionsByAccountId(Long accountId) {
-        List<VirtualPayment> paymentsList = payments.findByAccountId(accountId);
-        
-        return paymentsList.stream()
-            .map(p -> {
-                Map<String, Object> t = new HashMap<>();
-                t.put("id", p.getId());
-                t.put("amount", p.getAmountMinor() / 100.0); // Konwersja z groszy na złotówki
-                t.put("currency", p.getCurrencyCode());
-                t.put("status", p.getStatusPaid());
-                // Konwertuj LocalDateTime na ISO string dla frontendu
-                if (p.getDateTransaction() != null) {
-                    t.put("date", p.getDateTransaction().toString()); // Format: "2025-12-20T10:02:00"
-                } else {
-                    t.put("date", LocalDateTime.now().toString());
-                }
-                t.put("activity", p.getActivity()); // 'deposit', 'reservation', 'parking'
-                t.put("sessionId", p.getRefSessionId());
-                return t;
-            })
-            .collect(Collectors.toList());
+    public List<TransactionDto> getTransactionsByAccountId(Long accountId, LocalDateTime afterDate,
+                                                          Long afterPaymentId, int limit) {
+        return payments.findTransactionPage(accountId, afterDate, afterPaymentId, limit);
     }
 
     /**
-     * Pobiera statystyki dla danego konta użytkownika
+     * Przekazuje wszystkie transakcje konta do handlera wiersz po wierszu (eksport NDJSON)
+     */
+    public void streamTransactionsByAccountId(Long accountId, java.util.function.Consumer<TransactionDto> handler) {
+        payments.streamTransactions(accountId, EXPORT_FETCH_SIZE, handler);
+    }
+
+    /**
+     * Pobiera statystyki dla danego konta użytkownika.
+     * Sumy pochodzą z migawki księgi (payment_ledger_snapshot) i krótkiego ogona wpisów po niej,
+     * więc koszt nie rośnie z liczbą płatności w historii konta.
      * @param accountId ID konta użytkownika
      * @return Map ze statystykami: totalSpent, totalTopUps, totalTransactions
      */
     public Map<String, Object> getStatisticsByAccountId(Long accountId) {
-        List<VirtualPayment> allPayments = payments.findByAccountId(accountId);
-        
-        // Total Spent: suma płatności za parking i rezerwacje (tylko status "Paid")
-        long totalSpent = allPayments.stream()
-            .filter(p -> ("parking".equals(p.getActivity()) || "reservation".equals(p.getActivity())))
-            .filter(p -> "Paid".equals(p.getStatusPaid()))
-            .mapToLong(p -> p.getAmountMinor())
-            .sum();
-        
-        // Total Top-Ups: suma doładowań (tylko status "Paid")
-        long totalTopUps = allPayments.stream()
-            .filter(p -> "deposit".equals(p.getActivity()))
-            .filter(p -> "Paid".equals(p.getStatusPaid()))
-            .mapToLong(p -> p.getAmountMinor())
-            .sum();
-        
-        // Total Transactions: liczba wszystkich opłaconych transakcji
-        long totalTransactions = allPayments.stream()
-            .filter(p -> "Paid".equals(p.getStatusPaid()))
-            .count();
-        
+        Map<String, Long> totals;
+        try {
+            totals = ledger.getAccountTotals(accountId);
+        } catch (DataAccessException e) {
+            // Księga niedostępna (np. baza bez migracji payment_ledger) - te same sumy jednym zapytaniem po virtual_payment
+            log.warn("Payment ledger unavailable, aggregating payments of account {}: {}", accountId, e.getMessage());
+            totals = payments.getAccountTotals(accountId);
+        }
+
         Map<String, Object> stats = new HashMap<>();
-        stats.put("totalSpent", totalSpent / 100.0); // Konwersja z groszy na złotówki
-        stats.put("totalTopUps", totalTopUps / 100.0);
-        stats.put("totalTransactions", totalTransactions);
+        // Total Spent: parking i rezerwacje, Total Top-Ups: doładowania, Total Transactions: opłacone płatności
+        stats.put("totalSpent", totals.get("spentMinor") / 100.0); // Konwersja z groszy na złotówki
+        stats.put("totalTopUps", totals.get("topUpsMinor") / 100.0);
+        stats.put("totalTransactions", totals.get("paidCount"));
         return stats;
     }
 }
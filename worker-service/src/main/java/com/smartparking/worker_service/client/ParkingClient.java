@@ -10,9 +10,6 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
 import java.util.Map;
 
 @Component
@@ -55,49 +52,4 @@ public class ParkingClient {
             return null;
         }
     }
-
-    /**
-     * Get session IDs by parking ID and date range
-     * Used for financial reports
-     */
-    public List<Long> getSessionIdsByParkingId(
-            Long parkingId,
-            LocalDateTime startDate,
-            LocalDateTime endDate) {
-
-        try {
-            // Format dates for URL (ISO-8601 format)
-            DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
-            String startDateStr = startDate.format(formatter);
-            String endDateStr = endDate.format(formatter);
-
-            String url = baseUrl + "/parking/sessions/ids-by-parking" +
-                    "?parkingId=" + parkingId +
-                    "&startDate=" + startDateStr +
-                    "&endDate=" + endDateStr;
-
-            log.debug("Fetching session IDs from: {}", url);
-
-            ResponseEntity<List<Long>> response = restTemplate.exchange(
-                    url,
-                    HttpMethod.GET,
-                    null,
-                    new ParameterizedTypeReference<List<Long>>() {}
-            );
-
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                List<Long> sessionIds = response.getBody();
-                log.info("Retrieved {} session IDs for parking {} between {} and {}",
-                        sessionIds.size(), parkingId, startDateStr, endDateStr);
-                return sessionIds;
-            }
-
-            log.warn("Failed to get session IDs for parking {}", parkingId);
-            return List.of();
-
-        } catch (Exception e) {
-            log.error("Error fetching session IDs for parking {}", parkingId, e);
-            return List.of();
-        }
-    }
-}
\ No newline at end of file
+}
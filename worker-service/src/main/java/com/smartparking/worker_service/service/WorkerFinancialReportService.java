@@ -1,6 +1,5 @@
 package com.smartparking.worker_service.service;
 
-import com.smartparking.worker_service.client.ParkingClient;
 import com.smartparking.worker_service.model.Worker;
 import com.smartparking.worker_service.repo.WorkerRepository;
 import org.slf4j.Logger;
@@ -12,12 +11,11 @@ import org.springframework.http.ResponseEntity;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * WorkerFinancialReportService
  *
- * Orchestrates data from payment-service and parking-service for worker's assigned parking
+ * Reads financial reports for worker's assigned parking from payment-service (aggregated per parking)
  * Similar to admin's FinancialReportService but worker-specific (single parking only)
  */
 @Service
@@ -25,16 +23,16 @@ public class WorkerFinancialReportService {
 
     private static final Logger log = LoggerFactory.getLogger(WorkerFinancialReportService.class);
 
+    private static final String PAYMENT_REPORTS_URL = "http://payment-service:8082/payment/reports";
+    private static final int TRANSACTIONS_LIMIT = 100;
+
     private final WorkerRepository workerRepository;
-    private final ParkingClient parkingClient;
     private final RestTemplate restTemplate;
 
     public WorkerFinancialReportService(
             WorkerRepository workerRepository,
-            ParkingClient parkingClient,
             RestTemplate restTemplate) {
         this.workerRepository = workerRepository;
-        this.parkingClient = parkingClient;
         this.restTemplate = restTemplate;
     }
 
@@ -67,24 +65,12 @@ public class WorkerFinancialReportService {
 
         log.info("Date range: {} to {}", startDate, endDate);
 
-        // 3. Get session IDs from parking-service
-        List<Long> sessionIds = parkingClient.getSessionIdsByParkingId(parkingId, startDate, endDate);
-
-        if (sessionIds.isEmpty()) {
-            log.warn("No sessions found for parking {} in period", parkingId);
+        // 3. Get aggregated metrics from payment-service
+        Map<String, Object> summary = getFromPaymentReports("/summary", Map.class, parkingId, startDate, endDate, Map.of());
+        if (summary == null) {
             return createEmptyFinancialSummary();
         }
 
-        log.info("Found {} sessions for parking {}", sessionIds.size(), parkingId);
-
-        // 4. Get payments from payment-service
-        List<Map<String, Object>> payments = getPaymentsBySessionIds(sessionIds);
-
-        log.info("Found {} payments for sessions", payments.size());
-
-        // 5. Calculate metrics
-        Map<String, Object> summary = calculateFinancialMetrics(payments, startDate, endDate);
-
         log.info("Financial summary calculated successfully");
         return summary;
     }
@@ -110,15 +96,10 @@ public class WorkerFinancialReportService {
         LocalDateTime endDate = LocalDateTime.now();
         LocalDateTime startDate = calculateStartDate(endDate, period);
 
-        List<Long> sessionIds = parkingClient.getSessionIdsByParkingId(parkingId, startDate, endDate);
-
-        if (sessionIds.isEmpty()) {
-            return new ArrayList<>();
-        }
-
-        List<Map<String, Object>> payments = getPaymentsBySessionIds(sessionIds);
+        List<Map<String, Object>> buckets = getFromPaymentReports("/revenue-over-time", List.class,
+                parkingId, startDate, endDate, Map.of("bucket", getBucketForPeriod(period)));
 
-        return groupPaymentsByPeriod(payments, period, startDate, endDate);
+        return buckets != null ? labelBuckets(buckets, period) : new ArrayList<>();
     }
 
     /**
@@ -142,25 +123,17 @@ public class WorkerFinancialReportService {
         LocalDateTime endDate = LocalDateTime.now();
         LocalDateTime startDate = calculateStartDate(endDate, period);
 
-        List<Long> sessionIds = parkingClient.getSessionIdsByParkingId(parkingId, startDate, endDate);
-
-        if (sessionIds.isEmpty()) {
-            return new ArrayList<>();
-        }
-
-        List<Map<String, Object>> payments = getPaymentsBySessionIds(sessionIds);
-
-        // Filter by status
+        Map<String, Object> params = new HashMap<>();
+        params.put("limit", TRANSACTIONS_LIMIT);
         if (status != null && !"all".equalsIgnoreCase(status)) {
-            payments = payments.stream()
-                    .filter(p -> status.equals(p.get("status")))
-                    .collect(Collectors.toList());
+            params.put("status", status);
         }
 
-        // Limit to 100 transactions
-        return payments.stream()
-                .limit(100)
-                .collect(Collectors.toList());
+        // Filtered by status and limited to 100 most recent in payment-service
+        List<Map<String, Object>> payments = getFromPaymentReports("/transactions", List.class,
+                parkingId, startDate, endDate, params);
+
+        return payments != null ? payments : new ArrayList<>();
     }
 
     // ========================================
@@ -180,113 +153,56 @@ public class WorkerFinancialReportService {
     }
 
     /**
-     * Get payments from payment-service by session IDs
+     * GET from payment-service financial reports (aggregated per parking in SQL)
+     * @return response body or null when payment-service is unavailable
      */
-    private List<Map<String, Object>> getPaymentsBySessionIds(List<Long> sessionIds) {
+    @SuppressWarnings("unchecked")
+    private <T> T getFromPaymentReports(
+            String path,
+            Class<?> responseType,
+            Long parkingId,
+            LocalDateTime startDate,
+            LocalDateTime endDate,
+            Map<String, Object> extraParams) {
         try {
-            String paymentServiceUrl = "http://payment-service:8082/payment/by-sessions";
-
-            log.debug("Calling payment-service: {}", paymentServiceUrl);
-
-            ResponseEntity<List> response = restTemplate.postForEntity(
-                    paymentServiceUrl,
-                    sessionIds,
-                    List.class
-            );
-
-            if (response.getBody() == null) {
-                return new ArrayList<>();
+            Map<String, Object> params = new HashMap<>(extraParams);
+            params.put("parkingIds", parkingId);
+            params.put("startDate", startDate.toString());
+            params.put("endDate", endDate.toString());
+
+            StringBuilder url = new StringBuilder(PAYMENT_REPORTS_URL + path)
+                    .append("?parkingIds={parkingIds}&startDate={startDate}&endDate={endDate}");
+            for (String key : extraParams.keySet()) {
+                url.append('&').append(key).append("={").append(key).append('}');
             }
 
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> payments = (List<Map<String, Object>>) response.getBody();
+            log.debug("Calling payment-service: {}", url);
 
-            return payments;
+            ResponseEntity<?> response = restTemplate.getForEntity(url.toString(), responseType, params);
+            return (T) response.getBody();
 
         } catch (Exception e) {
-            log.error("Failed to get payments from payment-service", e);
-            return new ArrayList<>();
+            log.error("Failed to get report {} from payment-service", path, e);
+            return null;
         }
     }
 
     /**
-     * Calculate financial metrics from payment list
+     * Merge revenue buckets into chart periods (labels as returned by getFormatterForPeriod)
      */
-    private Map<String, Object> calculateFinancialMetrics(
-            List<Map<String, Object>> payments,
-            LocalDateTime startDate,
-            LocalDateTime endDate) {
-
-        Map<String, Object> metrics = new HashMap<>();
-
-        double totalRevenue = 0.0;
-        double parkingUsage = 0.0;
-        double pendingPayments = 0.0;
-        double reservationFees = 0.0;
-        int totalTransactions = payments.size();
-
-        for (Map<String, Object> payment : payments) {
-            double amount = getDoubleValue(payment, "amount");
-            String status = (String) payment.get("status");
-            String activity = (String) payment.get("activity");
-
-            totalRevenue += amount;
-
-            if ("Paid".equals(status) && "parking".equals(activity)) {
-                parkingUsage += amount;
-            }
-
-            if ("Pending".equals(status)) {
-                pendingPayments += amount;
-            }
-
-            if ("reservation".equals(activity) && "Paid".equals(status)) {
-                reservationFees += amount;
-            }
-        }
-
-        double avgTransaction = totalTransactions > 0 ? totalRevenue / totalTransactions : 0.0;
-
-        metrics.put("totalRevenue", totalRevenue);
-        metrics.put("parkingUsage", parkingUsage);
-        metrics.put("pendingPayments", pendingPayments);
-        metrics.put("reservationFees", reservationFees);
-        metrics.put("totalTransactions", totalTransactions);
-        metrics.put("avgTransactionValue", avgTransaction);
-        metrics.put("revenueGrowth", calculateGrowth(payments, startDate, endDate));
-
-        return metrics;
-    }
-
-    /**
-     * Group payments by time period for charts
-     */
-    private List<Map<String, Object>> groupPaymentsByPeriod(
-            List<Map<String, Object>> payments,
-            String period,
-            LocalDateTime startDate,
-            LocalDateTime endDate) {
-
+    private List<Map<String, Object>> labelBuckets(List<Map<String, Object>> buckets, String period) {
         Map<String, PeriodData> grouped = new LinkedHashMap<>();
         DateTimeFormatter formatter = getFormatterForPeriod(period);
 
-        for (Map<String, Object> payment : payments) {
-            String dateStr = (String) payment.get("dateTransaction");
-            if (dateStr == null) continue;
+        for (Map<String, Object> bucket : buckets) {
+            String bucketStart = (String) bucket.get("bucketStart");
+            if (bucketStart == null) continue;
 
-            LocalDateTime date = LocalDateTime.parse(dateStr);
-            String periodKey = date.format(formatter);
+            String periodKey = LocalDateTime.parse(bucketStart).format(formatter);
 
             PeriodData data = grouped.computeIfAbsent(periodKey, k -> new PeriodData());
-
-            double amount = getDoubleValue(payment, "amount");
-            String status = (String) payment.get("status");
-            String activity = (String) payment.get("activity");
-
-            data.totalRevenue += amount;
-            if ("Paid".equals(status) && "parking".equals(activity)) {
-                data.parkingUsage += amount;
-            }
+            data.totalRevenue += getDoubleValue(bucket, "totalRevenue");
+            data.parkingUsage += getDoubleValue(bucket, "parkingUsage");
         }
 
         List<Map<String, Object>> result = new ArrayList<>();
@@ -301,43 +217,11 @@ public class WorkerFinancialReportService {
         return result;
     }
 
-    /**
-     * Calculate revenue growth %
-     */
-    private double calculateGrowth(
-            List<Map<String, Object>> payments,
-            LocalDateTime currentStart,
-            LocalDateTime currentEnd) {
-        try {
-            long periodDays = java.time.Duration.between(currentStart, currentEnd).toDays();
-            LocalDateTime previousEnd = currentStart.minusSeconds(1);
-            LocalDateTime previousStart = previousEnd.minusDays(periodDays);
-
-            double currentRevenue = 0.0;
-            double previousRevenue = 0.0;
-
-            for (Map<String, Object> payment : payments) {
-                String dateStr = (String) payment.get("dateTransaction");
-                if (dateStr == null) continue;
-
-                LocalDateTime date = LocalDateTime.parse(dateStr);
-                double amount = getDoubleValue(payment, "amount");
-
-                if (date.isAfter(currentStart) && date.isBefore(currentEnd)) {
-                    currentRevenue += amount;
-                } else if (date.isAfter(previousStart) && date.isBefore(previousEnd)) {
-                    previousRevenue += amount;
-                }
-            }
-
-            if (previousRevenue > 0) {
-                return ((currentRevenue - previousRevenue) / previousRevenue) * 100.0;
-            }
-            return 0.0;
-        } catch (Exception e) {
-            log.error("Error calculating growth", e);
-            return 0.0;
-        }
+    private String getBucketForPeriod(String period) {
+        return switch (period.toLowerCase()) {
+            case "month", "quarter", "semester", "year" -> "month";
+            default -> "day";
+        };
     }
 
     private DateTimeFormatter getFormatterForPeriod(String period) {